@@ -0,0 +1,398 @@
+/*
+ * ANALISI ARCHIVIO - statistiche su una cartella piena di liste salvate
+ *
+ * PROBLEMA:
+ * - Una cartella con centinaia di migliaia di liste (una a settimana per
+ *   famiglia): "quanto si spende in media per categoria ogni mese?"
+ * - Caricarle una alla volta con "Carica da file" è impensabile
+ *
+ * SOLUZIONE: fork-join + accumulatori che si possono unire
+ * - Ogni cartella è un compito; i file vengono divisi in lotti e ogni
+ *   lotto è un compito a sé: il ForkJoinPool li distribuisce su tutti i core
+ * - Ogni compito riempie il SUO Risultato (niente lock) e alla fine i
+ *   risultati si uniscono a due a due: Totali.unisci(), Risultato.unisci()
+ * - Un file si legge riga per riga: in memoria c'è una riga per thread,
+ *   non le liste; i totali crescono con mesi × categorie, non con i file
+ * - Ogni cartella tiene al massimo IN_CORSO_PER_CARTELLA compiti aperti:
+ *   anche con una cartella da un milione di file i percorsi in attesa sono pochi
+ *
+ * QUALI FILE?
+ * - *.csv (formato di spesa.csv) e *.csvz (ArchivioCompresso, un blocco alla volta)
+ *
+ * IL MESE DI UNA LISTA?
+ * - Dal nome del file se contiene una data (spesa-2024-03-11.csv → 2024-03)
+ * - Altrimenti dalla data di ultima modifica del file
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class AnalisiArchivio {
+
+    // Dove finiscono i risultati completi (mese, categoria, totali)
+    public static final String FILE_RISULTATI = "analisi.csv";
+
+    public static final String INTESTAZIONE_RISULTATI =
+            "Mese,Categoria,Liste,Articoli,Pezzi,Spesa,SpesaMediaPerLista,PrezzoMediano,PrezzoP90";
+
+    // Quanti file legge un compito: abbastanza da valere il costo del compito
+    private static final int FILE_PER_LOTTO = 64;
+
+    // Compiti aperti al massimo per cartella (oltre si aspetta il più vecchio)
+    private static final int IN_CORSO_PER_CARTELLA = 64;
+
+    // "2024-03" in un nome di file
+    private static final Pattern DATA_NEL_NOME = Pattern.compile("(\\d{4})-(\\d{2})");
+
+    /*
+     * CLASSE: Totali
+     *
+     * COSA È?
+     * - I totali di una categoria in un mese: articoli, pezzi, spesa e la
+     *   distribuzione dei prezzi unitari (DigestPrezzi: mediana, p90)
+     * - unisci() somma due Totali: l'ordine non conta, quindi ogni thread
+     *   può avere i suoi e unirli alla fine
+     */
+    public static final class Totali {
+        private final String categoria;
+        private long liste;
+        private long articoli;
+        private long pezzi;
+        private double spesa;
+        private final DigestPrezzi prezzi = new DigestPrezzi();
+
+        private Totali(String categoria) {
+            this.categoria = categoria;
+        }
+
+        void aggiungi(double prezzo, int quantita) {
+            articoli++;
+            pezzi += quantita;
+            spesa += prezzo * quantita;
+            prezzi.aggiungi(prezzo);
+        }
+
+        void unisci(Totali altro) {
+            liste += altro.liste;
+            articoli += altro.articoli;
+            pezzi += altro.pezzi;
+            spesa += altro.spesa;
+            prezzi.unisci(altro.prezzi);
+        }
+
+        public String categoria() {
+            return categoria;
+        }
+
+        // In quante liste del mese compare la categoria
+        public long liste() {
+            return liste;
+        }
+
+        public long articoli() {
+            return articoli;
+        }
+
+        public long pezzi() {
+            return pezzi;
+        }
+
+        public double spesa() {
+            return spesa;
+        }
+
+        // Prezzo unitario sotto cui sta la frazione q degli articoli (0,5 = mediana)
+        public double prezzo(double q) {
+            return prezzi.quantile(q);
+        }
+    }
+
+    /*
+     * CLASSE: Risultato
+     *
+     * COSA È?
+     * - mese → categoria (normalizzata) → Totali, più il numero di liste
+     *   per mese e quello che non si è potuto leggere
+     */
+    public static final class Risultato {
+        private final Map<String, Map<String, Totali>> perMese = new HashMap<>();
+        private final Map<String, Long> listePerMese = new HashMap<>();
+        private long file;
+        private long fileScartati;
+        private long righeScartate;
+        private long cartelleScartate;
+
+        private Totali totali(String mese, String categoria) {
+            return perMese.computeIfAbsent(mese, m -> new HashMap<>())
+                    .computeIfAbsent(Testo.normalizza(categoria), c -> new Totali(categoria.trim()));
+        }
+
+        void unisci(Risultato altro) {
+            for (Map.Entry<String, Map<String, Totali>> mese : altro.perMese.entrySet()) {
+                Map<String, Totali> nostre = perMese.computeIfAbsent(mese.getKey(), m -> new HashMap<>());
+                for (Map.Entry<String, Totali> categoria : mese.getValue().entrySet()) {
+                    Totali nostri = nostre.putIfAbsent(categoria.getKey(), categoria.getValue());
+                    if (nostri != null) {
+                        nostri.unisci(categoria.getValue());
+                    }
+                }
+            }
+            altro.listePerMese.forEach((mese, liste) -> listePerMese.merge(mese, liste, Long::sum));
+            file += altro.file;
+            fileScartati += altro.fileScartati;
+            righeScartate += altro.righeScartate;
+            cartelleScartate += altro.cartelleScartate;
+        }
+
+        // I mesi in ordine, ognuno con le sue categorie
+        public Map<String, Map<String, Totali>> perMese() {
+            return new TreeMap<>(perMese);
+        }
+
+        public long liste(String mese) {
+            return listePerMese.getOrDefault(mese, 0L);
+        }
+
+        public long file() {
+            return file;
+        }
+
+        public long fileScartati() {
+            return fileScartati;
+        }
+
+        public long righeScartate() {
+            return righeScartate;
+        }
+
+        public long cartelleScartate() {
+            return cartelleScartate;
+        }
+    }
+
+    // ============================================
+    // ANALISI
+    // ============================================
+
+    /*
+     * METODO: compito(Path cartella, LongAdder letti)
+     *
+     * COSA FA?
+     * - Prepara l'analisi di una cartella (e delle sottocartelle)
+     * - Il chiamante la fa girare in un ForkJoinPool e può guardare
+     *   "letti" (file finiti) mentre aspetta
+     */
+    public static ForkJoinTask<Risultato> compito(Path cartella, LongAdder letti) {
+        return new AnalisiCartella(cartella, letti);
+    }
+
+    private static final class AnalisiCartella extends RecursiveTask<Risultato> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path cartella;
+        private final LongAdder letti;
+
+        AnalisiCartella(Path cartella, LongAdder letti) {
+            this.cartella = cartella;
+            this.letti = letti;
+        }
+
+        @Override
+        protected Risultato compute() {
+            Risultato risultato = new Risultato();
+            Deque<ForkJoinTask<Risultato>> inCorso = new ArrayDeque<>();
+            List<Path> lotto = new ArrayList<>(FILE_PER_LOTTO);
+            try (DirectoryStream<Path> voci = Files.newDirectoryStream(cartella)) {
+                for (Path voce : voci) {
+                    if (Files.isDirectory(voce)) {
+                        avvia(new AnalisiCartella(voce, letti), inCorso, risultato);
+                    } else if (daLeggere(voce)) {
+                        lotto.add(voce);
+                        if (lotto.size() == FILE_PER_LOTTO) {
+                            avvia(new AnalisiLotto(lotto, letti), inCorso, risultato);
+                            lotto = new ArrayList<>(FILE_PER_LOTTO);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // Sottocartella illeggibile: si conta e si va avanti con il resto
+                risultato.cartelleScartate++;
+            }
+
+            // L'ultimo lotto lo leggiamo noi, intanto gli altri thread lavorano
+            risultato.unisci(new AnalisiLotto(lotto, letti).compute());
+            while (!inCorso.isEmpty()) {
+                risultato.unisci(inCorso.poll().join());
+            }
+            return risultato;
+        }
+
+        private static void avvia(RecursiveTask<Risultato> compito, Deque<ForkJoinTask<Risultato>> inCorso,
+                                  Risultato risultato) {
+            inCorso.add(compito.fork());
+            if (inCorso.size() > IN_CORSO_PER_CARTELLA) {
+                risultato.unisci(inCorso.poll().join());
+            }
+        }
+    }
+
+    private static final class AnalisiLotto extends RecursiveTask<Risultato> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> file;
+        private final LongAdder letti;
+
+        AnalisiLotto(List<Path> file, LongAdder letti) {
+            this.file = file;
+            this.letti = letti;
+        }
+
+        @Override
+        protected Risultato compute() {
+            Risultato risultato = new Risultato();
+            for (Path lista : file) {
+                analizzaFile(lista, risultato);
+                letti.increment();
+            }
+            return risultato;
+        }
+    }
+
+    private static boolean daLeggere(Path file) {
+        String nome = file.getFileName().toString();
+        return nome.endsWith(".csv") || nome.endsWith(".csvz");
+    }
+
+    /*
+     * METODO: analizzaFile(Path file, Risultato risultato)
+     *
+     * COSA FA?
+     * - Aggiunge una lista ai totali del suo mese
+     * - Un file illeggibile viene contato e saltato: su centinaia di
+     *   migliaia di file uno rovinato non deve fermare l'analisi
+     * - Le righe malformate vengono contate e saltate
+     */
+    static void analizzaFile(Path file, Risultato risultato) {
+        Risultato lista = new Risultato();
+        try {
+            String mese = meseDi(file);
+            if (file.getFileName().toString().endsWith(".csvz")) {
+                leggiArchivio(file, mese, lista);
+            } else {
+                leggiCsv(file, mese, lista);
+            }
+
+            // Ogni categoria di questa lista conta una lista in più
+            for (Map<String, Totali> categorie : lista.perMese.values()) {
+                for (Totali totali : categorie.values()) {
+                    totali.liste = 1;
+                }
+            }
+            lista.listePerMese.put(mese, 1L);
+            lista.file = 1;
+            risultato.unisci(lista);
+        } catch (IOException | RuntimeException e) {
+            risultato.file++;
+            risultato.fileScartati++;
+        }
+    }
+
+    private static void leggiCsv(Path file, String mese, Risultato lista) throws IOException {
+        try (BufferedReader lettore = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            // La prima riga è l'intestazione
+            String riga = lettore.readLine();
+            while ((riga = lettore.readLine()) != null) {
+                if (riga.isEmpty()) {
+                    continue;
+                }
+
+                // Solo i campi che servono: niente mappa e niente id per riga
+                String[] campi = riga.split(",");
+                try {
+                    double prezzo = Double.parseDouble(campi[2]);
+                    int quantita = Integer.parseInt(campi[3]);
+                    lista.totali(mese, campi[1]).aggiungi(prezzo, quantita);
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    lista.righeScartate++;
+                }
+            }
+        }
+    }
+
+    // Un blocco alla volta: in memoria al massimo RIGHE_PER_BLOCCO articoli
+    private static void leggiArchivio(Path file, String mese, Risultato lista) throws IOException {
+        int blocchi = ArchivioCompresso.indice(file).size();
+        for (int i = 0; i < blocchi; i++) {
+            for (Map<String, Object> articolo : ArchivioCompresso.leggiBlocco(file, i)) {
+                lista.totali(mese, (String) articolo.get("categoria"))
+                        .aggiungi((double) articolo.get("prezzo"), (int) articolo.get("quantita"));
+            }
+        }
+    }
+
+    // "2024-03": dal nome del file, altrimenti dall'ultima modifica
+    static String meseDi(Path file) throws IOException {
+        Matcher data = DATA_NEL_NOME.matcher(file.getFileName().toString());
+        while (data.find()) {
+            int mese = Integer.parseInt(data.group(2));
+            if (mese >= 1 && mese <= 12) {
+                return data.group(1) + "-" + data.group(2);
+            }
+        }
+        Instant modifica = Files.getLastModifiedTime(file).toInstant();
+        return YearMonth.from(modifica.atZone(ZoneId.systemDefault())).toString();
+    }
+
+    // ============================================
+    // RISULTATI
+    // ============================================
+
+    /*
+     * METODO: scrivi(Risultato risultato, Writer uscita)
+     *
+     * COSA FA?
+     * - Scrive una riga CSV per ogni (mese, categoria), in ordine di mese
+     *   e, nel mese, dalla categoria con più spesa
+     * - Riga per riga: con un Writer su file non si costruisce tutto in memoria
+     */
+    public static void scrivi(Risultato risultato, Writer uscita) throws IOException {
+        uscita.write(INTESTAZIONE_RISULTATI);
+        uscita.write('\n');
+        for (Map.Entry<String, Map<String, Totali>> mese : risultato.perMese().entrySet()) {
+            long liste = risultato.liste(mese.getKey());
+            for (Totali totali : perSpesa(mese.getValue())) {
+                uscita.write(String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%.2f,%.2f,%.2f,%.2f%n",
+                        mese.getKey(), totali.categoria, totali.liste, totali.articoli, totali.pezzi,
+                        totali.spesa, liste == 0 ? 0 : totali.spesa / liste, totali.prezzo(0.5), totali.prezzo(0.9)));
+            }
+        }
+    }
+
+    // Le categorie di un mese, dalla più costosa
+    public static List<Totali> perSpesa(Map<String, Totali> categorie) {
+        List<Totali> ordinate = new ArrayList<>(categorie.values());
+        ordinate.sort((a, b) -> Double.compare(b.spesa, a.spesa));
+        return ordinate;
+    }
+}
@@ -16,13 +16,24 @@
 
 // Files: Serve per leggere/scrivere file CSV
 // Lo usiamo per salvare la lista della spesa su disco
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 // ============================================
 // CLASSE PRINCIPALE
@@ -37,7 +48,7 @@ public class Application {
     /*
      * ATTRIBUTO 1: articoli
      * 
-     * Tipo: List<Map<String, Object>>
+     * Tipo: ListaPersistente<Map<String, Object>>
      * 
      * COSA È?
      * - Una LISTA (ordine importante)
@@ -69,11 +80,23 @@ public class Application {
      *   * "quantita" → Integer (2)
      *   * "acquistato" → Boolean (true/false)
      * 
+     * PERCHÉ ListaPersistente e non ArrayList?
+     * - È una List come le altre, ma ogni modifica crea una VERSIONE nuova
+     *   e quelle vecchie restano valide (condividendo quasi tutto)
+     * - Annulla/Ripeti = tornare a una versione precedente
+     * - Salvataggi ed esportazioni leggono una versione ferma, senza lock
+     * - REGOLA: un articolo in lista non si modifica; il motore ne mette
+     *   una copia al suo posto (vedi MotoreLista.marca())
+     * 
+     * DI CHI È?
+     * - Del motore (vedi sotto): qui la usano le pagine e gli strumenti,
+     *   le operazioni vere passano dal motore
+     * 
      * QUANDO si INIZIALIZZA?
      * - Nel COSTRUTTORE (vedi sotto)
      * - Non qui, perché non è una costante
      */
-    private List<Map<String, Object>> articoli;
+    private final ListaPersistente<Map<String, Object>> articoli;
     
     /*
      * ATTRIBUTO 2: scanner
@@ -101,6 +124,145 @@ public class Application {
      */
     private final Scanner scanner;
     
+    /*
+     * ATTRIBUTO 3: metriche
+     * 
+     * Tipo: Metriche
+     * 
+     * COSA È?
+     * - Contatori e istogrammi di latenza per ogni operazione
+     * - Byte letti e scritti su disco
+     * 
+     * PERCHÉ?
+     * - Per sapere DOVE va il tempo (es. un salvataggio lento)
+     * - Visibili dal menu "Statistiche" e via JMX
+     */
+    private final Metriche metriche;
+    
+    /*
+     * ATTRIBUTO 4: motore
+     * 
+     * Tipo: MotoreLista
+     * 
+     * COSA È?
+     * - La lista con i suoi totali e indici, e le operazioni vere:
+     *   aggiungi, rimuovi, marca, cerca, totali (vedi MotoreLista)
+     * 
+     * PERCHÉ separato?
+     * - Questa classe chiede i dati e stampa i risultati, il motore lavora:
+     *   lo stesso motore serve ListaDellaSpesa e chi lo usa da codice
+     */
+    private final MotoreLista motore;
+    
+    /*
+     * ATTRIBUTO 5: precaricamento
+     * 
+     * Tipo: PrecaricatoreLista
+     * 
+     * COSA È?
+     * - Il caricamento di spesa.csv partito in background all'avvio
+     * - null quando non c'è (o quando è già finito e installato)
+     * 
+     * PERCHÉ?
+     * - Il menu compare subito, anche se il file è enorme
+     * - Ogni operazione aspetta solo i dati che le servono
+     */
+    private PrecaricatoreLista precaricamento;
+    
+    // "Carica da file" in corso in background (null se nessuno): vedi CaricamentoLista
+    private CaricamentoLista caricamento;
+    
+    // Quanto "Carica da file" aspetta prima di lasciare il caricamento in background
+    private static final long ATTESA_CARICAMENTO_MS = 200;
+    
+    // Quanti prodotti abituali proporre in "Aggiungi articolo"
+    private static final int PROPOSTE_ABITUALI = 5;
+    
+    // Oltre, "Filtra la lista" mostra solo quanti sono
+    private static final int RISULTATI_FILTRO_MOSTRATI = 50;
+    
+    // Quanti articoli fuori misura elenca "Prezzi per categoria"
+    private static final int FUORI_MISURA_MOSTRATI = 20;
+    
+    // Quante righe (abbinate con errori di battitura, o senza articolo) elenca "Importa scontrini"
+    private static final int RIGHE_SCONTRINO_MOSTRATE = 10;
+    
+    // Caratteri accumulati prima di scrivere sulla console (visualizzaListaSemplice)
+    private static final int BLOCCO_STAMPA = 64 * 1024;
+    
+    /*
+     * ATTRIBUTO 6: autosalvataggio
+     * 
+     * Tipo: AutoSalvataggio
+     * 
+     * COSA È?
+     * - Sa se la lista ha modifiche non salvate ("sporca")
+     * - Salva in background poco dopo l'ultima modifica
+     * 
+     * REGOLA:
+     * - La lista si modifica solo con le operazioni del motore: lo fanno
+     *   dentro synchronized (articoli) e chiamano modificato() prima di
+     *   uscire dal blocco
+     * - Così il thread di salvataggio legge sempre una lista coerente
+     */
+    private final AutoSalvataggio autosalvataggio;
+    
+    /*
+     * ATTRIBUTO 7: osservatore
+     * 
+     * Tipo: OsservatoreFile
+     * 
+     * COSA È?
+     * - Un thread che si accorge se spesa.csv viene cambiato da fuori
+     * - Prepara gli articoli aggiunti/tolti; il menu li applica
+     *   al giro successivo (vedi applicaModificheEsterne())
+     */
+    private final OsservatoreFile osservatore;
+    
+    /*
+     * ATTRIBUTO 8: replica
+     * 
+     * Tipo: ReplicaCrdt
+     * 
+     * COSA È?
+     * - Lo stato di sincronizzazione con gli altri dispositivi (spesa.crdt)
+     * - null finché non si sincronizza la prima volta
+     * 
+     * PERCHÉ caricarlo solo quando serve?
+     * - Chi non sincronizza non paga niente all'avvio
+     */
+    private ReplicaCrdt replica;
+    
+    /*
+     * ATTRIBUTO 9: storico
+     * 
+     * Tipo: StoricoArticoli
+     * 
+     * COSA È?
+     * - Nomi e categorie già usati, per suggerirli in "Aggiungi articolo"
+     * - null finché non si aggiunge il primo articolo
+     */
+    private StoricoArticoli storico;
+    
+    // Quanti suggerimenti mostrare per un prefisso ("pa?")
+    private static final int SUGGERIMENTI = 5;
+    
+    // Prezzi dei prodotti noti (catalogo.csv), aperto la prima volta che serve
+    private CatalogoPrezzi catalogo;
+    
+    // "Di solito compri...", dalle liste svuotate (caricato la prima volta che serve)
+    private ProdottiAbituali abituali;
+    
+    // Cosa fare quando si aggiunge un articolo già presente (--duplicati=...)
+    private IndiceDuplicati.Politica politicaDuplicati = IndiceDuplicati.Politica.SOMMA;
+    
+    // Server di sincronizzazione (null se non è stato avviato) e i suoi messaggi
+    private ServerSocket serverSincronizzazione;
+    private final ConcurrentLinkedQueue<String> avvisiSincronizzazione = new ConcurrentLinkedQueue<>();
+    
+    // Quanti articoli mostra visualizzaLista() per pagina
+    private static final int RIGHE_PER_PAGINA = 20;
+    
     // ============================================
     // COSTRUTTORE
     // ============================================
@@ -117,35 +279,36 @@ public class Application {
      */
     public Application() {
         
+        // Le metriche vengono pubblicate anche su JMX (listaspesa:type=Metriche)
+        this.metriche = new Metriche();
+        this.metriche.registraInJmx();
+        
         /*
-         * LINEA 1: this.articoli = new ArrayList<>();
+         * LINEA 1: this.motore = new MotoreLista(metriche, this::modificato);
          * 
          * COSA SUCCEDE?
-         * - Creiamo un nuovo ArrayList VUOTO
-         * - Lo assegniamo all'attributo "articoli"
-         * 
-         * PERCHÉ new ArrayList<>()?
-         * - "new" = crea un nuovo oggetto in memoria
-         * - ArrayList<> = lista dinamica (cresce/riduce automaticamente)
-         * - () = costruttore di ArrayList (senza parametri = lista vuota)
+         * - Creiamo il motore: una lista VUOTA, con totali e indici
+         * - Gli passiamo le metriche: ogni operazione registra quanto costa
+         * - this::modificato = "dopo ogni modifica chiama modificato()":
+         *   così il salvataggio automatico sa che c'è qualcosa da scrivere
          * 
          * PERCHÉ VUOTO?
          * - All'inizio non c'è nessun articolo
          * - L'utente li aggiungerà uno per uno, o verranno caricati dal file .csv
          * 
-         * COSA SIGNIFICA <>?
-         * - È il "generic type" di Java
-         * - Dice: "questa lista contiene Map<String, Object>"
-         * - Senza <>, Java darebbe warning
-         * - Con <>, Java sa che tipo contiene la lista
+         * PERCHÉ this.articoli = motore.articoli()?
+         * - È la STESSA lista del motore, non una copia: chi la legge qui
+         *   vede subito le modifiche fatte dal motore
+         * - È anche il lock: synchronized (articoli) blocca il motore
          * 
-         * PERCHÉ this.articoli?
+         * PERCHÉ this.motore?
          * - "this" = l'oggetto corrente
-         * - "this.articoli" = l'attributo articoli di QUESTO oggetto
-         * - Potremmo scrivere solo "articoli = ...", ma è meno chiaro
+         * - "this.motore" = l'attributo motore di QUESTO oggetto
+         * - Potremmo scrivere solo "motore = ...", ma è meno chiaro
          * - È meglio essere espliciti
          */
-        this.articoli = new ArrayList<>();
+        this.motore = new MotoreLista(metriche, this::modificato);
+        this.articoli = motore.articoli();
         
         /*
          * LINEA 2: this.scanner = new Scanner(System.in);
@@ -168,6 +331,14 @@ public class Application {
          * - Questo è il modo standard in Java di leggere da tastiera
          */
         this.scanner = new Scanner(System.in);
+        
+        // Il salvataggio gira su un suo thread: gli passiamo come
+        // "fotografare" la lista (vedi istantanea())
+        this.autosalvataggio = new AutoSalvataggio(Paths.get(FormatoCsv.FILE), this::istantanea, metriche);
+        
+        // I nostri salvataggi passano dall'osservatore: non sono "modifiche esterne"
+        this.osservatore = new OsservatoreFile(Paths.get(FormatoCsv.FILE));
+        this.autosalvataggio.impostaOsservatore(osservatore);
     }
     
     // ============================================
@@ -179,7 +350,7 @@ public class Application {
      * 
      * COSA FA?
      * - Stampa il menu principale
-     * - Mostra all'utente le opzioni (1-9)
+     * - Mostra all'utente le opzioni (1-14)
      * 
      * PERCHÉ è un metodo separato?
      * - Code organization: separare la "UI" dal "logic"
@@ -209,12 +380,16 @@ public class Application {
         System.out.println("║ 7. Salva su file                     ║");
         System.out.println("║ 8. Carica da file                    ║");
         System.out.println("║ 9. Svuota lista                      ║");
-        System.out.println("║ 10. Esci                             ║");
+        System.out.println("║ 10. Statistiche                      ║");
+        System.out.println("║ 11. Annulla ultima modifica          ║");
+        System.out.println("║ 12. Ripeti modifica annullata        ║");
+        System.out.println("║ 13. Strumenti avanzati               ║");
+        System.out.println("║ 14. Esci                             ║");
         System.out.println("╚═══════════════════════════════════════╝");
 
         // System.out.print() (senza "ln") stampa SENZA andare a capo
         // Così il cursore rimane sulla stessa riga
-        System.out.print("Scegli (1-10): ");
+        System.out.print("Scegli (1-14): ");
     }
     
     /*
@@ -288,18 +463,57 @@ public class Application {
                 break;
 
             case 10:
+                // Mostra le metriche delle operazioni
+                mostraStatistiche();
+                break;
+
+            case 11:
+                // Torna alla versione della lista prima dell'ultima modifica
+                annullaModifica();
+                break;
+
+            case 12:
+                // Rifà l'ultima modifica annullata
+                ripetiModifica();
+                break;
+
+            case 13:
+                // Sottomenu: sincronizzazione e altri strumenti
+                strumentiAvanzati();
+                break;
+
+            case 14:
                 // Esci dal programma
 
-                // Chiedi conferma all'utente
-                System.out.print("\nVuoi salvare prima di uscire? (s/n): ");
+                // Modifiche esterne dell'ultimo momento: prima in memoria, poi su disco
+                osservatore.verificaOra();
+                applicaModificheEsterne();
 
-                // Leggi la risposta
-                String risposta = scanner.nextLine();
+                if (autosalvataggio.automaticoAttivo()) {
+                    
+                    // Con il salvataggio automatico non serve chiedere:
+                    // scriviamo SOLO le modifiche ancora in sospeso (se ci sono)
+                    if (autosalvataggio.sporca()) {
+                        System.out.println("\n⏳ Salvataggio delle ultime modifiche...");
+                        autosalvataggio.scriviInSospeso();
+                    }
+                    
+                } else if (autosalvataggio.sporca()) {
+                    
+                    // Chiedi conferma all'utente (solo se c'è qualcosa da salvare)
+                    System.out.print("\nVuoi salvare prima di uscire? (s/n): ");
 
-                // Se risposta è "s" (case-insensitive), salva
-                if (risposta.equalsIgnoreCase("s")) {
-                    salvasuFile();
+                    // Leggi la risposta
+                    String risposta = scanner.nextLine();
+
+                    // Se risposta è "s" (case-insensitive), salva e aspetta
+                    if (risposta.equalsIgnoreCase("s")) {
+                        autosalvataggio.scriviInSospeso();
+                    }
                 }
+                
+                // Esito del salvataggio (es. errori)
+                mostraAvvisi();
 
                 // Stampa messaggio di bye
                 System.out.println("\n✓ Grazie per aver usato il gestionale!");
@@ -334,28 +548,68 @@ public class Application {
      */
     private void aggiungiArticolo() {
         
+        // Se spesa.csv si sta ancora caricando, aspettiamo la fine:
+        // il nuovo articolo va DOPO quelli salvati
+        attendiDati();
+        
         // Titolo della sezione
         System.out.println("\n=== AGGIUNGI ARTICOLO ===");
         
+        // Cosa si compra di solito e non è ancora in lista ("#2" per sceglierlo)
+        List<ProdottiAbituali.Voce> proposte = mostraAbituali();
+        
         // STEP 1: Leggi il nome
         // System.out.print() (senza ln) stampa il prompt sulla stessa riga
-        System.out.print("Nome articolo: ");
+        System.out.print("Nome articolo (\"pa?\" = suggerimenti): ");
         
         // scanner.nextLine() legge una LINEA intera di testo
         // Ritorna una String
-        String nome = scanner.nextLine();
-        
-        // STEP 2: Leggi la categoria
-        System.out.print("Categoria: ");
-        String categoria = scanner.nextLine();
+        StoricoArticoli storico = storico();
+        String nome = completaRisposta(scanner.nextLine(), storico, true);
+        ProdottiAbituali.Voce proposta = scegliProposta(nome, proposte);
+        if (proposta != null) {
+            nome = proposta.nome();
+            System.out.println("→ " + nome);
+        }
         
-        // STEP 3: Leggi il prezzo
-        System.out.print("Prezzo unitario: ");
+        // STEP 2: Leggi la categoria (Invio = quella usata l'ultima volta per questo nome,
+        // oppure quella del catalogo prezzi)
+        String categoriaSolita = proposta != null ? proposta.categoria()
+                : storico == null ? null : storico.categoriaDi(nome);
+        if (categoriaSolita == null) {
+            CatalogoPrezzi.Voce dalCatalogo = cercaNelCatalogo(nome, null);
+            categoriaSolita = dalCatalogo == null ? null : dalCatalogo.categoria();
+        }
+        System.out.print(categoriaSolita == null ? "Categoria: " : "Categoria [" + categoriaSolita + "]: ");
+        String categoria = completaRisposta(scanner.nextLine(), storico, false);
+        if (categoria.isEmpty() && categoriaSolita != null) {
+            categoria = categoriaSolita;
+        }
         
-        // scanner.nextDouble() legge un numero decimale
-        // Se l'utente digita "abc", Scanner si infuria e lancia Exception
-        // (Affrontiamo questo in un'altra lezione!)
-        double prezzo = scanner.nextDouble();
+        // STEP 3: Leggi il prezzo (Invio = quello del catalogo, se il prodotto c'è)
+        CatalogoPrezzi.Voce prezzoNoto = cercaNelCatalogo(nome, categoria);
+        double prezzo;
+        if (prezzoNoto == null) {
+            System.out.print("Prezzo unitario: ");
+            
+            // scanner.nextDouble() legge un numero decimale
+            // Se l'utente digita "abc", Scanner si infuria e lancia Exception
+            // (Affrontiamo questo in un'altra lezione!)
+            prezzo = scanner.nextDouble();
+        } else {
+            System.out.printf("Prezzo unitario [%.2f]: ", prezzoNoto.prezzo());
+            
+            // Qui serve una riga intera: una riga vuota (Invio) è una risposta
+            // Virgola o punto, qualunque sia la lingua del sistema
+            String risposta = scanner.nextLine().trim();
+            try {
+                prezzo = risposta.isEmpty() ? prezzoNoto.prezzo() : Double.parseDouble(risposta.replace(',', '.'));
+            } catch (NumberFormatException e) {
+                // La riga è già stata letta: niente "Errore input!" che ne scarterebbe un'altra
+                System.out.println("❌ Prezzo non valido!");
+                return;
+            }
+        }
         
         // STEP 4: Leggi la quantità
         System.out.print("Quantità: ");
@@ -380,8 +634,12 @@ public class Application {
          */
         scanner.nextLine();  // Cancella buffer
         
-        // STEP 5: Valida i dati
-        // Controlla che i dati siano sensati
+        // STEP 5: Stesso nome e stessa categoria di un articolo in lista?
+        // Con --duplicati=somma il motore somma le quantità, con "chiedi" decide l'utente
+        boolean unisci = politicaDuplicati == IndiceDuplicati.Politica.SOMMA
+                || (politicaDuplicati == IndiceDuplicati.Politica.CHIEDI && confermaUnione(nome, categoria));
+        
+        // STEP 6: Il motore controlla i dati, crea l'articolo e lo aggiunge
         
         /*
          * PERCHÉ validare?
@@ -389,115 +647,255 @@ public class Application {
          * - Prezzo negativo? Non ha senso
          * - Quantità zero? Non ha senso
          * 
-         * Se i dati non sono validi, fermati qui e torna al menu
+         * Se i dati non sono validi il motore lancia IllegalArgumentException:
+         * stampiamo il suo messaggio e torniamo al menu
          */
-        if (nome.isEmpty() || categoria.isEmpty() || prezzo <= 0 || quantita <= 0) {
-            System.out.println("❌ Dati non validi!");
+        MotoreLista.Aggiunta aggiunta;
+        try {
+            aggiunta = motore.aggiungi(nome, categoria, prezzo, quantita, unisci);
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ " + e.getMessage());
             
             // return: esce dalla funzione
             // Il resto del codice NON viene eseguito
             return;
         }
         
-        // STEP 6: Crea un HashMap per l'articolo
-        // HashMap<K, V>: chiavi (K) e valori (V)
-        // Qui: chiavi = String, valori = Object
-        
-        /*
-         * PERCHÉ HashMap?
-         * - Perché ogni articolo ha TANTI dati
-         * - Con HashMap, usiamo nomi: "nome", "prezzo", ecc.
-         * - È più leggibile che array[0], array[1], etc.
-         */
-        Map<String, Object> articolo = new HashMap<>();
-        
-        // Aggiungi i dati al HashMap
-        // put(chiave, valore)
-        
-        /*
-         * PERCHÉ put()?
-         * - put() = "metti questa coppia chiave-valore nella mappa"
-         * - Se la chiave esiste già, il valore viene sovrascritto
-         * - Se non esiste, viene aggiunta
-         * 
-         * Esempi:
-         * articolo.put("nome", "Pane");
-         * - Chiave: "nome" (String)
-         * - Valore: "Pane" (String)
-         * 
-         * articolo.put("prezzo", 1.50);
-         * - Chiave: "prezzo" (String)
-         * - Valore: 1.50 (Double)
-         */
-        articolo.put("nome", nome);
-        articolo.put("categoria", categoria);
-        articolo.put("prezzo", prezzo);
-        articolo.put("quantita", quantita);
-        
-        /*
-         * articolo.put("acquistato", false);
-         * 
-         * PERCHÉ false?
-         * - Quando aggiungiamo un articolo, NON è ancora acquistato
-         * - false = articolo NON ancora comprato
-         * - L'utente lo markerà come acquistato quando lo compra
-         */
-        articolo.put("acquistato", false);
-        
-        // STEP 7: Aggiungi il HashMap alla lista
-        // articoli.add() = "aggiungi questo elemento alla lista"
-        
-        /*
-         * PERCHÉ add()?
-         * - add() = metodo di ArrayList
-         * - Aggiunge l'elemento in fondo alla lista
-         * - Incrementa automaticamente la size
-         * 
-         * Esempio:
-         * - Prima: articoli ha 2 elementi
-         * - articoli.add(nuovoArticolo);
-         * - Dopo: articoli ha 3 elementi
-         */
-        articoli.add(articolo);
-        
         // Stampa messaggio di successo
-        System.out.println("✓ Articolo aggiunto!");
+        if (aggiunta.unito()) {
+            System.out.println("✓ \"" + aggiunta.articolo().get("nome") + "\" era già nella lista: quantità portata a "
+                    + aggiunta.articolo().get("quantita"));
+        } else {
+            System.out.println("✓ Articolo aggiunto!");
+        }
+        PrezziCategorie.Statistica caro = aggiunta.fuoriMisura();
+        if (caro != null) {
+            System.out.printf("⚠ Prezzo alto per %s: di solito €%.2f, 9 su 10 sotto €%.2f%n",
+                    caro.categoria(), caro.mediana(), caro.p90());
+        }
+        
+        // La prossima volta verrà suggerito
+        ricordaNelloStorico(storico, nome, categoria);
+    }
+    
+    private void ricordaNelloStorico(StoricoArticoli storico, String nome, String categoria) {
+        if (storico != null) {
+            try {
+                storico.registra(nome, categoria);
+            } catch (Exception e) {
+                System.out.println("⚠ Storico non aggiornato: " + e.getMessage());
+            }
+        }
+    }
+    
+    /*
+     * METODO: confermaUnione(String nome, String categoria)
+     * 
+     * COSA FA?
+     * - Con --duplicati=chiedi: se in lista c'è già un articolo da comprare con
+     *   lo stesso nome e categoria (il motore lo trova in O(1)), chiede se sommare
+     * - Ritorna true se l'utente vuole sommare le quantità
+     */
+    private boolean confermaUnione(String nome, String categoria) {
+        Map<String, Object> esistente = motore.doppione(nome, categoria);
+        if (esistente == null) {
+            return false;
+        }
+        System.out.print("⚠ \"" + esistente.get("nome") + "\" è già nella lista (quantità "
+                + esistente.get("quantita") + "). Sommare le quantità? (s/n): ");
+        return scanner.nextLine().trim().equalsIgnoreCase("s");
+    }
+    
+    /*
+     * METODO: completaRisposta(String risposta, StoricoArticoli storico, boolean nome)
+     * 
+     * COSA FA?
+     * - Se la risposta finisce con "?" mostra i nomi (o le categorie) più
+     *   usati che iniziano così, numerati
+     * - L'utente sceglie un numero oppure scrive il testo (anche un altro "xy?")
+     * - Senza "?" la risposta resta quella scritta
+     */
+    private String completaRisposta(String risposta, StoricoArticoli storico, boolean nome) {
+        while (storico != null && risposta.endsWith("?")) {
+            String prefisso = risposta.substring(0, risposta.length() - 1);
+            List<String> proposte = nome
+                    ? storico.completaNome(prefisso, SUGGERIMENTI)
+                    : storico.completaCategoria(prefisso, SUGGERIMENTI);
+            if (proposte.isEmpty()) {
+                System.out.println("(nessun suggerimento per \"" + prefisso + "\")");
+            }
+            for (int i = 0; i < proposte.size(); i++) {
+                System.out.println("  " + (i + 1) + ". " + proposte.get(i));
+            }
+            System.out.print(proposte.isEmpty() ? "Scrivi: " : "Numero, oppure scrivi: ");
+            risposta = scanner.nextLine();
+            try {
+                int scelta = Integer.parseInt(risposta.trim());
+                if (scelta >= 1 && scelta <= proposte.size()) {
+                    return proposte.get(scelta - 1);
+                }
+            } catch (NumberFormatException e) {
+                // Non è un numero: è il testo
+            }
+        }
+        return risposta;
+    }
+    
+    /*
+     * METODO: mostraAbituali()
+     *
+     * COSA FA?
+     * - Stampa i prodotti comprati più spesso (vedi ProdottiAbituali) che
+     *   non sono già in lista, numerati: "#1 Latte (80%)"
+     * - Ritorna le proposte, nello stesso ordine (vuota se non c'è storia)
+     */
+    private List<ProdottiAbituali.Voce> mostraAbituali() {
+        ProdottiAbituali prodotti = abituali();
+        if (prodotti == null || prodotti.liste() == 0) {
+            return new ArrayList<>();
+        }
+        List<ProdottiAbituali.Voce> proposte;
+        synchronized (articoli) {
+            IndiceDuplicati inLista = motore.indiceDuplicati();
+            proposte = prodotti.piuFrequenti(PROPOSTE_ABITUALI,
+                    (nome, categoria) -> inLista.trova(nome, categoria) != null);
+        }
+        if (proposte.isEmpty()) {
+            return proposte;
+        }
+        StringBuilder riga = new StringBuilder("Di solito compri:");
+        for (int i = 0; i < proposte.size(); i++) {
+            ProdottiAbituali.Voce voce = proposte.get(i);
+            riga.append(i == 0 ? " " : " · ").append('#').append(i + 1).append(' ').append(voce.nome())
+                    .append(String.format(" (%.0f%%)", voce.frequenza() * 100));
+        }
+        System.out.println(riga);
+        return proposte;
+    }
+    
+    // "#2" = la seconda proposta (null se la risposta è un nome normale)
+    private static ProdottiAbituali.Voce scegliProposta(String risposta, List<ProdottiAbituali.Voce> proposte) {
+        if (!risposta.startsWith("#")) {
+            return null;
+        }
+        try {
+            int numero = Integer.parseInt(risposta.substring(1).trim());
+            return numero >= 1 && numero <= proposte.size() ? proposte.get(numero - 1) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    // Carica i prodotti abituali la prima volta che servono (null se non si riesce)
+    private ProdottiAbituali abituali() {
+        if (abituali == null) {
+            try {
+                abituali = ProdottiAbituali.carica(Paths.get(ProdottiAbituali.FILE));
+            } catch (Exception e) {
+                System.out.println("⚠ Prodotti abituali non disponibili: " + e.getMessage());
+            }
+        }
+        return abituali;
+    }
+    
+    // Carica lo storico la prima volta che serve (null se non si riesce)
+    private StoricoArticoli storico() {
+        if (storico == null) {
+            try {
+                synchronized (articoli) {
+                    storico = StoricoArticoli.carica(Paths.get(StoricoArticoli.FILE), articoli);
+                }
+            } catch (Exception e) {
+                System.out.println("⚠ Suggerimenti non disponibili: " + e.getMessage());
+            }
+        }
+        return storico;
+    }
+    
+    /*
+     * METODO: cercaNelCatalogo(String nome, String categoria)
+     * 
+     * COSA FA?
+     * - Il prodotto nel catalogo prezzi (catalogo.csv), o null
+     * - Il catalogo si apre la prima volta che serve: niente costo all'avvio,
+     *   e chi non ha catalogo.csv non si accorge di niente
+     * - Un errore del catalogo non blocca l'aggiunta: il prezzo si scrive a mano
+     */
+    private CatalogoPrezzi.Voce cercaNelCatalogo(String nome, String categoria) {
+        try {
+            if (catalogo == null) {
+                Path file = Paths.get(CatalogoPrezzi.FILE);
+                if (!Files.exists(file)) {
+                    return null;
+                }
+                if (!CatalogoPrezzi.indicizzato(file)) {
+                    System.out.println("\n⏳ Indicizzazione del catalogo prezzi (solo la prima volta)...");
+                }
+                catalogo = CatalogoPrezzi.apri(file);
+                if (catalogo.appenaIndicizzato()) {
+                    System.out.println("✓ Catalogo prezzi indicizzato: " + catalogo.numero() + " prodotti");
+                }
+            }
+            return catalogo.cerca(nome, categoria);
+        } catch (Exception e) {
+            System.out.println("⚠ Catalogo prezzi non disponibile: " + e.getMessage());
+            return null;
+        }
     }
     
     /*
      * METODO: visualizzaLista()
      * 
      * COSA FA?
-     * - Stampa TUTTI gli articoli con i loro dettagli
+     * - Stampa TUTTI gli articoli con i loro dettagli, una pagina alla volta
      * - Mostra il totale di articoli, acquistati, spesa totale
      * 
+     * PERCHÉ a pagine?
+     * - Con liste lunghe, 20 righe alla volta sono più leggibili
+     * - Se spesa.csv si sta ancora caricando, la prima pagina
+     *   si può mostrare appena sono state lette le prime 20 righe
+     * 
      * COMPLESSO? Sì, ma vediamo passo per passo...
      */
     private void visualizzaLista() {
         
+        // Misuriamo il rendering (stampa compresa) pagina per pagina:
+        // il tempo in cui l'utente legge la pagina NON viene contato
+        long inizio = System.nanoTime();
+        
+        // Evento JFR: costa quasi zero se nessuno sta registrando
+        EventiSpesa.Visualizzazione evento = new EventiSpesa.Visualizzazione();
+        evento.begin();
+        
         // Stampa titolo con decorazioni
         System.out.println("\n═══════════════════════════════════════");
         System.out.println("    LISTA DELLA SPESA");
         System.out.println("═══════════════════════════════════════\n");
         
+        /*
+         * I totali servono per il fondo della pagina e per sapere
+         * se la lista è vuota. Durante il precaricamento arrivano
+         * prima della lista completa (vedi riepilogoCorrente()).
+         */
+        Riepilogo totali = riepilogoCorrente();
+        
         // Controlla se la lista è vuota
-        // articoli.isEmpty() ritorna true se non c'è nessun elemento
         
         /*
          * PERCHÉ controllare?
          * - Se la lista è vuota, non c'è niente da mostrare
          * - Meglio dire "La lista è vuota" che mostrare niente
          */
-        if (articoli.isEmpty()) {
+        if (totali.articoli() == 0) {
             System.out.println("La lista è vuota");
             System.out.println("═══════════════════════════════════════");
+            metriche.registra(Metriche.Operazione.VISUALIZZA, inizio);
+            evento.commit();
             
             // Torna al menu
             return;
         }
         
-        // Inizializza variabili per il riepilogo
-        
         /*
          * int numero = 1;
          * - Contatore per mostrare "1. Pane", "2. Latte", etc.
@@ -505,88 +903,68 @@ public class Application {
          */
         int numero = 1;
         
-        /*
-         * int acquistati = 0;
-         * - Contatore di quanti articoli sono già acquistati
-         */
-        int acquistati = 0;
-        
-        /*
-         * double spesaTotale = 0;
-         * - Somma di tutti i subtotali (prezzo × quantità)
-         */
-        double spesaTotale = 0;
+        // Righe stampate nella misura in corso (l'evento di ogni pagina conta solo le sue)
+        int stampate = 0;
         
-        // LOOP: For-each su tutti gli articoli
+        // LOOP: una pagina alla volta
         
         /*
-         * for (Map<String, Object> articolo : articoli)
-         * 
-         * COSA SIGNIFICA?
-         * - articoli = la lista che vogliamo iterare
-         * - Map<String, Object> = il tipo di ogni elemento
-         * - articolo = nome della variabile di loop (l'elemento corrente)
-         * - : = "in"
-         * 
-         * TRADUZIONE NATURALE:
-         * "Per ogni articolo NELLA lista articoli"
-         * 
          * COME FUNZIONA?
-         * - Iterazione 1: articolo = primo elemento, numero = 1
-         * - Iterazione 2: articolo = secondo elemento, numero = 2
-         * - ... e così via
+         * - paginaDa(0) = articoli 1..20, paginaDa(20) = articoli 21..40, ...
+         * - Una pagina vuota vuol dire: lista finita
+         * - Dopo ogni pagina piena chiediamo se continuare
          */
-        for (Map<String, Object> articolo : articoli) {
-            
-            // Stampa l'articolo (vedi metodo stampaArticolo sotto)
-            stampaArticolo(numero, articolo);
+        while (true) {
+            List<Map<String, Object>> pagina = paginaDa(numero - 1);
             
-            // Controlla se questo articolo è acquistato
-            // (boolean) = cast (conversione di tipo)
+            // Le righe della pagina in un blocco solo, una print invece di due per articolo;
+            // gli articoli già visti non si riformattano (vedi RigheStampate)
+            StringBuilder testo = new StringBuilder();
+            for (Map<String, Object> articolo : pagina) {
+                motore.righe().dettaglio(testo, numero, articolo);
+                numero++;
+            }
+            System.out.print(testo);
+            stampate += pagina.size();
             
-            /*
-             * PERCHÉ cast?
-             * - articolo.get("acquistato") ritorna Object
-             * - Ma sappiamo che è un Boolean
-             * - (boolean) dice: "converti questo Object a boolean"
-             * 
-             * Se non mettessimo il cast:
-             * boolean acquistato = articolo.get("acquistato");  // ERRORE!
-             * Object non è boolean!
-             * 
-             * Con il cast:
-             * boolean acquistato = (boolean) articolo.get("acquistato");  // OK!
-             */
-            if ((boolean) articolo.get("acquistato")) {
-                
-                // Se è acquistato, incrementa il contatore
-                acquistati++;
+            // Fine lista: la pagina non era piena
+            if (pagina.size() < RIGHE_PER_PAGINA || numero > totali.articoli()) {
+                break;
             }
             
-            // Calcola il subtotale di questo articolo
-            double prezzo = (double) articolo.get("prezzo");
-            int quantita = (int) articolo.get("quantita");
-            double subtotale = prezzo * quantita;
+            // Chiudi la misura di questa pagina prima di aspettare l'utente
+            metriche.registra(Metriche.Operazione.VISUALIZZA, inizio);
+            evento.articoli = totali.articoli();
+            evento.risultati = stampate;
+            evento.commit();
             
-            // Aggiungi al totale
-            spesaTotale += subtotale;
+            System.out.print("── Invio = altri articoli, q = fine ── ");
+            String risposta = scanner.nextLine();
             
-            // Incrementa il numero per il prossimo articolo
-            numero++;
+            // Nuova misura: la prossima pagina, oppure (con q) solo il riepilogo
+            inizio = System.nanoTime();
+            evento = new EventiSpesa.Visualizzazione();
+            evento.begin();
+            stampate = 0;
+            if (risposta.equalsIgnoreCase("q")) {
+                break;
+            }
         }
         
-        // Stampa riepilogo
+        // Stampa riepilogo (dai totali, senza riscorrere la lista)
         System.out.println("═══════════════════════════════════════");
-        System.out.println("Totale articoli: " + articoli.size());
-        
-        // .size() = numero di elementi nella lista
-        System.out.println("Non acquistati: " + (articoli.size() - acquistati));
-        System.out.println("Acquistati: " + acquistati);
+        System.out.println("Totale articoli: " + totali.articoli());
+        System.out.println("Non acquistati: " + totali.nonAcquistati());
+        System.out.println("Acquistati: " + totali.acquistati());
         
         // printf() permette di formattare numeri
         // %.2f = numero decimale con 2 cifre dopo la virgola
-        System.out.printf("Spesa totale: €%.2f\n", spesaTotale);
+        System.out.printf("Spesa totale: €%.2f\n", totali.totale());
         System.out.println("═══════════════════════════════════════");
+        metriche.registra(Metriche.Operazione.VISUALIZZA, inizio);
+        evento.articoli = totali.articoli();
+        evento.risultati = stampate;
+        evento.commit();
     }
     
     /*
@@ -600,8 +978,9 @@ public class Application {
      * - articolo: l'articolo da stampare
      * 
      * PERCHÉ metodo separato?
-     * - Code reuse: visualizzaLista() lo chiama
-     * - Ma lo chiama anche cercaArticolo()
+     * - Code reuse: lo chiama cercaArticolo()
+     * - Ma lo chiamano anche gli archivi e "Sfoglia", con articoli che non
+     *   sono in lista (visualizzaLista() usa le stesse righe, ma da RigheStampate)
      * - Se non fosse separato, avremmo codice duplicato
      * - DRY principle: Don't Repeat Yourself
      */
@@ -666,6 +1045,7 @@ public class Application {
     private void rimuoviArticolo() {
         
         System.out.println("\n=== RIMUOVI ARTICOLO ===");
+        attendiDati();
         
         // Controlla se la lista è vuota
         if (articoli.isEmpty()) {
@@ -700,43 +1080,28 @@ public class Application {
             int numero = scanner.nextInt();
             scanner.nextLine();  // Cancella buffer
             
-            // Controlla se il numero è valido
+            // Rimuovi l'articolo in posizione numero-1
+            // Perché numero-1? Perché l'utente conta da 1, ma gli array da 0
             
             /*
-             * numero > 0: il numero deve essere positivo
-             * numero <= articoli.size(): il numero non può essere > della lista
+             * L'utente dice: "Rimuovi articolo 1"
+             * Ma internamente è l'indice 0!
+             * Perciò: numero - 1 = 1 - 1 = 0
              * 
-             * Esempi:
+             * Il motore controlla che il numero sia valido:
              * - Se la lista ha 3 articoli:
              *   * numero 1, 2, 3 = OK
-             *   * numero 0, 4, -1 = NO
+             *   * numero 0, 4, -1 = IllegalArgumentException ("Numero non valido!")
              */
-            if (numero > 0 && numero <= articoli.size()) {
-                
-                // Ottieni l'articolo in posizione numero-1
-                // Perché numero-1? Perché l'utente conta da 1, ma gli array da 0
-                
-                /*
-                 * L'utente dice: "Rimuovi articolo 1"
-                 * Ma internamente è l'indice 0!
-                 * Perciò: numero - 1 = 1 - 1 = 0
-                 */
-                Map<String, Object> articolo = articoli.get(numero - 1);
-                
-                // Leggi il nome (per stamparlo nel messaggio)
-                String nome = (String) articolo.get("nome");
-                
-                // Rimuovi dalla lista
-                articoli.remove(numero - 1);
-                
-                // Stampa messaggio di successo
-                System.out.println("✓ \"" + nome + "\" rimosso dalla lista");
-                
-            } else {
-                
-                // Il numero non è valido
-                System.out.println("❌ Numero non valido!");
-            }
+            MotoreLista.Modifica rimosso = motore.rimuovi(numero - 1);
+            
+            // Stampa messaggio di successo (il nome dall'articolo com'era)
+            System.out.println("✓ \"" + rimosso.prima().get("nome") + "\" rimosso dalla lista");
+            
+        } catch (IllegalArgumentException e) {
+            
+            // Il numero non è valido (il buffer è già pulito)
+            System.out.println("❌ " + e.getMessage());
             
         } catch (Exception e) {
             
@@ -765,34 +1130,47 @@ public class Application {
     
     private void cercaArticolo() {
         System.out.println("\n=== CERCA ARTICOLO ===");
-        System.out.print("Cosa cerchi? ");
-        String ricerca = scanner.nextLine().toLowerCase();
-        
-        boolean trovato = false;
-        int numero = 1;
+        attendiDati();
+        System.out.print("Cosa cerchi? (\"~\" davanti per tollerare errori di battitura) ");
+        String ricerca = scanner.nextLine();
+        
+        // "~latte" = solo ricerca tollerante
+        boolean tollerante = ricerca.startsWith("~");
+        if (tollerante) {
+            ricerca = ricerca.substring(1);
+        }
         
-        for (Map<String, Object> articolo : articoli) {
-            String nome = ((String) articolo.get("nome")).toLowerCase();
-            String categoria = ((String) articolo.get("categoria")).toLowerCase();
-            
-            if (nome.contains(ricerca) || categoria.contains(ricerca)) {
-                if (!trovato) {
-                    System.out.println("\n✓ Trovato!");
-                    trovato = true;
-                }
-                stampaArticolo(numero, articolo);
+        // Niente di esatto? Il motore prova da solo con qualche errore di battitura
+        MotoreLista.Ricerca risultato = motore.cerca(ricerca, tollerante);
+        List<MotoreLista.Trovato> trovati = risultato.trovati();
+        if (trovati.isEmpty()) {
+            System.out.println("❌ Nessun articolo trovato");
+            return;
+        }
+        if (!risultato.tollerante()) {
+            System.out.println("\n✓ Trovato!");
+            for (MotoreLista.Trovato trovato : trovati) {
+                stampaArticolo(trovato.posizione() + 1, trovato.articolo());
                 System.out.println();
             }
-            numero++;
+            return;
         }
         
-        if (!trovato) {
-            System.out.println("❌ Nessun articolo trovato");
+        // Risultati "quasi uguali": prima i più simili, al massimo una pagina
+        System.out.println(tollerante ? "\n✓ Trovato!" : "\n⚠ Nessun risultato esatto. Forse cercavi:");
+        int mostrati = Math.min(trovati.size(), RIGHE_PER_PAGINA);
+        for (int i = 0; i < mostrati; i++) {
+            stampaArticolo(trovati.get(i).posizione() + 1, trovati.get(i).articolo());
+            System.out.println();
+        }
+        if (trovati.size() > mostrati) {
+            System.out.println("(... e altri " + (trovati.size() - mostrati) + " articoli simili)");
         }
     }
     
     private void marcaAcquistato() {
         System.out.println("\n=== MARCA COME ACQUISTATO ===");
+        attendiDati();
         
         if (articoli.isEmpty()) {
             System.out.println("La lista è vuota");
@@ -805,17 +1183,12 @@ public class Application {
             int numero = scanner.nextInt();
             scanner.nextLine();
             
-            if (numero > 0 && numero <= articoli.size()) {
-                Map<String, Object> articolo = articoli.get(numero - 1);
-                String nome = (String) articolo.get("nome");
-                boolean acquistato = (boolean) articolo.get("acquistato");
-                articolo.put("acquistato", !acquistato);
-                
-                String stato = !acquistato ? "acquistato" : "non acquistato";
-                System.out.println("✓ \"" + nome + "\" segnato come " + stato);
-            } else {
-                System.out.println("❌ Numero non valido!");
-            }
+            // Il motore mette in lista una copia con lo stato invertito
+            MotoreLista.Modifica marcato = motore.marca(numero - 1);
+            String stato = (boolean) marcato.dopo().get("acquistato") ? "acquistato" : "non acquistato";
+            System.out.println("✓ \"" + marcato.dopo().get("nome") + "\" segnato come " + stato);
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ " + e.getMessage());
         } catch (Exception e) {
             System.out.println("❌ Errore input!");
             scanner.nextLine();
@@ -827,170 +1200,1431 @@ public class Application {
         System.out.println("║     CALCOLO SPESA TOTALE             ║");
         System.out.println("╠═══════════════════════════════════════╣");
         
-        if (articoli.isEmpty()) {
+        // I totali sono già pronti (anche durante il precaricamento)
+        long inizio = System.nanoTime();
+        Riepilogo totali = riepilogoCorrente();
+        metriche.registra(Metriche.Operazione.TOTALE, inizio);
+        
+        if (totali.articoli() == 0) {
             System.out.println("║ La lista è vuota                      ║");
             System.out.println("╚═══════════════════════════════════════╝");
             return;
         }
         
-        double totale = 0;
-        double totalNonAcquistati = 0;
-        double totalAcquistati = 0;
-        int acquistati = 0;
-        
-        for (Map<String, Object> articolo : articoli) {
-            double prezzo = (double) articolo.get("prezzo");
-            int quantita = (int) articolo.get("quantita");
-            double subtotale = prezzo * quantita;
-            boolean acquistato = (boolean) articolo.get("acquistato");
-            
-            totale += subtotale;
-            
-            if (acquistato) {
-                totalAcquistati += subtotale;
-                acquistati++;
-            } else {
-                totalNonAcquistati += subtotale;
-            }
-        }
-        
-        System.out.printf("║ Articoli totali: %-23d║\n", articoli.size());
-        System.out.printf("║ Non acquistati: %-24d║\n", articoli.size() - acquistati);
-        System.out.printf("║ Acquistati: %-27d║\n", acquistati);
+        System.out.printf("║ Articoli totali: %-23d║\n", totali.articoli());
+        System.out.printf("║ Non acquistati: %-24d║\n", totali.nonAcquistati());
+        System.out.printf("║ Acquistati: %-27d║\n", totali.acquistati());
         System.out.println("║                                       ║");
-        System.out.printf("║ Spesa totale: €%-29.2f║\n", totale);
-        System.out.printf("║ Spesa acquisiti: €%-26.2f║\n", totalAcquistati);
-        System.out.printf("║ Spesa rimanente: €%-26.2f║\n", totalNonAcquistati);
+        System.out.printf("║ Spesa totale: €%-29.2f║\n", totali.totale());
+        System.out.printf("║ Spesa acquisiti: €%-26.2f║\n", totali.totaleAcquistati());
+        System.out.printf("║ Spesa rimanente: €%-26.2f║\n", totali.totaleRimanente());
         System.out.println("╚═══════════════════════════════════════╝");
     }
     
+    /*
+     * METODO: salvasuFile()
+     *
+     * COSA FA?
+     * - Chiede un salvataggio IMMEDIATO, che avviene in background
+     * - Se la lista non è cambiata dall'ultimo salvataggio, non scrive niente
+     * - L'esito (o un errore) compare al prossimo giro del menu
+     */
     private void salvasuFile() {
         System.out.println("\n=== SALVA SU FILE ===");
+        attendiDati();
         
-        try {
-            StringBuilder csv = new StringBuilder();
-            csv.append("Nome,Categoria,Prezzo,Quantita,Acquistato\n");
-            
-            for (Map<String, Object> articolo : articoli) {
-                csv.append((String) articolo.get("nome")).append(",");
-                csv.append((String) articolo.get("categoria")).append(",");
-                csv.append((double) articolo.get("prezzo")).append(",");
-                csv.append((int) articolo.get("quantita")).append(",");
-                csv.append((boolean) articolo.get("acquistato")).append("\n");
-            }
-            
-            Files.writeString(Paths.get("spesa.csv"), csv.toString());
-            System.out.println("✓ Lista salvata in \"spesa.csv\"!");
-            System.out.println("(" + articoli.size() + " articoli salvati)");
-            
+        if (autosalvataggio.salvaOra()) {
+            System.out.println("⏳ Salvataggio in \"spesa.csv\" avviato in background");
+            System.out.println("(" + articoli.size() + " articoli da salvare)");
+        } else {
+            System.out.println("✓ Nessuna modifica da salvare: \"spesa.csv\" è già aggiornato");
+        }
+    }
+    
+    /*
+     * METODO: caricaDaFile()
+     *
+     * COSA FA?
+     * - Rilegge spesa.csv e SOSTITUISCE la lista, tutto o niente:
+     *   la lista nuova (con totali e indici) si costruisce in background
+     *   e prende il posto di quella attuale solo se la lettura riesce
+     * - Le righe malformate si saltano e finiscono in spesa.scartate
+     * - Se il file è grande si torna subito al menu: la lista attuale
+     *   si può consultare, le modifiche aspettano la fine (attendiCaricamento)
+     */
+    private void caricaDaFile() {
+        System.out.println("\n=== CARICA DA FILE ===");
+        
+        // Se il precaricamento è in corso, lasciamolo finire prima di rileggere
+        attendiDati();
+        
+        // Un salvataggio in ritardo non deve sovrascrivere ciò che stiamo per leggere
+        autosalvataggio.attendiInCorso();
+        
+        // La lista nuova si costruisce in background; quella attuale resta com'è
+        caricamento = CaricamentoLista.avvia(Paths.get(FormatoCsv.FILE), metriche);
+        
+        // Un file normale è pronto quasi subito: in quel caso niente attesa visibile
+        boolean pronto;
+        try {
+            pronto = caricamento.attendiPer(ATTESA_CARICAMENTO_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pronto = false;
+        }
+        if (pronto) {
+            installaCaricamento();
+        } else {
+            System.out.println("⏳ Caricamento di \"" + FormatoCsv.FILE + "\" in background: "
+                    + "intanto puoi consultare la lista (le modifiche aspetteranno la fine)");
+        }
+    }
+    
+    /*
+     * METODO: svuotaLista()
+     *
+     * COSA FA?
+     * - Svuota completamente la lista in memoria
+     * - Pulisce il file spesa.csv (subito, in background)
+     *
+     * PERCHÉ questo metodo?
+     * - Permette di ricominciare da zero
+     * - Utile quando si vuole creare una nuova lista da zero
+     * - Chiede conferma per evitare cancellazioni accidentali
+     */
+    private void svuotaLista() {
+        System.out.println("\n=== SVUOTA LISTA ===");
+        attendiDati();
+
+        // Controlla se la lista è già vuota
+        if (articoli.isEmpty()) {
+            System.out.println("⚠ La lista è già vuota!");
+            return;
+        }
+
+        // Chiedi conferma all'utente
+        System.out.print("⚠ Sei sicuro di voler svuotare la lista? (s/n): ");
+        String conferma = scanner.nextLine();
+
+        // Se l'utente conferma
+        if (conferma.equalsIgnoreCase("s")) {
+
+            // Svuota la lista in memoria (quella di prima è una spesa finita:
+            // insegna cosa si compra di solito)
+            List<Map<String, Object>> finita = motore.svuota(Paths.get(FormatoCsv.FILE));
+            int numeroArticoli = finita.size();
+            ricordaAbituali(finita);
+
+            // Svuota il file CSV: lo sovrascrive con solo l'header, in background
+            // (un errore di scrittura arriva come avviso al giro di menu successivo;
+            // i byte scritti finiscono nell'evento/metrica del salvataggio)
+            autosalvataggio.salvaOra();
+
+            // Messaggio di successo
+            System.out.println("✓ Lista svuotata con successo!");
+            System.out.println("(" + numeroArticoli + " articoli eliminati)");
+
+        } else {
+            // L'utente ha annullato
+            System.out.println("✗ Operazione annullata");
+        }
+    }
+
+    // Una lista finita entra nei prodotti abituali (e il loro stato si salva subito)
+    private void ricordaAbituali(List<Map<String, Object>> finita) {
+        ProdottiAbituali prodotti = abituali();
+        if (prodotti == null) {
+            return;
+        }
+        try {
+            prodotti.registraLista(finita);
+            prodotti.salva(Paths.get(ProdottiAbituali.FILE));
+        } catch (Exception e) {
+            System.out.println("⚠ Prodotti abituali non aggiornati: " + e.getMessage());
+        }
+    }
+
+    // ============================================
+    // ANNULLA / RIPETI
+    // ============================================
+
+    /*
+     * METODO: annullaModifica()
+     *
+     * COSA FA?
+     * - Riporta la lista alla versione di prima dell'ultima modifica
+     *   (vedi MotoreLista.annulla)
+     * - La lista torna "sporca": il salvataggio automatico la riscrive
+     */
+    private void annullaModifica() {
+        attendiDati();
+        Cronologia.Passo<ListaPersistente.Versione<Map<String, Object>>> passo = motore.annulla();
+        if (passo == null) {
+            System.out.println("⚠ Niente da annullare");
+            return;
+        }
+        System.out.println("✓ Annullato: " + passo.descrizione() + " (" + passo.prima().size() + " articoli, "
+                + motore.passiDaAnnullare() + " modifiche ancora annullabili)");
+    }
+
+    // Come annullaModifica(), ma rifà l'ultima modifica annullata
+    private void ripetiModifica() {
+        attendiDati();
+        Cronologia.Passo<ListaPersistente.Versione<Map<String, Object>>> passo = motore.ripeti();
+        if (passo == null) {
+            System.out.println("⚠ Niente da ripetere");
+            return;
+        }
+        System.out.println("✓ Ripetuto: " + passo.descrizione() + " (" + passo.dopo().size() + " articoli)");
+    }
+
+    // Il nome della voce di menu, per "Annullato: ..."
+    private static String descrizioneScelta(int scelta) {
+        switch (scelta) {
+            case 1:
+                return "Aggiungi articolo";
+            case 3:
+                return "Rimuovi articolo";
+            case 5:
+                return "Marca come acquistato";
+            case 8:
+                return "Carica da file";
+            case 9:
+                return "Svuota lista";
+            case 13:
+                return "Strumenti avanzati";
+            default:
+                return "Modifica";
+        }
+    }
+
+    // ============================================
+    // SALVATAGGIO AUTOMATICO
+    // ============================================
+
+    /*
+     * METODO: modificato()
+     *
+     * COSA FA?
+     * - Segna la lista come "sporca" e programma il salvataggio automatico
+     * - Va chiamato dentro synchronized (articoli), dopo la modifica
+     */
+    private void modificato() {
+        autosalvataggio.segnalaModifica();
+    }
+
+    /*
+     * METODO: istantanea()
+     *
+     * COSA FA?
+     * - "Fotografa" la lista per il thread di salvataggio
+     * - Prepara i byte del CSV e una copia dei totali
+     *
+     * PERCHÉ synchronized?
+     * - Gira sul thread di salvataggio mentre il menu può modificare la lista
+     * - Dentro il lock si prendono solo versione, totali e numero di
+     *   modifica, che devono andare d'accordo: costa O(1)
+     * - Il CSV si prepara DOPO, dalla versione ferma: il menu non aspetta
+     */
+    private AutoSalvataggio.Istantanea istantanea() {
+        List<Map<String, Object>> versione;
+        Riepilogo totali;
+        long modifica;
+        synchronized (articoli) {
+            versione = articoli.versione();
+            totali = motore.totali();
+            modifica = autosalvataggio.versione();
+        }
+        return new AutoSalvataggio.Istantanea(FormatoCsv.formatta(versione), totali, versione.size(), modifica);
+    }
+
+    /*
+     * METODO: mostraAvvisi()
+     *
+     * COSA FA?
+     * - Stampa i messaggi arrivati dai thread in background
+     *   (es. "lista salvata", errori di salvataggio)
+     */
+    private void mostraAvvisi() {
+        String avviso;
+        while ((avviso = autosalvataggio.prossimoAvviso()) != null) {
+            System.out.println(avviso);
+        }
+        while ((avviso = osservatore.prossimoAvviso()) != null) {
+            System.out.println(avviso);
+        }
+        while ((avviso = avvisiSincronizzazione.poll()) != null) {
+            System.out.println(avviso);
+        }
+    }
+
+    // ============================================
+    // MODIFICHE ESTERNE
+    // ============================================
+
+    /*
+     * METODO: applicaModificheEsterne()
+     *
+     * COSA FA?
+     * - Applica alla lista le modifiche a spesa.csv trovate dall'osservatore
+     * - Toglie gli articoli spariti dal file, aggiunge in fondo quelli nuovi
+     * - Aggiorna i totali articolo per articolo (niente ricalcolo completo)
+     *
+     * PERCHÉ sul thread del menu?
+     * - Rimuovi e Marca scelgono l'articolo per NUMERO: la lista non deve
+     *   cambiare sotto i piedi dell'utente mentre sceglie
+     *
+     * E LO STATO "SPORCO"?
+     * - Non cambia: queste modifiche sono già nel file
+     */
+    private void applicaModificheEsterne() {
+        OsservatoreFile.Modifiche modifiche;
+        while ((modifiche = osservatore.prossimeModifiche()) != null) {
+            int rimossi = motore.applica(modifiche);
+            osservatore.applicate();
+            
+            if (modifiche.inCoda()) {
+                System.out.println("↻ \"" + FormatoCsv.FILE + "\" modificato da fuori: "
+                        + modifiche.aggiunti().size() + " articoli aggiunti in fondo");
+            } else {
+                System.out.println("↻ \"" + FormatoCsv.FILE + "\" modificato da fuori: "
+                        + modifiche.aggiunti().size() + " articoli aggiunti, " + rimossi + " rimossi");
+            }
+            if (modifiche.scartate() > 0) {
+                System.out.println("⚠ " + modifiche.scartate() + " righe non valide ignorate");
+            }
+        }
+    }
+
+    // ============================================
+    // PRECARICAMENTO
+    // ============================================
+
+    /*
+     * METODO: precarica()
+     *
+     * COSA FA?
+     * - Avvia la lettura di spesa.csv in background
+     * - Ritorna SUBITO: il menu non aspetta il file
+     */
+    public void precarica() {
+        this.precaricamento = PrecaricatoreLista.avvia(Paths.get(FormatoCsv.FILE), metriche);
+        
+        // Inizia a guardare il file: conta solo dopo che la lista è installata
+        osservatore.avvia();
+    }
+
+    /*
+     * METODO: attendiDati()
+     *
+     * COSA FA?
+     * - Se il precaricamento è in corso, aspetta che finisca
+     * - Poi mette gli articoli letti nella lista e aggiorna i totali
+     *
+     * CHI LO CHIAMA?
+     * - Le operazioni che hanno bisogno della lista COMPLETA
+     *   (aggiungi, rimuovi, cerca, marca, salva, svuota)
+     * - Per questo applica anche le modifiche esterne già pronte:
+     *   l'operazione lavora sulla lista aggiornata
+     */
+    private void attendiDati() {
+        if (precaricamento == null) {
+            applicaModificheEsterne();
+            return;
+        }
+        if (!precaricamento.completato()) {
+            System.out.println("⏳ Caricamento di \"" + FormatoCsv.FILE + "\" in corso...");
+        }
+        try {
+            List<Map<String, Object>> caricati = precaricamento.attendiCompletamento();
+            
+            // L'osservatore riparte da qui: PRIMA del lock della lista (vedi
+            // l'ordine dei lock in OsservatoreFile)
+            osservatore.impostaBase(precaricamento.impronta());
+            
+            // Nessuna operazione può aver modificato la lista nel frattempo:
+            // tutte passano di qui prima di toccarla
+            // File senza colonna Id: gli id nuovi vanno salvati
+            motore.installa(caricati, precaricamento.formatoVecchio());
+            
+            // Il file potrebbe essere cambiato mentre lo leggevamo
+            osservatore.verificaOra();
+            if (!caricati.isEmpty()) {
+                System.out.println("✓ " + caricati.size() + " articoli caricati da \"" + FormatoCsv.FILE + "\"");
+            }
+            segnalaScartate(precaricamento.scartate());
+        } catch (Exception e) {
+            System.out.println("❌ Errore durante il caricamento: " + e.getMessage());
+        }
+        precaricamento = null;
+        applicaModificheEsterne();
+    }
+
+    /*
+     * METODO: installaCaricamento()
+     *
+     * COSA FA?
+     * - Mette al posto della lista quella letta da "Carica da file"
+     *   (se la lettura è riuscita; altrimenti la lista resta com'era)
+     * - Lo scambio è un riferimento: O(1), dentro il lock, sul thread del menu
+     * - È un passo della cronologia: "Annulla" riporta la lista di prima
+     */
+    private void installaCaricamento() {
+        CaricamentoLista finito = caricamento;
+        caricamento = null;
+        CaricamentoLista.Risultato risultato;
+        try {
+            risultato = finito.attendi();
+        } catch (Exception e) {
+            System.out.println("❌ Errore durante il caricamento: " + e.getMessage());
+            System.out.println("(Il file potrebbe non esistere: la lista non è cambiata)");
+            return;
+        }
+        
+        // L'osservatore riparte dal file letto: PRIMA del lock della lista
+        // (vedi l'ordine dei lock in OsservatoreFile)
+        osservatore.impostaBase(risultato.impronta());
+        
+        motore.iniziaPasso();
+        synchronized (articoli) {
+            motore.installa(risultato);
+            
+            // Memoria = file: niente da salvare
+            autosalvataggio.segnaPulita();
+            
+            // File senza colonna Id: gli id nuovi vanno salvati
+            if (risultato.formatoVecchio()) {
+                modificato();
+            }
+        }
+        motore.concludiPasso(descrizioneScelta(8));
+        
+        System.out.println("✓ Lista caricata da \"" + finito.file().getFileName() + "\"!");
+        System.out.println("(" + risultato.riepilogo().articoli() + " articoli caricati)");
+        
+        segnalaScartate(risultato.scartate());
+        if (risultato.doppioni() > 0) {
+            System.out.println("⚠ " + risultato.doppioni()
+                    + " articoli doppi: \"Strumenti avanzati\" → \"Unisci articoli doppi\"");
+        }
+    }
+    
+    // Dopo un caricamento: le righe malformate saltate, e il rapporto completo su file
+    private void segnalaScartate(RigheScartate scartate) {
+        if (scartate.numero() == 0) {
+            return;
+        }
+        System.out.println("⚠ " + scartate.numero() + " righe malformate saltate:");
+        for (String riga : scartate.prime(3)) {
+            System.out.println("   " + riga);
+        }
+        try {
+            scartate.scrivi(Paths.get(RigheScartate.FILE));
+            System.out.println("(tutte in \"" + RigheScartate.FILE
+                    + "\": il prossimo salvataggio non le riscriverà in \"" + FormatoCsv.FILE + "\")");
+        } catch (Exception e) {
+            System.out.println("⚠ Rapporto non scritto: " + e.getMessage());
+        }
+    }
+    
+    // Prima di una modifica: se "Carica da file" è in corso, aspetta la lista nuova
+    private void attendiCaricamento() {
+        if (caricamento == null) {
+            return;
+        }
+        if (!caricamento.completato()) {
+            System.out.println("⏳ Attendo la fine del caricamento di \"" + FormatoCsv.FILE + "\"...");
+        }
+        installaCaricamento();
+    }
+    
+    // Come attendiCaricamento(), ma solo se è già finito: non blocca mai
+    private void controllaCaricamento() {
+        if (caricamento != null && caricamento.completato()) {
+            installaCaricamento();
+        }
+    }
+    
+    // Le scelte che leggono soltanto: restano disponibili durante un caricamento
+    private static boolean soloLettura(int scelta) {
+        return scelta == 2 || scelta == 4 || scelta == 6 || scelta == 10;
+    }
+    
+    /*
+     * METODO: controllaPrecaricamento()
+     *
+     * COSA FA?
+     * - Come attendiDati(), ma SOLO se il precaricamento è già finito
+     * - Non blocca mai: viene chiamato a ogni giro del menu
+     */
+    private void controllaPrecaricamento() {
+        if (precaricamento != null && precaricamento.completato()) {
+            attendiDati();
+        }
+    }
+
+    /*
+     * METODO: riepilogoCorrente()
+     *
+     * COSA FA?
+     * - Ritorna i totali della lista
+     * - Durante il precaricamento usa quelli salvati in spesa.riepilogo
+     *   (se validi), senza aspettare tutto il file
+     */
+    private Riepilogo riepilogoCorrente() {
+        if (precaricamento != null && !precaricamento.completato()) {
+            try {
+                Riepilogo anticipato = precaricamento.attendiRiepilogo();
+                if (anticipato != null) {
+                    return anticipato;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        attendiDati();
+        return motore.totali();
+    }
+
+    /*
+     * METODO: paginaDa(int da)
+     *
+     * COSA FA?
+     * - Ritorna al massimo RIGHE_PER_PAGINA articoli a partire da "da"
+     * - Durante il precaricamento aspetta SOLO quelle righe
+     */
+    private List<Map<String, Object>> paginaDa(int da) {
+        int a = da + RIGHE_PER_PAGINA;
+        if (precaricamento != null && !precaricamento.completato()) {
+            try {
+                return precaricamento.attendiRighe(da, a);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        attendiDati();
+        
+        // Una versione ferma: la pagina non cambia mentre si stampa
+        List<Map<String, Object>> versione = articoli.versione();
+        if (da >= versione.size()) {
+            return new ArrayList<>();
+        }
+        return versione.subList(da, Math.min(a, versione.size()));
+    }
+
+    /*
+     * METODO: mostraStatistiche()
+     *
+     * COSA FA?
+     * - Mostra conteggi e latenze di ogni operazione
+     * - Mostra i byte letti e scritti su disco
+     *
+     * PERCHÉ?
+     * - Per capire dove va il tempo senza un profiler
+     * - Gli stessi dati sono esposti via JMX (listaspesa:type=Metriche)
+     */
+    private void mostraStatistiche() {
+        System.out.println("\n=== STATISTICHE ===");
+        System.out.print(metriche.riepilogo());
+    }
+
+    // ============================================
+    // STRUMENTI AVANZATI
+    // ============================================
+
+    /*
+     * METODO: strumentiAvanzati()
+     *
+     * COSA FA?
+     * - Mostra un secondo menu con le funzioni meno usate
+     * - Così il menu principale resta corto
+     */
+    private void strumentiAvanzati() {
+        System.out.println("\n=== STRUMENTI AVANZATI ===");
+        System.out.println("1. Sincronizza con una cartella condivisa");
+        System.out.println("2. Sincronizza con un'altra istanza (porta locale)");
+        System.out.println("3. Accetta sincronizzazioni su una porta locale");
+        System.out.println("4. Salva archivio compresso");
+        System.out.println("5. Carica archivio compresso");
+        System.out.println("6. Confronta CSV e archivio compresso");
+        System.out.println("7. Unisci articoli doppi");
+        System.out.println("8. Copia la lista nell'archivio mappato");
+        System.out.println("9. Apri l'archivio mappato");
+        System.out.println("10. Analizza una cartella di liste salvate");
+        System.out.println("11. Aggiorna il catalogo prezzi con la lista");
+        System.out.println("12. Sfoglia una lista salvata senza caricarla");
+        System.out.println("13. Unisci più liste salvate in un file ordinato");
+        System.out.println("14. Filtra la lista (es. categoria = Latticini e prezzo > 2)");
+        System.out.println("15. Prezzi per categoria (mediana, p90, prezzi fuori misura)");
+        System.out.println("16. Importa scontrini (segna acquistato quello che è stato comprato)");
+        System.out.println("0. Torna al menu");
+        System.out.print("Scegli: ");
+        String scelta = scanner.nextLine().trim();
+
+        switch (scelta) {
+            case "1":
+                sincronizzaCartella();
+                break;
+            case "2":
+                sincronizzaPorta();
+                break;
+            case "3":
+                accettaSincronizzazioni();
+                break;
+            case "4":
+                salvaArchivioCompresso();
+                break;
+            case "5":
+                caricaArchivioCompresso();
+                break;
+            case "6":
+                confrontaFormati();
+                break;
+            case "7":
+                unisciDoppioni();
+                break;
+            case "8":
+                copiaInArchivioMappato();
+                break;
+            case "9":
+                apriArchivioMappato();
+                break;
+            case "10":
+                analizzaCartella();
+                break;
+            case "11":
+                aggiornaCatalogo();
+                break;
+            case "12":
+                sfogliaListaSalvata();
+                break;
+            case "13":
+                unisciListeSalvate();
+                break;
+            case "14":
+                filtraLista();
+                break;
+            case "15":
+                mostraPrezziCategorie();
+                break;
+            case "16":
+                importaScontrini();
+                break;
+            case "0":
+                break;
+            default:
+                System.out.println("❌ Scelta non valida!");
+        }
+    }
+
+    /*
+     * METODO: mostraPrezziCategorie()
+     *
+     * COSA FA?
+     * - Per ogni categoria: quanti prezzi, mediana e p90 (vedi PrezziCategorie)
+     * - Poi gli articoli della lista con un prezzo fuori misura per la loro
+     *   categoria: spesso un errore di battitura (12,0 invece di 1,20)
+     */
+    private void mostraPrezziCategorie() {
+        attendiDati();
+        List<PrezziCategorie.Statistica> statistiche;
+        List<String> fuoriMisura = new ArrayList<>();
+        int numeroFuoriMisura = 0;
+        synchronized (articoli) {
+            PrezziCategorie prezzi = motore.prezziCategorie();
+            statistiche = prezzi.statistiche();
+            int posizione = 1;
+            for (Map<String, Object> articolo : articoli) {
+                PrezziCategorie.Statistica categoria = prezzi.fuoriMisura(
+                        (String) articolo.get("categoria"), (double) articolo.get("prezzo"));
+                if (categoria != null) {
+                    numeroFuoriMisura++;
+                    if (fuoriMisura.size() < FUORI_MISURA_MOSTRATI) {
+                        fuoriMisura.add(String.format("  %d. %s - %s: €%.2f (di solito €%.2f)",
+                                posizione, articolo.get("nome"), categoria.categoria(),
+                                (double) articolo.get("prezzo"), categoria.mediana()));
+                    }
+                }
+                posizione++;
+            }
+        }
+        if (statistiche.isEmpty()) {
+            System.out.println("La lista è vuota!");
+            return;
+        }
+
+        System.out.println("\n=== PREZZI PER CATEGORIA ===");
+        System.out.printf("%-20s %8s %10s %10s%n", "Categoria", "Prezzi", "Mediana", "p90");
+        for (PrezziCategorie.Statistica statistica : statistiche) {
+            System.out.printf("%-20s %8d %10s %10s%n", statistica.categoria(), statistica.articoli(),
+                    String.format("€%.2f", statistica.mediana()), String.format("€%.2f", statistica.p90()));
+        }
+
+        if (numeroFuoriMisura == 0) {
+            System.out.println("✓ Nessun prezzo fuori misura");
+            return;
+        }
+        System.out.println("\n⚠ Prezzi fuori misura per la loro categoria:");
+        fuoriMisura.forEach(System.out::println);
+        if (numeroFuoriMisura > fuoriMisura.size()) {
+            System.out.println("  ... e altri " + (numeroFuoriMisura - fuoriMisura.size()));
+        }
+    }
+
+    /*
+     * METODO: importaScontrini()
+     *
+     * COSA FA?
+     * - Legge gli scontrini (.txt e .csv) di una cartella e segna
+     *   acquistati, con il prezzo e i pezzi pagati, gli articoli che ci sono
+     *   (vedi Scontrini e MotoreLista.riconcilia)
+     * - Tutti gli articoli insieme sono una modifica sola: "Annulla" la toglie tutta
+     * - Mostra quelli trovati con errori di battitura (da controllare) e
+     *   le righe che non corrispondono a nessun articolo da comprare
+     */
+    private void importaScontrini() {
+        attendiDati();
+        System.out.print("Cartella degli scontrini (Invio = " + Scontrini.CARTELLA_PREDEFINITA + "): ");
+        String risposta = scanner.nextLine().trim();
+        Path cartella = Paths.get(risposta.isEmpty() ? Scontrini.CARTELLA_PREDEFINITA : risposta);
+        if (!Files.isDirectory(cartella)) {
+            System.out.println("❌ \"" + cartella + "\" non è una cartella");
+            return;
+        }
+
+        long inizio = System.nanoTime();
+        List<Scontrini.Riga> righe;
+        try {
+            righe = Scontrini.leggi(cartella);
+        } catch (Exception e) {
+            System.out.println("❌ Scontrini non letti: " + e.getMessage());
+            return;
+        }
+        if (righe.isEmpty()) {
+            System.out.println("⚠ Nessuna riga di prodotto negli scontrini di \"" + cartella + "\"");
+            return;
+        }
+        MotoreLista.Riconciliazione esito = motore.riconcilia(righe);
+        double millisecondi = (System.nanoTime() - inizio) / 1e6;
+
+        List<MotoreLista.Abbinamento> tolleranti = new ArrayList<>();
+        List<MotoreLista.Abbinamento> inParte = new ArrayList<>();
+        for (MotoreLista.Abbinamento abbinamento : esito.abbinati()) {
+            if (abbinamento.tollerante()) {
+                tolleranti.add(abbinamento);
+            }
+            if (abbinamento.rimanente() != null) {
+                inParte.add(abbinamento);
+            }
+        }
+        System.out.printf("✓ %d articoli segnati acquistati da %d righe di %d scontrini (%.1f ms)%n",
+                esito.abbinati().size(), righe.size(), Scontrini.scontrini(righe), millisecondi);
+        if (!tolleranti.isEmpty()) {
+            System.out.println("⚠ Trovati con qualche errore di battitura, da controllare:");
+            for (MotoreLista.Abbinamento abbinamento : tolleranti.subList(0, Math.min(tolleranti.size(), RIGHE_SCONTRINO_MOSTRATE))) {
+                System.out.printf("  %d. %s ← \"%s\" (€%.2f)%n", abbinamento.modifica().posizione() + 1,
+                        abbinamento.modifica().dopo().get("nome"), abbinamento.riga().nome(), abbinamento.riga().prezzo());
+            }
+            if (tolleranti.size() > RIGHE_SCONTRINO_MOSTRATE) {
+                System.out.println("  ... e altri " + (tolleranti.size() - RIGHE_SCONTRINO_MOSTRATE));
+            }
+        }
+        if (!inParte.isEmpty()) {
+            System.out.println("⚠ Comprati in parte (il resto è ancora da comprare, in fondo alla lista):");
+            for (MotoreLista.Abbinamento abbinamento : inParte.subList(0, Math.min(inParte.size(), RIGHE_SCONTRINO_MOSTRATE))) {
+                System.out.printf("  %d. %s: %d su %d%n", abbinamento.modifica().posizione() + 1,
+                        abbinamento.modifica().dopo().get("nome"), abbinamento.riga().quantita(),
+                        (int) abbinamento.modifica().prima().get("quantita"));
+            }
+            if (inParte.size() > RIGHE_SCONTRINO_MOSTRATE) {
+                System.out.println("  ... e altri " + (inParte.size() - RIGHE_SCONTRINO_MOSTRATE));
+            }
+        }
+        List<Scontrini.Riga> nonTrovate = esito.nonTrovate();
+        if (!nonTrovate.isEmpty()) {
+            System.out.println("⚠ Righe senza un articolo da comprare: " + nonTrovate.size());
+            for (Scontrini.Riga riga : nonTrovate.subList(0, Math.min(nonTrovate.size(), RIGHE_SCONTRINO_MOSTRATE))) {
+                System.out.printf("  %s: %s (€%.2f)%n", riga.file(), riga.nome(), riga.prezzo());
+            }
+            if (nonTrovate.size() > RIGHE_SCONTRINO_MOSTRATE) {
+                System.out.println("  ... e altre " + (nonTrovate.size() - RIGHE_SCONTRINO_MOSTRATE));
+            }
+        }
+    }
+
+    /*
+     * METODO: aggiornaCatalogo()
+     *
+     * COSA FA?
+     * - Scrive in fondo a catalogo.csv nome, categoria e prezzo di ogni
+     *   articolo della lista: la prossima volta il prezzo sarà proposto
+     * - Il catalogo aperto si chiude: alla prossima ricerca si riapre
+     *   e l'indice si ricostruisce con le righe nuove
+     */
+    private void aggiornaCatalogo() {
+        List<Map<String, Object>> lista = articoli.versione();
+        if (lista.isEmpty()) {
+            System.out.println("⚠ La lista è vuota: niente da aggiungere al catalogo");
+            return;
+        }
+        try {
+            if (catalogo != null) {
+                catalogo.close();
+                catalogo = null;
+            }
+            int scritte = CatalogoPrezzi.aggiungi(Paths.get(CatalogoPrezzi.FILE), lista);
+            System.out.println("✓ " + scritte + " prezzi aggiunti a \"" + CatalogoPrezzi.FILE + "\"");
         } catch (Exception e) {
-            System.out.println("❌ Errore durante il salvataggio: " + e.getMessage());
+            System.out.println("❌ Catalogo non aggiornato: " + e.getMessage());
         }
     }
-    
-    private void caricaDaFile() {
-        System.out.println("\n=== CARICA DA FILE ===");
-        
+
+    /*
+     * METODO: filtraLista()
+     *
+     * COSA FA?
+     * - Mostra gli articoli che rispettano un filtro, ad esempio
+     *   categoria = Latticini e prezzo > 2 e non acquistato (vedi FiltroArticoli)
+     * - Poi propone un'azione su tutti quelli trovati insieme:
+     *   segnarli acquistati o da comprare, oppure rimuoverli
+     * - L'azione è una sola modifica: "Annulla" la toglie tutta
+     */
+    private void filtraLista() {
+        attendiDati();
+        System.out.print("Filtro: ");
+        FiltroArticoli filtro;
         try {
-            List<String> linee = Files.readAllLines(Paths.get("spesa.csv"));
-            
-            articoli.clear();
-            
-            for (int i = 1; i < linee.size(); i++) {
-                String linea = linee.get(i);
-                String[] campi = linea.split(",");
-                
-                String nome = campi[0];
-                String categoria = campi[1];
-                double prezzo = Double.parseDouble(campi[2]);
-                int quantita = Integer.parseInt(campi[3]);
-                boolean acquistato = Boolean.parseBoolean(campi[4]);
-                
-                Map<String, Object> articolo = new HashMap<>();
-                articolo.put("nome", nome);
-                articolo.put("categoria", categoria);
-                articolo.put("prezzo", prezzo);
-                articolo.put("quantita", quantita);
-                articolo.put("acquistato", acquistato);
+            filtro = FiltroArticoli.compila(scanner.nextLine());
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ Filtro non valido: " + e.getMessage());
+            return;
+        }
+
+        long inizio = System.nanoTime();
+        List<Integer> posizioni = new ArrayList<>();
+        List<Map<String, Object>> trovati = new ArrayList<>();
+        synchronized (articoli) {
+            List<Map<String, Object>> candidati = filtro.candidati(motore.indiceDuplicati());
+            if (candidati == null) {
+                int posizione = 0;
+                for (Map<String, Object> articolo : articoli) {
+                    if (filtro.test(articolo)) {
+                        posizioni.add(posizione);
+                        trovati.add(articolo);
+                    }
+                    posizione++;
+                }
+            } else {
+                // Pochi candidati dall'indice: il filtro si prova solo su di loro
+                Map<Map<String, Object>, Boolean> scelti = new IdentityHashMap<>();
+                for (Map<String, Object> articolo : candidati) {
+                    if (filtro.test(articolo)) {
+                        scelti.put(articolo, true);
+                    }
+                }
                 
-                articoli.add(articolo);
+                // Le posizioni si cercano per identità, in una passata con l'iteratore
+                // (get(i) costerebbe O(log n) a passo) che si ferma all'ultimo trovato;
+                // se nessun candidato va bene la lista non si scorre affatto
+                if (!scelti.isEmpty()) {
+                    int posizione = 0;
+                    for (Map<String, Object> articolo : articoli) {
+                        if (scelti.containsKey(articolo)) {
+                            posizioni.add(posizione);
+                            trovati.add(articolo);
+                            if (trovati.size() == scelti.size()) {
+                                break;
+                            }
+                        }
+                        posizione++;
+                    }
+                }
             }
-            
-            System.out.println("✓ Lista caricata da \"spesa.csv\"!");
-            System.out.println("(" + articoli.size() + " articoli caricati)");
-            
-        } catch (Exception e) {
-            System.out.println("❌ Errore durante il caricamento: " + e.getMessage());
-            System.out.println("(Il file potrebbe non esistere)");
         }
+        double millisecondi = (System.nanoTime() - inizio) / 1e6;
+
+        if (trovati.isEmpty()) {
+            System.out.printf("❌ Nessun articolo (%.1f ms; %s)%n", millisecondi, filtro.piano());
+            return;
+        }
+        for (int i = 0; i < Math.min(trovati.size(), RISULTATI_FILTRO_MOSTRATI); i++) {
+            stampaArticolo(posizioni.get(i) + 1, trovati.get(i));
+            System.out.println();
+        }
+        if (trovati.size() > RISULTATI_FILTRO_MOSTRATI) {
+            System.out.println("... e altri " + (trovati.size() - RISULTATI_FILTRO_MOSTRATI));
+        }
+        System.out.printf("✓ %d articoli su %d (%.1f ms; %s)%n", trovati.size(), articoli.size(),
+                millisecondi, filtro.piano());
+
+        System.out.print("Su tutti: a = segna acquistati, d = segna da comprare, r = rimuovi, Invio = niente: ");
+        String azione = scanner.nextLine().trim().toLowerCase();
+        if (azione.equals("r")) {
+            System.out.print("Rimuovere " + trovati.size() + " articoli? (s/n): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("s")) {
+                return;
+            }
+        } else if (!azione.equals("a") && !azione.equals("d")) {
+            return;
+        }
+
+        // Lista intatta dal filtro in poi: si agisce sulle posizioni trovate,
+        // saltando quelle che nel frattempo contengono un altro articolo
+        boolean acquistato = azione.equals("a");
+        int fatti = motore.applica(posizioni, trovati, articolo -> {
+            if (azione.equals("r")) {
+                return null;
+            }
+            if ((boolean) articolo.get("acquistato") == acquistato) {
+                return articolo;
+            }
+            Map<String, Object> marcato = new HashMap<>(articolo);
+            marcato.put("acquistato", acquistato);
+            return marcato;
+        });
+        String fatto = azione.equals("r") ? "rimossi" : azione.equals("a") ? "segnati acquistati" : "segnati da comprare";
+        System.out.println("✓ " + fatti + " articoli " + fatto);
     }
 
     /*
-     * METODO: svuotaLista()
+     * METODO: unisciListeSalvate()
      *
      * COSA FA?
-     * - Svuota completamente la lista in memoria
-     * - Pulisce il file spesa.csv
+     * - Unisce più file salvati (es. le liste di più famiglie) in uno solo,
+     *   ordinato per categoria e nome, con i doppioni uniti
+     * - Non carica niente: funziona anche con file più grandi della memoria
+     *   (vedi UnioneEsterna); la lista attuale non cambia
+     */
+    private void unisciListeSalvate() {
+        System.out.println("File da unire, uno per riga (riga vuota = fine):");
+        List<Path> file = new ArrayList<>();
+        String risposta;
+        while (scanner.hasNextLine() && !(risposta = scanner.nextLine().trim()).isEmpty()) {
+            Path sorgente = Paths.get(risposta);
+            if (!Files.isRegularFile(sorgente)) {
+                System.out.println("⚠ \"" + risposta + "\" non esiste: ignorato");
+                continue;
+            }
+            file.add(sorgente);
+        }
+        if (file.isEmpty()) {
+            System.out.println("⚠ Nessun file da unire");
+            return;
+        }
+        System.out.print("File risultato (Invio = " + UnioneEsterna.FILE_RISULTATO + "): ");
+        risposta = scanner.nextLine().trim();
+        Path risultato = Paths.get(risposta.isEmpty() ? UnioneEsterna.FILE_RISULTATO : risposta);
+        System.out.print("Memoria per l'ordinamento in MB (Invio = " + UnioneEsterna.MEMORIA_PREDEFINITA_MB + "): ");
+        risposta = scanner.nextLine().trim();
+
+        try {
+            int memoriaMB = risposta.isEmpty() ? UnioneEsterna.MEMORIA_PREDEFINITA_MB : Integer.parseInt(risposta);
+            System.out.println("⏳ Unione di " + file.size() + " file...");
+            long inizio = System.nanoTime();
+            UnioneEsterna.Esito esito = new UnioneEsterna(memoriaMB).unisci(file, risultato);
+            System.out.println(UnioneEsterna.descrivi(esito, file.size(), risultato,
+                    (System.nanoTime() - inizio) / 1e9));
+            for (String riga : esito.scartate().prime(3)) {
+                System.out.println("   " + riga);
+            }
+        } catch (Exception e) {
+            System.out.println("❌ Unione non riuscita: " + e.getMessage());
+        }
+    }
+
+    /*
+     * METODO: sfogliaListaSalvata()
      *
-     * PERCHÉ questo metodo?
-     * - Permette di ricominciare da zero
-     * - Utile quando si vuole creare una nuova lista da zero
-     * - Chiede conferma per evitare cancellazioni accidentali
+     * COSA FA?
+     * - Mostra una lista salvata una pagina alla volta, senza caricarla:
+     *   si leggono solo le righe delle pagine viste (vedi LettoreCsvPigro)
+     * - Un file da qualche GB si apre in una frazione di secondo;
+     *   la lista in memoria non cambia
+     * - "t" calcola i totali leggendo il file una volta (subito, se accanto
+     *   c'è un riepilogo valido)
      */
-    private void svuotaLista() {
-        System.out.println("\n=== SVUOTA LISTA ===");
+    private void sfogliaListaSalvata() {
+        System.out.print("File da sfogliare (Invio = " + FormatoCsv.FILE + "): ");
+        String risposta = scanner.nextLine().trim();
+        Path file = Paths.get(risposta.isEmpty() ? FormatoCsv.FILE : risposta);
 
-        // Controlla se la lista è già vuota
-        if (articoli.isEmpty()) {
-            System.out.println("⚠ La lista è già vuota!");
+        long inizio = System.nanoTime();
+        try (LettoreCsvPigro lettore = LettoreCsvPigro.apri(file, RIGHE_PER_PAGINA)) {
+            System.out.printf("✓ \"%s\" aperto in %.1f ms: %.1f MB, %s%d articoli%n", file,
+                    (System.nanoTime() - inizio) / 1e6, lettore.dimensione() / (1024.0 * 1024.0),
+                    lettore.righeEsatte() ? "" : "circa ", lettore.righe());
+
+            int numeroPagina = 0;
+            while (true) {
+                List<Map<String, Object>> pagina = lettore.pagina(numeroPagina);
+                int numero = numeroPagina * RIGHE_PER_PAGINA + 1;
+                for (Map<String, Object> articolo : pagina) {
+                    if (articolo == null) {
+                        System.out.println("⚠ " + numero + ". riga illeggibile");
+                    } else {
+                        stampaArticolo(numero, articolo);
+                    }
+                    numero++;
+                }
+                if (pagina.size() < RIGHE_PER_PAGINA) {
+                    System.out.println("(fine del file)");
+                }
+
+                System.out.print("── Invio = pagina dopo, numero = vai alla pagina, t = totali, q = fine ── ");
+                risposta = scanner.nextLine().trim();
+                if (risposta.equalsIgnoreCase("q")) {
+                    return;
+                }
+                if (risposta.equalsIgnoreCase("t")) {
+                    mostraTotali(lettore);
+                } else if (risposta.isEmpty()) {
+                    if (pagina.size() == RIGHE_PER_PAGINA) {
+                        numeroPagina++;
+                    }
+                } else {
+                    try {
+                        int scelta = Integer.parseInt(risposta);
+                        if (scelta < 1) {
+                            throw new NumberFormatException();
+                        }
+                        numeroPagina = scelta - 1;
+                    } catch (NumberFormatException e) {
+                        System.out.println("❌ Scelta non valida!");
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("❌ Errore durante la lettura: " + e.getMessage());
+        }
+    }
+
+    // I totali di una lista sfogliata, con l'avanzamento ogni 10% del file
+    private void mostraTotali(LettoreCsvPigro lettore) throws Exception {
+        int segmenti = lettore.segmenti();
+        int[] decimiMostrati = new int[1];
+        Riepilogo totali = lettore.totali(letti -> {
+            int decimi = letti * 10 / segmenti;
+            if (decimi > decimiMostrati[0] && letti < segmenti) {
+                decimiMostrati[0] = decimi;
+                System.out.println("⏳ " + decimi * 10 + "% del file letto...");
+            }
+        });
+        System.out.println("═══════════════════════════════════════");
+        System.out.println("Totale articoli: " + totali.articoli());
+        System.out.println("Non acquistati: " + totali.nonAcquistati());
+        System.out.println("Acquistati: " + totali.acquistati());
+        System.out.printf("Spesa totale: €%.2f\n", totali.totale());
+        System.out.println("═══════════════════════════════════════");
+    }
+
+    // ============================================
+    // ANALISI DI UNA CARTELLA DI LISTE
+    // ============================================
+
+    /*
+     * METODO: analizzaCartella()
+     *
+     * COSA FA?
+     * - Legge in parallelo tutte le liste salvate in una cartella
+     *   (e sottocartelle) e calcola la spesa per categoria e per mese
+     * - Mentre lavora mostra quante liste ha già letto
+     * - Mostra un riepilogo per mese e scrive tutto in analisi.csv
+     * - La lista in memoria non cambia
+     *
+     * PERCHÉ un ForkJoinPool nuovo e non quello comune?
+     * - Le letture dei file bloccano i thread: un pool tutto nostro,
+     *   chiuso alla fine, non rallenta gli altri lavori in background
+     */
+    private void analizzaCartella() {
+        System.out.print("Cartella con le liste: ");
+        Path cartella = Paths.get(scanner.nextLine().trim());
+        if (!Files.isDirectory(cartella)) {
+            System.out.println("❌ \"" + cartella + "\" non è una cartella");
             return;
         }
 
-        // Chiedi conferma all'utente
-        System.out.print("⚠ Sei sicuro di voler svuotare la lista? (s/n): ");
-        String conferma = scanner.nextLine();
+        int thread = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(thread);
+        LongAdder letti = new LongAdder();
+        long inizio = System.nanoTime();
+        try {
+            ForkJoinTask<AnalisiArchivio.Risultato> compito = pool.submit(AnalisiArchivio.compito(cartella, letti));
+            AnalisiArchivio.Risultato risultato;
+            while (true) {
+                try {
+                    risultato = compito.get(1, TimeUnit.SECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    System.out.println("⏳ " + letti.sum() + " liste lette...");
+                }
+            }
+            double secondi = (System.nanoTime() - inizio) / 1e9;
 
-        // Se l'utente conferma
-        if (conferma.equalsIgnoreCase("s")) {
+            // Tutte le righe (mese, categoria) nel file; a video un riassunto per mese
+            Path uscita = Paths.get(AnalisiArchivio.FILE_RISULTATI);
+            try (Writer scrittore = Files.newBufferedWriter(uscita, StandardCharsets.UTF_8)) {
+                AnalisiArchivio.scrivi(risultato, scrittore);
+            }
+            for (Map.Entry<String, Map<String, AnalisiArchivio.Totali>> mese : risultato.perMese().entrySet()) {
+                long liste = risultato.liste(mese.getKey());
+                List<AnalisiArchivio.Totali> categorie = AnalisiArchivio.perSpesa(mese.getValue());
+                double spesa = 0;
+                StringBuilder principali = new StringBuilder();
+                for (int i = 0; i < categorie.size(); i++) {
+                    spesa += categorie.get(i).spesa();
+                    if (i < 3) {
+                        principali.append(i == 0 ? "" : ", ").append(categorie.get(i).categoria())
+                                .append(String.format(" €%.2f", categorie.get(i).spesa() / liste));
+                    }
+                }
+                System.out.printf("%s: %d liste, in media €%.2f a lista (%s)%n",
+                        mese.getKey(), liste, spesa / liste, principali);
+            }
 
-            // Conta quanti articoli verranno eliminati
-            int numeroArticoli = articoli.size();
+            System.out.printf("✓ %d liste analizzate in %.1f s (%.0f liste/s, %d thread)%n",
+                    risultato.file(), secondi, risultato.file() / Math.max(secondi, 1e-9), thread);
+            System.out.println("(spesa per categoria e per mese in \"" + uscita + "\")");
+            if (risultato.fileScartati() > 0 || risultato.righeScartate() > 0 || risultato.cartelleScartate() > 0) {
+                System.out.println("⚠ Saltati: " + risultato.fileScartati() + " file illeggibili, "
+                        + risultato.righeScartate() + " righe non valide, "
+                        + risultato.cartelleScartate() + " cartelle illeggibili");
+            }
+        } catch (Exception e) {
+            System.out.println("❌ Errore durante l'analisi: " + e.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
 
-            // Svuota la lista in memoria
-            articoli.clear();
+    // ============================================
+    // SINCRONIZZAZIONE TRA DISPOSITIVI
+    // ============================================
 
-            // Svuota o elimina il file CSV
-            try {
-                // Opzione 1: Sovrascrive il file con solo l'header
-                StringBuilder csv = new StringBuilder();
-                csv.append("Nome,Categoria,Prezzo,Quantita,Acquistato\n");
-                Files.writeString(Paths.get("spesa.csv"), csv.toString());
+    /*
+     * METODO: sincronizzaCartella()
+     *
+     * COSA FA?
+     * - Scambia le modifiche con le altre repliche attraverso una cartella
+     *   (di solito condivisa: chiavetta, cartella di rete...)
+     *
+     * PERCHÉ tutto dentro synchronized (articoli)?
+     * - allinea() deve vedere la lista ferma, e la lista deve ricevere
+     *   l'esito prima che chiunque altro (es. il server) la riconfronti
+     */
+    private void sincronizzaCartella() {
+        attendiDati();
+        System.out.print("Cartella (Invio = \"" + SincronizzazioneLista.CARTELLA_PREDEFINITA + "\"): ");
+        String nome = scanner.nextLine().trim();
+        Path cartella = Paths.get(nome.isEmpty() ? SincronizzazioneLista.CARTELLA_PREDEFINITA : nome);
 
-                // Messaggio di successo
-                System.out.println("✓ Lista svuotata con successo!");
-                System.out.println("(" + numeroArticoli + " articoli eliminati)");
+        try {
+            synchronized (articoli) {
+                ReplicaCrdt replica = replica();
+                int locali = replica.allinea(articoli);
+                ReplicaCrdt.Esito esito = SincronizzazioneLista.cartella(replica, cartella);
+                motore.applica(esito);
+                replica.salva(Paths.get(ReplicaCrdt.FILE));
+                stampaEsitoSincronizzazione(esito, locali);
+            }
+        } catch (Exception e) {
+            System.out.println("❌ Errore durante la sincronizzazione: " + e.getMessage());
+        }
+    }
 
-            } catch (Exception e) {
-                // Se c'è un errore durante la pulizia del file
-                System.out.println("✓ Lista in memoria svuotata!");
-                System.out.println("⚠ Attenzione: errore durante la pulizia del file: " + e.getMessage());
+    private void sincronizzaPorta() {
+        attendiDati();
+        int porta = chiediPorta();
+        if (porta < 0) {
+            return;
+        }
+        
+        // Il nostro server aspetterebbe la lista che teniamo bloccata noi
+        if (serverSincronizzazione != null && serverSincronizzazione.getLocalPort() == porta) {
+            System.out.println("❌ Questa istanza è già in ascolto sulla porta " + porta);
+            return;
+        }
+        try {
+            synchronized (articoli) {
+                ReplicaCrdt replica = replica();
+                int locali = replica.allinea(articoli);
+                ReplicaCrdt.Esito esito = SincronizzazioneLista.daPorta(replica, porta);
+                motore.applica(esito);
+                replica.salva(Paths.get(ReplicaCrdt.FILE));
+                stampaEsitoSincronizzazione(esito, locali);
             }
+        } catch (Exception e) {
+            System.out.println("❌ Errore durante la sincronizzazione: " + e.getMessage());
+        }
+    }
+
+    /*
+     * METODO: accettaSincronizzazioni()
+     *
+     * COSA FA?
+     * - Apre una porta locale: le altre istanze possono chiedere le nostre modifiche
+     * - Il server risponde in background, il menu resta libero
+     */
+    private void accettaSincronizzazioni() {
+        attendiDati();
+        if (serverSincronizzazione != null) {
+            System.out.println("⚠ Già in ascolto su 127.0.0.1:" + serverSincronizzazione.getLocalPort());
+            return;
+        }
+        int porta = chiediPorta();
+        if (porta < 0) {
+            return;
+        }
+        try {
+            serverSincronizzazione = SincronizzazioneLista.avviaServer(
+                    porta, this::rispondiSincronizzazione, avvisiSincronizzazione);
+            System.out.println("✓ In ascolto su 127.0.0.1:" + porta);
+        } catch (Exception e) {
+            System.out.println("❌ Impossibile aprire la porta " + porta + ": " + e.getMessage());
+        }
+    }
+
+    // Gira sul thread del server: prepara il delta con la lista bloccata
+    private byte[] rispondiSincronizzazione(byte[] richiesta) throws Exception {
+        synchronized (articoli) {
+            ReplicaCrdt replica = replica();
+            replica.allinea(articoli);
+            byte[] delta = replica.deltaPer(richiesta);
+            replica.salva(Paths.get(ReplicaCrdt.FILE));
+            return delta;
+        }
+    }
+
+    // Ritorna -1 se il numero non è valido
+    private int chiediPorta() {
+        System.out.print("Porta (Invio = " + SincronizzazioneLista.PORTA_PREDEFINITA + "): ");
+        String porta = scanner.nextLine().trim();
+        try {
+            return porta.isEmpty() ? SincronizzazioneLista.PORTA_PREDEFINITA : Integer.parseInt(porta);
+        } catch (NumberFormatException e) {
+            System.out.println("❌ Porta non valida!");
+            return -1;
+        }
+    }
 
+    // Carica spesa.crdt la prima volta che serve (chiamare con la lista bloccata)
+    private ReplicaCrdt replica() throws Exception {
+        if (replica == null) {
+            replica = ReplicaCrdt.carica(Paths.get(ReplicaCrdt.FILE));
+        }
+        return replica;
+    }
+
+    private void stampaEsitoSincronizzazione(ReplicaCrdt.Esito esito, int locali) {
+        System.out.println("✓ Sincronizzazione completata: " + esito.aggiunti().size() + " articoli arrivati, "
+                + esito.aggiornati().size() + " aggiornati, " + esito.rimossi().size() + " rimossi");
+        System.out.println("(" + locali + " modifiche locali, " + esito.byteInviati() + " byte inviati, "
+                + esito.byteRicevuti() + " byte ricevuti)");
+    }
+
+    /*
+     * METODO: unisciDoppioni()
+     * 
+     * COSA FA?
+     * - Unisce in una passata gli articoli con lo stesso nome e categoria
+     *   (utile dopo aver caricato un file scritto da altri)
+     */
+    private void unisciDoppioni() {
+        attendiDati();
+        long inizio = System.nanoTime();
+        int uniti = motore.unisciDoppioni();
+        int dopo = articoli.size();
+        if (uniti == 0) {
+            System.out.println("✓ Nessun articolo doppio");
         } else {
-            // L'utente ha annullato
-            System.out.println("✗ Operazione annullata");
+            System.out.printf("✓ %d articoli doppi uniti (%d → %d articoli, %.1f ms)%n",
+                    uniti, dopo + uniti, dopo, (System.nanoTime() - inizio) / 1e6);
+        }
+    }
+
+    // Dopo un caricamento: segnala i doppioni, senza toccarli
+    private void avvisaDoppioni() {
+        int doppioni;
+        synchronized (articoli) {
+            doppioni = IndiceDuplicati.contaDoppioni(articoli);
+        }
+        if (doppioni > 0) {
+            System.out.println("⚠ " + doppioni + " articoli doppi: \"Strumenti avanzati\" → \"Unisci articoli doppi\"");
+        }
+    }
+
+    // ============================================
+    // ARCHIVIO COMPRESSO
+    // ============================================
+
+    /*
+     * METODO: salvaArchivioCompresso()
+     *
+     * COSA FA?
+     * - Scrive la lista in un archivio a blocchi compressi (spesa.csvz)
+     * - Utile per archiviare o condividere liste grandi: spesa.csv resta
+     *   il file di lavoro e non viene toccato
+     */
+    private void salvaArchivioCompresso() {
+        attendiDati();
+        Path file = chiediArchivio();
+        try {
+            long inizio = System.nanoTime();
+            
+            // Una versione ferma: niente copia e niente lock mentre si comprime
+            List<Map<String, Object>> copia = articoli.versione();
+            long byteScritti = ArchivioCompresso.salva(file, copia);
+            metriche.aggiungiByteScritti(byteScritti);
+            System.out.println("✓ Archivio salvato in \"" + file + "\"!");
+            System.out.printf("(%d articoli, %d byte, %.1f ms)%n",
+                    copia.size(), byteScritti, (System.nanoTime() - inizio) / 1e6);
+        } catch (Exception e) {
+            System.out.println("❌ Errore durante il salvataggio dell'archivio: " + e.getMessage());
+        }
+    }
+
+    /*
+     * METODO: caricaArchivioCompresso()
+     *
+     * COSA FA?
+     * - Sostituisce la lista con quella dell'archivio (blocchi decompressi in parallelo)
+     * - La lista diventa "sporca": il salvataggio automatico la riporta in spesa.csv
+     */
+    private void caricaArchivioCompresso() {
+        attendiDati();
+        Path file = chiediArchivio();
+        try {
+            long inizio = System.nanoTime();
+            List<Map<String, Object>> letti = ArchivioCompresso.carica(file);
+            metriche.aggiungiByteLetti(Files.size(file));
+            motore.sostituisciTutto(letti);
+            System.out.println("✓ Archivio caricato da \"" + file + "\"!");
+            System.out.printf("(%d articoli caricati in %.1f ms)%n",
+                    letti.size(), (System.nanoTime() - inizio) / 1e6);
+            avvisaDoppioni();
+        } catch (Exception e) {
+            // Un archivio danneggiato non tocca la lista: la lettura avviene prima
+            System.out.println("❌ Errore durante il caricamento dell'archivio: " + e.getMessage());
+        }
+    }
+
+    /*
+     * METODO: confrontaFormati()
+     *
+     * COSA FA?
+     * - Salva e ricarica la lista attuale in CSV e in archivio compresso
+     *   (file temporanei) e mostra dimensioni e velocità dei due formati
+     */
+    private void confrontaFormati() {
+        attendiDati();
+        System.out.println("\n=== CSV E ARCHIVIO COMPRESSO ===");
+        try {
+            List<Map<String, Object>> copia = articoli.versione();
+            Path cartella = Paths.get(FormatoCsv.FILE).toAbsolutePath().getParent();
+            System.out.print(ArchivioCompresso.confronta(copia, cartella));
+        } catch (Exception e) {
+            System.out.println("❌ Errore durante il confronto: " + e.getMessage());
+        }
+    }
+
+    private Path chiediArchivio() {
+        System.out.print("File (Invio = \"" + ArchivioCompresso.FILE + "\"): ");
+        String nome = scanner.nextLine().trim();
+        return Paths.get(nome.isEmpty() ? ArchivioCompresso.FILE : nome);
+    }
+
+    // ============================================
+    // ARCHIVIO MAPPATO
+    // ============================================
+
+    /*
+     * METODO: copiaInArchivioMappato()
+     *
+     * COSA FA?
+     * - Sostituisce il contenuto di spesa.mappa con la lista attuale
+     * - Da lì in poi l'archivio si apre senza leggere né interpretare niente
+     */
+    private void copiaInArchivioMappato() {
+        attendiDati();
+        long inizio = System.nanoTime();
+        try (ArchivioMappato archivio = ArchivioMappato.apri(Paths.get(ArchivioMappato.FILE))) {
+            archivio.sostituisci(articoli.versione());
+            archivio.forza();
+            System.out.println("✓ Lista copiata in \"" + ArchivioMappato.FILE + "\"!");
+            System.out.printf("(%d articoli, %d byte di testi, %.1f ms)%n",
+                    archivio.numero(), archivio.byteStringhe(), (System.nanoTime() - inizio) / 1e6);
+        } catch (Exception e) {
+            System.out.println("❌ Errore durante la copia: " + e.getMessage());
+        }
+    }
+
+    /*
+     * METODO: apriArchivioMappato()
+     *
+     * COSA FA?
+     * - Mappa spesa.mappa e mostra totali e prima pagina
+     * - Segnare un articolo come acquistato scrive un byte nel file:
+     *   la modifica è già salvata, senza "Salva su file"
+     * - La lista in memoria non cambia: è un archivio a parte
+     * - Più processi possono aprire lo stesso archivio: se un altro ha
+     *   cambiato l'articolo dopo che l'abbiamo mostrato, niente modifica
+     *   (Conflitto) e la pagina si rilegge
+     */
+    private void apriArchivioMappato() {
+        long inizio = System.nanoTime();
+        try (ArchivioMappato archivio = ArchivioMappato.apri(Paths.get(ArchivioMappato.FILE))) {
+            Riepilogo totali = archivio.riepilogo();
+            System.out.printf("✓ \"%s\" aperto in %.1f ms: %d articoli, spesa totale €%.2f%n",
+                    ArchivioMappato.FILE, (System.nanoTime() - inizio) / 1e6,
+                    archivio.numero(), totali.totale());
+
+            while (true) {
+                int mostrati = Math.min(archivio.numero(), RIGHE_PER_PAGINA);
+                
+                // Come era ogni articolo mostrato: la modifica vale solo se è ancora così
+                List<ArchivioMappato.Segno> segni = new ArrayList<>();
+                for (int i = 0; i < mostrati; i++) {
+                    segni.add(archivio.segno(i));
+                    stampaArticolo(i + 1, archivio.leggi(i));
+                }
+                if (archivio.numero() > mostrati) {
+                    System.out.println("(... altri " + (archivio.numero() - mostrati) + " articoli)");
+                }
+                System.out.print("Numero da segnare come acquistato/non acquistato (Invio = esci): ");
+                String risposta = scanner.nextLine().trim();
+                if (risposta.isEmpty()) {
+                    return;
+                }
+                try {
+                    int numero = Integer.parseInt(risposta);
+                    ArchivioMappato.Segno segno = numero >= 1 && numero <= segni.size()
+                            ? segni.get(numero - 1) : archivio.segno(numero - 1);
+                    archivio.impostaAcquistato(segno, !archivio.acquistato(numero - 1));
+                    System.out.println("✓ \"" + archivio.nome(numero - 1) + "\" aggiornato nel file");
+                } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                    System.out.println("❌ Numero non valido!");
+                } catch (ArchivioMappato.Conflitto e) {
+                    System.out.println("⚠ Non aggiornato: " + e.getMessage() + ". Ecco la lista di adesso, riprova");
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("❌ Errore durante l'apertura: " + e.getMessage());
         }
     }
 
     private void visualizzaListaSemplice() {
         int numero = 1;
-        for (Map<String, Object> articolo : articoli) {
-            boolean acquistato = (boolean) articolo.get("acquistato");
-            String checkbox = acquistato ? "[✓]" : "[ ]";
-            System.out.println(checkbox + " " + numero + ". " + articolo.get("nome"));
+        StringBuilder testo = new StringBuilder();
+        for (Map<String, Object> articolo : articoli.versione()) {
+            motore.righe().semplice(testo, numero, articolo);
             numero++;
+            
+            // A blocchi: con una lista enorme il testo non sta tutto in memoria
+            if (testo.length() >= BLOCCO_STAMPA) {
+                System.out.print(testo);
+                testo.setLength(0);
+            }
         }
-        System.out.println();
+        System.out.println(testo);
     }
     
     // ============================================
@@ -1008,7 +2642,11 @@ public class Application {
      * - public: chiunque può chiamarla
      * - static: non serve un'istanza di Application
      * - void: non ritorna niente
-     * - String[] args: argomenti da riga di comando (non usiamo)
+     * - String[] args: argomenti da riga di comando
+     *   * --jfr              registra con JDK Flight Recorder (listaspesa.jfr)
+     *   * --jfr=file.jfr     come sopra, ma in un file a scelta
+     *   * --autosalva-ms=N   salva N ms dopo l'ultima modifica (0 = spento)
+     *   * --duplicati=P      articolo già in lista: somma (predefinito), chiedi, separati
      */
     public static void main(String[] args) {
         
@@ -1021,15 +2659,66 @@ public class Application {
          * 1. Viene allocata memoria per il nuovo oggetto
          * 2. Viene chiamato il costruttore
          * 3. Nel costruttore:
-         *    - articoli viene inizializzato come ArrayList
+         *    - articoli viene inizializzato come ListaPersistente
          *    - scanner viene inizializzato come Scanner(System.in)
          * 4. L'oggetto è pronto all'uso
          */
         Application app = new Application();
         
+        // Leggi le opzioni da riga di comando
+        for (String argomento : args) {
+            if (argomento.startsWith("--autosalva-ms=")) {
+                app.autosalvataggio.impostaRitardo(Long.parseLong(argomento.substring("--autosalva-ms=".length())));
+            } else if (argomento.startsWith("--duplicati=")) {
+                try {
+                    app.politicaDuplicati = IndiceDuplicati.Politica.da(argomento.substring("--duplicati=".length()));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("⚠ Opzione non valida: " + argomento + " (somma, chiedi, separati)");
+                }
+            } else if (argomento.equals("--jfr")) {
+                EventiSpesa.avviaRegistrazioneContinua(EventiSpesa.FILE_REGISTRAZIONE);
+            } else if (argomento.startsWith("--jfr=")) {
+                EventiSpesa.avviaRegistrazioneContinua(argomento.substring("--jfr=".length()));
+            } else {
+                System.out.println("⚠ Opzione sconosciuta: " + argomento);
+            }
+        }
+        
+        // Inizia a leggere spesa.csv in background (non blocca)
+        app.precarica();
+        
         // Chiama il metodo esegui()
         // Questo avvia il ciclo principale del programma
         app.esegui();
+        
+        // Se esegui() ritorna, l'input è finito senza "Esci": salviamo e chiudiamo
+        app.chiudi();
+    }
+    
+    /*
+     * METODO: chiudi()
+     * 
+     * COSA FA?
+     * - Scrive le modifiche ancora in sospeso (senza chiedere: non c'è
+     *   più nessuno a cui chiedere) e mostra gli ultimi avvisi
+     * - Serve quando l'input finisce, e a chi usa Application da codice
+     *   (es. SimulazioneCarico)
+     */
+    void chiudi() {
+        autosalvataggio.scriviInSospeso();
+        mostraAvvisi();
+        if (catalogo != null) {
+            try {
+                catalogo.close();
+            } catch (Exception e) {
+                // Solo lettura: non c'è niente da perdere
+            }
+        }
+    }
+    
+    // Le metriche delle operazioni (per SimulazioneCarico)
+    Metriche metriche() {
+        return metriche;
     }
     
     // ============================================
@@ -1047,7 +2736,8 @@ public class Application {
     public void esegui() {
         
         // while (true) = ciclo infinito
-        // L'unico modo per uscire è con System.exit(0) (nel case 9)
+        // Si esce in due modi: "Esci" (System.exit(0) nel case 14), oppure
+        // quando l'input finisce (return, vedi !scanner.hasNext() più sotto)
         
         /*
          * PERCHÉ while(true)?
@@ -1063,9 +2753,24 @@ public class Application {
          */
         while (true) {
             
+            // Se il precaricamento (o "Carica da file") è finito, installa i dati (senza aspettare)
+            controllaPrecaricamento();
+            controllaCaricamento();
+            
+            // Modifiche fatte a spesa.csv da un altro programma
+            applicaModificheEsterne();
+            
+            // Messaggi dai thread in background (salvataggi, errori)
+            mostraAvvisi();
+            
             // Mostra il menu
             mostraMenu();
             
+            // Input finito (Ctrl-D, oppure comandi letti da un file): fine del ciclo
+            if (!scanner.hasNext()) {
+                return;
+            }
+            
             // try-catch: gestisce errori nell'input
             try {
                 
@@ -1076,9 +2781,23 @@ public class Application {
                 // Cancella il newline dal buffer
                 scanner.nextLine();
                 
+                // Durante "Carica da file" si può solo consultare la lista:
+                // ogni altra scelta aspetta che la lista nuova sia al suo posto
+                if (!soloLettura(scelta)) {
+                    attendiCaricamento();
+                }
+                
                 // Elabora la scelta
                 // (vedi il metodo elaboraScelta)
-                elaboraScelta(scelta);
+                // Annulla e Ripeti non sono modifiche da ricordare
+                if (scelta != 11 && scelta != 12) {
+                    motore.iniziaPasso();
+                }
+                try {
+                    elaboraScelta(scelta);
+                } finally {
+                    motore.concludiPasso(descrizioneScelta(scelta));
+                }
                 
             } catch (Exception e) {
                 
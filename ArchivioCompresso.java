@@ -0,0 +1,377 @@
+/*
+ * ARCHIVIO COMPRESSO - la lista salvata a blocchi compressi (spesa.csvz)
+ *
+ * PROBLEMA:
+ * - spesa.csv è testo: nelle liste archiviate e condivise è soprattutto
+ *   la ripetizione degli stessi nomi di categoria e di "true"/"false"
+ *
+ * SOLUZIONE:
+ * - Le righe CSV vengono divise in blocchi da RIGHE_PER_BLOCCO righe
+ * - Ogni blocco è compresso DA SOLO (Deflater del JDK)
+ * - In fondo al file c'è un indice: dove inizia ogni blocco, quanto è lungo
+ *
+ * PERCHÉ blocchi indipendenti?
+ * - Salvataggio e caricamento comprimono/decomprimono i blocchi in parallelo
+ * - Per leggere UN blocco non serve decomprimere tutto il file
+ *
+ * FORMATO:
+ *   "LSZ1" | blocco 0 | blocco 1 | ... | indice | posizione indice (long) | "LSZ1"
+ *   indice = numero blocchi, poi per ogni blocco:
+ *            posizione, byte compressi, byte originali, righe, CRC32
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class ArchivioCompresso {
+
+    public static final String FILE = "spesa.csvz";
+    public static final int RIGHE_PER_BLOCCO = 4096;
+
+    private static final int MAGIA = 0x4c535a31; // "LSZ1"
+
+    // Byte di una voce dell'indice: posizione, compressi, originali, righe, crc
+    private static final int BYTE_VOCE = 8 + 4 + 4 + 4 + 8;
+
+    // Deflate non comprime oltre circa 1032:1: un blocco che dichiara di più è danneggiato
+    private static final long RAPPORTO_MASSIMO = 1032;
+
+    /*
+     * CLASSE: Blocco
+     *
+     * COSA È?
+     * - Una voce dell'indice: dove si trova il blocco e cosa contiene
+     */
+    public static class Blocco {
+        final long posizione;
+        final int byteCompressi;
+        final int byteOriginali;
+        final int righe;
+        final long crc;
+
+        Blocco(long posizione, int byteCompressi, int byteOriginali, int righe, long crc) {
+            this.posizione = posizione;
+            this.byteCompressi = byteCompressi;
+            this.byteOriginali = byteOriginali;
+            this.righe = righe;
+            this.crc = crc;
+        }
+
+        public int righe() {
+            return righe;
+        }
+    }
+
+    // ============================================
+    // SCRITTURA
+    // ============================================
+
+    /*
+     * METODO: salva(Path file, List articoli)
+     *
+     * COSA FA?
+     * 1. Divide la lista in blocchi e li comprime in parallelo
+     * 2. Scrive i blocchi uno dopo l'altro, poi l'indice
+     * 3. Scrittura atomica (file temporaneo + rinomina), come spesa.csv
+     * - Ritorna i byte scritti
+     */
+    public static long salva(Path file, List<Map<String, Object>> articoli) throws IOException {
+        int numeroBlocchi = (articoli.size() + RIGHE_PER_BLOCCO - 1) / RIGHE_PER_BLOCCO;
+        List<byte[][]> compressi = IntStream.range(0, numeroBlocchi).parallel()
+                .mapToObj(b -> comprimi(articoli.subList(b * RIGHE_PER_BLOCCO,
+                        Math.min(articoli.size(), (b + 1) * RIGHE_PER_BLOCCO))))
+                .collect(Collectors.toList());
+
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(byteOut);
+        out.writeInt(MAGIA);
+        List<Blocco> indice = new ArrayList<>();
+        for (int b = 0; b < numeroBlocchi; b++) {
+            byte[] dati = compressi.get(b)[0];
+            ByteBuffer info = ByteBuffer.wrap(compressi.get(b)[1]);
+            indice.add(new Blocco(out.size(), dati.length, info.getInt(), info.getInt(), info.getLong()));
+            out.write(dati);
+        }
+
+        long posizioneIndice = out.size();
+        out.writeInt(indice.size());
+        for (Blocco blocco : indice) {
+            out.writeLong(blocco.posizione);
+            out.writeInt(blocco.byteCompressi);
+            out.writeInt(blocco.byteOriginali);
+            out.writeInt(blocco.righe);
+            out.writeLong(blocco.crc);
+        }
+        out.writeLong(posizioneIndice);
+        out.writeInt(MAGIA);
+
+        Path temporaneo = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporaneo, byteOut.toByteArray());
+        Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return byteOut.size();
+    }
+
+    // Ritorna { byte compressi, { byte originali, righe, crc } }
+    private static byte[][] comprimi(List<Map<String, Object>> righe) {
+        StringBuilder csv = new StringBuilder(righe.size() * 48);
+        for (Map<String, Object> articolo : righe) {
+            FormatoCsv.scriviRiga(csv, articolo);
+        }
+        byte[] originali = csv.toString().getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(originali);
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(originali);
+            deflater.finish();
+            ByteArrayOutputStream compressi = new ByteArrayOutputStream(originali.length / 4 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                compressi.write(buffer, 0, deflater.deflate(buffer));
+            }
+            byte[] info = ByteBuffer.allocate(16).putInt(originali.length).putInt(righe.size())
+                    .putLong(crc.getValue()).array();
+            return new byte[][] {compressi.toByteArray(), info};
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // ============================================
+    // LETTURA
+    // ============================================
+
+    /*
+     * METODO: indice(Path file)
+     *
+     * COSA FA?
+     * - Legge SOLO l'indice in fondo al file (pochi byte per blocco)
+     */
+    public static List<Blocco> indice(Path file) throws IOException {
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.READ)) {
+            return indice(canale);
+        }
+    }
+
+    private static List<Blocco> indice(FileChannel canale) throws IOException {
+        long dimensione = canale.size();
+        if (dimensione < 20 || leggi(canale, 0, 4).getInt() != MAGIA) {
+            throw new IOException("non è un archivio compresso della lista");
+        }
+        ByteBuffer coda = leggi(canale, dimensione - 12, 12);
+        long posizioneIndice = coda.getLong();
+        if (coda.getInt() != MAGIA || posizioneIndice < 4 || posizioneIndice > dimensione - 16) {
+            throw new IOException("indice dell'archivio danneggiato");
+        }
+        ByteBuffer voci = leggi(canale, posizioneIndice, (int) (dimensione - 12 - posizioneIndice));
+        int numeroBlocchi = voci.getInt();
+        if (numeroBlocchi < 0 || (long) numeroBlocchi * BYTE_VOCE != voci.remaining()) {
+            throw new IOException("indice dell'archivio danneggiato");
+        }
+
+        // Ogni blocco sta tra l'intestazione e l'indice: niente buffer enormi
+        // (o letture oltre la fine) per una voce danneggiata
+        List<Blocco> indice = new ArrayList<>(numeroBlocchi);
+        for (int b = 0; b < numeroBlocchi; b++) {
+            Blocco blocco = new Blocco(voci.getLong(), voci.getInt(), voci.getInt(), voci.getInt(), voci.getLong());
+            if (blocco.posizione < 4 || blocco.byteCompressi < 0 || blocco.byteOriginali < 0 || blocco.righe < 0
+                    || blocco.posizione + blocco.byteCompressi > posizioneIndice
+                    || blocco.byteOriginali > blocco.byteCompressi * RAPPORTO_MASSIMO) {
+                throw new IOException("indice dell'archivio danneggiato (blocco " + b + ")");
+            }
+            indice.add(blocco);
+        }
+        return indice;
+    }
+
+    /*
+     * METODO: carica(Path file)
+     *
+     * COSA FA?
+     * - Legge l'indice, poi decomprime e interpreta i blocchi in parallelo
+     * - Ritorna gli articoli nell'ordine originale
+     */
+    public static List<Map<String, Object>> carica(Path file) throws IOException {
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<Blocco> indice = indice(canale);
+            List<List<Map<String, Object>>> blocchi = indice.parallelStream()
+                    .map(blocco -> {
+                        try {
+                            return leggiBlocco(canale, blocco);
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e.getMessage(), e);
+                        }
+                    })
+                    .collect(Collectors.toList());
+
+            int totale = 0;
+            for (Blocco blocco : indice) {
+                totale += blocco.righe;
+            }
+            List<Map<String, Object>> articoli = new ArrayList<>(totale);
+            for (List<Map<String, Object>> blocco : blocchi) {
+                articoli.addAll(blocco);
+            }
+            return articoli;
+        } catch (IllegalStateException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /*
+     * METODO: leggiBlocco(Path file, int numero)
+     *
+     * COSA FA?
+     * - Legge e decomprime UN solo blocco (es. per mostrare una pagina)
+     */
+    public static List<Map<String, Object>> leggiBlocco(Path file, int numero) throws IOException {
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.READ)) {
+            return leggiBlocco(canale, indice(canale).get(numero));
+        }
+    }
+
+    private static List<Map<String, Object>> leggiBlocco(FileChannel canale, Blocco blocco) throws IOException {
+        byte[] compressi = leggi(canale, blocco.posizione, blocco.byteCompressi).array();
+        byte[] originali = new byte[blocco.byteOriginali];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressi);
+            int letti = 0;
+            while (letti < originali.length && !inflater.finished()) {
+                int decompressi = inflater.inflate(originali, letti, originali.length - letti);
+
+                // Finiti i byte compressi prima della fine del blocco: inflate()
+                // ritornerebbe 0 per sempre
+                if (decompressi == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("blocco troncato");
+                }
+                letti += decompressi;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("blocco danneggiato: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(originali);
+        if (crc.getValue() != blocco.crc) {
+            throw new IOException("blocco danneggiato (CRC diverso)");
+        }
+
+        List<Map<String, Object>> righe = new ArrayList<>(blocco.righe);
+        int inizio = 0;
+        for (int i = 0; i < originali.length; i++) {
+            if (originali[i] == '\n') {
+                String linea = new String(originali, inizio, i - inizio, StandardCharsets.UTF_8);
+                try {
+                    righe.add(FormatoCsv.leggiRiga(linea));
+                } catch (RuntimeException e) {
+                    throw new IOException("riga non valida: " + linea, e);
+                }
+                inizio = i + 1;
+            }
+        }
+        return righe;
+    }
+
+    // Lettura posizionale: più thread possono leggere lo stesso canale insieme
+    private static ByteBuffer leggi(FileChannel canale, long posizione, int lunghezza) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(lunghezza);
+        while (buffer.hasRemaining()) {
+            if (canale.read(buffer, posizione + buffer.position()) < 0) {
+                throw new IOException("archivio troncato");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // ============================================
+    // CONFRONTO CON IL CSV
+    // ============================================
+
+    /*
+     * METODO: confronta(List articoli, Path cartella)
+     *
+     * COSA FA?
+     * - Salva e ricarica la lista in entrambi i formati (file temporanei)
+     * - Ritorna un resoconto: dimensioni, rapporto di compressione,
+     *   velocità di salvataggio e caricamento (MB di CSV al secondo)
+     */
+    public static String confronta(List<Map<String, Object>> articoli, Path cartella) throws IOException {
+        Path csv = Files.createTempFile(cartella, "confronto", ".csv");
+        Path csvz = Files.createTempFile(cartella, "confronto", ".csvz");
+        try {
+            long inizio = System.nanoTime();
+            byte[] contenuto = FormatoCsv.formatta(articoli);
+            Files.write(csv, contenuto);
+            long salvaCsv = System.nanoTime() - inizio;
+
+            inizio = System.nanoTime();
+            List<String> linee = Files.readAllLines(csv, StandardCharsets.UTF_8);
+            List<Map<String, Object>> lettiCsv = new ArrayList<>(linee.size());
+            for (int i = 1; i < linee.size(); i++) {
+                lettiCsv.add(FormatoCsv.leggiRiga(linee.get(i)));
+            }
+            long caricaCsv = System.nanoTime() - inizio;
+
+            inizio = System.nanoTime();
+            long byteCompressi = salva(csvz, articoli);
+            long salvaCsvz = System.nanoTime() - inizio;
+
+            inizio = System.nanoTime();
+            List<Map<String, Object>> lettiCsvz = carica(csvz);
+            long caricaCsvz = System.nanoTime() - inizio;
+
+            inizio = System.nanoTime();
+            if (!lettiCsvz.isEmpty()) {
+                leggiBlocco(csvz, 0);
+            }
+            long unBlocco = System.nanoTime() - inizio;
+
+            if (lettiCsv.size() != lettiCsvz.size()) {
+                throw new IOException("i due formati hanno letto un numero diverso di articoli");
+            }
+
+            double megabyte = contenuto.length / (1024.0 * 1024.0);
+            StringBuilder resoconto = new StringBuilder();
+            resoconto.append(String.format("Articoli: %d (%d blocchi da %d righe)%n",
+                    articoli.size(), (articoli.size() + RIGHE_PER_BLOCCO - 1) / RIGHE_PER_BLOCCO, RIGHE_PER_BLOCCO));
+            resoconto.append(String.format("%-12s %12s %14s %14s%n", "Formato", "Byte", "Salva MB/s", "Carica MB/s"));
+            resoconto.append(String.format("%-12s %12d %14.1f %14.1f%n", "CSV",
+                    contenuto.length, megabyte / secondi(salvaCsv), megabyte / secondi(caricaCsv)));
+            resoconto.append(String.format("%-12s %12d %14.1f %14.1f%n", "Compresso",
+                    byteCompressi, megabyte / secondi(salvaCsvz), megabyte / secondi(caricaCsvz)));
+            resoconto.append(String.format("Rapporto di compressione: %.1f : 1%n",
+                    contenuto.length / (double) Math.max(1, byteCompressi)));
+            resoconto.append(String.format("Lettura di un solo blocco: %.2f ms%n", unBlocco / 1e6));
+            return resoconto.toString();
+        } finally {
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(csvz);
+        }
+    }
+
+    private static double secondi(long nanos) {
+        return Math.max(nanos, 1) / 1e9;
+    }
+}
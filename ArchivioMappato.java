@@ -0,0 +1,655 @@
+/*
+ * ARCHIVIO MAPPATO - articoli che vivono in un file mappato in memoria
+ *
+ * PROBLEMA:
+ * - La lista sta tutta nello heap: con liste enormi lo heap non basta,
+ *   e ogni avvio rilegge e reinterpreta tutto spesa.csv
+ *
+ * SOLUZIONE: due file mappati in memoria (FileChannel.map)
+ * - spesa.mappa: intestazione + un record a larghezza fissa per articolo
+ * - spesa.mappa.stringhe: i testi (nome, categoria, id) uno dopo l'altro
+ *   in UTF-8; il record ricorda solo dove iniziano e quanto sono lunghi
+ *
+ * COSA SI GUADAGNA?
+ * - Aprire = mappare i file: niente parsing, qualunque sia la dimensione
+ * - Le modifiche scrivono direttamente nei byte del file (in place):
+ *   sono già persistite, anche se il processo si chiude di colpo
+ * - Lo heap non cresce con la lista: i dati stanno nella page cache del
+ *   sistema operativo, fuori dallo heap
+ *
+ * RECORD (40 byte):
+ *   acquistato (1) | versione (3) | quantita (4) | prezzo (8) |
+ *   nome: inizio, lunghezza (4+4) | categoria (4+4) | id (4+4)
+ *
+ * PERCHÉ il numero di articoli si scrive per ultimo?
+ * - Un articolo aggiunto diventa visibile solo quando è completo: se il
+ *   processo muore a metà, nei file resta al massimo qualche byte inutile
+ *
+ * PIÙ PROCESSI SULLO STESSO ARCHIVIO
+ * - Problema: due processi che leggono un articolo, lo cambiano e lo
+ *   riscrivono si cancellano a vicenda le modifiche (l'ultimo vince)
+ * - Un lucchetto su tutto il file li metterebbe in fila tutti
+ * - Invece ogni record ha una VERSIONE, che cresce a ogni modifica.
+ *   Chi legge un articolo ne tiene il Segno (posizione + versione); per
+ *   modificarlo blocca con FileChannel.tryLock SOLO i 40 byte del suo record,
+ *   controlla che la versione sia ancora quella e scrive
+ * - Versione diversa, o record bloccato da un altro: Conflitto subito,
+ *   senza aspettare. Chi lo riceve rilegge l'articolo e riprova
+ * - Processi che modificano articoli DIVERSI non si ostacolano mai
+ * - Aggiungere, rimuovere, svuotare, compattare spostano i record: bloccano
+ *   tutto il file e cambiano la GENERAZIONE (nell'intestazione); un Segno
+ *   di una generazione precedente non vale più
+ * - Durante una modifica la versione è dispari: chi legge senza lucchetti
+ *   (leggi()) la vede e riprova, così non mescola valori vecchi e nuovi
+ * - Gli archivi scritti prima avevano zero nei byte della versione e
+ *   della generazione: si aprono come prima
+ *
+ * NON thread-safe: chi lo usa da più thread deve sincronizzarsi
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// "try": i lucchetti (FileLock) stanno nei try solo per essere rilasciati alla fine del blocco
+@SuppressWarnings("try")
+public class ArchivioMappato implements Closeable {
+
+    public static final String FILE = "spesa.mappa";
+
+    private static final int MAGIA = 0x4c534d31; // "LSM1"
+    private static final int INTESTAZIONE = 64;
+    private static final int RECORD = 40;
+
+    // Posizioni nell'intestazione
+    private static final int POS_MAGIA = 0;
+    private static final int POS_NUMERO = 4;
+    private static final int POS_STRINGHE_USATE = 8;
+    private static final int POS_STRINGHE_SPRECATE = 16;
+    private static final int POS_GENERAZIONE = 24;
+
+    // Posizioni nel record (acquistato e versione stanno nello stesso int)
+    private static final int R_ACQUISTATO = 0;
+    private static final int R_STATO = 0;
+    private static final int R_QUANTITA = 4;
+    private static final int R_PREZZO = 8;
+    private static final int R_NOME = 16;
+    private static final int R_CATEGORIA = 24;
+    private static final int R_ID = 32;
+
+    // Le categorie si ripetono: le scriviamo una volta sola (cache piccola e limitata)
+    private static final int CATEGORIE_IN_CACHE = 1024;
+
+    // La versione ha 24 bit: ricomincia da zero dopo 16 milioni di modifiche allo stesso articolo
+    private static final int MASCHERA_VERSIONE = 0xFFFFFF;
+
+    // Una modifica dura microsecondi: oltre, chi la faceva non c'è più
+    private static final long ATTESA_MODIFICA_NS = 10_000_000;
+
+    /*
+     * CLASSE: Segno
+     *
+     * COSA È?
+     * - Come era un articolo quando l'abbiamo letto: posizione, generazione
+     *   dell'archivio e versione del record
+     * - Le modifiche lo vogliono: se nel frattempo l'articolo è cambiato, Conflitto
+     */
+    public static final class Segno {
+        private final int indice;
+        private final long generazione;
+        private final int versione;
+
+        private Segno(int indice, long generazione, int versione) {
+            this.indice = indice;
+            this.generazione = generazione;
+            this.versione = versione;
+        }
+
+        public int indice() {
+            return indice;
+        }
+    }
+
+    /*
+     * CLASSE: Conflitto
+     *
+     * COSA È?
+     * - Un altro processo ha cambiato (o sta cambiando) lo stesso articolo
+     *   o l'archivio intero: la modifica non è stata fatta
+     */
+    public static class Conflitto extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        Conflitto(String messaggio) {
+            super(messaggio);
+        }
+    }
+
+    private final FileChannel canaleRecord;
+    private final FileChannel canaleStringhe;
+    private MappedByteBuffer record;
+    private MappedByteBuffer stringhe;
+    private final Map<String, Long> categorieScritte = new HashMap<>();
+
+    // La generazione per cui valgono le posizioni in categorieScritte
+    private long generazioneCategorie;
+
+    private ArchivioMappato(FileChannel canaleRecord, FileChannel canaleStringhe) {
+        this.canaleRecord = canaleRecord;
+        this.canaleStringhe = canaleStringhe;
+    }
+
+    /*
+     * METODO: apri(Path file)
+     *
+     * COSA FA?
+     * - Mappa i due file (li crea vuoti se non ci sono)
+     * - Nessuna lettura degli articoli: costa uguale con 10 o 10 milioni di righe
+     */
+    public static ArchivioMappato apri(Path file) throws IOException {
+        Path fileStringhe = file.resolveSibling(file.getFileName() + ".stringhe");
+        FileChannel canaleRecord = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel canaleStringhe = FileChannel.open(fileStringhe,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ArchivioMappato archivio = new ArchivioMappato(canaleRecord, canaleStringhe);
+        try {
+            boolean nuovo = canaleRecord.size() == 0;
+            archivio.record = canaleRecord.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(canaleRecord.size(), INTESTAZIONE + 1024L * RECORD));
+            archivio.stringhe = canaleStringhe.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(canaleStringhe.size(), 64 * 1024L));
+            if (nuovo) {
+                archivio.record.putInt(POS_MAGIA, MAGIA);
+            } else if (archivio.record.getInt(POS_MAGIA) != MAGIA) {
+                throw new IOException(file + " non è un archivio mappato della lista");
+            }
+            return archivio;
+        } catch (IOException | RuntimeException e) {
+            archivio.close();
+            throw e;
+        }
+    }
+
+    // ============================================
+    // LETTURA
+    // ============================================
+
+    public int numero() {
+        int numero = record.getInt(POS_NUMERO);
+        if (posizione(0) + (long) numero * RECORD > record.capacity()) {
+            vediCrescita();
+        }
+        return numero;
+    }
+
+    public boolean acquistato(int i) {
+        return record.get(posizione(i) + R_ACQUISTATO) != 0;
+    }
+
+    public int quantita(int i) {
+        return record.getInt(posizione(i) + R_QUANTITA);
+    }
+
+    public double prezzo(int i) {
+        return record.getDouble(posizione(i) + R_PREZZO);
+    }
+
+    public String nome(int i) {
+        return leggiStringa(posizione(i) + R_NOME);
+    }
+
+    public String categoria(int i) {
+        return leggiStringa(posizione(i) + R_CATEGORIA);
+    }
+
+    public String id(int i) {
+        return leggiStringa(posizione(i) + R_ID);
+    }
+
+    /*
+     * METODO: leggi(int i)
+     *
+     * COSA FA?
+     * - Crea la solita Map dell'articolo i (una copia: modificarla non
+     *   cambia il file, per quello ci sono i metodi imposta...)
+     */
+    public Map<String, Object> leggi(int i) {
+        while (true) {
+            int prima = versioneStabile(posizione(i));
+            Map<String, Object> articolo = FormatoCsv.creaArticolo(id(i), nome(i), categoria(i), prezzo(i),
+                    quantita(i), acquistato(i));
+            if (versioneStabile(posizione(i)) == prima) {
+                return articolo;
+            }
+        }
+    }
+
+    /*
+     * METODO: segno(int i)
+     *
+     * COSA FA?
+     * - Il Segno dell'articolo i così com'è adesso: da tenere insieme a
+     *   quello che si è mostrato all'utente, per modificarlo dopo
+     */
+    public Segno segno(int i) {
+        controllaIndice(i);
+        return new Segno(i, record.getLong(POS_GENERAZIONE), versioneStabile(posizione(i)));
+    }
+
+    /*
+     * METODO: riepilogo()
+     *
+     * COSA FA?
+     * - I totali, leggendo solo prezzo, quantità e stato dai record:
+     *   nessuna stringa e nessun oggetto per articolo
+     */
+    public Riepilogo riepilogo() {
+        Riepilogo riepilogo = new Riepilogo();
+        int numero = numero();
+        for (int i = 0; i < numero; i++) {
+            int p = posizione(i);
+            riepilogo.aggiungi(record.getDouble(p + R_PREZZO), record.getInt(p + R_QUANTITA),
+                    record.get(p + R_ACQUISTATO) != 0);
+        }
+        return riepilogo;
+    }
+
+    // ============================================
+    // MODIFICA (direttamente nel file)
+    // ============================================
+
+    public void aggiungi(Map<String, Object> articolo) throws IOException {
+        try (FileLock tutto = bloccaTutto()) {
+            int numero = numero();
+            assicuraRecord(numero + 1);
+            int p = posizione(numero);
+            scriviRecord(p, articolo);
+
+            // Per ultimo: da qui in poi l'articolo esiste
+            record.putInt(POS_NUMERO, numero + 1);
+            nuovaGenerazione();
+        }
+    }
+
+    public void aggiungiTutti(List<Map<String, Object>> articoli) throws IOException {
+        try (FileLock tutto = bloccaTutto()) {
+            accoda(articoli);
+            nuovaGenerazione();
+        }
+    }
+
+    // Svuota e aggiungi in un passo solo: gli altri processi non vedono mai l'archivio vuoto
+    public void sostituisci(List<Map<String, Object>> articoli) throws IOException {
+        try (FileLock tutto = bloccaTutto()) {
+            azzera();
+            accoda(articoli);
+            nuovaGenerazione();
+        }
+    }
+
+    private void accoda(List<Map<String, Object>> articoli) throws IOException {
+        int numero = numero();
+        assicuraRecord(numero + articoli.size());
+        for (int i = 0; i < articoli.size(); i++) {
+            scriviRecord(posizione(numero + i), articoli.get(i));
+        }
+        record.putInt(POS_NUMERO, numero + articoli.size());
+    }
+
+    /*
+     * METODO: rimuovi(int i)
+     *
+     * COSA FA?
+     * - Sposta indietro di un posto i record successivi (come ArrayList.remove)
+     * - Nome e id restano nel file delle stringhe come spazio sprecato
+     *   (compatta() lo recupera); la categoria no: è condivisa con altri articoli
+     */
+    public void rimuovi(int i) throws IOException {
+        try (FileLock tutto = bloccaTutto()) {
+            int numero = numero();
+            controllaIndice(i);
+            int p = posizione(i);
+            sprecaStringa(p + R_NOME);
+            sprecaStringa(p + R_ID);
+
+            ByteBuffer dopo = record.duplicate();
+            dopo.position(p + RECORD).limit(posizione(numero));
+            ByteBuffer qui = record.duplicate();
+            qui.position(p);
+            qui.put(dopo);
+            record.putInt(POS_NUMERO, numero - 1);
+            nuovaGenerazione();
+        }
+    }
+
+    // Nessun record punta più alle stringhe: si riparte dall'inizio di entrambi i file
+    public void svuota() throws IOException {
+        try (FileLock tutto = bloccaTutto()) {
+            azzera();
+            nuovaGenerazione();
+        }
+    }
+
+    private void azzera() {
+        record.putInt(POS_NUMERO, 0);
+        record.putLong(POS_STRINGHE_USATE, 0);
+        record.putLong(POS_STRINGHE_SPRECATE, 0);
+        categorieScritte.clear();
+    }
+
+    /*
+     * METODI: impostaAcquistato(), impostaQuantita(), impostaPrezzo(), impostaNome()
+     *
+     * COSA FANNO?
+     * - Cambiano un articolo nel file, solo se è ancora come quando è
+     *   stato letto (il Segno); altrimenti Conflitto
+     * - Bloccano solo il record dell'articolo (vedi modifica())
+     */
+    public void impostaAcquistato(Segno segno, boolean acquistato) throws IOException {
+        modifica(segno, p -> record.put(p + R_ACQUISTATO, (byte) (acquistato ? 1 : 0)));
+    }
+
+    public void impostaQuantita(Segno segno, int quantita) throws IOException {
+        modifica(segno, p -> record.putInt(p + R_QUANTITA, quantita));
+    }
+
+    public void impostaPrezzo(Segno segno, double prezzo) throws IOException {
+        modifica(segno, p -> record.putDouble(p + R_PREZZO, prezzo));
+    }
+
+    // Un nome nuovo va in fondo alle stringhe: quello vecchio diventa spazio sprecato
+    public void impostaNome(Segno segno, String nome) throws IOException {
+        modifica(segno, p -> {
+            // Le stringhe crescono in fondo: un solo processo alla volta ci scrive
+            try (FileLock stringheBloccate = blocca(canaleStringhe, 0, Long.MAX_VALUE, false,
+                    "testi dell'archivio in scrittura da un altro processo")) {
+                sprecaStringa(p + R_NOME);
+                scriviStringa(p + R_NOME, nome);
+            }
+        });
+    }
+
+    /*
+     * METODO: modifica(Segno segno, Scrittura scrittura)
+     *
+     * COSA FA?
+     * 1. Blocca l'intestazione in modo CONDIVISO: altre modifiche di record
+     *    possono andare avanti, chi sposta i record (bloccaTutto) no
+     * 2. Blocca in modo ESCLUSIVO i soli byte del record
+     * 3. Controlla generazione e versione del Segno
+     * 4. Versione dispari (modifica in corso), scrive, versione pari successiva
+     * - Ogni lucchetto si prova una volta sola (tryLock): occupato = Conflitto
+     */
+    private void modifica(Segno segno, Scrittura scrittura) throws IOException {
+        try (FileLock intestazione = blocca(canaleRecord, 0, INTESTAZIONE, true,
+                "archivio in riorganizzazione da un altro processo")) {
+            if (record.getLong(POS_GENERAZIONE) != segno.generazione) {
+                throw new Conflitto("articoli aggiunti o rimossi da un altro processo");
+            }
+            int p = posizione(segno.indice);
+            try (FileLock articolo = blocca(canaleRecord, p, RECORD, false,
+                    "articolo in modifica da un altro processo")) {
+                int versione = versione(p);
+                if ((versione & 1) != 0) {
+                    // Il record è nostro ma a metà: chi lo modificava è morto
+                    versione = (versione + 1) & MASCHERA_VERSIONE;
+                    scriviVersione(p, versione);
+                }
+                if (versione != segno.versione) {
+                    throw new Conflitto("articolo modificato da un altro processo");
+                }
+                scriviVersione(p, versione + 1);
+                scrittura.scrivi(p);
+                scriviVersione(p, versione + 2);
+            }
+        }
+    }
+
+    private interface Scrittura {
+        void scrivi(int posizione) throws IOException;
+    }
+
+    /*
+     * METODO: forza()
+     *
+     * COSA FA?
+     * - Chiede al sistema operativo di portare i byte sul disco
+     * - Senza forza() le modifiche sopravvivono alla chiusura del processo
+     *   ma non, per esempio, a un'interruzione di corrente
+     */
+    public void forza() {
+        record.force();
+        stringhe.force();
+    }
+
+    public long byteSprecati() {
+        return record.getLong(POS_STRINGHE_SPRECATE);
+    }
+
+    public long byteStringhe() {
+        return record.getLong(POS_STRINGHE_USATE);
+    }
+
+    /*
+     * METODO: compatta()
+     *
+     * COSA FA?
+     * - Riscrive le stringhe ancora usate in testa al file delle stringhe
+     * - Prima le copia nello heap (solo i testi), poi le riscrive in ordine
+     */
+    public void compatta() throws IOException {
+        try (FileLock tutto = bloccaTutto()) {
+            int numero = numero();
+            String[][] testi = new String[numero][];
+            for (int i = 0; i < numero; i++) {
+                testi[i] = new String[] {nome(i), categoria(i), id(i)};
+            }
+            record.putLong(POS_STRINGHE_USATE, 0);
+            record.putLong(POS_STRINGHE_SPRECATE, 0);
+            categorieScritte.clear();
+            for (int i = 0; i < numero; i++) {
+                int p = posizione(i);
+                scriviStringa(p + R_NOME, testi[i][0]);
+                scriviCategoria(p + R_CATEGORIA, testi[i][1]);
+                scriviStringa(p + R_ID, testi[i][2]);
+            }
+            nuovaGenerazione();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            canaleRecord.close();
+        } finally {
+            canaleStringhe.close();
+        }
+    }
+
+    // ============================================
+    // LUCCHETTI E VERSIONI
+    // ============================================
+
+    /*
+     * METODO: blocca(...)
+     *
+     * COSA FA?
+     * - Prova UNA volta a bloccare i byte [inizio, inizio + lunghezza)
+     * - I lucchetti di FileChannel valgono tra processi; nello stesso
+     *   processo un secondo lucchetto sugli stessi byte è un errore
+     *   (OverlappingFileLockException): anche questo è un Conflitto
+     */
+    private static FileLock blocca(FileChannel canale, long inizio, long lunghezza, boolean condiviso,
+            String occupato) throws IOException {
+        FileLock lucchetto;
+        try {
+            lucchetto = canale.tryLock(inizio, lunghezza, condiviso);
+        } catch (OverlappingFileLockException e) {
+            lucchetto = null;
+        }
+        if (lucchetto == null) {
+            throw new Conflitto(occupato);
+        }
+        return lucchetto;
+    }
+
+    // Per aggiungere, rimuovere, svuotare, compattare: nessun altro può toccare l'archivio
+    private FileLock bloccaTutto() throws IOException {
+        FileLock tutto = blocca(canaleRecord, 0, Long.MAX_VALUE, false, "archivio in uso da un altro processo");
+
+        // Un altro processo può aver riorganizzato le stringhe: le categorie ricordate non valgono più
+        if (record.getLong(POS_GENERAZIONE) != generazioneCategorie) {
+            categorieScritte.clear();
+        }
+        return tutto;
+    }
+
+    private void nuovaGenerazione() {
+        generazioneCategorie = record.getLong(POS_GENERAZIONE) + 1;
+        record.putLong(POS_GENERAZIONE, generazioneCategorie);
+    }
+
+    private int versione(int p) {
+        return record.getInt(p + R_STATO) & MASCHERA_VERSIONE;
+    }
+
+    /*
+     * METODO: versioneStabile(int p)
+     *
+     * COSA FA?
+     * - Aspetta (pochissimo) che finisca una modifica in corso in un altro processo
+     * - Se la versione resta dispari, chi modificava è morto a metà: la
+     *   modifica vale come conclusa, e la prossima modifica() la sistema
+     */
+    private int versioneStabile(int p) {
+        long scadenza = System.nanoTime() + ATTESA_MODIFICA_NS;
+        int versione;
+        while (((versione = versione(p)) & 1) != 0) {
+            if (System.nanoTime() > scadenza) {
+                return (versione + 1) & MASCHERA_VERSIONE;
+            }
+            Thread.onSpinWait();
+        }
+        return versione;
+    }
+
+    // Nello stesso int di acquistato: un'unica scrittura
+    private void scriviVersione(int p, int versione) {
+        int stato = record.getInt(p + R_STATO);
+        record.putInt(p + R_STATO, (stato & ~MASCHERA_VERSIONE) | (versione & MASCHERA_VERSIONE));
+    }
+
+    // Un altro processo ha allungato i file: si rimappano per vedere la parte nuova
+    private void vediCrescita() {
+        try {
+            if (canaleRecord.size() > record.capacity()) {
+                record = canaleRecord.map(FileChannel.MapMode.READ_WRITE, 0,
+                        Math.min(Integer.MAX_VALUE, canaleRecord.size()));
+            }
+            if (canaleStringhe.size() > stringhe.capacity()) {
+                stringhe = canaleStringhe.map(FileChannel.MapMode.READ_WRITE, 0,
+                        Math.min(Integer.MAX_VALUE, canaleStringhe.size()));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("archivio non rimappato: " + e.getMessage(), e);
+        }
+    }
+
+    // ============================================
+    // RECORD E STRINGHE
+    // ============================================
+
+    private static int posizione(int i) {
+        return INTESTAZIONE + i * RECORD;
+    }
+
+    private void controllaIndice(int i) {
+        if (i < 0 || i >= numero()) {
+            throw new IndexOutOfBoundsException("articolo " + i + " su " + numero());
+        }
+    }
+
+    private void scriviRecord(int p, Map<String, Object> articolo) throws IOException {
+        record.putInt(p + R_STATO, 0);
+        record.put(p + R_ACQUISTATO, (byte) ((boolean) articolo.get("acquistato") ? 1 : 0));
+        record.putInt(p + R_QUANTITA, (int) articolo.get("quantita"));
+        record.putDouble(p + R_PREZZO, (double) articolo.get("prezzo"));
+        scriviStringa(p + R_NOME, (String) articolo.get("nome"));
+        scriviCategoria(p + R_CATEGORIA, (String) articolo.get("categoria"));
+        scriviStringa(p + R_ID, (String) articolo.get("id"));
+    }
+
+    private void scriviCategoria(int campo, String categoria) throws IOException {
+        Long scritta = categorieScritte.get(categoria);
+        if (scritta != null) {
+            record.putInt(campo, (int) (scritta >>> 32));
+            record.putInt(campo + 4, (int) (long) scritta);
+            return;
+        }
+        scriviStringa(campo, categoria);
+        if (categorieScritte.size() < CATEGORIE_IN_CACHE) {
+            categorieScritte.put(categoria, ((long) record.getInt(campo) << 32) | record.getInt(campo + 4));
+        }
+    }
+
+    // Scrive il testo in fondo alle stringhe e ne mette inizio e lunghezza nel campo
+    private void scriviStringa(int campo, String testo) throws IOException {
+        byte[] byteTesto = testo.getBytes(StandardCharsets.UTF_8);
+        long usate = record.getLong(POS_STRINGHE_USATE);
+        if (usate + byteTesto.length > Integer.MAX_VALUE) {
+            throw new IOException("file delle stringhe pieno: usare compatta()");
+        }
+        assicuraStringhe(usate + byteTesto.length);
+        ByteBuffer destinazione = stringhe.duplicate();
+        destinazione.position((int) usate);
+        destinazione.put(byteTesto);
+        record.putInt(campo, (int) usate);
+        record.putInt(campo + 4, byteTesto.length);
+        record.putLong(POS_STRINGHE_USATE, usate + byteTesto.length);
+    }
+
+    private String leggiStringa(int campo) {
+        if ((long) record.getInt(campo) + record.getInt(campo + 4) > stringhe.capacity()) {
+            vediCrescita();
+        }
+        byte[] byteTesto = new byte[record.getInt(campo + 4)];
+        ByteBuffer sorgente = stringhe.duplicate();
+        sorgente.position(record.getInt(campo));
+        sorgente.get(byteTesto);
+        return new String(byteTesto, StandardCharsets.UTF_8);
+    }
+
+    private void sprecaStringa(int campo) {
+        record.putLong(POS_STRINGHE_SPRECATE, record.getLong(POS_STRINGHE_SPRECATE) + record.getInt(campo + 4));
+    }
+
+    // I file crescono raddoppiando: rimappare costa, ma succede di rado
+    private void assicuraRecord(int numero) throws IOException {
+        long necessari = posizione(0) + (long) numero * RECORD;
+        if (necessari > Integer.MAX_VALUE) {
+            throw new IOException("troppi articoli per un archivio mappato");
+        }
+        if (necessari > record.capacity()) {
+            long capacita = Math.min(Integer.MAX_VALUE, Math.max(necessari, 2L * record.capacity()));
+            record = canaleRecord.map(FileChannel.MapMode.READ_WRITE, 0, capacita);
+        }
+    }
+
+    private void assicuraStringhe(long necessari) throws IOException {
+        if (necessari > stringhe.capacity()) {
+            long capacita = Math.min(Integer.MAX_VALUE, Math.max(necessari, 2L * stringhe.capacity()));
+            stringhe = canaleStringhe.map(FileChannel.MapMode.READ_WRITE, 0, capacita);
+        }
+    }
+}
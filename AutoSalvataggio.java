@@ -0,0 +1,330 @@
+/*
+ * AUTO SALVATAGGIO - salva la lista in background, solo se è cambiata
+ *
+ * PROBLEMA:
+ * - Prima i dati finivano su disco solo con "Salva su file" o all'uscita
+ * - E il salvataggio bloccava il menu per tutto il tempo della scrittura
+ *
+ * SOLUZIONE:
+ * - "Sporca" = c'è almeno una modifica non ancora salvata
+ *   * versione: cresce a ogni modifica
+ *   * versioneSalvata: la versione che si trova su disco
+ * - Ogni modifica (ri)programma un salvataggio dopo "ritardo" ms:
+ *   tante modifiche ravvicinate → UN solo salvataggio ("debounce")
+ * - Se le modifiche non si fermano mai, salviamo comunque entro
+ *   10 × ritardo dalla prima modifica non salvata
+ * - La scrittura avviene su un thread dedicato: il menu non aspetta il disco
+ * - Una lista pulita non viene MAI riscritta
+ *
+ * SCRITTURA ATOMICA
+ * - Scriviamo in spesa.csv.tmp e poi lo rinominiamo in spesa.csv
+ * - Chi legge il file (noi o un altro programma) non vede mai metà file
+ *
+ * MODIFICHE ESTERNE
+ * - Con un OsservatoreFile la scrittura passa da lui: se il file è stato
+ *   cambiato da fuori, il salvataggio aspetta che la lista le abbia recepite
+ */
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AutoSalvataggio {
+
+    // Ritardo predefinito tra l'ultima modifica e il salvataggio
+    public static final long RITARDO_PREDEFINITO_MS = 2000;
+
+    // Se il file ha modifiche esterne non ancora applicate, riproviamo dopo
+    private static final long RIPROVA_MS = 250;
+
+    /*
+     * CLASSE: Istantanea
+     *
+     * COSA È?
+     * - Il contenuto da scrivere, "fotografato" in un momento preciso
+     * - Con la versione della lista a cui corrisponde
+     */
+    public static class Istantanea {
+        final byte[] contenuto;
+        final Riepilogo riepilogo;
+        final int articoli;
+        final long versione;
+
+        public Istantanea(byte[] contenuto, Riepilogo riepilogo, int articoli, long versione) {
+            this.contenuto = contenuto;
+            this.riepilogo = riepilogo;
+            this.articoli = articoli;
+            this.versione = versione;
+        }
+    }
+
+    private final Path file;
+    private final Callable<Istantanea> sorgente;
+    private final Metriche metriche;
+    private final ScheduledExecutorService esecutore;
+    private volatile OsservatoreFile osservatore;
+
+    private final AtomicLong versione = new AtomicLong();
+    private volatile long versioneSalvata;
+    private volatile long ritardoMs = RITARDO_PREDEFINITO_MS;
+
+    // L'utente ha chiesto "Salva su file": conferma l'esito quando scriviamo
+    private volatile boolean richiestoDallUtente;
+
+    // Salvataggio programmato (protetto dal monitor di "this")
+    private ScheduledFuture<?> inSospeso;
+    private long primaModificaNanos;
+
+    // Messaggi per l'utente, mostrati dal menu al giro successivo
+    private final ConcurrentLinkedQueue<String> avvisi = new ConcurrentLinkedQueue<>();
+
+    /*
+     * COSTRUTTORE
+     *
+     * PARAMETRI:
+     * - file: dove salvare (spesa.csv)
+     * - sorgente: chi produce l'istantanea da scrivere; viene chiamata
+     *   dal thread di salvataggio e deve essere thread-safe
+     * - metriche: per contare tempi e byte scritti
+     */
+    public AutoSalvataggio(Path file, Callable<Istantanea> sorgente, Metriche metriche) {
+        this.file = file;
+        this.sorgente = sorgente;
+        this.metriche = metriche;
+        this.esecutore = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "autosalvataggio");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /*
+     * METODO: impostaRitardo(long ms)
+     *
+     * COSA FA?
+     * - Cambia il ritardo del salvataggio automatico
+     * - 0 = salvataggio automatico spento (resta solo "Salva su file")
+     */
+    public void impostaRitardo(long ms) {
+        this.ritardoMs = Math.max(0, ms);
+    }
+
+    public boolean automaticoAttivo() {
+        return ritardoMs > 0;
+    }
+
+    /*
+     * METODO: impostaOsservatore(OsservatoreFile osservatore)
+     *
+     * COSA FA?
+     * - Da qui in poi le scritture passano dall'osservatore:
+     *   non le scambia per modifiche esterne e non ne sovrascriviamo
+     */
+    public void impostaOsservatore(OsservatoreFile osservatore) {
+        this.osservatore = osservatore;
+    }
+
+    // ============================================
+    // STATO "SPORCO"
+    // ============================================
+
+    public long versione() {
+        return versione.get();
+    }
+
+    public boolean sporca() {
+        return versione.get() != versioneSalvata;
+    }
+
+    /*
+     * METODO: segnaPulita()
+     *
+     * COSA FA?
+     * - Dice: "quello che c'è in memoria è uguale al file"
+     * - Si usa dopo un caricamento
+     */
+    public void segnaPulita() {
+        versioneSalvata = versione.get();
+    }
+
+    /*
+     * METODO: segnalaModifica()
+     *
+     * COSA FA?
+     * - Registra una modifica della lista
+     * - Se il salvataggio automatico è attivo, (ri)programma il salvataggio
+     *
+     * NOTA: va chiamato DENTRO lo stesso lock che protegge la lista,
+     * così versione e contenuto dell'istantanea corrispondono sempre
+     */
+    public void segnalaModifica() {
+        versione.incrementAndGet();
+        if (ritardoMs > 0) {
+            programma(ritardoMs);
+        }
+    }
+
+    /*
+     * METODO: salvaOra()
+     *
+     * COSA FA?
+     * - Chiede un salvataggio immediato, in background
+     * - Ritorna false se non c'è niente da salvare
+     */
+    public boolean salvaOra() {
+        if (!sporca()) {
+            return false;
+        }
+        richiestoDallUtente = true;
+        synchronized (this) {
+            if (inSospeso != null) {
+                inSospeso.cancel(false);
+            }
+            inSospeso = esecutore.schedule(this::salva, 0, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    private synchronized void programma(long ritardo) {
+        long ora = System.nanoTime();
+        if (inSospeso == null || inSospeso.isDone()) {
+            primaModificaNanos = ora;
+        } else {
+            inSospeso.cancel(false);
+        }
+
+        // Mai oltre 10 × ritardo dalla prima modifica non salvata
+        long limiteMs = TimeUnit.NANOSECONDS.toMillis(primaModificaNanos - ora) + 10 * ritardo;
+        long attesa = Math.max(0, Math.min(ritardo, limiteMs));
+        inSospeso = esecutore.schedule(this::salva, attesa, TimeUnit.MILLISECONDS);
+    }
+
+    // ============================================
+    // SCRITTURA (thread di salvataggio)
+    // ============================================
+
+    private void salva() {
+        if (!sporca()) {
+            return;
+        }
+        boolean confermare = richiestoDallUtente;
+        richiestoDallUtente = false;
+        long inizio = System.nanoTime();
+        EventiSpesa.Salvataggio evento = new EventiSpesa.Salvataggio();
+        evento.begin();
+        try {
+            OsservatoreFile osservatore = this.osservatore;
+            Istantanea istantanea = osservatore == null ? scrivi() : osservatore.scriviPropria(this::scrivi);
+            if (istantanea == null) {
+                // Modifiche esterne in arrivo: prima le applica il menu
+                richiestoDallUtente |= confermare;
+                synchronized (this) {
+                    inSospeso = esecutore.schedule(this::salva, RIPROVA_MS, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+            istantanea.riepilogo.salvaAccanto(file);
+
+            // Solo in avanti: un'istantanea vecchia non "sporca" una più nuova
+            if (istantanea.versione > versioneSalvata) {
+                versioneSalvata = istantanea.versione;
+            }
+
+            metriche.aggiungiByteScritti(istantanea.contenuto.length);
+            metriche.registra(Metriche.Operazione.SALVA, inizio);
+            evento.end();
+            if (evento.shouldCommit()) {
+                evento.file = file.toAbsolutePath().toString();
+                evento.articoli = istantanea.articoli;
+                evento.byteScritti = istantanea.contenuto.length;
+                evento.commit();
+            }
+            if (confermare) {
+                avvisi.add("✓ Lista salvata in \"" + file.getFileName() + "\" (" + istantanea.articoli + " articoli)");
+            }
+        } catch (Exception e) {
+            avvisi.add("❌ Errore durante il salvataggio: " + e.getMessage());
+        }
+    }
+
+    // Fotografa la lista e la scrive in modo atomico
+    private Istantanea scrivi() throws Exception {
+        Istantanea istantanea = sorgente.call();
+        Path temporaneo = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporaneo, istantanea.contenuto);
+        Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return istantanea;
+    }
+
+    /*
+     * METODO: prossimoAvviso()
+     *
+     * COSA FA?
+     * - Ritorna (e toglie) il prossimo messaggio per l'utente, o null
+     */
+    public String prossimoAvviso() {
+        return avvisi.poll();
+    }
+
+    // ============================================
+    // USCITA E RICARICAMENTO
+    // ============================================
+
+    /*
+     * METODO: attendiInCorso()
+     *
+     * COSA FA?
+     * - Annulla il salvataggio programmato (se non è ancora partito)
+     * - Aspetta quello eventualmente in corso
+     *
+     * QUANDO?
+     * - Prima di rileggere il file: un salvataggio "vecchio" non deve
+     *   sovrascrivere ciò che stiamo per caricare
+     */
+    public void attendiInCorso() {
+        synchronized (this) {
+            if (inSospeso != null) {
+                inSospeso.cancel(false);
+                inSospeso = null;
+            }
+        }
+        try {
+            esecutore.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            // Chi ci ha interrotto deve poterlo ancora vedere
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            // Il thread dei salvataggi non c'è più: non c'è niente da aspettare
+            avvisi.add("⚠ Attesa del salvataggio non riuscita: " + e.getMessage());
+        }
+    }
+
+    /*
+     * METODO: scriviInSospeso()
+     *
+     * COSA FA?
+     * - All'uscita: se ci sono modifiche non salvate le scrive e ASPETTA
+     * - Se la lista è pulita non fa niente
+     * - Ritorna false se il salvataggio è fallito
+     */
+    public boolean scriviInSospeso() {
+        if (!sporca()) {
+            return true;
+        }
+        try {
+            esecutore.submit(this::salva).get();
+        } catch (Exception e) {
+            return false;
+        }
+        return !sporca();
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * CARICAMENTO LISTA - "Carica da file" in background, tutto o niente
+ *
+ * PROBLEMA:
+ * - caricaDaFile() leggeva sul thread del menu: con un file grande
+ *   la lista non si poteva nemmeno guardare fino alla fine
+ * - Una riga malformata faceva fallire tutto
+ *
+ * SOLUZIONE: doppio buffer
+ * - Un thread separato costruisce una lista NUOVA e completa: articoli
+ *   (già in una ListaPersistente), totali, indice dei doppioni, prezzi per
+ *   categoria, impronta
+ * - Le righe malformate vanno in un rapporto (RigheScartate), non fermano niente
+ * - La lista attuale non viene toccata: intanto si può consultare
+ * - Solo a lettura riuscita il menu sostituisce la lista con quella nuova:
+ *   un riferimento che cambia (ListaPersistente.ripristina), in O(1)
+ * - Se la lettura fallisce (file sparito, disco), la lista resta com'era
+ * - Per un momento ci sono DUE liste in memoria: se lo heap non basta,
+ *   la lista nuova si butta e anche questo è un fallimento "pulito"
+ *
+ * COME SI COORDINANO I THREAD?
+ * - Con wait()/notifyAll() sul monitor di questo oggetto, come PrecaricatoreLista
+ */
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class CaricamentoLista implements Runnable {
+
+    /*
+     * CLASSE: Risultato
+     *
+     * COSA È?
+     * - Tutto ciò che serve per sostituire la lista in un colpo solo
+     */
+    public static final class Risultato {
+        private final ListaPersistente.Versione<Map<String, Object>> versione;
+        private final Riepilogo riepilogo;
+        private final IndiceDuplicati indiceDuplicati;
+        private final PrezziCategorie prezziCategorie;
+        private final ImprontaFile impronta;
+        private final boolean formatoVecchio;
+        private final RigheScartate scartate;
+        private final int doppioni;
+        private final long byteLetti;
+
+        Risultato(ListaPersistente.Versione<Map<String, Object>> versione, Riepilogo riepilogo,
+                IndiceDuplicati indiceDuplicati, PrezziCategorie prezziCategorie, ImprontaFile impronta,
+                boolean formatoVecchio, RigheScartate scartate, int doppioni, long byteLetti) {
+            this.versione = versione;
+            this.riepilogo = riepilogo;
+            this.indiceDuplicati = indiceDuplicati;
+            this.prezziCategorie = prezziCategorie;
+            this.impronta = impronta;
+            this.formatoVecchio = formatoVecchio;
+            this.scartate = scartate;
+            this.doppioni = doppioni;
+            this.byteLetti = byteLetti;
+        }
+
+        public ListaPersistente.Versione<Map<String, Object>> versione() {
+            return versione;
+        }
+
+        public Riepilogo riepilogo() {
+            return riepilogo;
+        }
+
+        public IndiceDuplicati indiceDuplicati() {
+            return indiceDuplicati;
+        }
+
+        public PrezziCategorie prezziCategorie() {
+            return prezziCategorie;
+        }
+
+        public ImprontaFile impronta() {
+            return impronta;
+        }
+
+        // true se il file non aveva la colonna Id: gli id nuovi vanno salvati
+        public boolean formatoVecchio() {
+            return formatoVecchio;
+        }
+
+        public RigheScartate scartate() {
+            return scartate;
+        }
+
+        // Articoli con nome e categoria di un altro (da segnalare, non da toccare)
+        public int doppioni() {
+            return doppioni;
+        }
+
+        public long byteLetti() {
+            return byteLetti;
+        }
+    }
+
+    private final Path file;
+    private final Metriche metriche;
+
+    // Stato condiviso: protetto dal monitor di "this"
+    private Risultato risultato;
+    private Exception errore;
+    private boolean completato;
+
+    private CaricamentoLista(Path file, Metriche metriche) {
+        this.file = file;
+        this.metriche = metriche;
+    }
+
+    /*
+     * METODO: avvia(Path file, Metriche metriche)
+     *
+     * COSA FA?
+     * - Fa partire il thread di lettura (daemon) e ritorna subito
+     */
+    public static CaricamentoLista avvia(Path file, Metriche metriche) {
+        CaricamentoLista caricamento = new CaricamentoLista(file, metriche);
+        Thread thread = new Thread(caricamento, "caricamento-lista");
+        thread.setDaemon(true);
+        thread.start();
+        return caricamento;
+    }
+
+    @Override
+    public void run() {
+        EventiSpesa.Caricamento evento = new EventiSpesa.Caricamento();
+        evento.begin();
+
+        Risultato pronto = null;
+        try {
+            pronto = leggi(file, metriche);
+            termina(pronto, null);
+        } catch (Exception e) {
+            termina(null, e);
+        } catch (OutOfMemoryError e) {
+            termina(null, new IllegalStateException("memoria insufficiente per tenere \""
+                    + file.getFileName() + "\" accanto alla lista attuale"));
+        }
+
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.file = file.toAbsolutePath().toString();
+            evento.articoli = pronto == null ? 0 : pronto.versione().size();
+            evento.byteLetti = pronto == null ? 0 : pronto.byteLetti();
+            evento.commit();
+        }
+    }
+
+    /*
+     * METODO: leggi(Path file, Metriche metriche)
+     *
+     * COSA FA?
+     * - Legge il file e costruisce la lista nuova con totali e indici,
+     *   sul thread che la chiama (run() la chiama in background,
+     *   MotoreLista.carica() direttamente)
+     */
+    static Risultato leggi(Path file, Metriche metriche) throws Exception {
+        long inizio = System.nanoTime();
+        List<Map<String, Object>> letti = new ArrayList<>();
+        try (BufferedReader lettore = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            ImprontaFile impronta = new ImprontaFile();
+            RigheScartate scartate = new RigheScartate();
+            String linea = lettore.readLine();
+            boolean formatoVecchio = false;
+            if (linea != null) {
+                impronta.aggiungiIntestazione(linea);
+                formatoVecchio = FormatoCsv.formatoVecchio(linea);
+            }
+            int numeroRiga = 1;
+            while ((linea = lettore.readLine()) != null) {
+                numeroRiga++;
+                try {
+                    Map<String, Object> articolo = FormatoCsv.leggiRiga(linea);
+                    letti.add(articolo);
+                    impronta.aggiungiRiga(linea, ImprontaFile.hashCanonico(articolo));
+                } catch (RuntimeException e) {
+                    scartate.aggiungi(numeroRiga, linea, e);
+                    impronta.aggiungiRiga(linea, ImprontaFile.NESSUN_ARTICOLO);
+                }
+            }
+            long byteLetti = Files.size(file);
+            impronta.impostaModifica(Files.getLastModifiedTime(file).toMillis());
+
+            // Lista, totali e indici nuovi: la lista attuale non li vede ancora
+            ListaPersistente<Map<String, Object>> nuova = new ListaPersistente<>();
+            nuova.addAll(letti);
+            Risultato pronto = new Risultato(nuova.versione(), Riepilogo.di(letti), IndiceDuplicati.di(letti),
+                    PrezziCategorie.di(letti), impronta, formatoVecchio, scartate,
+                    IndiceDuplicati.contaDoppioni(letti), byteLetti);
+
+            metriche.aggiungiByteLetti(byteLetti);
+            metriche.registra(Metriche.Operazione.CARICA, inizio);
+            return pronto;
+        }
+    }
+
+    private synchronized void termina(Risultato pronto, Exception eccezione) {
+        risultato = pronto;
+        errore = eccezione;
+        completato = true;
+        notifyAll();
+    }
+
+    // ============================================
+    // ATTESA DEL RISULTATO (thread del menu)
+    // ============================================
+
+    public synchronized boolean completato() {
+        return completato;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    // Aspetta al massimo "ms" millisecondi; true se intanto la lettura è finita
+    public synchronized boolean attendiPer(long ms) throws InterruptedException {
+        long scadenza = System.nanoTime() + ms * 1_000_000;
+        long resta = ms;
+        while (!completato && resta > 0) {
+            wait(resta);
+            resta = (scadenza - System.nanoTime()) / 1_000_000;
+        }
+        return completato;
+    }
+
+    /*
+     * METODO: attendi()
+     *
+     * COSA FA?
+     * - Aspetta la fine della lettura e ritorna il risultato
+     * - Se la lettura è fallita rilancia l'errore
+     */
+    public synchronized Risultato attendi() throws Exception {
+        while (!completato) {
+            wait();
+        }
+        if (errore != null) {
+            throw errore;
+        }
+        return risultato;
+    }
+}
@@ -0,0 +1,534 @@
+/*
+ * CATALOGO PREZZI - i prezzi dei prodotti noti, anche milioni, senza caricarli
+ *
+ * PROBLEMA:
+ * - Aggiungendo un articolo bisogna sempre scrivere il prezzo, anche per
+ *   prodotti di cui il prezzo si sa già
+ * - Un catalogo di milioni di prodotti caricato in memoria costerebbe
+ *   secondi all'avvio e centinaia di MB di heap
+ *
+ * SOLUZIONE: catalogo.csv resta su disco, con accanto un indice
+ * - catalogo.csv: una riga per prodotto, "Nome,Categoria,Prezzo"
+ *   (si può aggiungere in fondo: a parità di nome vince la riga più recente)
+ * - catalogo.csv.indice: due tabelle ordinate di numeri a 64 bit,
+ *   impronta del nome (32 bit) | posizione della riga nel file (32 bit)
+ *   e lo stesso per la categoria
+ * - Cercare = ricerca binaria nell'indice mappato in memoria + UNA lettura
+ *   della riga: O(log n), senza leggere il resto del file
+ *
+ * E LA CACHE?
+ * - Gli ultimi prodotti cercati restano in una cache LRU limitata
+ *   (LinkedHashMap in ordine di accesso): a cache calda nessun accesso al file
+ * - Trovato un prodotto, i prodotti più recenti della sua categoria
+ *   vengono letti in background: chi aggiunge "Latte" poi aggiunge "Burro"
+ *
+ * QUANDO SI COSTRUISCE L'INDICE?
+ * - Al primo uso, e di nuovo se catalogo.csv cambia (dimensione o data
+ *   diverse da quelle scritte nell'indice). Aprire un indice valido è solo
+ *   mapparlo: nessun costo all'avvio, qualunque sia la dimensione
+ *
+ * Le ricerche sono thread-safe (il precaricamento gira su un altro thread)
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class CatalogoPrezzi implements Closeable {
+
+    public static final String FILE = "catalogo.csv";
+    public static final String INTESTAZIONE = "Nome,Categoria,Prezzo";
+
+    // Prodotti tenuti in memoria; oltre, si dimenticano i meno usati
+    public static final int CAPACITA_CACHE = 4096;
+
+    // Quanti prodotti di una categoria leggere in background
+    public static final int PRECARICATI_PER_CATEGORIA = 256;
+
+    private static final int MAGIA = 0x4c535031; // "LSP1"
+
+    // magia (4) | numero (4) | dimensione del csv (8) | data del csv (8) | riservati (8)
+    private static final int INTESTAZIONE_INDICE = 32;
+
+    // L'indice si mappa tutto insieme: deve stare in 2 GB (16 byte per prodotto)
+    private static final int PRODOTTI_MASSIMI = (Integer.MAX_VALUE - INTESTAZIONE_INDICE) / 16;
+
+    // Una riga di catalogo è quasi sempre più corta
+    private static final int RIGA_TIPICA = 128;
+
+    // Segna in cache i prodotti che NON ci sono (anche questo è una risposta)
+    private static final Voce ASSENTE = new Voce("", "", 0);
+
+    /*
+     * CLASSE: Voce
+     *
+     * COSA È?
+     * - Una riga del catalogo: nome, categoria, prezzo (non cambia mai)
+     */
+    public static final class Voce {
+        private final String nome;
+        private final String categoria;
+        private final double prezzo;
+
+        Voce(String nome, String categoria, double prezzo) {
+            this.nome = nome;
+            this.categoria = categoria;
+            this.prezzo = prezzo;
+        }
+
+        public String nome() {
+            return nome;
+        }
+
+        public String categoria() {
+            return categoria;
+        }
+
+        public double prezzo() {
+            return prezzo;
+        }
+    }
+
+    private final FileChannel csv;
+    private final FileChannel canaleIndice;
+    private final MappedByteBuffer indice;
+    private final int numero;
+    private final boolean appenaIndicizzato;
+
+    // chiave (nome, categoria) → voce; categoria "" = qualsiasi categoria
+    private final Map<String, Voce> cache = new LinkedHashMap<String, Voce>(CAPACITA_CACHE * 4 / 3 + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Voce> piuVecchia) {
+            return size() > CAPACITA_CACHE;
+        }
+    };
+
+    private final Set<String> categoriePrecaricate = new HashSet<>();
+    private ExecutorService precaricamento;
+
+    private CatalogoPrezzi(FileChannel csv, FileChannel canaleIndice, MappedByteBuffer indice,
+            boolean appenaIndicizzato) {
+        this.csv = csv;
+        this.canaleIndice = canaleIndice;
+        this.indice = indice;
+        this.numero = indice.getInt(4);
+        this.appenaIndicizzato = appenaIndicizzato;
+    }
+
+    /*
+     * METODO: apri(Path file)
+     *
+     * COSA FA?
+     * - Apre catalogo.csv e mappa il suo indice
+     * - Se l'indice manca o non corrisponde più al file, lo ricostruisce
+     *   (una lettura sequenziale del catalogo, una volta sola)
+     */
+    public static CatalogoPrezzi apri(Path file) throws IOException {
+        Path fileIndice = file.resolveSibling(file.getFileName() + ".indice");
+        long dimensione = Files.size(file);
+        long data = Files.getLastModifiedTime(file).toMillis();
+        boolean ricostruito = false;
+        if (!indiceValido(fileIndice, dimensione, data)) {
+            scriviIndice(file, fileIndice, dimensione, data);
+            ricostruito = true;
+        }
+
+        FileChannel csv = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            FileChannel canaleIndice = FileChannel.open(fileIndice, StandardOpenOption.READ);
+            try {
+                MappedByteBuffer indice = canaleIndice.map(FileChannel.MapMode.READ_ONLY, 0, canaleIndice.size());
+                return new CatalogoPrezzi(csv, canaleIndice, indice, ricostruito);
+            } catch (IOException | RuntimeException e) {
+                canaleIndice.close();
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            csv.close();
+            throw e;
+        }
+    }
+
+    // false se apri() dovrà prima (ri)costruire l'indice: per avvisare chi aspetta
+    public static boolean indicizzato(Path file) throws IOException {
+        return indiceValido(file.resolveSibling(file.getFileName() + ".indice"),
+                Files.size(file), Files.getLastModifiedTime(file).toMillis());
+    }
+
+    // Quanti prodotti ci sono nel catalogo
+    public int numero() {
+        return numero;
+    }
+
+    // true se apri() ha dovuto (ri)costruire l'indice
+    public boolean appenaIndicizzato() {
+        return appenaIndicizzato;
+    }
+
+    // ============================================
+    // RICERCA
+    // ============================================
+
+    /*
+     * METODO: cerca(String nome, String categoria)
+     *
+     * COSA FA?
+     * - Ritorna la voce più recente con questo nome e questa categoria;
+     *   se la categoria non c'è (o è null), la più recente con questo nome
+     * - null se il nome non è nel catalogo
+     * - Nomi e categorie si confrontano normalizzati ("Caffè" = "caffe")
+     *
+     * COSTO: dalla cache O(1); altrimenti O(log n) nell'indice mappato
+     * + una lettura di riga per ogni prodotto con la stessa impronta
+     */
+    public Voce cerca(String nome, String categoria) throws IOException {
+        String chiave = IndiceDuplicati.chiave(nome, categoria == null ? "" : categoria);
+        synchronized (cache) {
+            Voce inCache = cache.get(chiave);
+            if (inCache != null) {
+                return inCache == ASSENTE ? null : inCache;
+            }
+        }
+
+        String nomeNormalizzato = Testo.normalizza(nome);
+        String categoriaNormalizzata = categoria == null ? "" : Testo.normalizza(categoria);
+        Voce stessaCategoria = null;
+        Voce qualsiasi = null;
+        // Posizioni crescenti: l'ultima voce trovata è la più recente
+        for (int i = primaConImpronta(0, impronta(nomeNormalizzato)); i >= 0; i = successivaConImpronta(0, i)) {
+            Voce voce = leggiVoce(posizione(voceIndice(0, i)));
+            if (voce != null && Testo.normalizza(voce.nome).equals(nomeNormalizzato)) {
+                qualsiasi = voce;
+                if (Testo.normalizza(voce.categoria).equals(categoriaNormalizzata)) {
+                    stessaCategoria = voce;
+                }
+            }
+        }
+        Voce trovata = stessaCategoria != null ? stessaCategoria : qualsiasi;
+
+        synchronized (cache) {
+            cache.put(chiave, trovata == null ? ASSENTE : trovata);
+        }
+        if (trovata != null) {
+            precaricaCategoria(trovata.categoria);
+        }
+        return trovata;
+    }
+
+    /*
+     * METODO: precaricaCategoria(String categoria)
+     *
+     * COSA FA?
+     * - In background, mette in cache i prodotti più recenti della
+     *   categoria (al massimo PRECARICATI_PER_CATEGORIA)
+     * - Una volta sola per categoria: le successive costerebbero e basta
+     * - Non sostituisce ciò che è già in cache: lì c'è già la risposta giusta
+     */
+    public void precaricaCategoria(String categoria) {
+        String categoriaNormalizzata = Testo.normalizza(categoria);
+        synchronized (categoriePrecaricate) {
+            if (!categoriePrecaricate.add(categoriaNormalizzata)) {
+                return;
+            }
+            if (precaricamento == null) {
+                precaricamento = Executors.newSingleThreadExecutor(r -> {
+                    Thread thread = new Thread(r, "catalogo-prezzi");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            precaricamento.execute(() -> {
+                try {
+                    precarica(categoriaNormalizzata);
+                } catch (Exception e) {
+                    // Era solo un aiuto: le ricerche andranno su disco
+                }
+            });
+        }
+    }
+
+    private void precarica(String categoriaNormalizzata) throws IOException {
+        int primo = primaConImpronta(1, impronta(categoriaNormalizzata));
+        if (primo < 0) {
+            return;
+        }
+        int ultimo = primo;
+        while (successivaConImpronta(1, ultimo) >= 0) {
+            ultimo++;
+        }
+
+        // Dalla più recente alla più vecchia: per ogni nome conta la prima vista
+        Map<String, Voce> trovate = new HashMap<>();
+        for (int i = ultimo; i >= primo && trovate.size() < PRECARICATI_PER_CATEGORIA; i--) {
+            Voce voce = leggiVoce(posizione(voceIndice(1, i)));
+            if (voce != null && Testo.normalizza(voce.categoria).equals(categoriaNormalizzata)) {
+                trovate.putIfAbsent(IndiceDuplicati.chiave(voce.nome, voce.categoria), voce);
+            }
+        }
+        synchronized (cache) {
+            for (Map.Entry<String, Voce> voce : trovate.entrySet()) {
+                cache.putIfAbsent(voce.getKey(), voce.getValue());
+            }
+        }
+    }
+
+    // ============================================
+    // INDICE
+    // ============================================
+
+    // Tabella 0 = nomi, tabella 1 = categorie
+    private long voceIndice(int tabella, int i) {
+        return indice.getLong(INTESTAZIONE_INDICE + (int) (((long) tabella * numero + i) * 8));
+    }
+
+    private static long posizione(long voce) {
+        return voce & 0xFFFFFFFFL;
+    }
+
+    private static int impronta(long voce) {
+        return (int) (voce >> 32);
+    }
+
+    // La prima voce della tabella con questa impronta (-1 se nessuna): ricerca binaria
+    private int primaConImpronta(int tabella, int impronta) {
+        long cercata = (long) impronta << 32;
+        int da = 0;
+        int a = numero;
+        while (da < a) {
+            int mezzo = (da + a) >>> 1;
+            if (voceIndice(tabella, mezzo) < cercata) {
+                da = mezzo + 1;
+            } else {
+                a = mezzo;
+            }
+        }
+        return da < numero && impronta(voceIndice(tabella, da)) == impronta ? da : -1;
+    }
+
+    private int successivaConImpronta(int tabella, int i) {
+        int impronta = impronta(voceIndice(tabella, i));
+        return i + 1 < numero && impronta(voceIndice(tabella, i + 1)) == impronta ? i + 1 : -1;
+    }
+
+    // Mescola i bit di hashCode(): impronte vicine per testi simili affollerebbero l'indice
+    private static int impronta(String testoNormalizzato) {
+        int h = testoNormalizzato.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean indiceValido(Path fileIndice, long dimensione, long data) {
+        try (FileChannel canale = FileChannel.open(fileIndice, StandardOpenOption.READ)) {
+            ByteBuffer intestazione = ByteBuffer.allocate(INTESTAZIONE_INDICE);
+            while (intestazione.hasRemaining() && canale.read(intestazione) >= 0) {
+                // continua a leggere
+            }
+            intestazione.flip();
+            return intestazione.remaining() == INTESTAZIONE_INDICE
+                    && intestazione.getInt(0) == MAGIA
+                    && intestazione.getLong(8) == dimensione
+                    && intestazione.getLong(16) == data
+                    && canale.size() == INTESTAZIONE_INDICE + 16L * intestazione.getInt(4);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /*
+     * METODO: scriviIndice(...)
+     *
+     * COSA FA?
+     * - Legge catalogo.csv dall'inizio alla fine ricordando dove inizia
+     *   ogni riga valida, ordina le due tabelle e le scrive nell'indice
+     * - In memoria solo due long per prodotto (16 MB per milione), mai i testi
+     */
+    private static void scriviIndice(Path file, Path fileIndice, long dimensione, long data) throws IOException {
+        if (dimensione > 0xFFFFFFFFL) {
+            throw new IOException(file + " è troppo grande per l'indice (massimo 4 GB)");
+        }
+        Tabelle tabelle = new Tabelle();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] blocco = new byte[1 << 16];
+            ByteArrayOutputStream riga = new ByteArrayOutputStream(RIGA_TIPICA);
+            long inizioBlocco = 0;
+            long inizioRiga = 0;
+            int letti;
+            while ((letti = in.read(blocco)) > 0) {
+                int da = 0;
+                for (int i = 0; i < letti; i++) {
+                    if (blocco[i] == '\n') {
+                        riga.write(blocco, da, i - da);
+                        tabelle.aggiungi(riga.toString(StandardCharsets.UTF_8), inizioRiga);
+                        riga.reset();
+                        da = i + 1;
+                        inizioRiga = inizioBlocco + da;
+                    }
+                }
+                riga.write(blocco, da, letti - da);
+                inizioBlocco += letti;
+            }
+            tabelle.aggiungi(riga.toString(StandardCharsets.UTF_8), inizioRiga);
+        }
+        if (tabelle.numero > PRODOTTI_MASSIMI) {
+            throw new IOException(file + " ha troppi prodotti per l'indice (massimo " + PRODOTTI_MASSIMI + ")");
+        }
+        long[] nomi = tabelle.nomi;
+        long[] categorie = tabelle.categorie;
+        int numero = tabelle.numero;
+
+        // Stessa impronta → in ordine di posizione: l'ultima è la più recente
+        Arrays.sort(nomi, 0, numero);
+        Arrays.sort(categorie, 0, numero);
+
+        Path temporaneo = fileIndice.resolveSibling(fileIndice.getFileName() + ".tmp");
+        try (FileChannel canale = FileChannel.open(temporaneo, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            buffer.putInt(MAGIA).putInt(numero).putLong(dimensione).putLong(data).putLong(0);
+            for (long[] tabella : new long[][] {nomi, categorie}) {
+                for (int i = 0; i < numero; i++) {
+                    if (!buffer.hasRemaining()) {
+                        scrivi(canale, buffer);
+                    }
+                    buffer.putLong(tabella[i]);
+                }
+            }
+            scrivi(canale, buffer);
+        }
+        Files.move(temporaneo, fileIndice, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Le due tabelle dell'indice mentre si costruiscono (crescono raddoppiando)
+    private static final class Tabelle {
+        long[] nomi = new long[1024];
+        long[] categorie = new long[1024];
+        int numero;
+
+        void aggiungi(String riga, long inizio) {
+            Voce voce = voce(riga);
+            if (voce == null) {
+                return;
+            }
+            if (numero == nomi.length) {
+                nomi = Arrays.copyOf(nomi, numero * 2);
+                categorie = Arrays.copyOf(categorie, numero * 2);
+            }
+            nomi[numero] = ((long) impronta(Testo.normalizza(voce.nome)) << 32) | inizio;
+            categorie[numero] = ((long) impronta(Testo.normalizza(voce.categoria)) << 32) | inizio;
+            numero++;
+        }
+    }
+
+    private static void scrivi(FileChannel canale, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            canale.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // ============================================
+    // RIGHE DEL CATALOGO
+    // ============================================
+
+    // Legge la riga che inizia in "posizione" (null se non è una voce valida)
+    private Voce leggiVoce(long posizione) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RIGA_TIPICA);
+        while (true) {
+            int letti = csv.read(buffer, posizione + buffer.position());
+            for (int i = 0; i < buffer.position(); i++) {
+                if (buffer.get(i) == '\n') {
+                    return voce(new String(buffer.array(), 0, i, StandardCharsets.UTF_8));
+                }
+            }
+            if (letti < 0) {
+                return voce(new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8));
+            }
+            if (!buffer.hasRemaining()) {
+                ByteBuffer piuGrande = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                piuGrande.put(buffer);
+                buffer = piuGrande;
+            }
+        }
+    }
+
+    // "Nome,Categoria,Prezzo" → Voce; null per intestazione e righe malformate
+    private static Voce voce(String riga) {
+        if (riga.endsWith("\r")) {
+            riga = riga.substring(0, riga.length() - 1);
+        }
+        String[] campi = riga.split(",");
+        if (campi.length < 3 || campi[0].trim().isEmpty() || campi[1].trim().isEmpty()) {
+            return null;
+        }
+        try {
+            double prezzo = Double.parseDouble(campi[2].trim());
+            return prezzo > 0 ? new Voce(campi[0].trim(), campi[1].trim(), prezzo) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /*
+     * METODO: aggiungi(Path file, List articoli)
+     *
+     * COSA FA?
+     * - Scrive in fondo a catalogo.csv nome, categoria e prezzo degli articoli
+     *   (crea il file con l'intestazione se non c'è)
+     * - Le righe nuove vincono su quelle vecchie con lo stesso nome;
+     *   l'indice verrà ricostruito alla prossima apertura
+     * - Ritorna quante righe ha scritto
+     */
+    public static int aggiungi(Path file, List<Map<String, Object>> articoli) throws IOException {
+        StringBuilder righe = new StringBuilder();
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            righe.append(INTESTAZIONE).append("\n");
+        }
+        int scritte = 0;
+        for (Map<String, Object> articolo : articoli) {
+            righe.append((String) articolo.get("nome")).append(",");
+            righe.append((String) articolo.get("categoria")).append(",");
+            righe.append((double) articolo.get("prezzo")).append("\n");
+            scritte++;
+        }
+        Files.write(file, righe.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return scritte;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (categoriePrecaricate) {
+            if (precaricamento != null) {
+                precaricamento.shutdownNow();
+            }
+        }
+        try {
+            csv.close();
+        } finally {
+            canaleIndice.close();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * COMPLETAMENTI - suggerire un testo dalle prime lettere
+ *
+ * PROBLEMA:
+ * - In "Aggiungi articolo" si scrive ogni volta "Parmigiano reggiano"
+ *   per intero, anche se lo si compra tutte le settimane
+ *
+ * SOLUZIONE: un trie con la frequenza di ogni testo
+ * - Ogni testo (normalizzato, vedi Testo) è un cammino nel trie
+ * - L'ultimo nodo del cammino sa quante volte è stato usato il testo
+ *   e come l'utente l'ha scritto l'ultima volta ("Caffè", non "caffe")
+ * - Ogni nodo ricorda anche la frequenza MASSIMA sotto di lui
+ *
+ * PERCHÉ la frequenza massima?
+ * - Per i primi k completamenti di "pa" si visitano i rami in ordine di
+ *   massimo (coda con priorità) e ci si ferma appena se ne hanno k:
+ *   i rami poco usati non vengono mai aperti
+ * - Le frequenze crescono soltanto, quindi aggiornare i massimi costa
+ *   un passaggio lungo il cammino
+ *
+ * NON thread-safe: si usa dal thread del menu
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class Completamenti {
+
+    private static final int NESSUNO = -1;
+
+    // Il trie: il nodo 0 è la radice; i figli di un nodo sono una catena di fratelli
+    private char[] lettere = new char[256];
+    private int[] primoFiglio = new int[256];
+    private int[] fratello = new int[256];
+    private int[] conteggio = new int[256];
+    private int[] massimo = new int[256];
+    private String[] forma = new String[256];
+    private int nodi;
+    private int testi;
+
+    public Completamenti() {
+        nuovoNodo('\0');
+    }
+
+    // ============================================
+    // AGGIORNAMENTO
+    // ============================================
+
+    /*
+     * METODO: aggiungi(String testo, int volte)
+     *
+     * COSA FA?
+     * - Aumenta di "volte" la frequenza del testo (lo crea se non c'è)
+     * - Aggiorna il massimo di tutti i nodi sul cammino
+     */
+    public void aggiungi(String testo, int volte) {
+        String chiave = Testo.normalizza(testo);
+        if (chiave.isEmpty() || volte <= 0) {
+            return;
+        }
+        int nodo = 0;
+        int[] cammino = new int[chiave.length() + 1];
+        for (int i = 0; i < chiave.length(); i++) {
+            cammino[i] = nodo;
+            nodo = figlio(nodo, chiave.charAt(i), true);
+        }
+        cammino[chiave.length()] = nodo;
+
+        if (conteggio[nodo] == 0) {
+            testi++;
+        }
+        conteggio[nodo] += volte;
+        forma[nodo] = testo.trim();
+        for (int passo : cammino) {
+            massimo[passo] = Math.max(massimo[passo], conteggio[nodo]);
+        }
+    }
+
+    // ============================================
+    // RICERCA
+    // ============================================
+
+    /*
+     * METODO: completa(String prefisso, int k)
+     *
+     * COSA FA?
+     * - I k testi più usati che iniziano con il prefisso
+     *   (senza badare a maiuscole e accenti), dal più usato al meno usato
+     * - Ritorna i testi come li ha scritti l'utente
+     */
+    public List<String> completa(String prefisso, int k) {
+        List<String> risultati = new ArrayList<>(k);
+        String chiave = Testo.normalizza(prefisso);
+        int nodo = 0;
+        for (int i = 0; i < chiave.length() && nodo != NESSUNO; i++) {
+            nodo = figlio(nodo, chiave.charAt(i), false);
+        }
+        if (nodo == NESSUNO || k <= 0) {
+            return risultati;
+        }
+
+        // Elementi della coda: { priorità, nodo, 1 = testo completo / 0 = ramo da aprire }
+        PriorityQueue<int[]> coda = new PriorityQueue<>((a, b) -> b[0] != a[0]
+                ? Integer.compare(b[0], a[0]) : Integer.compare(b[2], a[2]));
+        coda.add(new int[] {massimo[nodo], nodo, 0});
+        while (!coda.isEmpty() && risultati.size() < k) {
+            int[] elemento = coda.poll();
+            int corrente = elemento[1];
+            if (elemento[2] == 1) {
+                risultati.add(forma[corrente]);
+                continue;
+            }
+            if (conteggio[corrente] > 0) {
+                coda.add(new int[] {conteggio[corrente], corrente, 1});
+            }
+            for (int f = primoFiglio[corrente]; f != NESSUNO; f = fratello[f]) {
+                coda.add(new int[] {massimo[f], f, 0});
+            }
+        }
+        return risultati;
+    }
+
+    // Quante volte è stato usato il testo (0 se mai)
+    public int conteggio(String testo) {
+        String chiave = Testo.normalizza(testo);
+        int nodo = 0;
+        for (int i = 0; i < chiave.length() && nodo != NESSUNO; i++) {
+            nodo = figlio(nodo, chiave.charAt(i), false);
+        }
+        return nodo == NESSUNO ? 0 : conteggio[nodo];
+    }
+
+    public int testi() {
+        return testi;
+    }
+
+    // ============================================
+    // NODI
+    // ============================================
+
+    private int figlio(int nodo, char c, boolean crea) {
+        int figlio = primoFiglio[nodo];
+        while (figlio != NESSUNO && lettere[figlio] != c) {
+            figlio = fratello[figlio];
+        }
+        if (figlio == NESSUNO && crea) {
+            figlio = nuovoNodo(c);
+            fratello[figlio] = primoFiglio[nodo];
+            primoFiglio[nodo] = figlio;
+        }
+        return figlio;
+    }
+
+    private int nuovoNodo(char lettera) {
+        if (nodi == lettere.length) {
+            int capacita = nodi * 2;
+            lettere = Arrays.copyOf(lettere, capacita);
+            primoFiglio = Arrays.copyOf(primoFiglio, capacita);
+            fratello = Arrays.copyOf(fratello, capacita);
+            conteggio = Arrays.copyOf(conteggio, capacita);
+            massimo = Arrays.copyOf(massimo, capacita);
+            forma = Arrays.copyOf(forma, capacita);
+        }
+        lettere[nodi] = lettera;
+        primoFiglio[nodi] = NESSUNO;
+        fratello[nodi] = NESSUNO;
+        return nodi++;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * CRONOLOGIA - annulla e ripeti le modifiche alla lista
+ *
+ * COME FUNZIONA?
+ * - Ogni operazione che cambia la lista lascia un Passo:
+ *   la versione di prima, quella di dopo e cosa è stato fatto
+ *   (inizia() prima dell'operazione, concludi() dopo)
+ * - Annulla: si torna alla versione "prima" dell'ultimo passo
+ * - Ripeti: si torna alla versione "dopo" dell'ultimo passo annullato
+ *
+ * QUANTO COSTA?
+ * - Una versione di ListaPersistente è solo un riferimento alla radice:
+ *   le versioni condividono tutto tranne i nodi cambiati
+ * - 100 passi su una lista di un milione di articoli costano quanto
+ *   le modifiche fatte, non 100 copie della lista
+ *
+ * V = il tipo di versione (qui ListaPersistente.Versione)
+ *
+ * NON thread-safe: si usa dal thread del menu
+ */
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+public class Cronologia<V> {
+
+    // Oltre questo numero di passi i più vecchi vengono dimenticati
+    public static final int PASSI_MASSIMI = 100;
+
+    /*
+     * CLASSE: Passo
+     *
+     * COSA È?
+     * - Una modifica: versione prima, versione dopo, descrizione
+     */
+    public static final class Passo<V> {
+        private final V prima;
+        private final V dopo;
+        private final String descrizione;
+
+        Passo(V prima, V dopo, String descrizione) {
+            this.prima = prima;
+            this.dopo = dopo;
+            this.descrizione = descrizione;
+        }
+
+        public V prima() {
+            return prima;
+        }
+
+        public V dopo() {
+            return dopo;
+        }
+
+        public String descrizione() {
+            return descrizione;
+        }
+    }
+
+    private final Deque<Passo<V>> daAnnullare = new ArrayDeque<>();
+    private final Deque<Passo<V>> daRipetere = new ArrayDeque<>();
+
+    // La versione all'inizio dell'operazione in corso (null se nessuna)
+    private V inCorso;
+
+    // ============================================
+    // REGISTRAZIONE
+    // ============================================
+
+    // Sta per iniziare un'operazione che potrebbe cambiare la lista
+    public void inizia(V prima) {
+        inCorso = prima;
+    }
+
+    /*
+     * METODO: concludi(V dopo, String descrizione)
+     *
+     * COSA FA?
+     * - L'operazione è finita: se la lista è cambiata, ricorda il passo
+     * - Una modifica nuova cancella i passi da ripetere: da qui la
+     *   storia prende un'altra strada
+     */
+    public void concludi(V dopo, String descrizione) {
+        V prima = inCorso;
+        inCorso = null;
+        if (prima == null || prima == dopo) {
+            return;
+        }
+        daRipetere.clear();
+        daAnnullare.push(new Passo<>(prima, dopo, descrizione));
+        if (daAnnullare.size() > PASSI_MASSIMI) {
+            daAnnullare.removeLast();
+        }
+    }
+
+    /*
+     * METODO: dimentica(V attuale)
+     *
+     * COSA FA?
+     * - La lista è stata cambiata da fuori (file modificato, caricamento
+     *   all'avvio): le versioni ricordate non valgono più
+     * - Se un'operazione è in corso, la sua "prima" diventa la lista
+     *   attuale: si potrà annullare solo la parte fatta dall'utente
+     */
+    public void dimentica(V attuale) {
+        daAnnullare.clear();
+        daRipetere.clear();
+        if (inCorso != null) {
+            inCorso = attuale;
+        }
+    }
+
+    // ============================================
+    // ANNULLA / RIPETI
+    // ============================================
+
+    /*
+     * METODO: annulla(V attuale)
+     *
+     * COSA FA?
+     * - Ritorna il passo da annullare (la lista va riportata a prima())
+     * - null se non c'è niente da annullare, o se la lista non è più
+     *   quella lasciata dall'ultimo passo (allora la cronologia non vale più)
+     */
+    public Passo<V> annulla(V attuale) {
+        Passo<V> passo = daAnnullare.peek();
+        if (passo == null || passo.dopo != attuale) {
+            dimentica(attuale);
+            return null;
+        }
+        daRipetere.push(daAnnullare.pop());
+        return passo;
+    }
+
+    // Come annulla(), ma al contrario: la lista va riportata a dopo()
+    public Passo<V> ripeti(V attuale) {
+        Passo<V> passo = daRipetere.peek();
+        if (passo == null || passo.prima != attuale) {
+            daRipetere.clear();
+            return null;
+        }
+        daAnnullare.push(daRipetere.pop());
+        return passo;
+    }
+
+    public int passiDaAnnullare() {
+        return daAnnullare.size();
+    }
+
+    public int passiDaRipetere() {
+        return daRipetere.size();
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * DIGEST PREZZI - mediana e percentili di tanti prezzi, in poca memoria
+ *
+ * PROBLEMA:
+ * - "Qual è il prezzo mediano dei Latticini? E sotto quanto sta il 90%?"
+ * - La risposta esatta richiede tutti i prezzi, ordinati: memoria e
+ *   tempo che crescono con la lista (o con le migliaia di liste analizzate)
+ *
+ * SOLUZIONE: t-digest (Dunning)
+ * - I prezzi si riassumono in CENTROIDI: (media, peso) = "peso prezzi
+ *   intorno a media", tenuti in ordine di media
+ * - Vicino agli estremi (p1, p99) i centroidi sono piccoli, in mezzo più
+ *   grossi: l'errore di un percentile è piccolo proprio dove serve
+ * - Quanto possono crescere lo decide la funzione di scala k(q):
+ *   un centroide copre al massimo un'unità di k (vedi limite())
+ * - Al massimo circa COMPRESSIONE centroidi, qualunque sia il numero di prezzi
+ *
+ * COME SI AGGIORNA?
+ * - aggiungi() mette il prezzo in un buffer: costa un assegnamento
+ * - A buffer pieno si ordina SOLO il buffer e lo si fonde con i centroidi
+ *   (già in ordine): O(buffer + centroidi), mai tutti i prezzi insieme
+ *
+ * PERCHÉ "si possono unire"?
+ * - unisci() fonde i centroidi di un altro digest con i propri: ogni
+ *   thread (o ogni lista) riempie il suo digest e alla fine si uniscono,
+ *   come i Totali di AnalisiArchivio
+ *
+ * NON thread-safe: ogni thread il suo digest, poi unisci()
+ */
+
+import java.util.Arrays;
+
+public class DigestPrezzi {
+
+    // Più è alta, più centroidi e più precisione (errore tipico < 1% vicino agli estremi)
+    private static final double COMPRESSIONE = 100;
+
+    // Prezzi in attesa di fondersi; il buffer parte piccolo (molti digest quasi vuoti)
+    private static final int BUFFER_MASSIMO = 512;
+    private static final int BUFFER_INIZIALE = 16;
+
+    // Centroidi in ordine di media
+    private double[] medie = new double[0];
+    private double[] pesi = new double[0];
+    private int centroidi;
+
+    private double[] buffer = new double[BUFFER_INIZIALE];
+    private int inBuffer;
+
+    private long conteggio;
+    private double minimo = Double.POSITIVE_INFINITY;
+    private double massimo = Double.NEGATIVE_INFINITY;
+
+    // ============================================
+    // AGGIORNAMENTO
+    // ============================================
+
+    public void aggiungi(double prezzo) {
+        if (Double.isNaN(prezzo)) {
+            return;
+        }
+        if (inBuffer == buffer.length) {
+            if (buffer.length < BUFFER_MASSIMO) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            } else {
+                comprimi();
+            }
+        }
+        buffer[inBuffer++] = prezzo;
+        conteggio++;
+        minimo = Math.min(minimo, prezzo);
+        massimo = Math.max(massimo, prezzo);
+    }
+
+    /*
+     * METODO: unisci(DigestPrezzi altro)
+     *
+     * COSA FA?
+     * - Aggiunge a questo digest tutti i prezzi riassunti in "altro"
+     * - "altro" non cambia: si può unire lo stesso digest in più posti
+     */
+    public void unisci(DigestPrezzi altro) {
+        if (altro.centroidi == 0) {
+            // Pochi prezzi ancora nel buffer (es. una lista sola): basta aggiungerli
+            for (int i = 0; i < altro.inBuffer; i++) {
+                aggiungi(altro.buffer[i]);
+            }
+            return;
+        }
+        comprimi();
+
+        // Il buffer dell'altro si ordina in una copia, come centroidi di peso 1
+        double[] suoBuffer = Arrays.copyOf(altro.buffer, altro.inBuffer);
+        Arrays.sort(suoBuffer);
+        double[] unitari = new double[suoBuffer.length];
+        Arrays.fill(unitari, 1);
+        int n1 = altro.centroidi + suoBuffer.length;
+        double[] suoiMedie = new double[n1];
+        double[] suoiPesi = new double[n1];
+        fondi(altro.medie, altro.pesi, altro.centroidi, suoBuffer, unitari, suoBuffer.length, suoiMedie, suoiPesi);
+
+        int n = centroidi + n1;
+        double[] tutteMedie = new double[n];
+        double[] tuttiPesi = new double[n];
+        fondi(medie, pesi, centroidi, suoiMedie, suoiPesi, n1, tutteMedie, tuttiPesi);
+
+        conteggio += altro.conteggio;
+        minimo = Math.min(minimo, altro.minimo);
+        massimo = Math.max(massimo, altro.massimo);
+        riassumi(tutteMedie, tuttiPesi, n);
+    }
+
+    // Il buffer (ordinato) si fonde con i centroidi
+    private void comprimi() {
+        if (inBuffer == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, inBuffer);
+        double[] unitari = new double[inBuffer];
+        Arrays.fill(unitari, 1);
+        int n = centroidi + inBuffer;
+        double[] tutteMedie = new double[n];
+        double[] tuttiPesi = new double[n];
+        fondi(medie, pesi, centroidi, buffer, unitari, inBuffer, tutteMedie, tuttiPesi);
+        inBuffer = 0;
+        riassumi(tutteMedie, tuttiPesi, n);
+    }
+
+    // Fusione di due sequenze già in ordine di media (come nel merge sort)
+    private static void fondi(double[] medie1, double[] pesi1, int n1, double[] medie2, double[] pesi2, int n2,
+                              double[] medie, double[] pesi) {
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < n1 || j < n2) {
+            if (j == n2 || (i < n1 && medie1[i] <= medie2[j])) {
+                medie[k] = medie1[i];
+                pesi[k++] = pesi1[i++];
+            } else {
+                medie[k] = medie2[j];
+                pesi[k++] = pesi2[j++];
+            }
+        }
+    }
+
+    /*
+     * METODO: riassumi(...)
+     *
+     * COSA FA?
+     * - Scorre i centroidi in ordine e unisce ogni centroide al successivo
+     *   finché il gruppo resta entro un'unità di k(q); poi ne inizia un altro
+     * - Un solo passaggio: O(n)
+     */
+    private void riassumi(double[] tutteMedie, double[] tuttiPesi, int n) {
+        double totale = 0;
+        for (int i = 0; i < n; i++) {
+            totale += tuttiPesi[i];
+        }
+
+        double[] nuoveMedie = new double[n];
+        double[] nuoviPesi = new double[n];
+        int nuovi = 0;
+        double prima = 0;
+        double limite = limite(0);
+        double media = tutteMedie[0];
+        double peso = tuttiPesi[0];
+        for (int i = 1; i < n; i++) {
+            if ((prima + peso + tuttiPesi[i]) / totale <= limite) {
+                peso += tuttiPesi[i];
+                media += (tutteMedie[i] - media) * tuttiPesi[i] / peso;
+            } else {
+                nuoveMedie[nuovi] = media;
+                nuoviPesi[nuovi++] = peso;
+                prima += peso;
+                limite = limite(prima / totale);
+                media = tutteMedie[i];
+                peso = tuttiPesi[i];
+            }
+        }
+        nuoveMedie[nuovi] = media;
+        nuoviPesi[nuovi++] = peso;
+
+        medie = Arrays.copyOf(nuoveMedie, nuovi);
+        pesi = Arrays.copyOf(nuoviPesi, nuovi);
+        centroidi = nuovi;
+    }
+
+    /*
+     * Fin dove può arrivare (come frazione q) un centroide che inizia in q:
+     * un'unità della scala k(q) = COMPRESSIONE / 2π · asin(2q - 1),
+     * che è ripida agli estremi (centroidi piccoli) e piatta in mezzo
+     */
+    private static double limite(double q) {
+        double k = COMPRESSIONE / (2 * Math.PI) * Math.asin(2 * q - 1) + 1;
+        if (k >= COMPRESSIONE / 4) {
+            return 1;
+        }
+        return (Math.sin(k * 2 * Math.PI / COMPRESSIONE) + 1) / 2;
+    }
+
+    // ============================================
+    // LETTURA
+    // ============================================
+
+    /*
+     * METODO: quantile(double q)
+     *
+     * COSA FA?
+     * - Il prezzo sotto cui sta la frazione q dei prezzi: 0,5 = mediana
+     * - Interpola tra i centri dei centroidi (e minimo/massimo agli estremi)
+     * - Costa O(centroidi): non dipende da quanti prezzi sono passati
+     * - NaN se non c'è nessun prezzo
+     */
+    public double quantile(double q) {
+        if (conteggio == 0) {
+            return Double.NaN;
+        }
+        comprimi();
+        q = Math.max(0, Math.min(1, q));
+        if (centroidi == 1) {
+            return medie[0];
+        }
+
+        double posizione = q * conteggio;
+        if (posizione < pesi[0] / 2) {
+            return minimo + (medie[0] - minimo) * posizione / (pesi[0] / 2);
+        }
+        double centro = pesi[0] / 2;
+        for (int i = 0; i < centroidi - 1; i++) {
+            double prossimo = centro + (pesi[i] + pesi[i + 1]) / 2;
+            if (posizione <= prossimo) {
+                double frazione = (posizione - centro) / (prossimo - centro);
+                return medie[i] + (medie[i + 1] - medie[i]) * frazione;
+            }
+            centro = prossimo;
+        }
+        double ultimo = pesi[centroidi - 1] / 2;
+        double frazione = Math.min(1, (posizione - centro) / ultimo);
+        return medie[centroidi - 1] + (massimo - medie[centroidi - 1]) * frazione;
+    }
+
+    public long conteggio() {
+        return conteggio;
+    }
+
+    public double minimo() {
+        return conteggio == 0 ? Double.NaN : minimo;
+    }
+
+    public double massimo() {
+        return conteggio == 0 ? Double.NaN : massimo;
+    }
+}
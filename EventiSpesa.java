@@ -0,0 +1,152 @@
+/*
+ * EVENTI SPESA - eventi personalizzati per JDK Flight Recorder (JFR)
+ *
+ * COSA SONO?
+ * - "Timbri" con durata che JFR salva insieme ai suoi dati (GC, CPU, I/O)
+ * - Così un salvataggio lento in una registrazione si collega
+ *   all'operazione della lista che l'ha causato
+ *
+ * QUANTO COSTANO?
+ * - Con JFR spento: quasi niente (commit() non fa nulla, il JIT lo elimina)
+ * - Con JFR acceso: solo gli eventi sopra la soglia vengono scritti
+ *
+ * COME SI REGISTRA?
+ * - java Application --jfr                (registrazione continua, vedi sotto)
+ * - java -XX:StartFlightRecording:settings=listaspesa.jfc,filename=spesa.jfr Application
+ */
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+public class EventiSpesa {
+
+    // Configurazione JFR distribuita insieme all'applicazione
+    public static final String CONFIGURAZIONE = "listaspesa.jfc";
+
+    // File in cui viene scritta la registrazione all'uscita
+    public static final String FILE_REGISTRAZIONE = "listaspesa.jfr";
+
+    // ============================================
+    // TIPI DI EVENTO
+    // ============================================
+
+    @Name("listaspesa.Caricamento")
+    @Label("Caricamento lista")
+    @Category({"Lista della Spesa", "File"})
+    @Description("Lettura e parsing del file CSV")
+    public static class Caricamento extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Articoli")
+        public int articoli;
+
+        @Label("Byte letti")
+        @DataAmount
+        public long byteLetti;
+    }
+
+    @Name("listaspesa.Salvataggio")
+    @Label("Salvataggio lista")
+    @Category({"Lista della Spesa", "File"})
+    @Description("Serializzazione e scrittura del file CSV")
+    public static class Salvataggio extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Articoli")
+        public int articoli;
+
+        @Label("Byte scritti")
+        @DataAmount
+        public long byteScritti;
+    }
+
+    @Name("listaspesa.Ricerca")
+    @Label("Ricerca articolo")
+    @Category("Lista della Spesa")
+    public static class Ricerca extends Event {
+        @Label("Testo cercato")
+        public String testo;
+
+        @Label("Articoli esaminati")
+        public int articoli;
+
+        @Label("Risultati")
+        public int risultati;
+    }
+
+    @Name("listaspesa.Visualizzazione")
+    @Label("Visualizzazione lista")
+    @Category("Lista della Spesa")
+    public static class Visualizzazione extends Event {
+        @Label("Articoli")
+        public int articoli;
+
+        @Label("Righe stampate")
+        public int risultati;
+    }
+
+    @Name("listaspesa.Svuotamento")
+    @Label("Svuotamento lista")
+    @Category({"Lista della Spesa", "File"})
+    public static class Svuotamento extends Event {
+        @Label("File")
+        public String file;
+
+        @Label("Articoli eliminati")
+        public int articoli;
+    }
+
+    // ============================================
+    // REGISTRAZIONE CONTINUA
+    // ============================================
+
+    /*
+     * METODO: avviaRegistrazioneContinua(String destinazione)
+     *
+     * COSA FA?
+     * - Avvia una registrazione JFR "a nastro":
+     *   tiene solo gli ultimi 30 minuti, su disco
+     * - All'uscita della JVM scrive tutto nel file di destinazione
+     *
+     * PERCHÉ la configurazione listaspesa.jfc?
+     * - Abilita i nostri eventi + pochi eventi JDK utili (GC, CPU, I/O lento)
+     * - Se il file manca, usiamo la configurazione "default" del JDK
+     */
+    public static void avviaRegistrazioneContinua(String destinazione) {
+        try {
+            Path jfc = Paths.get(CONFIGURAZIONE);
+            Configuration configurazione = Files.exists(jfc)
+                    ? Configuration.create(jfc)
+                    : Configuration.getConfiguration("default");
+
+            Recording registrazione = new Recording(configurazione);
+            registrazione.setName("listaspesa");
+            registrazione.enable(Caricamento.class);
+            registrazione.enable(Salvataggio.class);
+            registrazione.enable(Ricerca.class);
+            registrazione.enable(Visualizzazione.class);
+            registrazione.enable(Svuotamento.class);
+            registrazione.setToDisk(true);
+            registrazione.setMaxAge(Duration.ofMinutes(30));
+            registrazione.setDestination(Paths.get(destinazione));
+            registrazione.setDumpOnExit(true);
+            registrazione.start();
+
+            System.out.println("● Registrazione JFR attiva (salvata in \"" + destinazione + "\" all'uscita)");
+        } catch (Exception e) {
+            System.out.println("⚠ Impossibile avviare JFR: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,597 @@
+/*
+ * FILTRO ARTICOLI - un piccolo linguaggio per scegliere gli articoli
+ *
+ * PROBLEMA:
+ * - "Cerca" conosce solo un testo libero: non si può chiedere
+ *   "i latticini sopra i 2 euro non ancora comprati"
+ *
+ * SOLUZIONE: un filtro scritto come una condizione
+ *   categoria = Latticini e prezzo > 2 e non acquistato
+ *   (nome ~ "latte" or nome ~ "yogurt") and quantita >= 2
+ *
+ * - Campi: nome, categoria (testo), prezzo, quantita, totale (prezzo × quantità),
+ *   acquistato (sì/no)
+ * - Operatori: = != < <= > >=, e "~" (o "contiene") per i testi
+ * - Logica: and/e, or/o, not/non, parentesi
+ * - I testi si confrontano normalizzati (vedi Testo): "caffè" = "CAFFE"
+ *
+ * PERCHÉ "compilato"?
+ * - Il testo si legge UNA volta e diventa un albero di Predicate già
+ *   specializzati: "prezzo > 2" diventa a -> (double) a.get("prezzo") > 2.0,
+ *   senza più guardare quale campo o quale operatore c'era scritto
+ * - Nelle "and" e nelle "or" le condizioni veloci (numeri, sì/no) vanno
+ *   prima di quelle sui testi: spesso decidono da sole
+ * - Un testo normalizzato si ricorda (cache limitata): le categorie sono
+ *   poche e si normalizzano una volta sola, non una per articolo
+ * - Con "nome = ... and categoria = ..." gli articoli candidati vengono
+ *   dall'indice dei doppioni: il filtro si prova solo su di loro (vedi
+ *   candidati()); la lista si scorre solo per le posizioni di quelli che
+ *   vanno bene, e per niente se non ce n'è nessuno
+ *
+ * NON thread-safe (per la cache): un filtro compilato si usa da un solo thread
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+public class FiltroArticoli implements Predicate<Map<String, Object>> {
+
+    // Testi normalizzati ricordati per condizione (oltre si calcolano ogni volta)
+    private static final int TESTI_IN_CACHE = 4096;
+
+    private final String testo;
+    private final Nodo radice;
+
+    // Da "nome = X and categoria = Y" in cima al filtro (null se mancano)
+    private final String nomeUguale;
+    private final String categoriaUguale;
+
+    private FiltroArticoli(String testo, Nodo radice) {
+        this.testo = testo;
+        this.radice = radice;
+        String nome = null;
+        String categoria = null;
+        for (Nodo condizione : radice instanceof Tutti ? ((Tutti) radice).figli : Collections.singletonList(radice)) {
+            if (condizione instanceof ConfrontoTesto && ((ConfrontoTesto) condizione).operatore.equals("=")) {
+                ConfrontoTesto uguale = (ConfrontoTesto) condizione;
+                if (uguale.campo.equals("nome")) {
+                    nome = uguale.valore;
+                } else {
+                    categoria = uguale.valore;
+                }
+            }
+        }
+        this.nomeUguale = nome;
+        this.categoriaUguale = categoria;
+    }
+
+    /*
+     * METODO: compila(String testo)
+     *
+     * COSA FA?
+     * - Legge il filtro e lo trasforma in un Predicate pronto all'uso
+     * - Se il testo è sbagliato lancia IllegalArgumentException con un
+     *   messaggio per l'utente (cosa non va e in che punto)
+     */
+    public static FiltroArticoli compila(String testo) {
+        Lettore lettore = new Lettore(testo);
+        Nodo radice = lettore.oppure();
+        if (lettore.corrente().tipo != Tipo.FINE) {
+            throw lettore.errore("non mi aspettavo \"" + lettore.corrente().testo + "\"");
+        }
+        return new FiltroArticoli(testo, radice);
+    }
+
+    @Override
+    public boolean test(Map<String, Object> articolo) {
+        return radice.test(articolo);
+    }
+
+    /*
+     * METODO: candidati(IndiceDuplicati indice)
+     *
+     * COSA FA?
+     * - Se il filtro chiede un nome E una categoria precisi, ritorna gli
+     *   articoli con quella chiave presi dall'indice (O(1)): il filtro va
+     *   provato solo su di loro
+     * - Altrimenti null: bisogna scorrere tutta la lista
+     */
+    public List<Map<String, Object>> candidati(IndiceDuplicati indice) {
+        if (nomeUguale == null || categoriaUguale == null) {
+            return null;
+        }
+        return indice.trovaTutti(nomeUguale, categoriaUguale);
+    }
+
+    // Come il filtro verrà eseguito, in parole (per l'utente)
+    public String piano() {
+        return (nomeUguale != null && categoriaUguale != null ? "indice dei doppioni, poi " : "tutta la lista, ")
+                + radice.descrivi();
+    }
+
+    @Override
+    public String toString() {
+        return testo;
+    }
+
+    // ============================================
+    // NODI (il filtro compilato)
+    // ============================================
+
+    /*
+     * CLASSE: Nodo
+     *
+     * COSA È?
+     * - Una condizione compilata; costo = stima relativa di quanto costa
+     *   provarla, per decidere l'ordine nelle "and" e nelle "or"
+     */
+    private abstract static class Nodo implements Predicate<Map<String, Object>> {
+        abstract int costo();
+
+        abstract String descrivi();
+    }
+
+    // Confronto su un numero o su acquistato: una lettura e un confronto
+    private static final class Veloce extends Nodo {
+        final Predicate<Map<String, Object>> prova;
+        final String descrizione;
+
+        Veloce(Predicate<Map<String, Object>> prova, String descrizione) {
+            this.prova = prova;
+            this.descrizione = descrizione;
+        }
+
+        @Override
+        public boolean test(Map<String, Object> articolo) {
+            return prova.test(articolo);
+        }
+
+        @Override
+        int costo() {
+            return 1;
+        }
+
+        @Override
+        String descrivi() {
+            return descrizione;
+        }
+    }
+
+    /*
+     * CLASSE: ConfrontoTesto
+     *
+     * COSA È?
+     * - "categoria = Latticini", "nome ~ latte": confronto tra testi normalizzati
+     * - esiti ricorda il risultato per ogni testo già visto: con poche
+     *   categorie diverse il confronto diventa una ricerca in una HashMap
+     */
+    private static final class ConfrontoTesto extends Nodo {
+        final String campo;
+        final String operatore;
+        final String valore;
+        final Map<String, Boolean> esiti = new HashMap<>();
+
+        ConfrontoTesto(String campo, String operatore, String valore) {
+            this.campo = campo;
+            this.operatore = operatore;
+            this.valore = Testo.normalizza(valore);
+        }
+
+        @Override
+        public boolean test(Map<String, Object> articolo) {
+            String testo = (String) articolo.get(campo);
+            Boolean esito = esiti.get(testo);
+            if (esito == null) {
+                String normalizzato = Testo.normalizza(testo);
+                esito = operatore.equals("~") ? normalizzato.contains(valore)
+                        : normalizzato.equals(valore) == operatore.equals("=");
+                if (esiti.size() < TESTI_IN_CACHE) {
+                    esiti.put(testo, esito);
+                }
+            }
+            return esito;
+        }
+
+        @Override
+        int costo() {
+            return 10;
+        }
+
+        @Override
+        String descrivi() {
+            return campo + " " + operatore + " \"" + valore + "\"";
+        }
+    }
+
+    private static final class Non extends Nodo {
+        final Nodo figlio;
+
+        Non(Nodo figlio) {
+            this.figlio = figlio;
+        }
+
+        @Override
+        public boolean test(Map<String, Object> articolo) {
+            return !figlio.test(articolo);
+        }
+
+        @Override
+        int costo() {
+            return figlio.costo();
+        }
+
+        @Override
+        String descrivi() {
+            return "non " + figlio.descrivi();
+        }
+    }
+
+    // "and": tutti veri; i figli sono già in ordine di costo
+    private static final class Tutti extends Nodo {
+        final List<Nodo> figli;
+        final Nodo[] ordinati;
+
+        Tutti(List<Nodo> figli) {
+            this.figli = figli;
+            this.ordinati = inOrdineDiCosto(figli);
+        }
+
+        @Override
+        public boolean test(Map<String, Object> articolo) {
+            for (Nodo figlio : ordinati) {
+                if (!figlio.test(articolo)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        int costo() {
+            return costoTotale(ordinati);
+        }
+
+        @Override
+        String descrivi() {
+            return unisci(ordinati, " e ");
+        }
+    }
+
+    // "or": almeno uno vero
+    private static final class Almeno extends Nodo {
+        final Nodo[] ordinati;
+
+        Almeno(List<Nodo> figli) {
+            this.ordinati = inOrdineDiCosto(figli);
+        }
+
+        @Override
+        public boolean test(Map<String, Object> articolo) {
+            for (Nodo figlio : ordinati) {
+                if (figlio.test(articolo)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        int costo() {
+            return costoTotale(ordinati);
+        }
+
+        @Override
+        String descrivi() {
+            return unisci(ordinati, " o ");
+        }
+    }
+
+    // Ordinamento stabile: a parità di costo resta l'ordine scritto
+    private static Nodo[] inOrdineDiCosto(List<Nodo> figli) {
+        List<Nodo> copia = new ArrayList<>(figli);
+        copia.sort(Comparator.comparingInt(Nodo::costo));
+        return copia.toArray(new Nodo[0]);
+    }
+
+    private static int costoTotale(Nodo[] nodi) {
+        int costo = 0;
+        for (Nodo nodo : nodi) {
+            costo += nodo.costo();
+        }
+        return costo;
+    }
+
+    private static String unisci(Nodo[] nodi, String separatore) {
+        StringBuilder testo = new StringBuilder("(");
+        for (int i = 0; i < nodi.length; i++) {
+            testo.append(i == 0 ? "" : separatore).append(nodi[i].descrivi());
+        }
+        return testo.append(")").toString();
+    }
+
+    // ============================================
+    // LETTURA DEL TESTO
+    // ============================================
+
+    private enum Tipo {
+        PAROLA, NUMERO, TESTO, OPERATORE, APERTA, CHIUSA, FINE
+    }
+
+    private static final class Simbolo {
+        final Tipo tipo;
+        final String testo;
+        final int posizione;
+
+        Simbolo(Tipo tipo, String testo, int posizione) {
+            this.tipo = tipo;
+            this.testo = testo;
+            this.posizione = posizione;
+        }
+
+        // Parola chiave, senza badare a maiuscole e accenti
+        boolean e(String... parole) {
+            if (tipo != Tipo.PAROLA) {
+                return false;
+            }
+            String normalizzata = Testo.normalizza(testo);
+            for (String parola : parole) {
+                if (normalizzata.equals(parola)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /*
+     * CLASSE: Lettore
+     *
+     * COSA È?
+     * - Divide il testo in simboli e lo legge con la discesa ricorsiva:
+     *   oppure → tutti → negazione → confronto, una funzione per livello
+     *   di precedenza (la "and" lega più della "or")
+     */
+    private static final class Lettore {
+        private final String testo;
+        private final List<Simbolo> simboli = new ArrayList<>();
+        private int prossimo;
+
+        Lettore(String testo) {
+            this.testo = testo;
+            dividi();
+        }
+
+        private void dividi() {
+            int i = 0;
+            while (i < testo.length()) {
+                char c = testo.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')') {
+                    simboli.add(new Simbolo(c == '(' ? Tipo.APERTA : Tipo.CHIUSA, String.valueOf(c), i));
+                    i++;
+                } else if (c == '"' || c == '\'') {
+                    int fine = testo.indexOf(c, i + 1);
+                    if (fine < 0) {
+                        throw new IllegalArgumentException("virgolette non chiuse (colonna " + (i + 1) + ")");
+                    }
+                    simboli.add(new Simbolo(Tipo.TESTO, testo.substring(i + 1, fine), i));
+                    i = fine + 1;
+                } else if ("=!<>~".indexOf(c) >= 0) {
+                    int fine = i + 1;
+                    if (fine < testo.length() && (testo.charAt(fine) == '=' || (c == '<' && testo.charAt(fine) == '>'))) {
+                        fine++;
+                    }
+                    simboli.add(new Simbolo(Tipo.OPERATORE, testo.substring(i, fine), i));
+                    i = fine;
+                } else if (Character.isDigit(c) || c == '.') {
+                    int fine = i;
+                    while (fine < testo.length() && (Character.isDigit(testo.charAt(fine))
+                            || testo.charAt(fine) == '.' || testo.charAt(fine) == ',')) {
+                        fine++;
+                    }
+                    simboli.add(new Simbolo(Tipo.NUMERO, testo.substring(i, fine), i));
+                    i = fine;
+                } else if (Character.isLetter(c)) {
+                    int fine = i;
+                    while (fine < testo.length() && Character.isLetterOrDigit(testo.charAt(fine))) {
+                        fine++;
+                    }
+                    simboli.add(new Simbolo(Tipo.PAROLA, testo.substring(i, fine), i));
+                    i = fine;
+                } else {
+                    throw new IllegalArgumentException("carattere \"" + c + "\" non valido (colonna " + (i + 1) + ")");
+                }
+            }
+            simboli.add(new Simbolo(Tipo.FINE, "fine del filtro", testo.length()));
+        }
+
+        Simbolo corrente() {
+            return simboli.get(prossimo);
+        }
+
+        private Simbolo consuma() {
+            return simboli.get(prossimo++);
+        }
+
+        IllegalArgumentException errore(String messaggio) {
+            return new IllegalArgumentException(messaggio + " (colonna " + (corrente().posizione + 1) + ")");
+        }
+
+        // oppure := tutti ("or" tutti)*
+        Nodo oppure() {
+            List<Nodo> figli = new ArrayList<>();
+            figli.add(tutti());
+            while (corrente().e("or", "o")) {
+                consuma();
+                figli.add(tutti());
+            }
+            return figli.size() == 1 ? figli.get(0) : new Almeno(figli);
+        }
+
+        // tutti := negazione ("and" negazione)*
+        private Nodo tutti() {
+            List<Nodo> figli = new ArrayList<>();
+            figli.add(negazione());
+            while (corrente().e("and", "e")) {
+                consuma();
+                figli.add(negazione());
+            }
+            return figli.size() == 1 ? figli.get(0) : new Tutti(figli);
+        }
+
+        // negazione := "not" negazione | "(" oppure ")" | confronto
+        private Nodo negazione() {
+            if (corrente().e("not", "non")) {
+                consuma();
+                return new Non(negazione());
+            }
+            if (corrente().tipo == Tipo.APERTA) {
+                consuma();
+                Nodo dentro = oppure();
+                if (corrente().tipo != Tipo.CHIUSA) {
+                    throw errore("manca \")\"");
+                }
+                consuma();
+                return dentro;
+            }
+            return confronto();
+        }
+
+        // confronto := campo operatore valore | "acquistato"
+        private Nodo confronto() {
+            Simbolo simbolo = corrente();
+            if (simbolo.tipo != Tipo.PAROLA) {
+                throw errore("mi aspettavo un campo (nome, categoria, prezzo, quantita, totale, acquistato), non \""
+                        + simbolo.testo + "\"");
+            }
+            consuma();
+            String campo = Testo.normalizza(simbolo.testo);
+            switch (campo) {
+                case "acquistato":
+                    return acquistato();
+                case "nome":
+                case "categoria":
+                    return testo(campo);
+                case "prezzo":
+                case "quantita":
+                case "totale":
+                    return numero(campo);
+                default:
+                    throw new IllegalArgumentException("campo sconosciuto \"" + simbolo.testo + "\" (colonna "
+                            + (simbolo.posizione + 1) + ")");
+            }
+        }
+
+        // "acquistato" da solo, oppure "acquistato = sì/no"
+        private Nodo acquistato() {
+            boolean atteso = true;
+            if (corrente().tipo == Tipo.OPERATORE) {
+                String operatore = consuma().testo;
+                if (!operatore.equals("=") && !operatore.equals("==") && !operatore.equals("!=")
+                        && !operatore.equals("<>")) {
+                    throw errore("\"acquistato\" si confronta solo con = o !=");
+                }
+                Simbolo valore = consuma();
+                if (valore.e("true", "si", "vero")) {
+                    atteso = true;
+                } else if (valore.e("false", "no", "falso")) {
+                    atteso = false;
+                } else {
+                    throw new IllegalArgumentException("\"acquistato\" vuole sì o no, non \"" + valore.testo
+                            + "\" (colonna " + (valore.posizione + 1) + ")");
+                }
+                atteso = atteso == (operatore.equals("=") || operatore.equals("=="));
+            }
+            Predicate<Map<String, Object>> prova = atteso
+                    ? articolo -> (boolean) articolo.get("acquistato")
+                    : articolo -> !(boolean) articolo.get("acquistato");
+            return new Veloce(prova, atteso ? "acquistato" : "non acquistato");
+        }
+
+        private Nodo testo(String campo) {
+            Simbolo operatore = consuma();
+            String simbolo = operatore.tipo == Tipo.OPERATORE ? operatore.testo
+                    : operatore.e("contiene") ? "~" : null;
+            if (simbolo == null || !(simbolo.equals("=") || simbolo.equals("==") || simbolo.equals("!=")
+                    || simbolo.equals("<>") || simbolo.equals("~"))) {
+                throw new IllegalArgumentException("\"" + campo + "\" si confronta con =, != o ~ (colonna "
+                        + (operatore.posizione + 1) + ")");
+            }
+            Simbolo valore = consuma();
+            if (valore.tipo != Tipo.TESTO && valore.tipo != Tipo.PAROLA && valore.tipo != Tipo.NUMERO) {
+                throw new IllegalArgumentException("manca il testo da confrontare con \"" + campo + "\" (colonna "
+                        + (valore.posizione + 1) + ")");
+            }
+            String normalizzato = simbolo.equals("==") ? "=" : simbolo.equals("<>") ? "!=" : simbolo;
+            return new ConfrontoTesto(campo, normalizzato, valore.testo);
+        }
+
+        /*
+         * METODO: numero(String campo)
+         *
+         * COSA FA?
+         * - Compila "prezzo > 2" in una lambda che legge il campo e confronta
+         *   con la costante: campo e operatore si scelgono qui, una volta sola
+         */
+        private Nodo numero(String campo) {
+            Simbolo operatore = consuma();
+            if (operatore.tipo != Tipo.OPERATORE || operatore.testo.equals("~")) {
+                throw new IllegalArgumentException("\"" + campo + "\" vuole un confronto (= != < <= > >=) (colonna "
+                        + (operatore.posizione + 1) + ")");
+            }
+            Simbolo valore = consuma();
+            if (valore.tipo == Tipo.FINE) {
+                throw new IllegalArgumentException("manca il numero dopo \"" + campo + " " + operatore.testo + "\"");
+            }
+            double soglia;
+            try {
+                soglia = Double.parseDouble(valore.testo.replace(',', '.'));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("\"" + valore.testo + "\" non è un numero (colonna "
+                        + (valore.posizione + 1) + ")");
+            }
+            String descrizione = campo + " " + operatore.testo + " " + soglia;
+            switch (campo) {
+                case "prezzo":
+                    return new Veloce(confronta(operatore, soglia, articolo -> (double) articolo.get("prezzo")),
+                            descrizione);
+                case "quantita":
+                    return new Veloce(confronta(operatore, soglia, articolo -> (int) articolo.get("quantita")),
+                            descrizione);
+                default:
+                    return new Veloce(confronta(operatore, soglia,
+                            articolo -> (double) articolo.get("prezzo") * (int) articolo.get("quantita")),
+                            descrizione);
+            }
+        }
+
+        private Predicate<Map<String, Object>> confronta(Simbolo operatore, double soglia,
+                java.util.function.ToDoubleFunction<Map<String, Object>> campo) {
+            switch (operatore.testo) {
+                case "=":
+                case "==":
+                    return articolo -> campo.applyAsDouble(articolo) == soglia;
+                case "!=":
+                case "<>":
+                    return articolo -> campo.applyAsDouble(articolo) != soglia;
+                case "<":
+                    return articolo -> campo.applyAsDouble(articolo) < soglia;
+                case "<=":
+                    return articolo -> campo.applyAsDouble(articolo) <= soglia;
+                case ">":
+                    return articolo -> campo.applyAsDouble(articolo) > soglia;
+                case ">=":
+                    return articolo -> campo.applyAsDouble(articolo) >= soglia;
+                default:
+                    throw new IllegalArgumentException("operatore \"" + operatore.testo + "\" sconosciuto (colonna "
+                            + (operatore.posizione + 1) + ")");
+            }
+        }
+    }
+}
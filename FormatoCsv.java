@@ -0,0 +1,118 @@
+/*
+ * FORMATO CSV - come un articolo diventa una riga di spesa.csv (e viceversa)
+ *
+ * PERCHÉ una classe a parte?
+ * - Salvataggio, caricamento e precaricamento usano lo STESSO formato
+ * - Se il formato cambia, si cambia in un posto solo
+ *
+ * FORMATO:
+ *   Nome,Categoria,Prezzo,Quantita,Acquistato,Id
+ *   Pane,Panetteria,1.5,2,false,3k9x0q2m1v7a
+ *
+ * ID
+ * - Ogni articolo ha un identificativo casuale che non cambia mai
+ * - Serve a riconoscere lo STESSO articolo su dispositivi diversi
+ *   (vedi ReplicaCrdt)
+ * - I file vecchi senza colonna Id si leggono lo stesso:
+ *   gli articoli ricevono un id nuovo
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class FormatoCsv {
+
+    // File in cui la lista viene salvata (directory corrente)
+    public static final String FILE = "spesa.csv";
+
+    public static final String INTESTAZIONE = "Nome,Categoria,Prezzo,Quantita,Acquistato,Id";
+
+    /*
+     * METODO: nuovoId()
+     *
+     * COSA FA?
+     * - Genera un id casuale a 64 bit, scritto in base 36 (es. "3k9x0q2m1v7a")
+     * - Con 64 bit casuali due dispositivi non generano mai lo stesso id
+     */
+    public static String nuovoId() {
+        return Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36);
+    }
+
+    /*
+     * METODO: creaArticolo(...)
+     *
+     * COSA FA?
+     * - Crea la mappa di un articolo con le chiavi standard
+     *   ("id", "nome", "categoria", "prezzo", "quantita", "acquistato")
+     */
+    public static Map<String, Object> creaArticolo(String id, String nome, String categoria, double prezzo,
+                                                   int quantita, boolean acquistato) {
+        Map<String, Object> articolo = new HashMap<>();
+        articolo.put("id", id);
+        articolo.put("nome", nome);
+        articolo.put("categoria", categoria);
+        articolo.put("prezzo", prezzo);
+        articolo.put("quantita", quantita);
+        articolo.put("acquistato", acquistato);
+        return articolo;
+    }
+
+    /*
+     * METODO: leggiRiga(String linea)
+     *
+     * COSA FA?
+     * - Trasforma una riga CSV in un articolo
+     * - Lancia un'eccezione se la riga è malformata
+     *   (campi mancanti, numeri non validi)
+     */
+    public static Map<String, Object> leggiRiga(String linea) {
+        String[] campi = linea.split(",");
+
+        String nome = campi[0];
+        String categoria = campi[1];
+        double prezzo = Double.parseDouble(campi[2]);
+        int quantita = Integer.parseInt(campi[3]);
+        boolean acquistato = Boolean.parseBoolean(campi[4]);
+        String id = campi.length > 5 && !campi[5].isEmpty() ? campi[5] : nuovoId();
+
+        return creaArticolo(id, nome, categoria, prezzo, quantita, acquistato);
+    }
+
+    /*
+     * METODO: formatoVecchio(String intestazione)
+     *
+     * COSA FA?
+     * - true se il file non ha la colonna Id: gli id appena generati
+     *   vanno salvati, altrimenti cambierebbero a ogni caricamento
+     */
+    public static boolean formatoVecchio(String intestazione) {
+        return !INTESTAZIONE.equals(intestazione);
+    }
+
+    public static void scriviRiga(StringBuilder csv, Map<String, Object> articolo) {
+        csv.append((String) articolo.get("nome")).append(",");
+        csv.append((String) articolo.get("categoria")).append(",");
+        csv.append((double) articolo.get("prezzo")).append(",");
+        csv.append((int) articolo.get("quantita")).append(",");
+        csv.append((boolean) articolo.get("acquistato")).append(",");
+        csv.append((String) articolo.get("id")).append("\n");
+    }
+
+    /*
+     * METODO: formatta(List articoli)
+     *
+     * COSA FA?
+     * - Ritorna il contenuto completo del file (intestazione + righe) in UTF-8
+     */
+    public static byte[] formatta(List<Map<String, Object>> articoli) {
+        StringBuilder csv = new StringBuilder();
+        csv.append(INTESTAZIONE).append("\n");
+        for (Map<String, Object> articolo : articoli) {
+            scriviRiga(csv, articolo);
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
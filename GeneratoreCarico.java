@@ -0,0 +1,417 @@
+/*
+ * GENERATORE CARICO - liste e sequenze di comandi finte ma realistiche
+ *
+ * A COSA SERVE?
+ * - A provare l'applicazione con liste grandi come quelle vere
+ *   (o molto più grandi) senza doverle scrivere a mano
+ * - A ripetere ESATTAMENTE la stessa prova: stesso seme = stessi file
+ *
+ * COSA PRODUCE?
+ * - spesa.csv: N articoli, con le categorie distribuite secondo i pesi
+ *   richiesti e i nomi più comuni che compaiono più spesso (Zipf)
+ * - comandi.txt: le righe che un utente scriverebbe nel menu
+ *   (aggiungi, marca, cerca, rimuovi, visualizza, totale, salva),
+ *   mescolate secondo i pesi richiesti
+ *
+ * COME FA A SCEGLIERE NUMERI DI ARTICOLO VALIDI?
+ * - Simula la lista mentre scrive i comandi: aggiungere un articolo già
+ *   presente lo unisce (come fa l'applicazione), rimuovere sposta i successivi
+ * - La lista simulata tiene solo il numero della chiave (nome, categoria)
+ *   di ogni articolo, in una ListaPersistente: rimuovere costa O(log n)
+ *
+ * OPZIONI (tutte facoltative):
+ *   --seme=42                       stesso seme = stessi file
+ *   --articoli=10000                articoli in spesa.csv
+ *   --comandi=5000                  comandi in comandi.txt
+ *   --categorie=Frutta:30,Latte:10  pesi delle categorie
+ *   --mix=aggiungi:40,marca:20,...  pesi dei comandi
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+public class GeneratoreCarico {
+
+    public static final String FILE_COMANDI = "comandi.txt";
+
+    // I comandi che si possono generare, con il numero del menu principale
+    public static final Map<String, Integer> VOCI_MENU = new LinkedHashMap<>();
+
+    static {
+        VOCI_MENU.put("aggiungi", 1);
+        VOCI_MENU.put("visualizza", 2);
+        VOCI_MENU.put("rimuovi", 3);
+        VOCI_MENU.put("cerca", 4);
+        VOCI_MENU.put("marca", 5);
+        VOCI_MENU.put("totale", 6);
+        VOCI_MENU.put("salva", 7);
+    }
+
+    // Nomi tipici per categoria, dal più comprato al meno comprato
+    private static final Map<String, String[]> NOMI = new LinkedHashMap<>();
+
+    static {
+        NOMI.put("Frutta e verdura", new String[] {"Mele", "Banane", "Pomodori", "Insalata", "Patate",
+                "Carote", "Zucchine", "Arance", "Limoni", "Cipolle", "Peperoni", "Fragole"});
+        NOMI.put("Latticini", new String[] {"Latte", "Yogurt", "Mozzarella", "Parmigiano", "Burro",
+                "Ricotta", "Stracchino", "Panna"});
+        NOMI.put("Panetteria", new String[] {"Pane", "Grissini", "Focaccia", "Fette biscottate", "Piadine"});
+        NOMI.put("Carne e pesce", new String[] {"Petto di pollo", "Macinato", "Prosciutto cotto", "Salmone",
+                "Tonno", "Salsiccia", "Bresaola"});
+        NOMI.put("Dispensa", new String[] {"Pasta", "Riso", "Passata", "Olio", "Caffè", "Biscotti",
+                "Zucchero", "Farina", "Legumi", "Marmellata"});
+        NOMI.put("Bevande", new String[] {"Acqua", "Birra", "Vino", "Succo", "Aranciata"});
+        NOMI.put("Surgelati", new String[] {"Piselli", "Spinaci", "Bastoncini", "Gelato", "Pizza surgelata"});
+        NOMI.put("Pulizia", new String[] {"Detersivo", "Carta igienica", "Spugne", "Sacchetti", "Ammorbidente"});
+        NOMI.put("Igiene", new String[] {"Dentifricio", "Shampoo", "Sapone", "Deodorante"});
+    }
+
+    // "Mele bio", "Pasta integrale"...: più varietà, come nelle liste vere
+    private static final String[] VARIANTI = {"bio", "integrale", "grande", "piccolo", "in offerta",
+            "confezione famiglia", "senza lattosio", "della casa", "al naturale", "extra"};
+
+    /*
+     * CLASSE: Configurazione
+     *
+     * COSA È?
+     * - Dimensioni, pesi e seme di una generazione
+     * - leggi() capisce le opzioni "--chiave=valore"; quello che non viene
+     *   indicato resta com'è (valori predefiniti)
+     */
+    public static final class Configurazione {
+        long seme = 42;
+        int articoli = 10_000;
+        int comandi = 5_000;
+        Map<String, Integer> categorie = new LinkedHashMap<>();
+        Map<String, Integer> mix = new LinkedHashMap<>();
+
+        public Configurazione() {
+            categorie.put("Frutta e verdura", 25);
+            categorie.put("Latticini", 15);
+            categorie.put("Panetteria", 10);
+            categorie.put("Carne e pesce", 12);
+            categorie.put("Dispensa", 18);
+            categorie.put("Bevande", 8);
+            categorie.put("Surgelati", 5);
+            categorie.put("Pulizia", 4);
+            categorie.put("Igiene", 3);
+            mix.put("aggiungi", 35);
+            mix.put("marca", 25);
+            mix.put("cerca", 20);
+            mix.put("rimuovi", 10);
+            mix.put("visualizza", 4);
+            mix.put("totale", 4);
+            mix.put("salva", 2);
+        }
+
+        // Ritorna true se l'opzione era sua (le altre sono del chiamante)
+        public boolean leggi(String argomento) {
+            if (argomento.startsWith("--seme=")) {
+                seme = Long.parseLong(argomento.substring("--seme=".length()));
+            } else if (argomento.startsWith("--articoli=")) {
+                articoli = Integer.parseInt(argomento.substring("--articoli=".length()));
+            } else if (argomento.startsWith("--comandi=")) {
+                comandi = Integer.parseInt(argomento.substring("--comandi=".length()));
+            } else if (argomento.startsWith("--categorie=")) {
+                categorie = pesi(argomento.substring("--categorie=".length()));
+            } else if (argomento.startsWith("--mix=")) {
+                mix = pesi(argomento.substring("--mix=".length()));
+                for (String comando : mix.keySet()) {
+                    if (!VOCI_MENU.containsKey(comando)) {
+                        throw new IllegalArgumentException("comando sconosciuto: " + comando
+                                + " (" + String.join(", ", VOCI_MENU.keySet()) + ")");
+                    }
+                }
+            } else {
+                return false;
+            }
+            if (articoli < 0 || comandi < 0) {
+                throw new IllegalArgumentException("le dimensioni non possono essere negative");
+            }
+            return true;
+        }
+
+        // "Frutta:30,Latte:10" → {Frutta=30, Latte=10}
+        private static Map<String, Integer> pesi(String testo) {
+            Map<String, Integer> pesi = new LinkedHashMap<>();
+            for (String voce : testo.split(",")) {
+                int separatore = voce.lastIndexOf(':');
+                if (separatore <= 0) {
+                    throw new IllegalArgumentException("peso mancante in \"" + voce + "\" (nome:peso)");
+                }
+                int peso = Integer.parseInt(voce.substring(separatore + 1).trim());
+                if (peso < 0) {
+                    throw new IllegalArgumentException("peso negativo in \"" + voce + "\"");
+                }
+                pesi.put(voce.substring(0, separatore).trim(), peso);
+            }
+            if (pesi.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+                throw new IllegalArgumentException("almeno un peso deve essere positivo");
+            }
+            return pesi;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("seme %d, %d articoli, %d comandi, categorie %s, mix %s",
+                    seme, articoli, comandi, categorie, mix);
+        }
+    }
+
+    private final Configurazione configurazione;
+    private final SplittableRandom casuale;
+
+    // Chiavi (nome, categoria) già viste → numero; la lista simulata tiene i numeri
+    private final Map<String, Integer> numeroChiave = new HashMap<>();
+
+    // Per ogni chiave: quanti articoli con quella chiave ci sono nella lista simulata
+    private final List<int[]> presenti = new ArrayList<>();
+    private final ListaPersistente<Integer> lista = new ListaPersistente<>();
+
+    public GeneratoreCarico(Configurazione configurazione) {
+        this.configurazione = configurazione;
+        this.casuale = new SplittableRandom(configurazione.seme);
+    }
+
+    // ============================================
+    // GENERAZIONE
+    // ============================================
+
+    /*
+     * METODO: scriviLista(Path file)
+     *
+     * COSA FA?
+     * - Scrive spesa.csv con configurazione.articoli articoli
+     * - Scrive a pezzi: anche con milioni di articoli la memoria resta poca
+     * - Ricorda l'ordine degli articoli per scriviComandi()
+     */
+    public void scriviLista(Path file) throws IOException {
+        List<Integer> numeri = new ArrayList<>(configurazione.articoli);
+        try (Writer uscita = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            StringBuilder righe = new StringBuilder();
+            righe.append(FormatoCsv.INTESTAZIONE).append('\n');
+            for (int i = 0; i < configurazione.articoli; i++) {
+                String categoria = scegli(configurazione.categorie);
+                String nome = nome(categoria);
+                Map<String, Object> articolo = FormatoCsv.creaArticolo(
+                        Long.toUnsignedString(casuale.nextLong(), 36), nome, categoria,
+                        prezzo(nome), quantita(), casuale.nextInt(100) < 30);
+                FormatoCsv.scriviRiga(righe, articolo);
+                int numero = registra(nome, categoria);
+                presenti.get(numero)[0]++;
+                numeri.add(numero);
+                if (righe.length() > 1 << 16) {
+                    uscita.write(righe.toString());
+                    righe.setLength(0);
+                }
+            }
+            uscita.write(righe.toString());
+        }
+        lista.clear();
+        lista.addAll(numeri);
+    }
+
+    /*
+     * METODO: scriviComandi(Path file)
+     *
+     * COSA FA?
+     * - Scrive configurazione.comandi comandi del menu, uno dopo l'altro,
+     *   come li digiterebbe un utente
+     * - Con la lista vuota, marca e rimuovi diventano "aggiungi"
+     * - Ritorna quanti comandi di ogni tipo ha scritto
+     */
+    public Map<String, Integer> scriviComandi(Path file) throws IOException {
+        Map<String, Integer> scritti = new LinkedHashMap<>();
+        try (BufferedWriter uscita = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < configurazione.comandi; i++) {
+                String comando = scegli(configurazione.mix);
+                if (lista.isEmpty() && (comando.equals("marca") || comando.equals("rimuovi"))) {
+                    comando = "aggiungi";
+                }
+                uscita.write(VOCI_MENU.get(comando) + "\n");
+                scriviDettagli(comando, uscita);
+                scritti.merge(comando, 1, Integer::sum);
+            }
+        }
+        return scritti;
+    }
+
+    private void scriviDettagli(String comando, Writer uscita) throws IOException {
+        switch (comando) {
+            case "aggiungi": {
+                String categoria = scegli(configurazione.categorie);
+                String nome = nome(categoria);
+                uscita.write(nome + "\n" + categoria + "\n"
+                        + String.format(Locale.ROOT, "%.2f", prezzo(nome)) + "\n" + quantita() + "\n");
+
+                // Come l'applicazione: un articolo già presente si unisce, non si aggiunge
+                int numero = registra(nome, categoria);
+                if (presenti.get(numero)[0]++ == 0) {
+                    lista.add(numero);
+                }
+                break;
+            }
+            case "rimuovi": {
+                int posizione = casuale.nextInt(lista.size());
+                presenti.get(lista.remove(posizione))[0]--;
+                uscita.write((posizione + 1) + "\n");
+                break;
+            }
+            case "marca":
+                uscita.write((casuale.nextInt(lista.size()) + 1) + "\n");
+                break;
+            case "cerca":
+                uscita.write(ricerca() + "\n");
+                break;
+            case "visualizza":
+                // Oltre la prima pagina la lista chiede se continuare: "q" = basta
+                if (lista.size() > 20) {
+                    uscita.write("q\n");
+                }
+                break;
+            default:
+                // totale, salva: nessuna domanda
+                break;
+        }
+    }
+
+    // ============================================
+    // SCELTE CASUALI
+    // ============================================
+
+    // Una chiave a caso, con probabilità proporzionale al peso
+    private String scegli(Map<String, Integer> pesi) {
+        int totale = 0;
+        for (int peso : pesi.values()) {
+            totale += peso;
+        }
+        int estratto = casuale.nextInt(totale);
+        for (Map.Entry<String, Integer> voce : pesi.entrySet()) {
+            estratto -= voce.getValue();
+            if (estratto < 0) {
+                return voce.getKey();
+            }
+        }
+        throw new IllegalStateException("pesi vuoti");
+    }
+
+    // Il primo nome è il più comune (Zipf: il k-esimo compare ~1/k volte)
+    private String nome(String categoria) {
+        String[] nomi = NOMI.get(categoria);
+        if (nomi == null) {
+            nomi = new String[] {categoria + " articolo"};
+        }
+        double soglia = casuale.nextDouble() * armonico(nomi.length);
+        int k = 0;
+        double somma = 1;
+        while (somma < soglia && k < nomi.length - 1) {
+            k++;
+            somma += 1.0 / (k + 1);
+        }
+        String nome = nomi[k];
+        return casuale.nextInt(100) < 40 ? nome + " " + VARIANTI[casuale.nextInt(VARIANTI.length)] : nome;
+    }
+
+    private static double armonico(int n) {
+        double somma = 0;
+        for (int k = 1; k <= n; k++) {
+            somma += 1.0 / k;
+        }
+        return somma;
+    }
+
+    // Ogni nome ha il suo prezzo tipico (dal nome, non dal caso), ±20%
+    private double prezzo(String nome) {
+        double tipico = 0.5 + Math.floorMod(nome.hashCode(), 1500) / 100.0;
+        return Math.round(tipico * (0.8 + casuale.nextDouble() * 0.4) * 100) / 100.0;
+    }
+
+    // Quasi sempre 1-3 pezzi, ogni tanto di più
+    private int quantita() {
+        int quantita = 1;
+        while (quantita < 12 && casuale.nextInt(100) < 35) {
+            quantita++;
+        }
+        return quantita;
+    }
+
+    /*
+     * METODO: ricerca()
+     *
+     * COSA FA?
+     * - Il testo di una ricerca: di solito l'inizio di un nome comune,
+     *   a volte con un errore di battitura, a volte una categoria
+     */
+    private String ricerca() {
+        String categoria = scegli(configurazione.categorie);
+        int tipo = casuale.nextInt(100);
+        if (tipo < 10) {
+            return categoria.toLowerCase(Locale.ROOT);
+        }
+        String nome = nome(categoria).split(" ")[0].toLowerCase(Locale.ROOT);
+        if (tipo < 30 && nome.length() > 3) {
+            // Due lettere scambiate: "mele" → "mlee"
+            int i = 1 + casuale.nextInt(nome.length() - 2);
+            char[] lettere = nome.toCharArray();
+            char c = lettere[i];
+            lettere[i] = lettere[i + 1];
+            lettere[i + 1] = c;
+            return new String(lettere);
+        }
+        return nome;
+    }
+
+    // Il numero della chiave (nome, categoria), nuovo se non l'abbiamo mai vista
+    private int registra(String nome, String categoria) {
+        String chiave = IndiceDuplicati.chiave(nome, categoria);
+        Integer numero = numeroChiave.get(chiave);
+        if (numero == null) {
+            numero = presenti.size();
+            numeroChiave.put(chiave, numero);
+            presenti.add(new int[1]);
+        }
+        return numero;
+    }
+
+    // ============================================
+    // MAIN (solo generazione)
+    // ============================================
+
+    /*
+     * Uso: java GeneratoreCarico [opzioni]
+     * - Scrive spesa.csv e comandi.txt nella cartella corrente; poi:
+     *   java Application < comandi.txt
+     *   oppure java SimulazioneCarico (genera e misura in un colpo solo)
+     */
+    public static void main(String[] args) throws IOException {
+        Configurazione configurazione = new Configurazione();
+        for (String argomento : args) {
+            try {
+                if (!configurazione.leggi(argomento)) {
+                    System.out.println("❌ Opzione sconosciuta: " + argomento);
+                    return;
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println("❌ Opzione non valida: " + argomento + " (" + e.getMessage() + ")");
+                return;
+            }
+        }
+        GeneratoreCarico generatore = new GeneratoreCarico(configurazione);
+        generatore.scriviLista(Paths.get(FormatoCsv.FILE));
+        Map<String, Integer> comandi = generatore.scriviComandi(Paths.get(FILE_COMANDI));
+        System.out.println("✓ " + configurazione);
+        System.out.println("✓ \"" + FormatoCsv.FILE + "\" e \"" + FILE_COMANDI + "\" scritti: " + comandi);
+    }
+}
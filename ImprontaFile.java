@@ -0,0 +1,190 @@
+/*
+ * IMPRONTA FILE - com'era spesa.csv l'ultima volta che l'abbiamo letto o scritto
+ *
+ * COSA CONTIENE?
+ * - dimensione e data di modifica del file
+ * - gli ultimi 4 KB (la "coda"): servono a capire se un file più lungo
+ *   è lo stesso file con righe AGGIUNTE in fondo
+ * - per ogni riga un hash a 64 bit, non il testo (8 byte per riga)
+ *
+ * HASH "GREZZO" E HASH "CANONICO"
+ * - grezzo = hash del testo della riga così com'è nel file
+ * - canonico = hash della riga come la scriverebbe FormatoCsv
+ *   (es. "1.50" nel file diventa "1.5")
+ * - Quando una riga sparisce dal file, con il canonico ritroviamo
+ *   l'articolo corrispondente in memoria
+ * - Di solito sono uguali: teniamo da parte solo quelli diversi
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ImprontaFile {
+
+    public static final int DIMENSIONE_CODA = 4096;
+
+    // Canonico di una riga che non è un articolo valido
+    public static final long NESSUN_ARTICOLO = 0;
+
+    // Hash grezzi delle righe articolo, nell'ordine del file
+    private long[] righe = new long[64];
+    private int numeroRighe;
+
+    // Solo le righe il cui canonico è diverso dal grezzo
+    private final Map<Long, Long> canonici = new HashMap<>();
+
+    private long dimensione;
+    private long modifica;
+
+    // Ultime righe (in byte, con "\n"), quanto basta per 4 KB di coda
+    private final ArrayDeque<byte[]> ultimeRighe = new ArrayDeque<>();
+    private int byteUltimeRighe;
+
+    /*
+     * METODO: di(byte[] contenuto)
+     *
+     * COSA FA?
+     * - Impronta di un CSV scritto da noi (FormatoCsv.formatta)
+     * - Qui grezzo e canonico coincidono: niente parsing
+     */
+    public static ImprontaFile di(byte[] contenuto) {
+        ImprontaFile impronta = new ImprontaFile();
+        String[] linee = new String(contenuto, StandardCharsets.UTF_8).split("\n");
+        impronta.aggiungiIntestazione(linee[0]);
+        for (int i = 1; i < linee.length; i++) {
+            long grezzo = hash(linee[i]);
+            impronta.aggiungi(linee[i], grezzo, grezzo);
+        }
+        return impronta;
+    }
+
+    // ============================================
+    // HASH
+    // ============================================
+
+    /*
+     * METODO: hash(CharSequence testo)
+     *
+     * COSA FA?
+     * - FNV-1a a 64 bit sui caratteri del testo
+     * - 64 bit: collisioni praticamente impossibili anche con milioni di righe
+     */
+    public static long hash(CharSequence testo) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < testo.length(); i++) {
+            h ^= testo.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    public static long hashCanonico(Map<String, Object> articolo) {
+        StringBuilder riga = new StringBuilder();
+        FormatoCsv.scriviRiga(riga, articolo);
+        riga.setLength(riga.length() - 1);
+        return hash(riga);
+    }
+
+    // ============================================
+    // COSTRUZIONE
+    // ============================================
+
+    /*
+     * METODO: aggiungiRiga(String riga, long canonico)
+     *
+     * COSA FA?
+     * - Registra una riga articolo del file (senza "\n")
+     * - canonico: hashCanonico() dell'articolo letto dalla riga,
+     *   o NESSUN_ARTICOLO se la riga non è valida
+     */
+    public void aggiungiRiga(String riga, long canonico) {
+        aggiungi(riga, hash(riga), canonico);
+    }
+
+    void aggiungi(String riga, long grezzo, long canonico) {
+        if (numeroRighe == righe.length) {
+            righe = Arrays.copyOf(righe, numeroRighe * 2);
+        }
+        righe[numeroRighe++] = grezzo;
+        if (canonico != grezzo) {
+            canonici.put(grezzo, canonico);
+        }
+        aggiungiIntestazione(riga);
+    }
+
+    // L'intestazione conta per dimensione e coda, ma non è un articolo
+    public void aggiungiIntestazione(String riga) {
+        byte[] byteRiga = (riga + "\n").getBytes(StandardCharsets.UTF_8);
+        dimensione += byteRiga.length;
+        ultimeRighe.addLast(byteRiga);
+        byteUltimeRighe += byteRiga.length;
+        while (byteUltimeRighe - ultimeRighe.peekFirst().length >= DIMENSIONE_CODA) {
+            byteUltimeRighe -= ultimeRighe.removeFirst().length;
+        }
+    }
+
+    public void impostaModifica(long modifica) {
+        this.modifica = modifica;
+    }
+
+    /*
+     * La dimensione ricostruita dalle righe vale solo per file con "\n";
+     * quando conosciamo quella vera (es. dopo una lettura in coda) la usiamo
+     */
+    void impostaDimensione(long dimensione) {
+        this.dimensione = dimensione;
+    }
+
+    // ============================================
+    // LETTURA
+    // ============================================
+
+    public long dimensione() {
+        return dimensione;
+    }
+
+    public long modifica() {
+        return modifica;
+    }
+
+    public int numeroRighe() {
+        return numeroRighe;
+    }
+
+    /*
+     * METODO: hashOrdinati()
+     *
+     * COSA FA?
+     * - Copia ordinata degli hash grezzi: confrontando due array ordinati
+     *   si trovano le righe aggiunte e tolte in un solo passaggio
+     */
+    long[] hashOrdinati() {
+        long[] ordinati = Arrays.copyOf(righe, numeroRighe);
+        Arrays.sort(ordinati);
+        return ordinati;
+    }
+
+    long canonico(long grezzo) {
+        return canonici.getOrDefault(grezzo, grezzo);
+    }
+
+    /*
+     * METODO: coda()
+     *
+     * COSA FA?
+     * - Ritorna gli ultimi (al massimo) 4 KB del file, ricostruiti dalle righe
+     */
+    public byte[] coda() {
+        byte[] tutto = new byte[byteUltimeRighe];
+        int posizione = 0;
+        for (byte[] riga : ultimeRighe) {
+            System.arraycopy(riga, 0, tutto, posizione, riga.length);
+            posizione += riga.length;
+        }
+        int lunghezza = Math.min(DIMENSIONE_CODA, tutto.length);
+        return Arrays.copyOfRange(tutto, tutto.length - lunghezza, tutto.length);
+    }
+}
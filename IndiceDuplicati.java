@@ -0,0 +1,185 @@
+/*
+ * INDICE DUPLICATI - "Pane" aggiunto due volte è lo stesso articolo
+ *
+ * PROBLEMA:
+ * - Aggiungere "Pane" due volte crea due righe
+ * - Per accorgersene bisognerebbe scorrere tutta la lista
+ *
+ * SOLUZIONE: una HashMap da (nome, categoria) normalizzati agli articoli
+ * - "pane" + "panetteria" → l'articolo già in lista, in O(1)
+ * - Aggiornata a ogni modifica, insieme al riepilogo
+ *
+ * COSA SUCCEDE A UN DOPPIONE? Dipende dalla Politica:
+ * - SOMMA: le quantità si sommano nell'articolo esistente ancora da
+ *   comprare (predefinita); se c'è solo quello già comprato, il nuovo
+ *   è una riga in più
+ * - CHIEDI: l'utente decide ogni volta
+ * - SEPARATI: due righe, come prima
+ *
+ * NON thread-safe: si usa con la lista bloccata (synchronized (articoli))
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class IndiceDuplicati {
+
+    public enum Politica {
+        SOMMA, CHIEDI, SEPARATI;
+
+        // "--duplicati=chiedi" → CHIEDI
+        public static Politica da(String testo) {
+            return valueOf(testo.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    // Di solito una sola voce per chiave; di più solo se la lista ha già dei doppioni
+    private final Map<String, List<Map<String, Object>>> perChiave = new HashMap<>();
+
+    public static IndiceDuplicati di(List<Map<String, Object>> lista) {
+        IndiceDuplicati indice = new IndiceDuplicati();
+        for (Map<String, Object> articolo : lista) {
+            indice.aggiungi(articolo);
+        }
+        return indice;
+    }
+
+    /*
+     * METODO: chiave(String nome, String categoria)
+     *
+     * COSA FA?
+     * - " Caffè", "CAFFE" e "caffe" danno la stessa chiave
+     * - Il separatore non può comparire in un nome scritto da tastiera
+     */
+    public static String chiave(String nome, String categoria) {
+        return Testo.normalizza(nome) + '\u0000' + Testo.normalizza(categoria);
+    }
+
+    private static String chiave(Map<String, Object> articolo) {
+        return chiave((String) articolo.get("nome"), (String) articolo.get("categoria"));
+    }
+
+    // ============================================
+    // AGGIORNAMENTO
+    // ============================================
+
+    public void aggiungi(Map<String, Object> articolo) {
+        perChiave.computeIfAbsent(chiave(articolo), c -> new ArrayList<>(1)).add(articolo);
+    }
+
+    public void rimuovi(Map<String, Object> articolo) {
+        String chiave = chiave(articolo);
+        List<Map<String, Object>> uguali = perChiave.get(chiave);
+        if (uguali == null) {
+            return;
+        }
+        uguali.removeIf(altro -> altro == articolo);
+        if (uguali.isEmpty()) {
+            perChiave.remove(chiave);
+        }
+    }
+
+    // ============================================
+    // RICERCA
+    // ============================================
+
+    // L'articolo già in lista con quel nome e quella categoria (null se non c'è)
+    public Map<String, Object> trova(String nome, String categoria) {
+        List<Map<String, Object>> uguali = perChiave.get(chiave(nome, categoria));
+        return uguali == null ? null : uguali.get(0);
+    }
+
+    // Il primo ancora da comprare con quel nome e quella categoria (null se non c'è)
+    public Map<String, Object> trovaDaComprare(String nome, String categoria) {
+        List<Map<String, Object>> uguali = perChiave.get(chiave(nome, categoria));
+        if (uguali != null) {
+            for (Map<String, Object> articolo : uguali) {
+                if (!(boolean) articolo.get("acquistato")) {
+                    return articolo;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Tutti gli articoli con quel nome e quella categoria (lista vuota se non ce ne sono)
+    public List<Map<String, Object>> trovaTutti(String nome, String categoria) {
+        List<Map<String, Object>> uguali = perChiave.get(chiave(nome, categoria));
+        return uguali == null ? new ArrayList<>() : new ArrayList<>(uguali);
+    }
+
+    // ============================================
+    // UNIONE
+    // ============================================
+
+    /*
+     * METODO: unisci(Map esistente, int quantita, double prezzo)
+     *
+     * COSA FA?
+     * - Ritorna una COPIA dell'articolo esistente con la quantità sommata
+     * - Il prezzo diventa quello appena scritto (il più recente)
+     * - "esistente" è ancora da comprare (vedi trovaDaComprare): i pezzi
+     *   già comprati non si sommano, restano com'erano con il loro prezzo
+     *
+     * PERCHÉ una copia?
+     * - L'articolo in lista può far parte di versioni precedenti
+     *   (vedi ListaPersistente): non va modificato al suo posto
+     */
+    public static Map<String, Object> unisci(Map<String, Object> esistente, int quantita, double prezzo) {
+        Map<String, Object> unito = new HashMap<>(esistente);
+        unito.put("quantita", (int) esistente.get("quantita") + quantita);
+        unito.put("prezzo", prezzo);
+        return unito;
+    }
+
+    /*
+     * METODO: deduplica(List articoli)
+     *
+     * COSA FA?
+     * - Una sola passata: il primo articolo di ogni (nome, categoria)
+     *   resta al suo posto e assorbe le quantità dei doppioni
+     * - Prezzo: quello dell'ultimo doppione; acquistato solo se lo erano tutti
+     * - Ritorna una lista nuova, senza doppioni (gli articoli senza doppioni
+     *   sono gli stessi oggetti, quelli uniti sono copie)
+     *
+     * PERCHÉ non confrontare ogni articolo con tutti gli altri?
+     * - Sarebbero n² confronti: con la HashMap il tempo cresce come n
+     */
+    public static List<Map<String, Object>> deduplica(List<Map<String, Object>> articoli) {
+        Map<String, Map<String, Object>> primi = new LinkedHashMap<>(articoli.size() * 2);
+        Map<Map<String, Object>, Boolean> copiati = new IdentityHashMap<>();
+        for (Map<String, Object> articolo : articoli) {
+            String chiave = chiave(articolo);
+            Map<String, Object> primo = primi.putIfAbsent(chiave, articolo);
+            if (primo == null) {
+                continue;
+            }
+            if (!copiati.containsKey(primo)) {
+                primo = new HashMap<>(primo);
+                copiati.put(primo, Boolean.TRUE);
+                primi.put(chiave, primo);
+            }
+            primo.put("quantita", (int) primo.get("quantita") + (int) articolo.get("quantita"));
+            primo.put("prezzo", articolo.get("prezzo"));
+            primo.put("acquistato", (boolean) primo.get("acquistato") && (boolean) articolo.get("acquistato"));
+        }
+        return new ArrayList<>(primi.values());
+    }
+
+    // Quanti articoli sparirebbero con deduplica()
+    public static int contaDoppioni(List<Map<String, Object>> articoli) {
+        Map<String, Boolean> visti = new HashMap<>(articoli.size() * 2);
+        int doppioni = 0;
+        for (Map<String, Object> articolo : articoli) {
+            if (visti.put(chiave(articolo), Boolean.TRUE) != null) {
+                doppioni++;
+            }
+        }
+        return doppioni;
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * INDICE FUZZY - ricerca che perdona gli errori di battitura
+ *
+ * PROBLEMA:
+ * - "latte" non trova "Lattte": chi scrive dal telefono sbaglia spesso
+ *
+ * SOLUZIONE: un automa di Levenshtein fatto scorrere su un trie
+ * - Tutti i nomi e le categorie (normalizzati, vedi Testo) stanno in un
+ *   trie: i testi con lo stesso inizio condividono i nodi
+ * - Scendendo nel trie si calcola una riga della tabella di Levenshtein
+ *   per ogni lettera: la riga è lo "stato" dell'automa
+ * - Se tutta la riga supera la distanza massima, nessun testo sotto quel
+ *   nodo può andare bene: il ramo intero viene saltato
+ * - Così si guardano solo i prefissi "vicini" al testo cercato, non
+ *   tutti i testi (anche con un milione di nomi diversi)
+ *
+ * AGGIORNAMENTO INCREMENTALE:
+ * - Ogni testo ricorda gli articoli che lo usano
+ * - Un testo che nessuno usa più resta nel trie come "lapide" e viene
+ *   saltato; quando le lapidi sono troppe il trie si ricostruisce
+ *
+ * PERCHÉ array invece di un oggetto per nodo?
+ * - Un milione di nomi sono milioni di nodi: con gli array ogni nodo
+ *   costa una decina di byte
+ *
+ * NON thread-safe: si usa con la lista bloccata (synchronized (articoli))
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class IndiceFuzzy {
+
+    // Sotto questa soglia non vale la pena ricostruire il trie
+    private static final int LAPIDI_MINIME = 1024;
+
+    private static final int NESSUNO = -1;
+
+    /*
+     * CLASSE: Voce
+     *
+     * COSA È?
+     * - Gli articoli che usano un testo (come nome o come categoria)
+     */
+    private static class Voce {
+        final Set<Map<String, Object>> articoli = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /*
+     * CLASSE: Risultato
+     *
+     * COSA È?
+     * - Un articolo trovato e quanto è "lontano" dal testo cercato
+     */
+    public static class Risultato {
+        final Map<String, Object> articolo;
+        final int distanza;
+
+        Risultato(Map<String, Object> articolo, int distanza) {
+            this.articolo = articolo;
+            this.distanza = distanza;
+        }
+
+        public Map<String, Object> articolo() {
+            return articolo;
+        }
+
+        public int distanza() {
+            return distanza;
+        }
+    }
+
+    // Il trie: il nodo 0 è la radice; i figli di un nodo sono una catena di fratelli
+    private char[] lettere = new char[1024];
+    private int[] primoFiglio = new int[1024];
+    private int[] fratello = new int[1024];
+    private Voce[] voci = new Voce[1024];
+    private int nodi;
+
+    private final Map<String, Voce> perTesto = new HashMap<>();
+    private int lapidi;
+
+    // Una riga della tabella per ogni profondità del trie (riusate tra le ricerche)
+    private int[][] righe = new int[0][];
+
+    public IndiceFuzzy() {
+        nuovoNodo('\0');
+    }
+
+    public static IndiceFuzzy di(List<Map<String, Object>> lista) {
+        IndiceFuzzy indice = new IndiceFuzzy();
+        for (Map<String, Object> articolo : lista) {
+            indice.aggiungi(articolo);
+        }
+        return indice;
+    }
+
+    // ============================================
+    // AGGIORNAMENTO
+    // ============================================
+
+    public void aggiungi(Map<String, Object> articolo) {
+        collega(Testo.normalizza((String) articolo.get("nome")), articolo);
+        collega(Testo.normalizza((String) articolo.get("categoria")), articolo);
+    }
+
+    public void rimuovi(Map<String, Object> articolo) {
+        scollega(Testo.normalizza((String) articolo.get("nome")), articolo);
+        scollega(Testo.normalizza((String) articolo.get("categoria")), articolo);
+
+        if (lapidi > LAPIDI_MINIME && lapidi > perTesto.size() / 2) {
+            ricostruisci();
+        }
+    }
+
+    private void collega(String testo, Map<String, Object> articolo) {
+        Voce voce = perTesto.get(testo);
+        if (voce == null) {
+            voce = new Voce();
+            perTesto.put(testo, voce);
+            int nodo = inserisci(testo);
+            voci[nodo] = voce;
+        } else if (voce.articoli.isEmpty()) {
+            lapidi--;
+        }
+        voce.articoli.add(articolo);
+    }
+
+    private void scollega(String testo, Map<String, Object> articolo) {
+        Voce voce = perTesto.get(testo);
+        if (voce != null && voce.articoli.remove(articolo) && voce.articoli.isEmpty()) {
+            lapidi++;
+        }
+    }
+
+    // Scende nel trie creando i nodi che mancano; ritorna il nodo dell'ultima lettera
+    private int inserisci(String testo) {
+        int nodo = 0;
+        for (int i = 0; i < testo.length(); i++) {
+            char c = testo.charAt(i);
+            int figlio = primoFiglio[nodo];
+            while (figlio != NESSUNO && lettere[figlio] != c) {
+                figlio = fratello[figlio];
+            }
+            if (figlio == NESSUNO) {
+                figlio = nuovoNodo(c);
+                fratello[figlio] = primoFiglio[nodo];
+                primoFiglio[nodo] = figlio;
+            }
+            nodo = figlio;
+        }
+        return nodo;
+    }
+
+    private int nuovoNodo(char lettera) {
+        if (nodi == lettere.length) {
+            int capacita = nodi * 2;
+            lettere = Arrays.copyOf(lettere, capacita);
+            primoFiglio = Arrays.copyOf(primoFiglio, capacita);
+            fratello = Arrays.copyOf(fratello, capacita);
+            voci = Arrays.copyOf(voci, capacita);
+        }
+        lettere[nodi] = lettera;
+        primoFiglio[nodi] = NESSUNO;
+        fratello[nodi] = NESSUNO;
+        return nodi++;
+    }
+
+    // Rimette nel trie solo i testi ancora usati
+    private void ricostruisci() {
+        Map<String, Voce> vive = new HashMap<>();
+        for (Map.Entry<String, Voce> voce : perTesto.entrySet()) {
+            if (!voce.getValue().articoli.isEmpty()) {
+                vive.put(voce.getKey(), voce.getValue());
+            }
+        }
+        Arrays.fill(voci, 0, nodi, null);
+        nodi = 0;
+        nuovoNodo('\0');
+        perTesto.clear();
+        lapidi = 0;
+        for (Map.Entry<String, Voce> voce : vive.entrySet()) {
+            perTesto.put(voce.getKey(), voce.getValue());
+            int nodo = inserisci(voce.getKey());
+            voci[nodo] = voce.getValue();
+        }
+    }
+
+    // ============================================
+    // RICERCA
+    // ============================================
+
+    /*
+     * METODO: distanzaPredefinita(String testo)
+     *
+     * COSA FA?
+     * - Quanti errori tollerare: 1 per le parole corte, 2 per le altre
+     * - "pan" con 2 errori troverebbe quasi tutto
+     */
+    public static int distanzaPredefinita(String testo) {
+        return Testo.normalizza(testo).length() <= 4 ? 1 : 2;
+    }
+
+    /*
+     * METODO: distanza(String a, String b)
+     *
+     * COSA FA?
+     * - La distanza di Levenshtein tra due testi già normalizzati, per
+     *   controllare un solo candidato (es. che sia vicino per il nome e
+     *   non per la categoria)
+     */
+    public static int distanza(String a, String b) {
+        int[] sopra = new int[b.length() + 1];
+        int[] riga = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            sopra[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            riga[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int costo = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                riga[j] = Math.min(Math.min(riga[j - 1] + 1, sopra[j] + 1), sopra[j - 1] + costo);
+            }
+            int[] scambio = sopra;
+            sopra = riga;
+            riga = scambio;
+        }
+        return sopra[b.length()];
+    }
+
+    /*
+     * METODO: cerca(String testo, int distanzaMassima)
+     *
+     * COSA FA?
+     * - Trova gli articoli con nome o categoria entro distanzaMassima
+     *   (distanza di Levenshtein: lettere aggiunte, tolte o cambiate)
+     * - Ordinati per distanza (prima i più simili)
+     * - Un articolo compare una volta sola, con la distanza migliore
+     */
+    public List<Risultato> cerca(String testo, int distanzaMassima) {
+        char[] cercato = Testo.normalizza(testo).toCharArray();
+        int[] primaRiga = riga(0, cercato.length);
+        for (int j = 0; j <= cercato.length; j++) {
+            primaRiga[j] = j;
+        }
+
+        Map<Map<String, Object>, Integer> migliori = new IdentityHashMap<>();
+        if (cercato.length <= distanzaMassima && voci[0] != null) {
+            aggiungiRisultati(voci[0], cercato.length, migliori);
+        }
+        visita(0, 0, cercato, distanzaMassima, migliori);
+
+        List<Risultato> risultati = new ArrayList<>(migliori.size());
+        for (Map.Entry<Map<String, Object>, Integer> voce : migliori.entrySet()) {
+            risultati.add(new Risultato(voce.getKey(), voce.getValue()));
+        }
+        risultati.sort((a, b) -> Integer.compare(a.distanza, b.distanza));
+        return risultati;
+    }
+
+    /*
+     * METODO: visita(int nodo, int profondita, ...)
+     *
+     * COSA FA?
+     * - Per ogni figlio calcola la riga successiva della tabella
+     * - Se il figlio chiude un testo abbastanza vicino, ne prende gli articoli
+     * - Scende nel figlio solo se qualche casella della riga è ancora
+     *   entro la distanza massima
+     */
+    private void visita(int nodo, int profondita, char[] cercato, int distanzaMassima,
+                        Map<Map<String, Object>, Integer> migliori) {
+        int m = cercato.length;
+        int[] sopra = righe[profondita];
+        for (int figlio = primoFiglio[nodo]; figlio != NESSUNO; figlio = fratello[figlio]) {
+            int[] riga = riga(profondita + 1, m);
+            char c = lettere[figlio];
+            riga[0] = sopra[0] + 1;
+            int minimo = riga[0];
+            for (int j = 1; j <= m; j++) {
+                int costo = cercato[j - 1] == c ? 0 : 1;
+                int valore = Math.min(Math.min(riga[j - 1] + 1, sopra[j] + 1), sopra[j - 1] + costo);
+                riga[j] = valore;
+                if (valore < minimo) {
+                    minimo = valore;
+                }
+            }
+            if (voci[figlio] != null && riga[m] <= distanzaMassima) {
+                aggiungiRisultati(voci[figlio], riga[m], migliori);
+            }
+            if (minimo <= distanzaMassima) {
+                visita(figlio, profondita + 1, cercato, distanzaMassima, migliori);
+            }
+        }
+    }
+
+    private static void aggiungiRisultati(Voce voce, int distanza, Map<Map<String, Object>, Integer> migliori) {
+        for (Map<String, Object> articolo : voce.articoli) {
+            migliori.merge(articolo, distanza, Math::min);
+        }
+    }
+
+    // La riga per quella profondità, creata la prima volta che serve
+    private int[] riga(int profondita, int lunghezza) {
+        if (profondita >= righe.length) {
+            righe = Arrays.copyOf(righe, Math.max(16, profondita * 2));
+        }
+        if (righe[profondita] == null || righe[profondita].length <= lunghezza) {
+            righe[profondita] = new int[lunghezza + 1];
+        }
+        return righe[profondita];
+    }
+
+    public int testi() {
+        return perTesto.size() - lapidi;
+    }
+}
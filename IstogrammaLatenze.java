@@ -0,0 +1,150 @@
+/*
+ * ISTOGRAMMA LATENZE - registra durate in nanosecondi senza lock
+ *
+ * COME FUNZIONA?
+ * - Stile "HDR": i bucket sono log-lineari
+ *   * ogni potenza di 2 è divisa in 16 sotto-bucket
+ *   * errore relativo massimo ~6%, da 1 ns fino a ~146 anni
+ * - Ogni bucket è un contatore in un AtomicLongArray
+ * - registra() fa solo: un calcolo di indice + un incremento atomico
+ *
+ * PERCHÉ senza lock?
+ * - Viene chiamato sul percorso "caldo" di ogni operazione
+ * - Un lock costerebbe più dell'operazione che misuriamo
+ * - Gli incrementi atomici costano pochi nanosecondi
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class IstogrammaLatenze {
+
+    // 2^4 = 16 sotto-bucket per ogni potenza di 2
+    private static final int BIT_SOTTO_BUCKET = 4;
+    private static final int SOTTO_BUCKET = 1 << BIT_SOTTO_BUCKET;
+
+    // Indice massimo: shift 58 (bit più alto 62, valori fino a 2^63 - 1) × 16 + 31 = 959
+    private static final int NUMERO_BUCKET = (64 - BIT_SOTTO_BUCKET) * SOTTO_BUCKET + SOTTO_BUCKET;
+
+    private final AtomicLongArray bucket = new AtomicLongArray(NUMERO_BUCKET);
+    private final LongAdder somma = new LongAdder();
+    private final AtomicLong massimo = new AtomicLong();
+
+    /*
+     * METODO: registra(long nanos)
+     *
+     * COSA FA?
+     * - Aggiunge una misura all'istogramma
+     * - Valori negativi (orologio "all'indietro") contano come 0
+     */
+    public void registra(long nanos) {
+        long valore = Math.max(0, nanos);
+        bucket.incrementAndGet(indice(valore));
+        somma.add(valore);
+
+        // Il massimo cambia raramente: quasi sempre basta una lettura
+        long attuale = massimo.get();
+        while (valore > attuale && !massimo.compareAndSet(attuale, valore)) {
+            attuale = massimo.get();
+        }
+    }
+
+    public long conteggio() {
+        long totale = 0;
+        for (int i = 0; i < NUMERO_BUCKET; i++) {
+            totale += bucket.get(i);
+        }
+        return totale;
+    }
+
+    public long massimo() {
+        return massimo.get();
+    }
+
+    public double media() {
+        long n = conteggio();
+        return n == 0 ? 0 : (double) somma.sum() / n;
+    }
+
+    /*
+     * METODO: percentile(double p)
+     *
+     * COSA FA?
+     * - Ritorna il valore sotto cui cade il p% delle misure
+     * - Es. percentile(99) = latenza p99
+     * - Il risultato è il limite inferiore del bucket (errore ≤ ~6%)
+     */
+    public long percentile(double p) {
+        long n = conteggio();
+        if (n == 0) {
+            return 0;
+        }
+        long soglia = Math.max(1, (long) Math.ceil(n * p / 100.0));
+        long visti = 0;
+        for (int i = 0; i < NUMERO_BUCKET; i++) {
+            visti += bucket.get(i);
+            if (visti >= soglia) {
+                return Math.min(valoreBucket(i), massimo.get());
+            }
+        }
+        return massimo.get();
+    }
+
+    /*
+     * METODO: unisci(IstogrammaLatenze altro)
+     *
+     * COSA FA?
+     * - Somma i bucket di un altro istogramma in questo
+     * - Utile per aggregare misure raccolte da thread diversi
+     */
+    public void unisci(IstogrammaLatenze altro) {
+        for (int i = 0; i < NUMERO_BUCKET; i++) {
+            long n = altro.bucket.get(i);
+            if (n != 0) {
+                bucket.addAndGet(i, n);
+            }
+        }
+        somma.add(altro.somma.sum());
+        long max = altro.massimo.get();
+        long attuale = massimo.get();
+        while (max > attuale && !massimo.compareAndSet(attuale, max)) {
+            attuale = massimo.get();
+        }
+    }
+
+    public void azzera() {
+        for (int i = 0; i < NUMERO_BUCKET; i++) {
+            bucket.set(i, 0);
+        }
+        somma.reset();
+        massimo.set(0);
+    }
+
+    // ============================================
+    // CALCOLO DEGLI INDICI
+    // ============================================
+
+    /*
+     * Valori 0..31 hanno un bucket ciascuno (precisione esatta).
+     * Da 32 in su: shift = posizione del bit più alto - 4,
+     * il bucket è (shift × 16) + i 5 bit più significativi del valore.
+     */
+    static int indice(long valore) {
+        if (valore < 2 * SOTTO_BUCKET) {
+            return (int) valore;
+        }
+        int bitAlto = 63 - Long.numberOfLeadingZeros(valore);
+        int shift = bitAlto - BIT_SOTTO_BUCKET;
+        return shift * SOTTO_BUCKET + (int) (valore >>> shift);
+    }
+
+    static long valoreBucket(int indice) {
+        if (indice < 2 * SOTTO_BUCKET) {
+            return indice;
+        }
+        int shift = indice / SOTTO_BUCKET - 1;
+        long sotto = indice % SOTTO_BUCKET + SOTTO_BUCKET;
+        return sotto << shift;
+    }
+}
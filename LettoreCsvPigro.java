@@ -0,0 +1,378 @@
+/*
+ * LETTORE CSV PIGRO - sfogliare una lista salvata enorme senza caricarla
+ *
+ * PROBLEMA:
+ * - caricaDaFile() legge e interpreta TUTTE le righe prima di mostrarne una:
+ *   con un file da qualche GB servono minuti e più heap di quanto ce n'è
+ * - Spesso si vogliono solo le prime pagine, o i totali
+ *
+ * SOLUZIONE: un indice RADO delle posizioni, fatto a campione
+ * - All'apertura il file si divide in al massimo 4096 segmenti: per ognuno
+ *   si legge un pezzetto (4 KB) e si cerca il primo "a capo". Il segmento
+ *   inizia lì, all'inizio di una riga. Niente altro viene letto
+ * - Quante righe ha un segmento si scopre solo quando serve (contando gli
+ *   "a capo"), e poi si ricorda
+ * - Una pagina = si trova il segmento che contiene la sua prima riga, si
+ *   saltano le righe prima e si interpretano SOLO le righe della pagina
+ * - Le ultime pagine viste restano in una cache LRU limitata
+ *
+ * QUANTO COSTA?
+ * - Aprire: 4096 letture da 4 KB, qualunque sia la dimensione del file
+ * - Memoria: indice fisso (pochi KB) + le pagine in cache
+ * - Il numero di righe è stimato dai campioni finché non si conta tutto
+ *   (o finché non c'è un spesa.riepilogo valido accanto al file)
+ *
+ * Sola lettura. NON thread-safe: si usa dal thread del menu
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+public class LettoreCsvPigro implements Closeable {
+
+    // Pagine tenute in memoria; oltre, si dimenticano le meno viste
+    public static final int PAGINE_IN_CACHE = 32;
+
+    private static final int SEGMENTI_MASSIMI = 4096;
+    private static final long SEGMENTO_MINIMO = 256 * 1024;
+    private static final int CAMPIONE = 4096;
+    private static final int BLOCCO = 64 * 1024;
+
+    private final FileChannel canale;
+    private final long dimensione;
+    private final int righePerPagina;
+
+    // Il segmento s va da inizi[s] (compreso) a inizi[s + 1] (escluso)
+    private final long[] inizi;
+
+    // Righe di ogni segmento, -1 = non ancora contate
+    private final int[] righe;
+
+    private final double righeStimate;
+    private Riepilogo totali;
+
+    // Dove finiva l'ultima pagina letta: la successiva riparte da lì
+    private long rigaSegnalibro = -1;
+    private long posizioneSegnalibro;
+
+    private final Map<Integer, List<Map<String, Object>>> pagine =
+            new LinkedHashMap<Integer, List<Map<String, Object>>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, List<Map<String, Object>>> piuVecchia) {
+                    return size() > PAGINE_IN_CACHE;
+                }
+            };
+
+    private LettoreCsvPigro(FileChannel canale, long dimensione, int righePerPagina, long[] inizi,
+            double righeStimate, Riepilogo totali) {
+        this.canale = canale;
+        this.dimensione = dimensione;
+        this.righePerPagina = righePerPagina;
+        this.inizi = inizi;
+        this.righe = new int[inizi.length - 1];
+        Arrays.fill(righe, -1);
+        this.righeStimate = righeStimate;
+        this.totali = totali;
+    }
+
+    /*
+     * METODO: apri(Path file, int righePerPagina)
+     *
+     * COSA FA?
+     * - Costruisce l'indice rado leggendo un campione per segmento
+     * - Dai campioni stima la lunghezza media di una riga (per il numero di righe)
+     * - Se accanto c'è un riepilogo valido (vedi Riepilogo.leggiAccanto),
+     *   totali e numero di righe sono subito esatti
+     */
+    public static LettoreCsvPigro apri(Path file, int righePerPagina) throws IOException {
+        FileChannel canale = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long dimensione = canale.size();
+            int segmenti = (int) Math.max(1, Math.min(SEGMENTI_MASSIMI, dimensione / SEGMENTO_MINIMO));
+            long[] inizi = new long[segmenti + 1];
+            inizi[segmenti] = dimensione;
+
+            // La prima riga è l'intestazione: il segmento 0 inizia dopo
+            ByteBuffer campione = ByteBuffer.allocate(CAMPIONE);
+            long byteMisurati = 0;
+            long righeMisurate = 0;
+            for (int s = 0; s < segmenti; s++) {
+                long punto = dimensione / segmenti * s;
+                inizi[s] = Math.max(dopoIlPrimoACapo(canale, punto, campione, dimensione),
+                        s == 0 ? 0 : inizi[s - 1]);
+
+                // Le righe intere del campione: quanto è lunga una riga in media
+                int primo = -1;
+                int ultimo = -1;
+                int aCapo = 0;
+                for (int i = 0; i < campione.position(); i++) {
+                    if (campione.get(i) == '\n') {
+                        primo = primo < 0 ? i : primo;
+                        ultimo = i;
+                        aCapo++;
+                    }
+                }
+                if (aCapo > 1) {
+                    byteMisurati += ultimo - primo;
+                    righeMisurate += aCapo - 1;
+                }
+            }
+            double stima = righeMisurate == 0 ? (inizi[0] < dimensione ? 1 : 0)
+                    : (dimensione - inizi[0]) / ((double) byteMisurati / righeMisurate);
+            return new LettoreCsvPigro(canale, dimensione, righePerPagina, inizi, stima,
+                    Riepilogo.leggiAccanto(file));
+        } catch (IOException | RuntimeException e) {
+            canale.close();
+            throw e;
+        }
+    }
+
+    // La posizione dopo il primo "a capo" da "punto" in poi (la fine del file se non ce n'è)
+    private static long dopoIlPrimoACapo(FileChannel canale, long punto, ByteBuffer campione, long dimensione)
+            throws IOException {
+        long posizione = punto;
+        boolean primaLettura = true;
+        while (posizione < dimensione) {
+            campione.clear();
+            int letti = canale.read(campione, posizione);
+            if (letti <= 0) {
+                break;
+            }
+            for (int i = 0; i < letti; i++) {
+                if (campione.get(i) == '\n') {
+                    if (!primaLettura) {
+                        // Riga più lunga del campione: il campione non serve per la media
+                        campione.clear();
+                    }
+                    return posizione + i + 1;
+                }
+            }
+            posizione += letti;
+            primaLettura = false;
+        }
+        campione.clear();
+        return dimensione;
+    }
+
+    // ============================================
+    // INFORMAZIONI
+    // ============================================
+
+    public long dimensione() {
+        return dimensione;
+    }
+
+    public int segmenti() {
+        return righe.length;
+    }
+
+    // true se righe() è il numero esatto, false se è una stima
+    public boolean righeEsatte() {
+        return totali != null;
+    }
+
+    public long righe() {
+        return totali != null ? totali.articoli() : Math.round(righeStimate);
+    }
+
+    public int pagineInCache() {
+        return pagine.size();
+    }
+
+    // ============================================
+    // PAGINE
+    // ============================================
+
+    /*
+     * METODO: pagina(int numero)
+     *
+     * COSA FA?
+     * - Ritorna gli articoli della pagina (0 = la prima): al massimo
+     *   righePerPagina, meno se il file finisce prima, vuota dopo la fine
+     * - Una riga illeggibile diventa null: la numerazione resta quella del file
+     *
+     * COSTO:
+     * - Dalla cache: niente
+     * - La pagina dopo l'ultima letta: solo le sue righe
+     * - Altrimenti: si contano le righe dei segmenti prima (una volta sola
+     *   per segmento) e si scorre un segmento fino alla pagina
+     */
+    public List<Map<String, Object>> pagina(int numero) throws IOException {
+        List<Map<String, Object>> pagina = pagine.get(numero);
+        if (pagina != null) {
+            return pagina;
+        }
+
+        long primaRiga = (long) numero * righePerPagina;
+        long posizione;
+        long daSaltare;
+        if (primaRiga == rigaSegnalibro) {
+            posizione = posizioneSegnalibro;
+            daSaltare = 0;
+        } else {
+            long righePrima = 0;
+            int s = 0;
+            while (s < righe.length && righePrima + contaRighe(s) <= primaRiga) {
+                righePrima += righe[s];
+                s++;
+            }
+            if (s == righe.length) {
+                return new ArrayList<>();
+            }
+            posizione = inizi[s];
+            daSaltare = primaRiga - righePrima;
+        }
+
+        List<Map<String, Object>> letti = new ArrayList<>(righePerPagina);
+        long fine = scorri(posizione, daSaltare, righePerPagina, linea -> letti.add(articolo(linea)));
+        rigaSegnalibro = primaRiga + letti.size();
+        posizioneSegnalibro = fine;
+        pagine.put(numero, letti);
+        return letti;
+    }
+
+    private static Map<String, Object> articolo(String linea) {
+        try {
+            return FormatoCsv.leggiRiga(linea);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /*
+     * METODO: totali(IntConsumer avanzamento)
+     *
+     * COSA FA?
+     * - Conta e somma tutti gli articoli del file, leggendolo una volta
+     *   dall'inizio alla fine (senza tenere le righe in memoria)
+     * - Strada facendo conta le righe di ogni segmento: dopo, qualunque
+     *   pagina si trova subito
+     * - "avanzamento" riceve il numero di segmenti letti
+     * - Subito, se i totali erano già noti (riepilogo valido o conto già fatto)
+     */
+    public Riepilogo totali(IntConsumer avanzamento) throws IOException {
+        if (totali != null) {
+            return totali;
+        }
+        Riepilogo conto = new Riepilogo();
+        for (int s = 0; s < righe.length; s++) {
+            int[] righeSegmento = new int[1];
+            scorri(inizi[s], 0, Long.MAX_VALUE, inizi[s + 1], linea -> {
+                righeSegmento[0]++;
+                String[] campi = linea.split(",");
+                try {
+                    conto.aggiungi(Double.parseDouble(campi[2]), Integer.parseInt(campi[3]),
+                            Boolean.parseBoolean(campi[4]));
+                } catch (RuntimeException e) {
+                    // Riga illeggibile: nei totali non conta
+                }
+            });
+            righe[s] = righeSegmento[0];
+            avanzamento.accept(s + 1);
+        }
+        totali = conto;
+        return totali;
+    }
+
+    // ============================================
+    // LETTURA DELLE RIGHE
+    // ============================================
+
+    // Quante righe nel segmento s (contate la prima volta che serve)
+    private int contaRighe(int s) throws IOException {
+        if (righe[s] < 0) {
+            int[] conto = new int[1];
+            scorri(inizi[s], 0, 0, inizi[s + 1], linea -> conto[0]++);
+            righe[s] = conto[0];
+        }
+        return righe[s];
+    }
+
+    private long scorri(long posizione, long daSaltare, int quante, Consumer<String> azione) throws IOException {
+        return scorri(posizione, daSaltare, quante, dimensione, azione);
+    }
+
+    /*
+     * METODO: scorri(...)
+     *
+     * COSA FA?
+     * - Legge da "posizione" fino a "fine", un blocco da 64 KB alla volta
+     * - Le prime "daSaltare" righe si contano e basta (nessuna String),
+     *   poi al massimo "quante" righe vanno ad "azione"
+     * - quante = 0: si contano soltanto le righe, "azione" riceve una
+     *   String vuota per ogni riga (serve a contaRighe())
+     * - Ritorna la posizione subito dopo l'ultima riga passata
+     */
+    private long scorri(long posizione, long daSaltare, long quante, long fine, Consumer<String> azione)
+            throws IOException {
+        boolean soloConta = quante == 0;
+        ByteBuffer blocco = ByteBuffer.allocate(BLOCCO);
+        ByteArrayOutputStream linea = new ByteArrayOutputStream(128);
+        long letta = posizione;
+        long dopoUltima = posizione;
+        while (letta < fine && (soloConta || quante > 0)) {
+            blocco.clear();
+            blocco.limit((int) Math.min(BLOCCO, fine - letta));
+            int letti = canale.read(blocco, letta);
+            if (letti <= 0) {
+                break;
+            }
+            byte[] dati = blocco.array();
+            int inizioLinea = 0;
+            for (int i = 0; i < letti; i++) {
+                if (dati[i] != '\n') {
+                    continue;
+                }
+                if (soloConta) {
+                    azione.accept("");
+                } else if (daSaltare > 0) {
+                    daSaltare--;
+                } else {
+                    linea.write(dati, inizioLinea, i - inizioLinea);
+                    azione.accept(senzaRitornoACapo(linea));
+                    linea.reset();
+                    quante--;
+                }
+                inizioLinea = i + 1;
+                dopoUltima = letta + i + 1;
+                if (!soloConta && quante == 0) {
+                    return dopoUltima;
+                }
+            }
+            if (!soloConta && daSaltare == 0) {
+                linea.write(dati, inizioLinea, letti - inizioLinea);
+            }
+            letta += letti;
+        }
+
+        // L'ultima riga del file può non avere "a capo"
+        if (letta == dimensione && dopoUltima < letta && (soloConta || (daSaltare == 0 && quante > 0))) {
+            azione.accept(soloConta ? "" : senzaRitornoACapo(linea));
+            dopoUltima = letta;
+        }
+        return dopoUltima;
+    }
+
+    private static String senzaRitornoACapo(ByteArrayOutputStream linea) {
+        String testo = linea.toString(StandardCharsets.UTF_8);
+        return testo.endsWith("\r") ? testo.substring(0, testo.length() - 1) : testo;
+    }
+
+    @Override
+    public void close() throws IOException {
+        canale.close();
+    }
+}
@@ -10,12 +10,11 @@
  * - Calcola totale
  * - Salva/Carica da file
  * - Menu principale
+ *
+ * Il lavoro lo fa MotoreLista: qui si chiedono i dati e si stampano i risultati
  */
 
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
@@ -23,13 +22,14 @@ import java.util.Scanner;
 public class ListaDellaSpesa {
     
     // Attributi
-    private List<Map<String, Object>> articoli;
+    private final MotoreLista motore;
+    private final List<Map<String, Object>> articoli;
     private Scanner scanner;
-    private String miaStringa;
     
     // Costruttore
     public ListaDellaSpesa() {
-        this.articoli = new ArrayList<>();
+        this.motore = new MotoreLista();
+        this.articoli = motore.articoli();
         this.scanner = new Scanner(System.in);
     }
     
@@ -115,22 +115,14 @@ public class ListaDellaSpesa {
         int quantita = scanner.nextInt();
         scanner.nextLine();  // Cancella buffer
         
-        // Validazione
-        if (nome.isEmpty() || categoria.isEmpty() || prezzo <= 0 || quantita <= 0) {
-            System.out.println("❌ Dati non validi!");
-            return;
+        // Validazione e creazione dell'articolo: le fa il motore
+        // (false = un doppione diventa una riga in più)
+        try {
+            motore.aggiungi(nome, categoria, prezzo, quantita, false);
+            System.out.println("✓ Articolo aggiunto!");
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ " + e.getMessage());
         }
-        
-        // Crea articolo
-        Map<String, Object> articolo = new HashMap<>();
-        articolo.put("nome", nome);
-        articolo.put("categoria", categoria);
-        articolo.put("prezzo", prezzo);
-        articolo.put("quantita", quantita);
-        articolo.put("acquistato", false);
-        
-        articoli.add(articolo);
-        System.out.println("✓ Articolo aggiunto!");
     }
     
     private void visualizzaLista() {
@@ -144,46 +136,29 @@ public class ListaDellaSpesa {
             return;
         }
         
-        // Stampa articoli
+        // Stampa articoli (una versione ferma della lista)
+        StringBuilder testo = new StringBuilder();
         int numero = 1;
-        int acquistati = 0;
-        double spesaTotale = 0;
-        
-        for (Map<String, Object> articolo : articoli) {
-            stampaArticolo(numero, articolo);
-            
-            if ((boolean) articolo.get("acquistato")) {
-                acquistati++;
-            }
-            
-            double prezzo = (double) articolo.get("prezzo");
-            int quantita = (int) articolo.get("quantita");
-            spesaTotale += prezzo * quantita;
-            
+        for (Map<String, Object> articolo : motore.versione()) {
+            motore.righe().dettaglio(testo, numero, articolo);
             numero++;
         }
+        System.out.print(testo);
         
-        // Riepilogo
+        // Riepilogo (i totali sono già pronti nel motore)
+        Riepilogo totali = motore.totali();
         System.out.println("═══════════════════════════════════════");
-        System.out.println("Totale articoli: " + articoli.size());
-        System.out.println("Non acquistati: " + (articoli.size() - acquistati));
-        System.out.println("Acquistati: " + acquistati);
-        System.out.printf("Spesa totale: €%.2f\n", spesaTotale);
+        System.out.println("Totale articoli: " + totali.articoli());
+        System.out.println("Non acquistati: " + totali.nonAcquistati());
+        System.out.println("Acquistati: " + totali.acquistati());
+        System.out.printf("Spesa totale: €%.2f\n", totali.totale());
         System.out.println("═══════════════════════════════════════");
     }
     
     private void stampaArticolo(int numero, Map<String, Object> articolo) {
-        boolean acquistato = (boolean) articolo.get("acquistato");
-        String checkbox = acquistato ? "[✓]" : "[ ]";
-        
-        String nome = (String) articolo.get("nome");
-        String categoria = (String) articolo.get("categoria");
-        double prezzo = (double) articolo.get("prezzo");
-        int quantita = (int) articolo.get("quantita");
-        double subtotale = prezzo * quantita;
-        
-        System.out.println(checkbox + " " + numero + ". " + nome + " - " + categoria);
-        System.out.printf("       €%.2f x %d = €%.2f\n", prezzo, quantita, subtotale);
+        StringBuilder testo = new StringBuilder();
+        motore.righe().dettaglio(testo, numero, articolo);
+        System.out.print(testo);
     }
     
     private void rimuoviArticolo() {
@@ -201,14 +176,10 @@ public class ListaDellaSpesa {
             int numero = scanner.nextInt();
             scanner.nextLine();
             
-            if (numero > 0 && numero <= articoli.size()) {
-                Map<String, Object> articolo = articoli.get(numero - 1);
-                String nome = (String) articolo.get("nome");
-                articoli.remove(numero - 1);
-                System.out.println("✓ \"" + nome + "\" rimosso dalla lista");
-            } else {
-                System.out.println("❌ Numero non valido!");
-            }
+            MotoreLista.Modifica rimosso = motore.rimuovi(numero - 1);
+            System.out.println("✓ \"" + rimosso.prima().get("nome") + "\" rimosso dalla lista");
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ " + e.getMessage());
         } catch (Exception e) {
             System.out.println("❌ Errore input!");
             scanner.nextLine();
@@ -219,28 +190,18 @@ public class ListaDellaSpesa {
         System.out.println("\n=== CERCA ARTICOLO ===");
         
         System.out.print("Cosa cerchi? ");
-        String ricerca = scanner.nextLine().toLowerCase();
+        String ricerca = scanner.nextLine();
         
-        boolean trovato = false;
-        int numero = 1;
-        
-        for (Map<String, Object> articolo : articoli) {
-            String nome = ((String) articolo.get("nome")).toLowerCase();
-            String categoria = ((String) articolo.get("categoria")).toLowerCase();
-            
-            if (nome.contains(ricerca) || categoria.contains(ricerca)) {
-                if (!trovato) {
-                    System.out.println("\n✓ Trovato!");
-                    trovato = true;
-                }
-                stampaArticolo(numero, articolo);
-                System.out.println();
-            }
-            numero++;
-        }
-        
-        if (!trovato) {
+        // Se nessun articolo contiene il testo, il motore cerca quelli con nomi simili
+        MotoreLista.Ricerca risultato = motore.cerca(ricerca, false);
+        if (risultato.trovati().isEmpty()) {
             System.out.println("❌ Nessun articolo trovato");
+            return;
+        }
+        System.out.println(risultato.tollerante() ? "\n⚠ Nessun risultato esatto. Forse cercavi:" : "\n✓ Trovato!");
+        for (MotoreLista.Trovato trovato : risultato.trovati()) {
+            stampaArticolo(trovato.posizione() + 1, trovato.articolo());
+            System.out.println();
         }
     }
     
@@ -259,18 +220,11 @@ public class ListaDellaSpesa {
             int numero = scanner.nextInt();
             scanner.nextLine();
             
-            if (numero > 0 && numero <= articoli.size()) {
-                Map<String, Object> articolo = articoli.get(numero - 1);
-                String nome = (String) articolo.get("nome");
-                
-                boolean acquistato = (boolean) articolo.get("acquistato");
-                articolo.put("acquistato", !acquistato);
-                
-                String stato = !acquistato ? "acquistato" : "non acquistato";
-                System.out.println("✓ \"" + nome + "\" segnato come " + stato);
-            } else {
-                System.out.println("❌ Numero non valido!");
-            }
+            MotoreLista.Modifica marcato = motore.marca(numero - 1);
+            String stato = (boolean) marcato.dopo().get("acquistato") ? "acquistato" : "non acquistato";
+            System.out.println("✓ \"" + marcato.dopo().get("nome") + "\" segnato come " + stato);
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ " + e.getMessage());
         } catch (Exception e) {
             System.out.println("❌ Errore input!");
             scanner.nextLine();
@@ -286,40 +240,21 @@ public class ListaDellaSpesa {
         System.out.println("║     CALCOLO SPESA TOTALE             ║");
         System.out.println("╠═══════════════════════════════════════╣");
         
-        if (articoli.isEmpty()) {
+        // I totali sono già pronti nel motore: niente da ricalcolare
+        Riepilogo totali = motore.totali();
+        if (totali.articoli() == 0) {
             System.out.println("║ La lista è vuota                      ║");
             System.out.println("╚═══════════════════════════════════════╝");
             return;
         }
         
-        double totale = 0;
-        double totalNonAcquistati = 0;
-        double totalAcquistati = 0;
-        int acquistati = 0;
-        
-        for (Map<String, Object> articolo : articoli) {
-            double prezzo = (double) articolo.get("prezzo");
-            int quantita = (int) articolo.get("quantita");
-            double subtotale = prezzo * quantita;
-            boolean acquistato = (boolean) articolo.get("acquistato");
-            
-            totale += subtotale;
-            
-            if (acquistato) {
-                totalAcquistati += subtotale;
-                acquistati++;
-            } else {
-                totalNonAcquistati += subtotale;
-            }
-        }
-        
-        System.out.printf("║ Articoli totali: %-23d║\n", articoli.size());
-        System.out.printf("║ Non acquistati: %-24d║\n", articoli.size() - acquistati);
-        System.out.printf("║ Acquistati: %-27d║\n", acquistati);
+        System.out.printf("║ Articoli totali: %-23d║\n", totali.articoli());
+        System.out.printf("║ Non acquistati: %-24d║\n", totali.nonAcquistati());
+        System.out.printf("║ Acquistati: %-27d║\n", totali.acquistati());
         System.out.println("║                                       ║");
-        System.out.printf("║ Spesa totale: €%-29.2f║\n", totale);
-        System.out.printf("║ Spesa acquisiti: €%-26.2f║\n", totalAcquistati);
-        System.out.printf("║ Spesa rimanente: €%-26.2f║\n", totalNonAcquistati);
+        System.out.printf("║ Spesa totale: €%-29.2f║\n", totali.totale());
+        System.out.printf("║ Spesa acquisiti: €%-26.2f║\n", totali.totaleAcquistati());
+        System.out.printf("║ Spesa rimanente: €%-26.2f║\n", totali.totaleRimanente());
         System.out.println("╚═══════════════════════════════════════╝");
     }
     
@@ -331,18 +266,7 @@ public class ListaDellaSpesa {
         System.out.println("\n=== SALVA SU FILE ===");
         
         try {
-            StringBuilder csv = new StringBuilder();
-            csv.append("Nome,Categoria,Prezzo,Quantita,Acquistato\n");
-            
-            for (Map<String, Object> articolo : articoli) {
-                csv.append((String) articolo.get("nome")).append(",");
-                csv.append((String) articolo.get("categoria")).append(",");
-                csv.append((double) articolo.get("prezzo")).append(",");
-                csv.append((int) articolo.get("quantita")).append(",");
-                csv.append((boolean) articolo.get("acquistato")).append("\n");
-            }
-            
-            Files.writeString(Paths.get("spesa.csv"), csv.toString());
+            motore.salva(Paths.get(FormatoCsv.FILE));
             System.out.println("✓ Lista salvata in \"spesa.csv\"!");
             System.out.println("(" + articoli.size() + " articoli salvati)");
             
@@ -355,35 +279,14 @@ public class ListaDellaSpesa {
         System.out.println("\n=== CARICA DA FILE ===");
         
         try {
-            List<String> linee = Files.readAllLines(Paths.get("spesa.csv"));
-            
-            // Svuota lista attuale
-            articoli.clear();
-            
-            // Salta header
-            for (int i = 1; i < linee.size(); i++) {
-                String linea = linee.get(i);
-                String[] campi = linea.split(",");
-                
-                String nome = campi[0];
-                String categoria = campi[1];
-                double prezzo = Double.parseDouble(campi[2]);
-                int quantita = Integer.parseInt(campi[3]);
-                boolean acquistato = Boolean.parseBoolean(campi[4]);
-                
-                // Crea articolo
-                Map<String, Object> articolo = new HashMap<>();
-                articolo.put("nome", nome);
-                articolo.put("categoria", categoria);
-                articolo.put("prezzo", prezzo);
-                articolo.put("quantita", quantita);
-                articolo.put("acquistato", acquistato);
-                
-                articoli.add(articolo);
-            }
+            // Tutto o niente: se la lettura fallisce la lista resta com'era
+            CaricamentoLista.Risultato risultato = motore.carica(Paths.get(FormatoCsv.FILE));
             
             System.out.println("✓ Lista caricata da \"spesa.csv\"!");
-            System.out.println("(" + articoli.size() + " articoli caricati)");
+            System.out.println("(" + risultato.riepilogo().articoli() + " articoli caricati)");
+            if (risultato.scartate().numero() > 0) {
+                System.out.println("⚠ " + risultato.scartate().numero() + " righe malformate saltate");
+            }
             
         } catch (Exception e) {
             System.out.println("❌ Errore durante il caricamento: " + e.getMessage());
@@ -396,14 +299,13 @@ public class ListaDellaSpesa {
     // ============================================
     
     private void visualizzaListaSemplice() {
+        StringBuilder testo = new StringBuilder();
         int numero = 1;
-        for (Map<String, Object> articolo : articoli) {
-            boolean acquistato = (boolean) articolo.get("acquistato");
-            String checkbox = acquistato ? "[✓]" : "[ ]";
-            System.out.println(checkbox + " " + numero + ". " + articolo.get("nome"));
+        for (Map<String, Object> articolo : motore.versione()) {
+            motore.righe().semplice(testo, numero, articolo);
             numero++;
         }
-        System.out.println();
+        System.out.println(testo);
     }
     
     // ============================================
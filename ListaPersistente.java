@@ -0,0 +1,382 @@
+/*
+ * LISTA PERSISTENTE - una lista di cui si può fotografare ogni versione
+ *
+ * PROBLEMA:
+ * - Con un ArrayList, "svuota" e "rimuovi" non si possono annullare
+ * - Chi legge a lungo (salvataggio, esportazione) vede la lista cambiare
+ *   sotto i piedi, a meno di bloccarla per tutto il tempo
+ *
+ * SOLUZIONE: un albero IMMUTABILE (treap implicito) + copia del cammino
+ * - Gli articoli stanno nelle foglie/nodi di un albero binario bilanciato;
+ *   la posizione di un articolo dipende dalle dimensioni dei sottoalberi
+ * - Un nodo non cambia mai: per modificare la lista si ricreano solo i
+ *   nodi sul cammino dalla radice al punto cambiato (O(log n)), tutto il
+ *   resto è CONDIVISO con la versione precedente
+ * - Una versione è solo una radice: fotografarla costa O(1)
+ *
+ * COSA SI OTTIENE?
+ * - versione(): un'istantanea che non cambierà mai, leggibile da qualsiasi
+ *   thread senza lock
+ * - ripristina(v): si torna a una versione precedente (annulla/ripeti)
+ * - Tenere 100 versioni costa quanto le modifiche fatte, non 100 copie
+ *
+ * REGOLA:
+ * - Anche gli elementi devono essere immutabili: un articolo da cambiare
+ *   si copia e si rimette con set(), non si modifica al suo posto
+ *
+ * PERCHÉ un treap?
+ * - Ogni nodo ha una priorità casuale: l'albero resta bilanciato "in media"
+ *   senza rotazioni complicate; inserire e togliere in mezzo = dividere
+ *   e riunire alberi
+ *
+ * Le modifiche vanno fatte da un thread alla volta (l'applicazione le fa
+ * dentro synchronized (articoli)); le letture di una Versione no.
+ */
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+public class ListaPersistente<E> extends AbstractList<E> {
+
+    /*
+     * CLASSE: Nodo
+     *
+     * COSA È?
+     * - Un elemento, la sua priorità, i due sottoalberi e quanti elementi
+     *   contiene il sottoalbero (per trovare l'i-esimo elemento)
+     * - Dopo la costruzione non cambia più
+     */
+    private static final class Nodo<E> {
+        final E valore;
+        final int priorita;
+        final Nodo<E> sinistra;
+        final Nodo<E> destra;
+        final int dimensione;
+
+        Nodo(E valore, int priorita, Nodo<E> sinistra, Nodo<E> destra) {
+            this.valore = valore;
+            this.priorita = priorita;
+            this.sinistra = sinistra;
+            this.destra = destra;
+            this.dimensione = dimensione(sinistra) + 1 + dimensione(destra);
+        }
+
+        Nodo<E> con(Nodo<E> sinistra, Nodo<E> destra) {
+            return new Nodo<>(valore, priorita, sinistra, destra);
+        }
+    }
+
+    /*
+     * CLASSE: Versione
+     *
+     * COSA È?
+     * - Una fotografia della lista: sola lettura, non cambia mai
+     * - È una List: si può passare a chi legge (FormatoCsv, archivi...)
+     */
+    public static final class Versione<E> extends AbstractList<E> {
+        private final Nodo<E> radice;
+
+        private Versione(Nodo<E> radice) {
+            this.radice = radice;
+        }
+
+        @Override
+        public E get(int indice) {
+            return ListaPersistente.get(radice, indice);
+        }
+
+        @Override
+        public int size() {
+            return dimensione(radice);
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new Scorrimento<>(radice);
+        }
+
+        @Override
+        public void forEach(Consumer<? super E> azione) {
+            visita(radice, azione);
+        }
+    }
+
+    private final SplittableRandom casuale = new SplittableRandom();
+    private volatile Versione<E> corrente = new Versione<>(null);
+
+    // ============================================
+    // VERSIONI
+    // ============================================
+
+    // L'istantanea della lista in questo momento: O(1)
+    public Versione<E> versione() {
+        return corrente;
+    }
+
+    // Torna a una versione qualsiasi: O(1). Anche di un'altra ListaPersistente,
+    // ad esempio costruita in background (vedi CaricamentoLista)
+    public void ripristina(Versione<E> versione) {
+        corrente = versione;
+        modCount++;
+    }
+
+    private void imposta(Nodo<E> radice) {
+        corrente = new Versione<>(radice);
+        modCount++;
+    }
+
+    // ============================================
+    // LETTURA
+    // ============================================
+
+    @Override
+    public E get(int indice) {
+        return corrente.get(indice);
+    }
+
+    @Override
+    public int size() {
+        return corrente.size();
+    }
+
+    // Scorre la versione di quando è stato creato: nessuna ConcurrentModificationException
+    @Override
+    public Iterator<E> iterator() {
+        return corrente.iterator();
+    }
+
+    @Override
+    public void forEach(Consumer<? super E> azione) {
+        corrente.forEach(azione);
+    }
+
+    // ============================================
+    // MODIFICA (ogni modifica = una nuova versione)
+    // ============================================
+
+    @Override
+    public E set(int indice, E valore) {
+        Nodo<E> radice = corrente.radice;
+        E vecchio = get(radice, indice);
+        imposta(sostituisci(radice, indice, valore));
+        return vecchio;
+    }
+
+    @Override
+    public void add(int indice, E valore) {
+        Nodo<E> radice = corrente.radice;
+        if (indice < 0 || indice > dimensione(radice)) {
+            throw new IndexOutOfBoundsException("indice " + indice + " su " + dimensione(radice));
+        }
+        Nodo<E>[] parti = dividi(radice, indice);
+        Nodo<E> nuovo = new Nodo<>(valore, casuale.nextInt(), null, null);
+        imposta(unisci(unisci(parti[0], nuovo), parti[1]));
+    }
+
+    @Override
+    public E remove(int indice) {
+        Nodo<E> radice = corrente.radice;
+        E vecchio = get(radice, indice);
+        Nodo<E>[] prima = dividi(radice, indice);
+        Nodo<E>[] dopo = dividi(prima[1], 1);
+        imposta(unisci(prima[0], dopo[1]));
+        return vecchio;
+    }
+
+    @Override
+    public void clear() {
+        imposta(null);
+    }
+
+    // In fondo, tutti insieme: l'albero dei nuovi si costruisce in O(k)
+    @Override
+    public boolean addAll(Collection<? extends E> nuovi) {
+        if (nuovi.isEmpty()) {
+            return false;
+        }
+        imposta(unisci(corrente.radice, costruisci(nuovi)));
+        return true;
+    }
+
+    // Una passata sola: si ricostruisce l'albero con gli elementi rimasti
+    @Override
+    public boolean removeIf(Predicate<? super E> daTogliere) {
+        List<E> rimasti = new ArrayList<>(size());
+        boolean tolti = false;
+        for (E elemento : corrente) {
+            if (daTogliere.test(elemento)) {
+                tolti = true;
+            } else {
+                rimasti.add(elemento);
+            }
+        }
+        if (tolti) {
+            imposta(costruisci(rimasti));
+        }
+        return tolti;
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<E> operazione) {
+        List<E> nuovi = new ArrayList<>(size());
+        for (E elemento : corrente) {
+            nuovi.add(operazione.apply(elemento));
+        }
+        imposta(costruisci(nuovi));
+    }
+
+    // ============================================
+    // ALBERO
+    // ============================================
+
+    private static int dimensione(Nodo<?> nodo) {
+        return nodo == null ? 0 : nodo.dimensione;
+    }
+
+    private static <E> E get(Nodo<E> nodo, int indice) {
+        if (indice < 0 || indice >= dimensione(nodo)) {
+            throw new IndexOutOfBoundsException("indice " + indice + " su " + dimensione(nodo));
+        }
+        while (true) {
+            int sinistra = dimensione(nodo.sinistra);
+            if (indice < sinistra) {
+                nodo = nodo.sinistra;
+            } else if (indice == sinistra) {
+                return nodo.valore;
+            } else {
+                indice -= sinistra + 1;
+                nodo = nodo.destra;
+            }
+        }
+    }
+
+    // Copia solo il cammino fino all'elemento
+    private static <E> Nodo<E> sostituisci(Nodo<E> nodo, int indice, E valore) {
+        int sinistra = dimensione(nodo.sinistra);
+        if (indice < sinistra) {
+            return nodo.con(sostituisci(nodo.sinistra, indice, valore), nodo.destra);
+        }
+        if (indice > sinistra) {
+            return nodo.con(nodo.sinistra, sostituisci(nodo.destra, indice - sinistra - 1, valore));
+        }
+        return new Nodo<>(valore, nodo.priorita, nodo.sinistra, nodo.destra);
+    }
+
+    // { i primi "quanti" elementi, il resto }
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <E> Nodo<E>[] dividi(Nodo<E> nodo, int quanti) {
+        if (nodo == null) {
+            return new Nodo[] {null, null};
+        }
+        int sinistra = dimensione(nodo.sinistra);
+        if (quanti <= sinistra) {
+            Nodo<E>[] parti = dividi(nodo.sinistra, quanti);
+            parti[1] = nodo.con(parti[1], nodo.destra);
+            return parti;
+        }
+        Nodo<E>[] parti = dividi(nodo.destra, quanti - sinistra - 1);
+        parti[0] = nodo.con(nodo.sinistra, parti[0]);
+        return parti;
+    }
+
+    // Tutti gli elementi di "a" prima di quelli di "b"; in alto la priorità maggiore
+    private static <E> Nodo<E> unisci(Nodo<E> a, Nodo<E> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priorita >= b.priorita) {
+            return a.con(a.sinistra, unisci(a.destra, b));
+        }
+        return b.con(unisci(a, b.sinistra), b.destra);
+    }
+
+    /*
+     * METODO: costruisci(Collection elementi)
+     *
+     * COSA FA?
+     * - Costruisce in O(n) un albero bilanciato con gli elementi in ordine
+     * - Ogni nodo prende la priorità più alta tra un numero casuale e
+     *   quelle dei suoi figli: resta un treap valido, e come in un treap
+     *   vero la radice ha la priorità massima del suo sottoalbero
+     *   (così si unisce bene con gli altri alberi)
+     */
+    private Nodo<E> costruisci(Collection<? extends E> elementi) {
+        List<E> valori = new ArrayList<>(elementi);
+        return costruisci(valori, 0, valori.size());
+    }
+
+    private Nodo<E> costruisci(List<E> valori, int da, int a) {
+        if (da >= a) {
+            return null;
+        }
+        int mezzo = (da + a) >>> 1;
+        Nodo<E> sinistra = costruisci(valori, da, mezzo);
+        Nodo<E> destra = costruisci(valori, mezzo + 1, a);
+        int priorita = casuale.nextInt();
+        if (sinistra != null) {
+            priorita = Math.max(priorita, sinistra.priorita);
+        }
+        if (destra != null) {
+            priorita = Math.max(priorita, destra.priorita);
+        }
+        return new Nodo<>(valori.get(mezzo), priorita, sinistra, destra);
+    }
+
+    private static <E> void visita(Nodo<E> nodo, Consumer<? super E> azione) {
+        while (nodo != null) {
+            visita(nodo.sinistra, azione);
+            azione.accept(nodo.valore);
+            nodo = nodo.destra;
+        }
+    }
+
+    /*
+     * CLASSE: Scorrimento
+     *
+     * COSA È?
+     * - Un iteratore in ordine che tiene in una pila il cammino verso
+     *   il prossimo elemento (O(log n) memoria, O(1) medio per passo)
+     */
+    private static final class Scorrimento<E> implements Iterator<E> {
+        private final Deque<Nodo<E>> pila = new ArrayDeque<>();
+
+        Scorrimento(Nodo<E> radice) {
+            scendi(radice);
+        }
+
+        private void scendi(Nodo<E> nodo) {
+            while (nodo != null) {
+                pila.push(nodo);
+                nodo = nodo.sinistra;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !pila.isEmpty();
+        }
+
+        @Override
+        public E next() {
+            if (pila.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Nodo<E> nodo = pila.pop();
+            scendi(nodo.destra);
+            return nodo.valore;
+        }
+    }
+}
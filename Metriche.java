@@ -0,0 +1,201 @@
+/*
+ * METRICHE - contatori, latenze e byte per ogni operazione della lista
+ *
+ * COSA MISURA?
+ * - Per ogni operazione (aggiungi, rimuovi, cerca, ...):
+ *   * quante volte è stata eseguita
+ *   * un istogramma delle latenze (vedi IstogrammaLatenze)
+ * - Byte letti e scritti su disco
+ *
+ * DOVE SI VEDONO?
+ * - Nel menu: "Statistiche"
+ * - Via JMX: listaspesa:type=Metriche (JConsole, VisualVM, ...)
+ *
+ * COME SI USA?
+ *   long inizio = System.nanoTime();
+ *   ... lavoro ...
+ *   metriche.registra(Metriche.Operazione.SALVA, inizio);
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+public class Metriche implements MetricheMXBean {
+
+    public static final String NOME_JMX = "listaspesa:type=Metriche";
+
+    /*
+     * ENUM: Operazione
+     *
+     * PERCHÉ enum?
+     * - L'ordinale indicizza direttamente l'array di istogrammi
+     * - Niente HashMap da consultare sul percorso caldo
+     */
+    public enum Operazione {
+        AGGIUNGI("aggiungi"),
+        VISUALIZZA("visualizza"),
+        RIMUOVI("rimuovi"),
+        CERCA("cerca"),
+        MARCA("marca"),
+        TOTALE("totale"),
+        SALVA("salva"),
+        CARICA("carica"),
+        SVUOTA("svuota"),
+        SCONTRINI("scontrini");
+
+        private final String etichetta;
+
+        Operazione(String etichetta) {
+            this.etichetta = etichetta;
+        }
+
+        public String etichetta() {
+            return etichetta;
+        }
+    }
+
+    private final IstogrammaLatenze[] istogrammi;
+    private final LongAdder byteLetti = new LongAdder();
+    private final LongAdder byteScritti = new LongAdder();
+
+    public Metriche() {
+        this.istogrammi = new IstogrammaLatenze[Operazione.values().length];
+        for (int i = 0; i < istogrammi.length; i++) {
+            istogrammi[i] = new IstogrammaLatenze();
+        }
+    }
+
+    /*
+     * METODO: registraInJmx()
+     *
+     * COSA FA?
+     * - Pubblica queste metriche sul server JMX della JVM
+     * - Se fallisce (es. nome già registrato) l'app continua lo stesso:
+     *   le metriche restano visibili dal menu
+     */
+    public void registraInJmx() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(NOME_JMX));
+        } catch (Exception e) {
+            System.out.println("⚠ Metriche JMX non disponibili: " + e.getMessage());
+        }
+    }
+
+    // ============================================
+    // REGISTRAZIONE (percorso caldo)
+    // ============================================
+
+    public void registra(Operazione operazione, long inizioNanos) {
+        istogrammi[operazione.ordinal()].registra(System.nanoTime() - inizioNanos);
+    }
+
+    public void aggiungiByteLetti(long n) {
+        byteLetti.add(n);
+    }
+
+    public void aggiungiByteScritti(long n) {
+        byteScritti.add(n);
+    }
+
+    public IstogrammaLatenze istogramma(Operazione operazione) {
+        return istogrammi[operazione.ordinal()];
+    }
+
+    // ============================================
+    // LETTURA (MXBean)
+    // ============================================
+
+    @Override
+    public Map<String, Long> getConteggi() {
+        Map<String, Long> valori = new LinkedHashMap<>();
+        for (Operazione op : Operazione.values()) {
+            valori.put(op.etichetta(), istogramma(op).conteggio());
+        }
+        return valori;
+    }
+
+    @Override
+    public Map<String, Double> getLatenzaMediaNanos() {
+        Map<String, Double> valori = new LinkedHashMap<>();
+        for (Operazione op : Operazione.values()) {
+            valori.put(op.etichetta(), istogramma(op).media());
+        }
+        return valori;
+    }
+
+    @Override
+    public Map<String, Long> getLatenzaP50Nanos() {
+        return percentili(50);
+    }
+
+    @Override
+    public Map<String, Long> getLatenzaP99Nanos() {
+        return percentili(99);
+    }
+
+    @Override
+    public Map<String, Long> getLatenzaMassimaNanos() {
+        Map<String, Long> valori = new LinkedHashMap<>();
+        for (Operazione op : Operazione.values()) {
+            valori.put(op.etichetta(), istogramma(op).massimo());
+        }
+        return valori;
+    }
+
+    @Override
+    public long getByteLetti() {
+        return byteLetti.sum();
+    }
+
+    @Override
+    public long getByteScritti() {
+        return byteScritti.sum();
+    }
+
+    @Override
+    public void azzera() {
+        for (IstogrammaLatenze istogramma : istogrammi) {
+            istogramma.azzera();
+        }
+        byteLetti.reset();
+        byteScritti.reset();
+    }
+
+    /*
+     * METODO: riepilogo()
+     *
+     * COSA FA?
+     * - Costruisce la tabella mostrata dal menu "Statistiche"
+     * - Le latenze sono in microsecondi (più leggibili dei ns)
+     */
+    @Override
+    public String riepilogo() {
+        StringBuilder testo = new StringBuilder();
+        testo.append(String.format("%-11s %8s %10s %10s %10s %10s\n",
+                "Operazione", "Conteggio", "Media µs", "p50 µs", "p99 µs", "Max µs"));
+        for (Operazione op : Operazione.values()) {
+            IstogrammaLatenze istogramma = istogramma(op);
+            testo.append(String.format("%-11s %8d %10.1f %10.1f %10.1f %10.1f\n",
+                    op.etichetta(),
+                    istogramma.conteggio(),
+                    istogramma.media() / 1000.0,
+                    istogramma.percentile(50) / 1000.0,
+                    istogramma.percentile(99) / 1000.0,
+                    istogramma.massimo() / 1000.0));
+        }
+        testo.append("Byte letti: ").append(getByteLetti()).append("\n");
+        testo.append("Byte scritti: ").append(getByteScritti()).append("\n");
+        return testo.toString();
+    }
+
+    private Map<String, Long> percentili(double p) {
+        Map<String, Long> valori = new LinkedHashMap<>();
+        for (Operazione op : Operazione.values()) {
+            valori.put(op.etichetta(), istogramma(op).percentile(p));
+        }
+        return valori;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * METRICHE MXBEAN - interfaccia JMX delle metriche
+ *
+ * PERCHÉ MXBean (e non un MBean "standard")?
+ * - Con MXBean le Map vengono convertite in TabularData
+ * - Così JConsole / VisualVM le mostrano senza classi extra
+ *
+ * Nome JMX: listaspesa:type=Metriche
+ */
+
+import java.util.Map;
+
+public interface MetricheMXBean {
+
+    // Numero di esecuzioni per operazione
+    Map<String, Long> getConteggi();
+
+    // Latenze in nanosecondi per operazione
+    Map<String, Double> getLatenzaMediaNanos();
+    Map<String, Long> getLatenzaP50Nanos();
+    Map<String, Long> getLatenzaP99Nanos();
+    Map<String, Long> getLatenzaMassimaNanos();
+
+    // Traffico su disco
+    long getByteLetti();
+    long getByteScritti();
+
+    // Operazioni
+    String riepilogo();
+    void azzera();
+}
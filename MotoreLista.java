@@ -0,0 +1,1094 @@
+/*
+ * MOTORE LISTA - la lista della spesa senza console
+ *
+ * PROBLEMA:
+ * - Aggiungere, rimuovere, cercare... erano scritti dentro i menu di
+ *   Application e ListaDellaSpesa, mescolati a Scanner e System.out
+ * - L'unico modo di usarli era digitare comandi; ogni operazione era
+ *   scritta due volte; misurarla voleva dire misurare anche la console
+ *
+ * SOLUZIONE:
+ * - Qui c'è tutto il lavoro vero: la lista, i totali, gli indici e le
+ *   operazioni, con parametri tipizzati e un risultato per ogni operazione
+ * - Le console chiedono i dati, chiamano il motore e stampano il risultato
+ * - Altro codice Java lo usa direttamente, senza passare da stdin:
+ *
+ *     MotoreLista motore = new MotoreLista();
+ *     motore.aggiungi("Latte", "Latticini", 1.20, 2);
+ *     motore.marca(0);
+ *     System.out.println(motore.totali().totale());
+ *
+ * ERRORI
+ * - Dati non validi (nome vuoto, prezzo ≤ 0, numero fuori lista):
+ *   IllegalArgumentException con un messaggio da mostrare all'utente
+ * - Errori di lettura e scrittura dei file: le eccezioni di I/O
+ *
+ * POSIZIONI: da 0, come nelle liste Java (le console mostrano da 1)
+ *
+ * THREAD
+ * - Ogni operazione blocca la lista (synchronized (articoli())): la
+ *   possono usare più thread insieme
+ * - La lista si modifica SOLO da qui: le console la leggono (anche
+ *   dentro lo stesso lock, per leggere più articoli insieme), ma per
+ *   cambiarla chiamano un'operazione; totali, indici, cronologia e
+ *   allaModifica restano così sempre allineati
+ */
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+public class MotoreLista {
+
+    /*
+     * CLASSE: Aggiunta
+     *
+     * COSA È?
+     * - L'esito di aggiungi(): l'articolo ora in lista e dove
+     * - unito: era un doppione, è stata sommata la quantità a quello esistente
+     * - fuoriMisura: la categoria, se il prezzo è molto più alto del solito
+     *   (null altrimenti, vedi PrezziCategorie)
+     */
+    public static final class Aggiunta {
+        private final Map<String, Object> articolo;
+        private final int posizione;
+        private final boolean unito;
+        private final PrezziCategorie.Statistica fuoriMisura;
+
+        Aggiunta(Map<String, Object> articolo, int posizione, boolean unito, PrezziCategorie.Statistica fuoriMisura) {
+            this.articolo = articolo;
+            this.posizione = posizione;
+            this.unito = unito;
+            this.fuoriMisura = fuoriMisura;
+        }
+
+        public Map<String, Object> articolo() {
+            return articolo;
+        }
+
+        public int posizione() {
+            return posizione;
+        }
+
+        public boolean unito() {
+            return unito;
+        }
+
+        public PrezziCategorie.Statistica fuoriMisura() {
+            return fuoriMisura;
+        }
+    }
+
+    /*
+     * CLASSE: Modifica
+     *
+     * COSA È?
+     * - L'esito di rimuovi() e marca(): l'articolo com'era, com'è ora
+     *   (null se è stato rimosso) e la sua posizione
+     */
+    public static final class Modifica {
+        private final Map<String, Object> prima;
+        private final Map<String, Object> dopo;
+        private final int posizione;
+
+        Modifica(Map<String, Object> prima, Map<String, Object> dopo, int posizione) {
+            this.prima = prima;
+            this.dopo = dopo;
+            this.posizione = posizione;
+        }
+
+        public Map<String, Object> prima() {
+            return prima;
+        }
+
+        public Map<String, Object> dopo() {
+            return dopo;
+        }
+
+        public int posizione() {
+            return posizione;
+        }
+    }
+
+    /*
+     * CLASSE: Ricerca
+     *
+     * COSA È?
+     * - L'esito di cerca(): gli articoli trovati con la loro posizione
+     * - tollerante: sono risultati "quasi uguali" (errori di battitura),
+     *   dal più simile; altrimenti contengono il testo, in ordine di lista
+     */
+    public static final class Ricerca {
+        private final List<Trovato> trovati;
+        private final boolean tollerante;
+
+        Ricerca(List<Trovato> trovati, boolean tollerante) {
+            this.trovati = trovati;
+            this.tollerante = tollerante;
+        }
+
+        public List<Trovato> trovati() {
+            return trovati;
+        }
+
+        public boolean tollerante() {
+            return tollerante;
+        }
+    }
+
+    public static final class Trovato {
+        private final Map<String, Object> articolo;
+        private final int posizione;
+        private final int distanza;
+
+        Trovato(Map<String, Object> articolo, int posizione, int distanza) {
+            this.articolo = articolo;
+            this.posizione = posizione;
+            this.distanza = distanza;
+        }
+
+        public Map<String, Object> articolo() {
+            return articolo;
+        }
+
+        public int posizione() {
+            return posizione;
+        }
+
+        // Errori di battitura rispetto al testo cercato (0 nella ricerca normale)
+        public int distanza() {
+            return distanza;
+        }
+    }
+
+    /*
+     * CLASSE: Riconciliazione
+     *
+     * COSA È?
+     * - L'esito di riconcilia(): le righe degli scontrini abbinate a un
+     *   articolo (ora acquistato, con il prezzo pagato) e quelle senza articolo
+     */
+    public static final class Riconciliazione {
+        private final List<Abbinamento> abbinati;
+        private final List<Scontrini.Riga> nonTrovate;
+
+        Riconciliazione(List<Abbinamento> abbinati, List<Scontrini.Riga> nonTrovate) {
+            this.abbinati = abbinati;
+            this.nonTrovate = nonTrovate;
+        }
+
+        public List<Abbinamento> abbinati() {
+            return abbinati;
+        }
+
+        public List<Scontrini.Riga> nonTrovate() {
+            return nonTrovate;
+        }
+    }
+
+    public static final class Abbinamento {
+        private final Scontrini.Riga riga;
+        private final Modifica modifica;
+        private final Map<String, Object> rimanente;
+        private final boolean tollerante;
+
+        Abbinamento(Scontrini.Riga riga, Modifica modifica, Map<String, Object> rimanente, boolean tollerante) {
+            this.riga = riga;
+            this.modifica = modifica;
+            this.rimanente = rimanente;
+            this.tollerante = tollerante;
+        }
+
+        public Scontrini.Riga riga() {
+            return riga;
+        }
+
+        // L'articolo da comprare, quello acquistato e la sua posizione
+        public Modifica modifica() {
+            return modifica;
+        }
+
+        // Comprati meno pezzi del previsto: gli altri, ancora da comprare, in fondo alla lista (null se nessuno)
+        public Map<String, Object> rimanente() {
+            return rimanente;
+        }
+
+        // Trovato con qualche errore di battitura (vedi IndiceFuzzy), non per parole uguali
+        public boolean tollerante() {
+            return tollerante;
+        }
+    }
+
+    private final ListaPersistente<Map<String, Object>> articoli = new ListaPersistente<>();
+    private final Metriche metriche;
+
+    // Chiamato dentro il lock dopo ogni modifica (es. per il salvataggio automatico)
+    private final Runnable allaModifica;
+
+    // Totali e indici, allineati alla lista (vedi indicizza())
+    private Riepilogo riepilogo = new Riepilogo();
+    private IndiceFuzzy indiceFuzzy;
+    private IndiceDuplicati indiceDuplicati;
+    private PrezziCategorie prezziCategorie;
+    private final RigheStampate righeStampate = new RigheStampate();
+
+    // Le ultime modifiche, per annulla() e ripeti() (vedi Cronologia)
+    private final Cronologia<ListaPersistente.Versione<Map<String, Object>>> cronologia = new Cronologia<>();
+
+    // Un motore da solo: metriche sue, nessuno da avvisare
+    public MotoreLista() {
+        this(new Metriche(), () -> { });
+    }
+
+    public MotoreLista(Metriche metriche, Runnable allaModifica) {
+        this.metriche = metriche;
+        this.allaModifica = allaModifica;
+    }
+
+    // ============================================
+    // OPERAZIONI
+    // ============================================
+
+    /*
+     * METODO: aggiungi(String nome, String categoria, double prezzo, int quantita)
+     *
+     * COSA FA?
+     * - Aggiunge un articolo da comprare; se ce n'è già uno da comprare con
+     *   lo stesso nome e categoria, gli somma la quantità (vedi
+     *   IndiceDuplicati.unisci); uno già comprato resta com'è
+     */
+    public Aggiunta aggiungi(String nome, String categoria, double prezzo, int quantita) {
+        return aggiungi(nome, categoria, prezzo, quantita, true);
+    }
+
+    /*
+     * METODO: aggiungi(String nome, String categoria, double prezzo, int quantita, boolean unisci)
+     *
+     * COSA FA?
+     * - Come sopra; con unisci = false il doppione diventa una riga in più
+     *   (la console decide con la politica --duplicati, vedi doppione())
+     */
+    public Aggiunta aggiungi(String nome, String categoria, double prezzo, int quantita, boolean unisci) {
+        // !isFinite: NaN e infinito non sono prezzi (NaN <= 0 è falso: passerebbe)
+        if (nome.isEmpty() || categoria.isEmpty() || !Double.isFinite(prezzo) || prezzo <= 0 || quantita <= 0) {
+            throw new IllegalArgumentException("Dati non validi!");
+        }
+        long inizio = System.nanoTime();
+        synchronized (articoli) {
+            Map<String, Object> esistente = unisci ? doppione(nome, categoria) : null;
+            if (esistente != null) {
+                Map<String, Object> unito = IndiceDuplicati.unisci(esistente, quantita, prezzo);
+                int posizione = sostituisci(esistente, unito);
+                allaModifica.run();
+                metriche.registra(Metriche.Operazione.AGGIUNGI, inizio);
+                return new Aggiunta(unito, posizione, true, null);
+            }
+
+            /*
+             * PERCHÉ una HashMap?
+             * - Chiavi (String) → valori (Object): "nome" → "Pane", "prezzo" → 1.50
+             * - Ogni articolo è una mappa nuova: quelle in lista non si
+             *   modificano mai al loro posto (vedi ListaPersistente)
+             *
+             * PERCHÉ acquistato = false?
+             * - Un articolo appena aggiunto è ancora da comprare
+             *
+             * PERCHÉ un id?
+             * - Riconosce l'articolo anche su altri dispositivi (vedi ReplicaCrdt)
+             */
+            Map<String, Object> articolo = new HashMap<>();
+            articolo.put("nome", nome);
+            articolo.put("categoria", categoria);
+            articolo.put("prezzo", prezzo);
+            articolo.put("quantita", quantita);
+            articolo.put("acquistato", false);
+            articolo.put("id", FormatoCsv.nuovoId());
+
+            // Confrontato con i prezzi di prima, senza il suo
+            PrezziCategorie.Statistica caro = prezziCategorie().fuoriMisura(categoria, prezzo);
+            articoli.add(articolo);
+            indicizza(articolo);
+            allaModifica.run();
+            metriche.registra(Metriche.Operazione.AGGIUNGI, inizio);
+            return new Aggiunta(articolo, articoli.size() - 1, false, caro);
+        }
+    }
+
+    // L'articolo da comprare con lo stesso nome e categoria, in O(1) (null se non c'è):
+    // quelli già comprati non si uniscono, i loro pezzi sono già nel carrello
+    public Map<String, Object> doppione(String nome, String categoria) {
+        synchronized (articoli) {
+            return indiceDuplicati().trovaDaComprare(nome, categoria);
+        }
+    }
+
+    public Modifica rimuovi(int posizione) {
+        long inizio = System.nanoTime();
+        synchronized (articoli) {
+            controllaPosizione(posizione);
+            Map<String, Object> articolo = articoli.remove(posizione);
+            deindicizza(articolo);
+            allaModifica.run();
+            metriche.registra(Metriche.Operazione.RIMUOVI, inizio);
+            return new Modifica(articolo, null, posizione);
+        }
+    }
+
+    /*
+     * METODO: marca(int posizione)
+     *
+     * COSA FA?
+     * - Inverte lo stato: acquistato ↔ da comprare
+     * - In lista va una COPIA con lo stato cambiato: le versioni vecchie restano intatte
+     */
+    public Modifica marca(int posizione) {
+        long inizio = System.nanoTime();
+        synchronized (articoli) {
+            controllaPosizione(posizione);
+            Map<String, Object> articolo = articoli.get(posizione);
+            Map<String, Object> marcato = new HashMap<>(articolo);
+            marcato.put("acquistato", !(boolean) articolo.get("acquistato"));
+            articoli.set(posizione, marcato);
+            deindicizza(articolo);
+            indicizza(marcato);
+            allaModifica.run();
+            metriche.registra(Metriche.Operazione.MARCA, inizio);
+            return new Modifica(articolo, marcato, posizione);
+        }
+    }
+
+    private void controllaPosizione(int posizione) {
+        if (posizione < 0 || posizione >= articoli.size()) {
+            throw new IllegalArgumentException("Numero non valido!");
+        }
+    }
+
+    /*
+     * METODO: cerca(String testo, boolean soloTollerante)
+     *
+     * COSA FA?
+     * - Gli articoli il cui nome o categoria contiene il testo (maiuscole
+     *   e minuscole uguali), in ordine di lista
+     * - Se non ce n'è nessuno, o con soloTollerante, quelli "quasi uguali"
+     *   (vedi IndiceFuzzy), dal più simile
+     */
+    public Ricerca cerca(String testo, boolean soloTollerante) {
+        long inizio = System.nanoTime();
+        EventiSpesa.Ricerca evento = new EventiSpesa.Ricerca();
+        evento.begin();
+        String ricerca = testo.toLowerCase();
+        List<Trovato> trovati = new ArrayList<>();
+        boolean tollerante = soloTollerante;
+        synchronized (articoli) {
+            if (!soloTollerante) {
+                int posizione = 0;
+                for (Map<String, Object> articolo : articoli) {
+                    String nome = ((String) articolo.get("nome")).toLowerCase();
+                    String categoria = ((String) articolo.get("categoria")).toLowerCase();
+                    if (nome.contains(ricerca) || categoria.contains(ricerca)) {
+                        trovati.add(new Trovato(articolo, posizione, 0));
+                    }
+                    posizione++;
+                }
+            }
+
+            // Niente di esatto: proviamo con qualche errore di battitura
+            if (trovati.isEmpty()) {
+                tollerante = true;
+                cercaTollerante(ricerca, trovati);
+            }
+            evento.articoli = articoli.size();
+        }
+        metriche.registra(Metriche.Operazione.CERCA, inizio);
+        evento.testo = ricerca;
+        evento.risultati = trovati.size();
+        evento.commit();
+        return new Ricerca(trovati, tollerante);
+    }
+
+    private void cercaTollerante(String ricerca, List<Trovato> trovati) {
+        List<IndiceFuzzy.Risultato> simili = indiceFuzzy().cerca(ricerca, IndiceFuzzy.distanzaPredefinita(ricerca));
+        if (simili.isEmpty()) {
+            return;
+        }
+
+        // La posizione di ogni articolo trovato (una sola passata sulla lista)
+        Map<Map<String, Object>, IndiceFuzzy.Risultato> perArticolo = new IdentityHashMap<>();
+        for (IndiceFuzzy.Risultato risultato : simili) {
+            perArticolo.put(risultato.articolo(), risultato);
+        }
+        int posizione = 0;
+        for (Map<String, Object> articolo : articoli) {
+            IndiceFuzzy.Risultato risultato = perArticolo.get(articolo);
+            if (risultato != null) {
+                trovati.add(new Trovato(articolo, posizione, risultato.distanza()));
+            }
+            posizione++;
+        }
+        trovati.sort(Comparator.comparingInt(Trovato::distanza).thenComparingInt(Trovato::posizione));
+    }
+
+    /*
+     * METODO: riconcilia(List righe)
+     *
+     * COSA FA?
+     * - Segna acquistati, con il prezzo pagato e i pezzi comprati, gli
+     *   articoli da comprare che compaiono negli scontrini (vedi Scontrini):
+     *   tutti in una volta, con la lista bloccata una volta sola
+     * - Se lo scontrino ha meno pezzi di quelli da comprare, il resto
+     *   resta da comprare in una riga nuova in fondo alla lista
+     *
+     * COME ABBINA? (un "hash join")
+     * - Una passata sulla lista: parole del nome (Scontrini.parole) →
+     *   posizioni degli articoli da comprare con quel nome
+     * - Una passata sulle righe: per ogni riga si cercano nella mappa i
+     *   pezzi del nome, dal più lungo ("latte intero ps", "latte intero",
+     *   ... "latte"); la prima posizione libera vince
+     * - Ogni riga costa qualche ricerca in una HashMap: migliaia di righe
+     *   e di articoli si abbinano in tempo lineare, non righe × articoli
+     * - Riga senza abbinamento: si prova con gli errori di battitura
+     *   (IndiceFuzzy), sul nome intero e poi parola per parola
+     * - Un articolo si abbina a una riga sola
+     */
+    public Riconciliazione riconcilia(List<Scontrini.Riga> righe) {
+        long inizio = System.nanoTime();
+        List<Abbinamento> abbinati = new ArrayList<>();
+        List<Scontrini.Riga> nonTrovate = new ArrayList<>();
+        synchronized (articoli) {
+            Map<String, ArrayDeque<Integer>> daComprare = new HashMap<>();
+            int posizione = 0;
+            for (Map<String, Object> articolo : articoli) {
+                if (!(boolean) articolo.get("acquistato")) {
+                    String chiave = String.join(" ", Scontrini.parole((String) articolo.get("nome")));
+                    if (!chiave.isEmpty()) {
+                        daComprare.computeIfAbsent(chiave, c -> new ArrayDeque<>()).add(posizione);
+                    }
+                }
+                posizione++;
+            }
+
+            Set<Integer> prese = new HashSet<>();
+            Map<Map<String, Object>, Integer> posizioni = null;
+            for (Scontrini.Riga riga : righe) {
+                int trovata = abbina(riga.parole(), daComprare, prese);
+                boolean tollerante = false;
+                if (trovata < 0) {
+                    if (posizioni == null) {
+                        posizioni = new IdentityHashMap<>();
+                        int i = 0;
+                        for (Map<String, Object> articolo : articoli) {
+                            posizioni.put(articolo, i++);
+                        }
+                    }
+                    trovata = abbinaTollerante(riga.parole(), posizioni, prese);
+                    tollerante = true;
+                }
+                if (trovata < 0) {
+                    nonTrovate.add(riga);
+                    continue;
+                }
+                prese.add(trovata);
+
+                // Acquistato quanto dice lo scontrino, al prezzo pagato
+                Map<String, Object> articolo = articoli.get(trovata);
+                Map<String, Object> acquistato = new HashMap<>(articolo);
+                acquistato.put("acquistato", true);
+                acquistato.put("prezzo", riga.prezzo());
+                acquistato.put("quantita", riga.quantita());
+                articoli.set(trovata, acquistato);
+                deindicizza(articolo);
+                indicizza(acquistato);
+
+                // Meno pezzi di quelli da comprare: il resto torna in lista, in fondo
+                // (le posizioni già trovate non cambiano) e un'altra riga lo può prendere
+                Map<String, Object> rimanente = null;
+                int mancanti = (int) articolo.get("quantita") - riga.quantita();
+                if (mancanti > 0) {
+                    rimanente = new HashMap<>(articolo);
+                    rimanente.put("quantita", mancanti);
+                    rimanente.put("id", FormatoCsv.nuovoId());
+                    articoli.add(rimanente);
+                    indicizza(rimanente);
+                    int inFondo = articoli.size() - 1;
+                    daComprare.computeIfAbsent(String.join(" ", Scontrini.parole((String) articolo.get("nome"))),
+                            c -> new ArrayDeque<>()).addFirst(inFondo);
+                    if (posizioni != null) {
+                        posizioni.put(rimanente, inFondo);
+                    }
+                }
+                abbinati.add(new Abbinamento(riga, new Modifica(articolo, acquistato, trovata), rimanente, tollerante));
+            }
+            if (!abbinati.isEmpty()) {
+                allaModifica.run();
+            }
+        }
+        metriche.registra(Metriche.Operazione.SCONTRINI, inizio);
+        return new Riconciliazione(abbinati, nonTrovate);
+    }
+
+    // I pezzi consecutivi del nome, dal più lungo: la prima posizione non ancora presa
+    private static int abbina(String[] parole, Map<String, ArrayDeque<Integer>> daComprare, Set<Integer> prese) {
+        for (int lunghezza = parole.length; lunghezza > 0; lunghezza--) {
+            for (int da = 0; da + lunghezza <= parole.length; da++) {
+                ArrayDeque<Integer> coda = daComprare.get(String.join(" ", Arrays.asList(parole).subList(da, da + lunghezza)));
+                while (coda != null && !coda.isEmpty()) {
+                    int posizione = coda.poll();
+                    if (!prese.contains(posizione)) {
+                        return posizione;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Il nome intero e poi ogni parola nell'indice fuzzy (almeno 4
+     * lettere: le sigle corte troverebbero di tutto); vale solo un
+     * articolo da comprare, non ancora preso, vicino per il NOME
+     * (l'indice contiene anche le categorie)
+     */
+    private int abbinaTollerante(String[] parole, Map<Map<String, Object>, Integer> posizioni, Set<Integer> prese) {
+        List<String> testi = new ArrayList<>();
+        testi.add(String.join(" ", parole));
+        if (parole.length > 1) {
+            testi.addAll(Arrays.asList(parole));
+        }
+        for (String testo : testi) {
+            if (testo.length() < 4) {
+                continue;
+            }
+            int massima = IndiceFuzzy.distanzaPredefinita(testo);
+            for (IndiceFuzzy.Risultato risultato : indiceFuzzy().cerca(testo, massima)) {
+                Map<String, Object> articolo = risultato.articolo();
+                Integer posizione = posizioni.get(articolo);
+                if (posizione == null || prese.contains(posizione) || (boolean) articolo.get("acquistato")) {
+                    continue;
+                }
+                for (String nome : Scontrini.parole((String) articolo.get("nome"))) {
+                    if (IndiceFuzzy.distanza(testo, nome) <= massima) {
+                        return posizione;
+                    }
+                }
+                if (IndiceFuzzy.distanza(testo, Testo.normalizza((String) articolo.get("nome"))) <= massima) {
+                    return posizione;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // I totali della lista, in O(1) (una copia: non cambia con la lista)
+    public Riepilogo totali() {
+        synchronized (articoli) {
+            return riepilogo.copia();
+        }
+    }
+
+    // ============================================
+    // OPERAZIONI SU TUTTA LA LISTA
+    // ============================================
+
+    /*
+     * METODO: svuota(Path file)
+     *
+     * COSA FA?
+     * - Toglie tutti gli articoli
+     * - file: dove si salva la lista, per l'evento Svuotamento (null se
+     *   la lista non ha un file)
+     * - Ritorna la lista di prima, ferma (es. per ProdottiAbituali:
+     *   una lista svuotata è una spesa finita)
+     */
+    public ListaPersistente.Versione<Map<String, Object>> svuota(Path file) {
+        long inizio = System.nanoTime();
+        EventiSpesa.Svuotamento evento = new EventiSpesa.Svuotamento();
+        evento.begin();
+        ListaPersistente.Versione<Map<String, Object>> finita;
+        synchronized (articoli) {
+            finita = articoli.versione();
+            articoli.clear();
+            reindicizza();
+            allaModifica.run();
+        }
+        metriche.registra(Metriche.Operazione.SVUOTA, inizio);
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.file = file == null ? null : file.toAbsolutePath().toString();
+            evento.articoli = finita.size();
+            evento.commit();
+        }
+        return finita;
+    }
+
+    /*
+     * METODO: applica(List posizioni, List attesi, UnaryOperator azione)
+     *
+     * COSA FA?
+     * - La stessa azione su molti articoli, come UNA modifica (es. sugli
+     *   articoli trovati da un filtro)
+     * - posizioni (in ordine crescente) e attesi: dove erano e quali erano;
+     *   una posizione che nel frattempo contiene un altro articolo si salta
+     * - azione(articolo): la copia da mettere al suo posto, lo stesso
+     *   articolo per lasciarlo com'è, null per toglierlo
+     * - Ritorna quanti articoli sono cambiati
+     *
+     * PERCHÉ dal fondo?
+     * - Togliere un articolo sposta solo quelli dopo: le posizioni ancora
+     *   da guardare restano giuste
+     */
+    public int applica(List<Integer> posizioni, List<Map<String, Object>> attesi,
+                       UnaryOperator<Map<String, Object>> azione) {
+        int fatti = 0;
+        synchronized (articoli) {
+            for (int i = posizioni.size() - 1; i >= 0; i--) {
+                int posizione = posizioni.get(i);
+                Map<String, Object> articolo = attesi.get(i);
+                if (posizione >= articoli.size() || articoli.get(posizione) != articolo) {
+                    continue;
+                }
+                Map<String, Object> nuovo = azione.apply(articolo);
+                if (nuovo == articolo) {
+                    continue;
+                }
+                // Prima esce il vecchio, poi entra il nuovo (come in marca()):
+                // PrezziCategorie toglie un prezzo solo se l'aggiunta viene dopo
+                if (nuovo == null) {
+                    articoli.remove(posizione);
+                    deindicizza(articolo);
+                } else {
+                    articoli.set(posizione, nuovo);
+                    deindicizza(articolo);
+                    indicizza(nuovo);
+                }
+                fatti++;
+            }
+            if (fatti > 0) {
+                allaModifica.run();
+            }
+        }
+        return fatti;
+    }
+
+    /*
+     * METODO: unisciDoppioni()
+     *
+     * COSA FA?
+     * - Unisce in una passata gli articoli con lo stesso nome e categoria
+     *   (vedi IndiceDuplicati.deduplica)
+     * - Ritorna quanti articoli sono spariti nell'unione (0: nessun doppione)
+     */
+    public int unisciDoppioni() {
+        synchronized (articoli) {
+            int prima = articoli.size();
+            List<Map<String, Object>> senzaDoppioni = IndiceDuplicati.deduplica(articoli);
+            if (senzaDoppioni.size() != prima) {
+                sostituisciTutto(senzaDoppioni);
+            }
+            return prima - senzaDoppioni.size();
+        }
+    }
+
+    /*
+     * METODO: sostituisciTutto(List nuovi)
+     *
+     * COSA FA?
+     * - Mette "nuovi" al posto di tutta la lista (es. letti da un archivio):
+     *   è una modifica, da salvare
+     */
+    public void sostituisciTutto(List<Map<String, Object>> nuovi) {
+        synchronized (articoli) {
+            articoli.clear();
+            articoli.addAll(nuovi);
+            reindicizza();
+            allaModifica.run();
+        }
+    }
+
+    /*
+     * METODO: applica(ReplicaCrdt.Esito esito)
+     *
+     * COSA FA?
+     * - Riporta nella lista gli articoli arrivati da un altro dispositivo,
+     *   tolti e aggiornati (vedi ReplicaCrdt.unisci)
+     * - Aggiorna totali e indici articolo per articolo
+     */
+    public void applica(ReplicaCrdt.Esito esito) {
+        if (esito.vuoto()) {
+            return;
+        }
+        synchronized (articoli) {
+            if (!esito.rimossi().isEmpty()) {
+                articoli.removeIf(articolo -> {
+                    if (esito.rimossi().contains((String) articolo.get("id"))) {
+                        deindicizza(articolo);
+                        return true;
+                    }
+                    return false;
+                });
+            }
+
+            // Gli articoli aggiornati si copiano: le versioni vecchie restano intatte
+            if (!esito.aggiornati().isEmpty()) {
+                articoli.replaceAll(articolo -> {
+                    Map<String, Object> aggiornato = esito.aggiornati().get((String) articolo.get("id"));
+                    if (aggiornato == null) {
+                        return articolo;
+                    }
+                    Map<String, Object> copia = new HashMap<>(articolo);
+                    copia.putAll(aggiornato);
+                    deindicizza(articolo);
+                    indicizza(copia);
+                    return copia;
+                });
+            }
+            articoli.addAll(esito.aggiunti());
+            for (Map<String, Object> articolo : esito.aggiunti()) {
+                indicizza(articolo);
+            }
+            allaModifica.run();
+        }
+    }
+
+    /*
+     * METODO: applica(OsservatoreFile.Modifiche modifiche)
+     *
+     * COSA FA?
+     * - Applica le modifiche fatte da fuori al file (vedi OsservatoreFile):
+     *   toglie gli articoli spariti, aggiunge in fondo quelli nuovi
+     * - Ritorna quanti articoli ha tolto
+     *
+     * PERCHÉ non chiama allaModifica?
+     * - Le modifiche sono già nel file: non c'è niente da salvare
+     * - Per lo stesso motivo non si annullano: la cronologia riparte da qui
+     */
+    public int applica(OsservatoreFile.Modifiche modifiche) {
+        synchronized (articoli) {
+            int prima = articoli.size();
+            if (!modifiche.rimossi().isEmpty()) {
+                Map<Long, Integer> daRimuovere = new HashMap<>(modifiche.rimossi());
+                articoli.removeIf(articolo -> {
+                    if (daRimuovere.isEmpty()) {
+                        return false;
+                    }
+                    long hash = ImprontaFile.hashCanonico(articolo);
+                    Integer quanti = daRimuovere.get(hash);
+                    if (quanti == null) {
+                        return false;
+                    }
+                    if (quanti == 1) {
+                        daRimuovere.remove(hash);
+                    } else {
+                        daRimuovere.put(hash, quanti - 1);
+                    }
+                    deindicizza(articolo);
+                    return true;
+                });
+            }
+            int rimossi = prima - articoli.size();
+            articoli.addAll(modifiche.aggiunti());
+            for (Map<String, Object> articolo : modifiche.aggiunti()) {
+                indicizza(articolo);
+            }
+            cronologia.dimentica(articoli.versione());
+            return rimossi;
+        }
+    }
+
+    // ============================================
+    // ANNULLA / RIPETI
+    // ============================================
+
+    /*
+     * METODI: iniziaPasso(), concludiPasso(String descrizione)
+     *
+     * COSA FANNO?
+     * - Racchiudono un'operazione (anche fatta di più modifiche) in un
+     *   passo della cronologia: "Annulla" la toglie tutta insieme
+     * - Un passo senza modifiche non si ricorda
+     */
+    public void iniziaPasso() {
+        synchronized (articoli) {
+            cronologia.inizia(articoli.versione());
+        }
+    }
+
+    public void concludiPasso(String descrizione) {
+        synchronized (articoli) {
+            cronologia.concludi(articoli.versione(), descrizione);
+        }
+    }
+
+    /*
+     * METODO: annulla()
+     *
+     * COSA FA?
+     * - Riporta la lista alla versione di prima dell'ultimo passo
+     *   (fino a Cronologia.PASSI_MASSIMI passi indietro)
+     * - Costa O(1) per la lista; totali e indici si ricalcolano
+     * - Ritorna il passo annullato (null se non ce n'è)
+     */
+    public Cronologia.Passo<ListaPersistente.Versione<Map<String, Object>>> annulla() {
+        synchronized (articoli) {
+            Cronologia.Passo<ListaPersistente.Versione<Map<String, Object>>> passo =
+                    cronologia.annulla(articoli.versione());
+            if (passo != null) {
+                articoli.ripristina(passo.prima());
+                reindicizza();
+                allaModifica.run();
+            }
+            return passo;
+        }
+    }
+
+    // Come annulla(), ma rifà l'ultimo passo annullato
+    public Cronologia.Passo<ListaPersistente.Versione<Map<String, Object>>> ripeti() {
+        synchronized (articoli) {
+            Cronologia.Passo<ListaPersistente.Versione<Map<String, Object>>> passo =
+                    cronologia.ripeti(articoli.versione());
+            if (passo != null) {
+                articoli.ripristina(passo.dopo());
+                reindicizza();
+                allaModifica.run();
+            }
+            return passo;
+        }
+    }
+
+    public int passiDaAnnullare() {
+        synchronized (articoli) {
+            return cronologia.passiDaAnnullare();
+        }
+    }
+
+    // ============================================
+    // FILE
+    // ============================================
+
+    /*
+     * METODO: carica(Path file)
+     *
+     * COSA FA?
+     * - Legge un CSV (formato di FormatoCsv) e sostituisce la lista, tutto
+     *   o niente: se la lettura fallisce la lista resta com'era
+     * - Le righe malformate si saltano: sono nel risultato (scartate())
+     */
+    public CaricamentoLista.Risultato carica(Path file) throws Exception {
+        CaricamentoLista.Risultato risultato = CaricamentoLista.leggi(file, metriche);
+        installa(risultato);
+        return risultato;
+    }
+
+    /*
+     * METODO: installa(CaricamentoLista.Risultato risultato)
+     *
+     * COSA FA?
+     * - Mette al posto della lista una lista già letta (anche in background,
+     *   vedi CaricamentoLista), con i suoi totali e indici: O(1)
+     * - Non conta come modifica: la lista è uguale al file
+     */
+    public void installa(CaricamentoLista.Risultato risultato) {
+        synchronized (articoli) {
+            articoli.ripristina(risultato.versione());
+            riepilogo = risultato.riepilogo();
+            indiceDuplicati = risultato.indiceDuplicati();
+            prezziCategorie = risultato.prezziCategorie();
+            indiceFuzzy = null;
+            righeStampate.svuota();
+        }
+    }
+
+    /*
+     * METODO: installa(List caricati, boolean daSalvare)
+     *
+     * COSA FA?
+     * - Mette al posto della lista gli articoli appena letti dal file
+     *   (es. dal precaricamento, vedi PrecaricatoreLista)
+     * - Non conta come modifica, a meno di daSalvare (es. file senza
+     *   colonna Id: gli id nuovi vanno scritti)
+     * - La cronologia riparte da qui: prima non c'era una lista da ripristinare
+     */
+    public void installa(List<Map<String, Object>> caricati, boolean daSalvare) {
+        synchronized (articoli) {
+            articoli.clear();
+            articoli.addAll(caricati);
+            reindicizza();
+            cronologia.dimentica(articoli.versione());
+            if (daSalvare) {
+                allaModifica.run();
+            }
+        }
+    }
+
+    /*
+     * METODO: salva(Path file)
+     *
+     * COSA FA?
+     * - Scrive la lista in CSV in modo atomico (file temporaneo + rinomina)
+     * - La lista resta bloccata solo per prenderne la versione: il CSV si
+     *   prepara da quella, mentre gli altri thread continuano
+     * - Ritorna i byte scritti
+     */
+    public long salva(Path file) throws Exception {
+        long inizio = System.nanoTime();
+        EventiSpesa.Salvataggio evento = new EventiSpesa.Salvataggio();
+        evento.begin();
+        ListaPersistente.Versione<Map<String, Object>> versione = versione();
+        byte[] contenuto = FormatoCsv.formatta(versione);
+        Path temporaneo = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporaneo, contenuto);
+        Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        metriche.aggiungiByteScritti(contenuto.length);
+        metriche.registra(Metriche.Operazione.SALVA, inizio);
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.file = file.toAbsolutePath().toString();
+            evento.articoli = versione.size();
+            evento.byteScritti = contenuto.length;
+            evento.commit();
+        }
+        return contenuto.length;
+    }
+
+    // ============================================
+    // LISTA, INDICI E TOTALI
+    // ============================================
+
+    /*
+     * METODO: articoli()
+     *
+     * COSA FA?
+     * - La lista vera, per chi la legge direttamente (si modifica con le
+     *   operazioni del motore)
+     * - È anche il lock: letture di più articoli insieme vanno dentro
+     *   synchronized (motore.articoli())
+     */
+    public ListaPersistente<Map<String, Object>> articoli() {
+        return articoli;
+    }
+
+    // La lista com'è ora, ferma: si legge senza lock (vedi ListaPersistente)
+    public ListaPersistente.Versione<Map<String, Object>> versione() {
+        synchronized (articoli) {
+            return articoli.versione();
+        }
+    }
+
+    public Metriche metriche() {
+        return metriche;
+    }
+
+    // Il testo già formattato di ogni articolo, per le console (vedi RigheStampate)
+    public RigheStampate righe() {
+        return righeStampate;
+    }
+
+    /*
+     * METODI: indicizza(), deindicizza(), reindicizza()
+     *
+     * COSA FANNO?
+     * - Tengono totali e indici allineati alla lista
+     * - indicizza/deindicizza: un articolo entra o esce dalla lista
+     * - reindicizza: la lista è cambiata tutta insieme (svuota, annulla...)
+     * - Li chiamano le operazioni, dentro synchronized (articoli)
+     *
+     * PERCHÉ gli indici diventano null invece di essere ricostruiti?
+     * - Ricostruirli costa; lo farà il primo che li usa, se mai ci sarà
+     */
+    private void indicizza(Map<String, Object> articolo) {
+        riepilogo.aggiungi(articolo);
+        if (indiceFuzzy != null) {
+            indiceFuzzy.aggiungi(articolo);
+        }
+        if (indiceDuplicati != null) {
+            indiceDuplicati.aggiungi(articolo);
+        }
+        if (prezziCategorie != null) {
+            prezziCategorie.aggiungi(articolo);
+        }
+    }
+
+    private void deindicizza(Map<String, Object> articolo) {
+        riepilogo.rimuovi(articolo);
+        righeStampate.dimentica(articolo);
+        if (indiceFuzzy != null) {
+            indiceFuzzy.rimuovi(articolo);
+        }
+        if (indiceDuplicati != null) {
+            indiceDuplicati.rimuovi(articolo);
+        }
+        if (prezziCategorie != null) {
+            prezziCategorie.rimuovi(articolo);
+        }
+    }
+
+    private void reindicizza() {
+        riepilogo = Riepilogo.di(articoli);
+        righeStampate.limita(articoli.size());
+        indiceFuzzy = null;
+        indiceDuplicati = null;
+        prezziCategorie = null;
+    }
+
+    /*
+     * METODO: sostituisci(Map vecchio, Map nuovo)
+     *
+     * COSA FA?
+     * - Mette "nuovo" al posto di "vecchio" (lo stesso oggetto, non uno uguale)
+     *   e aggiorna totali e indici; ritorna la posizione (-1 se non c'era)
+     * - Cercare la posizione costa O(n): chi la conosce già usa articoli.set()
+     */
+    private int sostituisci(Map<String, Object> vecchio, Map<String, Object> nuovo) {
+        int posizione = 0;
+        for (Map<String, Object> articolo : articoli) {
+            if (articolo == vecchio) {
+                articoli.set(posizione, nuovo);
+                deindicizza(vecchio);
+                indicizza(nuovo);
+                return posizione;
+            }
+            posizione++;
+        }
+        return -1;
+    }
+
+    /*
+     * METODI: indiceDuplicati(), indiceFuzzy(), prezziCategorie()
+     *
+     * COSA FANNO?
+     * - Gli indici, costruiti la prima volta che servono
+     * - I prezzi per categoria si ricostruiscono anche quando contengono
+     *   troppi prezzi di articoli ormai tolti (vedi PrezziCategorie.daRicostruire())
+     * - Vanno chiamati dentro synchronized (articoli())
+     */
+    public IndiceDuplicati indiceDuplicati() {
+        if (indiceDuplicati == null) {
+            indiceDuplicati = IndiceDuplicati.di(articoli);
+        }
+        return indiceDuplicati;
+    }
+
+    public IndiceFuzzy indiceFuzzy() {
+        if (indiceFuzzy == null) {
+            indiceFuzzy = IndiceFuzzy.di(articoli);
+        }
+        return indiceFuzzy;
+    }
+
+    public PrezziCategorie prezziCategorie() {
+        if (prezziCategorie == null || prezziCategorie.daRicostruire()) {
+            prezziCategorie = PrezziCategorie.di(articoli.versione());
+        }
+        return prezziCategorie;
+    }
+}
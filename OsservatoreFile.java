@@ -0,0 +1,398 @@
+/*
+ * OSSERVATORE FILE - si accorge se spesa.csv viene modificato da fuori
+ *
+ * PROBLEMA:
+ * - Se un altro programma (o un editor) cambia spesa.csv mentre l'app è
+ *   aperta, la lista in memoria resta vecchia
+ * - E il prossimo salvataggio cancellerebbe le modifiche dell'altro programma
+ *
+ * SOLUZIONE:
+ * - Un thread in background riceve gli eventi del sistema operativo
+ *   (WatchService) sulla cartella di spesa.csv
+ * - Confronta il file con l'ultima impronta nota (vedi ImprontaFile):
+ *   * file più lungo e coda uguale → righe aggiunte in fondo:
+ *     leggiamo SOLO i byte nuovi, a partire dalla vecchia dimensione
+ *   * altrimenti → confronto degli hash delle righe ("diff"):
+ *     facciamo il parsing SOLO delle righe nuove
+ * - Il risultato (articoli aggiunti e tolti) va in coda: il menu lo
+ *   applica al giro successivo, senza mai essere bloccato
+ *
+ * E I NOSTRI SALVATAGGI?
+ * - Passano da scriviPropria(): l'impronta viene aggiornata insieme
+ *   alla scrittura, quindi non li scambiamo per modifiche esterne
+ * - Se il file è cambiato da fuori e le modifiche non sono ancora in
+ *   memoria, il salvataggio viene RIMANDATO invece di sovrascriverle
+ *
+ * ORDINE DEI LOCK (per non bloccarsi a vicenda)
+ * - Prima l'osservatore, poi la lista: scriviPropria() tiene l'osservatore
+ *   mentre l'istantanea blocca la lista (synchronized (articoli))
+ * - Quindi chi tiene già la lista NON chiama i metodi synchronized di
+ *   questa classe (impostaBase, verificaOra, scriviPropria): li chiama
+ *   prima o dopo il proprio blocco synchronized (articoli)
+ */
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class OsservatoreFile implements Runnable {
+
+    // Un controllo anche senza eventi (alcuni file system non li mandano)
+    private static final long CONTROLLO_PERIODICO_SECONDI = 5;
+
+    // Chi scrive il file spesso lo fa a pezzi: aspettiamo che finisca
+    private static final long ATTESA_SCRITTURA_MS = 50;
+
+    /*
+     * CLASSE: Modifiche
+     *
+     * COSA È?
+     * - Cosa è cambiato nel file rispetto all'impronta precedente
+     * - aggiunti: articoli nuovi, nell'ordine del file
+     * - rimossi: hash canonico → quante righe con quel contenuto sono sparite
+     */
+    public static class Modifiche {
+        final List<Map<String, Object>> aggiunti = new ArrayList<>();
+        final Map<Long, Integer> rimossi = new HashMap<>();
+        final boolean inCoda;
+        int scartate;
+
+        Modifiche(boolean inCoda) {
+            this.inCoda = inCoda;
+        }
+
+        public List<Map<String, Object>> aggiunti() {
+            return aggiunti;
+        }
+
+        public Map<Long, Integer> rimossi() {
+            return rimossi;
+        }
+
+        public boolean inCoda() {
+            return inCoda;
+        }
+
+        public int scartate() {
+            return scartate;
+        }
+    }
+
+    private final Path file;
+
+    // Ultimo stato noto del file (protetto dal monitor di "this")
+    private ImprontaFile base;
+
+    // Modifiche trovate ma non ancora applicate alla lista
+    private final ConcurrentLinkedQueue<Modifiche> modifiche = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger daApplicare = new AtomicInteger();
+
+    private final ConcurrentLinkedQueue<String> avvisi = new ConcurrentLinkedQueue<>();
+
+    public OsservatoreFile(Path file) {
+        this.file = file.toAbsolutePath();
+    }
+
+    /*
+     * METODO: avvia()
+     *
+     * COSA FA?
+     * - Fa partire il thread "osservatore-file" (daemon)
+     * - Finché non c'è un'impronta (impostaBase) gli eventi vengono ignorati
+     */
+    public void avvia() {
+        Thread thread = new Thread(this, "osservatore-file");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try (WatchService servizio = FileSystems.getDefault().newWatchService()) {
+            file.getParent().register(servizio,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+
+            while (true) {
+                WatchKey chiave = servizio.poll(CONTROLLO_PERIODICO_SECONDI, TimeUnit.SECONDS);
+                if (chiave != null) {
+                    boolean nostroFile = false;
+                    for (WatchEvent<?> evento : chiave.pollEvents()) {
+                        nostroFile |= file.getFileName().equals(evento.context());
+                    }
+                    chiave.reset();
+                    if (!nostroFile) {
+                        continue;
+                    }
+                    Thread.sleep(ATTESA_SCRITTURA_MS);
+                }
+                verificaOra();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            avvisi.add("⚠ Modifiche esterne a \"" + file.getFileName() + "\" non più controllate: " + e.getMessage());
+        }
+    }
+
+    // ============================================
+    // IMPRONTA
+    // ============================================
+
+    /*
+     * METODO: impostaBase(ImprontaFile impronta)
+     *
+     * COSA FA?
+     * - Dice: "la lista in memoria corrisponde a questo file"
+     * - Si usa dopo un caricamento completo
+     * - Le modifiche ancora in coda non valgono più: le scartiamo
+     */
+    public synchronized void impostaBase(ImprontaFile impronta) {
+        base = impronta;
+        modifiche.clear();
+        daApplicare.set(0);
+    }
+
+    /*
+     * METODO: verificaOra()
+     *
+     * COSA FA?
+     * - Confronta SUBITO il file con l'impronta
+     * - Se non è cambiato costa solo due chiamate al file system
+     */
+    public synchronized void verificaOra() {
+        if (base == null) {
+            return;
+        }
+        try {
+            long dimensione = Files.size(file);
+            long modifica = Files.getLastModifiedTime(file).toMillis();
+            if (dimensione == base.dimensione() && modifica == base.modifica()) {
+                return;
+            }
+
+            Modifiche trovate = dimensione > base.dimensione() && base.numeroRighe() > 0 && codaInvariata()
+                    ? leggiCoda(dimensione)
+                    : confronta();
+            base.impostaModifica(modifica);
+
+            if (!trovate.aggiunti.isEmpty() || !trovate.rimossi.isEmpty() || trovate.scartate > 0) {
+                daApplicare.incrementAndGet();
+                modifiche.add(trovate);
+            }
+        } catch (NoSuchFileException e) {
+            // File sparito (forse lo stanno sostituendo): aspettiamo che ricompaia
+        } catch (Exception e) {
+            avvisi.add("⚠ Impossibile rileggere \"" + file.getFileName() + "\": " + e.getMessage());
+        }
+    }
+
+    // ============================================
+    // RIGHE AGGIUNTE IN FONDO
+    // ============================================
+
+    /*
+     * METODO: codaInvariata()
+     *
+     * COSA FA?
+     * - Rilegge i 4 KB che precedevano la vecchia fine del file
+     * - Se sono uguali, il file è stato solo allungato
+     */
+    private boolean codaInvariata() throws Exception {
+        byte[] attesa = base.coda();
+        byte[] letta = new byte[attesa.length];
+        try (RandomAccessFile lettore = new RandomAccessFile(file.toFile(), "r")) {
+            lettore.seek(base.dimensione() - attesa.length);
+            lettore.readFully(letta);
+        }
+        return Arrays.equals(attesa, letta);
+    }
+
+    /*
+     * METODO: leggiCoda(long dimensione)
+     *
+     * COSA FA?
+     * - Legge solo da base.dimensione() alla fine del file
+     * - Considera solo le righe complete: un'ultima riga senza "\n"
+     *   probabilmente è ancora in scrittura, la leggeremo la prossima volta
+     */
+    private Modifiche leggiCoda(long dimensione) throws Exception {
+        Modifiche trovate = new Modifiche(true);
+        long inizio = base.dimensione();
+        byte[] nuovi = new byte[(int) (dimensione - inizio)];
+        try (RandomAccessFile lettore = new RandomAccessFile(file.toFile(), "r")) {
+            lettore.seek(inizio);
+            lettore.readFully(nuovi);
+        }
+
+        int inizioRiga = 0;
+        for (int i = 0; i < nuovi.length; i++) {
+            if (nuovi[i] != '\n') {
+                continue;
+            }
+            String linea = new String(nuovi, inizioRiga, i - inizioRiga, StandardCharsets.UTF_8);
+            inizioRiga = i + 1;
+            if (linea.endsWith("\r")) {
+                linea = linea.substring(0, linea.length() - 1);
+            }
+            if (!linea.isEmpty()) {
+                base.aggiungiRiga(linea, leggiArticolo(linea, trovate));
+            }
+        }
+        base.impostaDimensione(inizio + inizioRiga);
+        return trovate;
+    }
+
+    // ============================================
+    // ALTRE MODIFICHE: CONFRONTO DEGLI HASH
+    // ============================================
+
+    /*
+     * METODO: confronta()
+     *
+     * COSA FA?
+     * 1. Legge il file e calcola l'hash di ogni riga (niente parsing)
+     * 2. Ordina gli hash vecchi e nuovi e li scorre insieme:
+     *    - hash solo nei vecchi → riga tolta
+     *    - hash solo nei nuovi → riga aggiunta
+     * 3. Fa il parsing SOLO delle righe aggiunte
+     *
+     * NOTA: una riga modificata risulta "tolta" + "aggiunta",
+     * quindi l'articolo aggiornato finisce in fondo alla lista
+     */
+    private Modifiche confronta() throws Exception {
+        Modifiche trovate = new Modifiche(false);
+        byte[] contenuto = Files.readAllBytes(file);
+        String[] linee = new String(contenuto, StandardCharsets.UTF_8).split("\r?\n");
+
+        long[] nuovi = new long[linee.length];
+        int numeroNuovi = 0;
+        for (int i = 1; i < linee.length; i++) {
+            if (!linee[i].isEmpty()) {
+                nuovi[numeroNuovi++] = ImprontaFile.hash(linee[i]);
+            }
+        }
+        long[] vecchiOrdinati = base.hashOrdinati();
+        long[] nuoviOrdinati = Arrays.copyOf(nuovi, numeroNuovi);
+        Arrays.sort(nuoviOrdinati);
+
+        // Differenza tra i due multinsiemi di hash
+        Map<Long, Integer> righeAggiunte = new HashMap<>();
+        int v = 0;
+        int n = 0;
+        while (v < vecchiOrdinati.length || n < nuoviOrdinati.length) {
+            if (n == nuoviOrdinati.length
+                    || (v < vecchiOrdinati.length && vecchiOrdinati[v] < nuoviOrdinati[n])) {
+                long canonico = base.canonico(vecchiOrdinati[v++]);
+                if (canonico != ImprontaFile.NESSUN_ARTICOLO) {
+                    trovate.rimossi.merge(canonico, 1, Integer::sum);
+                }
+            } else if (v == vecchiOrdinati.length || nuoviOrdinati[n] < vecchiOrdinati[v]) {
+                righeAggiunte.merge(nuoviOrdinati[n++], 1, Integer::sum);
+            } else {
+                v++;
+                n++;
+            }
+        }
+
+        // Nuova impronta, con il parsing delle sole righe aggiunte
+        ImprontaFile nuova = new ImprontaFile();
+        nuova.aggiungiIntestazione(linee.length > 0 ? linee[0] : FormatoCsv.INTESTAZIONE);
+        int indice = 0;
+        for (int i = 1; i < linee.length; i++) {
+            if (linee[i].isEmpty()) {
+                continue;
+            }
+            long grezzo = nuovi[indice++];
+            Integer daLeggere = righeAggiunte.get(grezzo);
+            if (daLeggere != null && daLeggere > 0) {
+                righeAggiunte.put(grezzo, daLeggere - 1);
+                nuova.aggiungi(linee[i], grezzo, leggiArticolo(linee[i], trovate));
+            } else {
+                nuova.aggiungi(linee[i], grezzo, base.canonico(grezzo));
+            }
+        }
+        nuova.impostaDimensione(contenuto.length);
+        base = nuova;
+        return trovate;
+    }
+
+    private long leggiArticolo(String linea, Modifiche trovate) {
+        try {
+            Map<String, Object> articolo = FormatoCsv.leggiRiga(linea);
+            trovate.aggiunti.add(articolo);
+            return ImprontaFile.hashCanonico(articolo);
+        } catch (Exception e) {
+            trovate.scartate++;
+            return ImprontaFile.NESSUN_ARTICOLO;
+        }
+    }
+
+    // ============================================
+    // APPLICAZIONE (thread del menu)
+    // ============================================
+
+    /*
+     * METODO: prossimeModifiche()
+     *
+     * COSA FA?
+     * - Ritorna (e toglie) il prossimo gruppo di modifiche, o null
+     * - Dopo averle applicate alla lista, chiamare applicate()
+     */
+    public Modifiche prossimeModifiche() {
+        return modifiche.poll();
+    }
+
+    public void applicate() {
+        daApplicare.decrementAndGet();
+    }
+
+    public String prossimoAvviso() {
+        return avvisi.poll();
+    }
+
+    // ============================================
+    // I NOSTRI SALVATAGGI
+    // ============================================
+
+    /*
+     * METODO: scriviPropria(Callable<AutoSalvataggio.Istantanea> scrittura)
+     *
+     * COSA FA?
+     * - Esegue la scrittura di spesa.csv tenendo il lock dell'osservatore
+     * - Poi aggiorna l'impronta con il contenuto appena scritto
+     * - Ritorna null (senza scrivere) se il file ha modifiche esterne
+     *   non ancora applicate alla lista: chi salva riproverà più tardi
+     *
+     * PERCHÉ l'istantanea va fatta QUI DENTRO?
+     * - Così contiene sicuramente tutte le modifiche esterne già applicate
+     */
+    public synchronized AutoSalvataggio.Istantanea scriviPropria(
+            Callable<AutoSalvataggio.Istantanea> scrittura) throws Exception {
+        verificaOra();
+        if (daApplicare.get() > 0) {
+            return null;
+        }
+        AutoSalvataggio.Istantanea scritta = scrittura.call();
+        ImprontaFile impronta = ImprontaFile.di(scritta.contenuto);
+        impronta.impostaModifica(Files.getLastModifiedTime(file).toMillis());
+        base = impronta;
+        return scritta;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * PRECARICATORE LISTA - legge spesa.csv in background all'avvio
+ *
+ * PROBLEMA:
+ * - Caricare un file grande PRIMA del menu blocca l'avvio
+ *
+ * SOLUZIONE:
+ * - Un thread separato legge il file riga per riga
+ * - Il menu compare subito
+ * - Chi ha bisogno dei dati aspetta SOLO la parte che gli serve:
+ *   * attendiRighe(20)     → la prima pagina della lista
+ *   * attendiRiepilogo()   → i totali (subito, se spesa.riepilogo è valido)
+ *   * attendiCompletamento() → tutta la lista
+ *
+ * RIGHE MALFORMATE
+ * - Si saltano e si annotano in RigheScartate: una riga rovinata
+ *   non deve lasciare la lista vuota
+ *
+ * IMPRONTA DEL FILE
+ * - Mentre legge, costruisce anche l'ImprontaFile (hash delle righe):
+ *   l'OsservatoreFile la usa per riconoscere le modifiche esterne
+ *
+ * COME SI COORDINANO I THREAD?
+ * - Con wait()/notifyAll() sul monitor di questo oggetto
+ * - Il thread di lettura avvisa a ogni blocco di righe, non a ogni riga
+ */
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class PrecaricatoreLista implements Runnable {
+
+    // Ogni quante righe svegliamo chi aspetta
+    private static final int BLOCCO_NOTIFICA = 256;
+
+    private final Path file;
+    private final Metriche metriche;
+
+    // Stato condiviso: protetto dal monitor di "this"
+    private final List<Map<String, Object>> righe = new ArrayList<>();
+    private Riepilogo riepilogoAnticipato;
+    private Riepilogo riepilogoFinale;
+    private ImprontaFile impronta;
+    private boolean formatoVecchio;
+    private final RigheScartate scartate = new RigheScartate();
+    private Exception errore;
+    private boolean completato;
+
+    private PrecaricatoreLista(Path file, Metriche metriche) {
+        this.file = file;
+        this.metriche = metriche;
+    }
+
+    /*
+     * METODO: avvia(Path file, Metriche metriche)
+     *
+     * COSA FA?
+     * - Crea il precaricatore e fa partire il thread di lettura
+     * - Ritorna subito
+     *
+     * PERCHÉ thread "daemon"?
+     * - Se l'utente esce mentre stiamo leggendo, la JVM non deve aspettarci
+     */
+    public static PrecaricatoreLista avvia(Path file, Metriche metriche) {
+        PrecaricatoreLista precaricatore = new PrecaricatoreLista(file, metriche);
+        Thread thread = new Thread(precaricatore, "precaricamento-lista");
+        thread.setDaemon(true);
+        thread.start();
+        return precaricatore;
+    }
+
+    @Override
+    public void run() {
+        long inizio = System.nanoTime();
+        EventiSpesa.Caricamento evento = new EventiSpesa.Caricamento();
+        evento.begin();
+
+        // I totali salvati accanto al CSV arrivano prima di qualsiasi riga
+        Riepilogo anticipato = Riepilogo.leggiAccanto(file);
+        if (anticipato != null) {
+            synchronized (this) {
+                riepilogoAnticipato = anticipato;
+                notifyAll();
+            }
+        }
+
+        List<Map<String, Object>> blocco = new ArrayList<>(BLOCCO_NOTIFICA);
+        Riepilogo riepilogo = new Riepilogo();
+        ImprontaFile letta = new ImprontaFile();
+        long byteLetti = 0;
+        try (BufferedReader lettore = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            // Salta l'intestazione
+            String linea = lettore.readLine();
+            if (linea != null) {
+                letta.aggiungiIntestazione(linea);
+                formatoVecchio = FormatoCsv.formatoVecchio(linea);
+            }
+            int numeroRiga = 1;
+            while ((linea = lettore.readLine()) != null) {
+                numeroRiga++;
+                Map<String, Object> articolo;
+                try {
+                    articolo = FormatoCsv.leggiRiga(linea);
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        scartate.aggiungi(numeroRiga, linea, e);
+                    }
+                    letta.aggiungiRiga(linea, ImprontaFile.NESSUN_ARTICOLO);
+                    continue;
+                }
+                riepilogo.aggiungi(articolo);
+                letta.aggiungiRiga(linea, ImprontaFile.hashCanonico(articolo));
+                blocco.add(articolo);
+                if (blocco.size() == BLOCCO_NOTIFICA) {
+                    pubblica(blocco);
+                    blocco.clear();
+                }
+            }
+            pubblica(blocco);
+            byteLetti = Files.size(file);
+            letta.impostaModifica(Files.getLastModifiedTime(file).toMillis());
+            metriche.aggiungiByteLetti(byteLetti);
+            metriche.registra(Metriche.Operazione.CARICA, inizio);
+            impronta = letta;
+            termina(riepilogo, null);
+        } catch (NoSuchFileException e) {
+            // Primo avvio: nessun file, si parte da una lista vuota
+            impronta = new ImprontaFile();
+            termina(new Riepilogo(), null);
+        } catch (Exception e) {
+            termina(null, e);
+        }
+
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.file = file.toAbsolutePath().toString();
+            evento.articoli = riepilogo.articoli();
+            evento.byteLetti = byteLetti;
+            evento.commit();
+        }
+    }
+
+    private synchronized void pubblica(List<Map<String, Object>> blocco) {
+        righe.addAll(blocco);
+        notifyAll();
+    }
+
+    private synchronized void termina(Riepilogo riepilogo, Exception eccezione) {
+        riepilogoFinale = riepilogo;
+        errore = eccezione;
+        completato = true;
+        notifyAll();
+    }
+
+    // ============================================
+    // ATTESA DEI DATI (thread del menu)
+    // ============================================
+
+    public synchronized boolean completato() {
+        return completato;
+    }
+
+    /*
+     * METODO: attendiRighe(int da, int a)
+     *
+     * COSA FA?
+     * - Aspetta che le righe [da, a) siano lette (o che il file finisca)
+     * - Ritorna una copia di quelle righe (può essere più corta se il file è finito)
+     */
+    public synchronized List<Map<String, Object>> attendiRighe(int da, int a) throws InterruptedException {
+        while (!completato && righe.size() < a) {
+            wait();
+        }
+        if (errore != null || da >= righe.size()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(righe.subList(da, Math.min(a, righe.size())));
+    }
+
+    /*
+     * METODO: attendiRiepilogo()
+     *
+     * COSA FA?
+     * - Ritorna i totali appena disponibili:
+     *   * subito, se spesa.riepilogo corrisponde al CSV
+     *   * altrimenti alla fine della lettura
+     * - Ritorna null se la lettura è fallita
+     */
+    public synchronized Riepilogo attendiRiepilogo() throws InterruptedException {
+        while (!completato && riepilogoAnticipato == null) {
+            wait();
+        }
+        return completato ? riepilogoFinale : riepilogoAnticipato;
+    }
+
+    /*
+     * METODO: impronta()
+     *
+     * COSA FA?
+     * - L'impronta del file letto (dopo attendiCompletamento())
+     */
+    public synchronized ImprontaFile impronta() {
+        return impronta;
+    }
+
+    // Le righe malformate saltate (complete dopo attendiCompletamento())
+    public synchronized RigheScartate scartate() {
+        return scartate;
+    }
+
+    // true se il file letto non aveva la colonna Id
+    public synchronized boolean formatoVecchio() {
+        return formatoVecchio;
+    }
+
+    /*
+     * METODO: attendiCompletamento()
+     *
+     * COSA FA?
+     * - Aspetta la fine della lettura e ritorna tutte le righe
+     * - Se la lettura è fallita rilancia l'errore
+     */
+    public synchronized List<Map<String, Object>> attendiCompletamento() throws Exception {
+        while (!completato) {
+            wait();
+        }
+        if (errore != null) {
+            throw errore;
+        }
+        return righe;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * PREZZI PER CATEGORIA - mediana, p90 e prezzi fuori misura
+ *
+ * COSA CONTIENE?
+ * - Per ogni categoria (normalizzata, vedi Testo) un DigestPrezzi con i
+ *   prezzi unitari degli articoli
+ * - Mediana e p90 costano O(centroidi): non si ordinano mai i prezzi
+ *
+ * COME SI TIENE AGGIORNATO?
+ * - Come gli altri indici di Application: aggiungi() quando un articolo
+ *   entra in lista, rimuovi() quando esce
+ * - Un t-digest però non sa togliere un prezzo. Si ricorda allora chi è
+ *   uscito, per (categoria, prezzo):
+ *   * se rientra subito un articolo con stessa categoria e stesso prezzo
+ *     (marca, quantità, unisci: una copia al posto dell'originale) i
+ *     due si annullano e il digest non cambia
+ *   * altrimenti il prezzo uscito resta nel digest; quando gli usciti
+ *     sono troppi (vedi daRicostruire()) il chiamante lo ricostruisce
+ * - di() costruisce tutto in parallelo: ogni thread un pezzo della lista,
+ *   poi i pezzi si uniscono (unisci())
+ *
+ * FUORI MISURA
+ * - Un prezzo è "fuori misura" se supera sia il doppio della mediana sia
+ *   il terzo quartile + 3 × (distanza tra i quartili): un limite largo,
+ *   per segnalare un errore di battitura o un prodotto davvero caro
+ * - Solo per categorie con almeno MINIMO_PER_SOGLIA articoli
+ *
+ * NON thread-safe: Application lo usa dentro synchronized (articoli)
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+public class PrezziCategorie {
+
+    // Con meno articoli una categoria non ha ancora un "prezzo solito"
+    public static final int MINIMO_PER_SOGLIA = 5;
+
+    // Articoli per thread in di(): sotto, il parallelismo non ripaga
+    private static final int ARTICOLI_PER_PEZZO = 50_000;
+
+    // Usciti oltre cui conviene ricostruire: un sedicesimo dei prezzi, non meno di questi
+    private static final int USCITI_MINIMI = 64;
+
+    /*
+     * CLASSE: Statistica
+     *
+     * COSA È?
+     * - I numeri di una categoria da mostrare: quanti prezzi, mediana, p90
+     *   e la soglia oltre cui un prezzo è fuori misura (NaN se troppo pochi)
+     */
+    public static final class Statistica {
+        private final String categoria;
+        private final long articoli;
+        private final double mediana;
+        private final double p90;
+        private final double soglia;
+
+        Statistica(String categoria, long articoli, double mediana, double p90, double soglia) {
+            this.categoria = categoria;
+            this.articoli = articoli;
+            this.mediana = mediana;
+            this.p90 = p90;
+            this.soglia = soglia;
+        }
+
+        public String categoria() {
+            return categoria;
+        }
+
+        public long articoli() {
+            return articoli;
+        }
+
+        public double mediana() {
+            return mediana;
+        }
+
+        public double p90() {
+            return p90;
+        }
+
+        public double soglia() {
+            return soglia;
+        }
+    }
+
+    // Il nome come scritto la prima volta e i suoi prezzi
+    private static final class Categoria {
+        final String nome;
+        final DigestPrezzi digest = new DigestPrezzi();
+
+        Categoria(String nome) {
+            this.nome = nome;
+        }
+    }
+
+    private final Map<String, Categoria> perCategoria = new HashMap<>();
+
+    // (categoria, prezzo) → quanti articoli sono usciti senza che ne rientrasse uno uguale
+    private final Map<String, Integer> usciti = new HashMap<>();
+    private int numeroUsciti;
+    private long prezzi;
+
+    /*
+     * METODO: di(List articoli)
+     *
+     * COSA FA?
+     * - Costruisce i digest di una lista intera: i pezzi della lista in
+     *   parallelo, poi si uniscono a due a due
+     */
+    public static PrezziCategorie di(List<Map<String, Object>> articoli) {
+        int pezzi = (articoli.size() + ARTICOLI_PER_PEZZO - 1) / ARTICOLI_PER_PEZZO;
+        return IntStream.range(0, pezzi).parallel()
+                .mapToObj(p -> {
+                    PrezziCategorie pezzo = new PrezziCategorie();
+                    for (Map<String, Object> articolo : articoli.subList(p * ARTICOLI_PER_PEZZO,
+                            Math.min(articoli.size(), (p + 1) * ARTICOLI_PER_PEZZO))) {
+                        pezzo.aggiungi(articolo);
+                    }
+                    return pezzo;
+                })
+                .reduce((a, b) -> {
+                    a.unisci(b);
+                    return a;
+                })
+                .orElseGet(PrezziCategorie::new);
+    }
+
+    // ============================================
+    // AGGIORNAMENTO
+    // ============================================
+
+    public void aggiungi(Map<String, Object> articolo) {
+        String categoria = (String) articolo.get("categoria");
+        double prezzo = (double) articolo.get("prezzo");
+        if (numeroUsciti > 0) {
+            String chiave = chiave(categoria, prezzo);
+            Integer rimasti = usciti.get(chiave);
+            if (rimasti != null) {
+                // Una copia al posto dell'originale: il digest ha già il suo prezzo
+                if (rimasti == 1) {
+                    usciti.remove(chiave);
+                } else {
+                    usciti.put(chiave, rimasti - 1);
+                }
+                numeroUsciti--;
+                return;
+            }
+        }
+        perCategoria.computeIfAbsent(Testo.normalizza(categoria), c -> new Categoria(categoria.trim()))
+                .digest.aggiungi(prezzo);
+        prezzi++;
+    }
+
+    public void rimuovi(Map<String, Object> articolo) {
+        usciti.merge(chiave((String) articolo.get("categoria"), (double) articolo.get("prezzo")), 1, Integer::sum);
+        numeroUsciti++;
+    }
+
+    // true se troppi prezzi nei digest non sono più in lista
+    public boolean daRicostruire() {
+        return numeroUsciti > Math.max(USCITI_MINIMI, prezzi / 16);
+    }
+
+    /*
+     * METODO: unisci(PrezziCategorie altro)
+     *
+     * COSA FA?
+     * - Aggiunge i prezzi di un'altra lista (o di un altro pezzo della stessa)
+     */
+    public void unisci(PrezziCategorie altro) {
+        for (Map.Entry<String, Categoria> voce : altro.perCategoria.entrySet()) {
+            perCategoria.computeIfAbsent(voce.getKey(), c -> new Categoria(voce.getValue().nome))
+                    .digest.unisci(voce.getValue().digest);
+        }
+        altro.usciti.forEach((chiave, quanti) -> usciti.merge(chiave, quanti, Integer::sum));
+        numeroUsciti += altro.numeroUsciti;
+        prezzi += altro.prezzi;
+    }
+
+    private static String chiave(String categoria, double prezzo) {
+        return Testo.normalizza(categoria) + '\u0000' + prezzo;
+    }
+
+    // ============================================
+    // LETTURA
+    // ============================================
+
+    /*
+     * METODO: fuoriMisura(String categoria, double prezzo)
+     *
+     * COSA FA?
+     * - La statistica della categoria se "prezzo" è fuori misura per lei,
+     *   altrimenti null (anche se la categoria ha troppi pochi articoli)
+     */
+    public Statistica fuoriMisura(String categoria, double prezzo) {
+        Categoria trovata = perCategoria.get(Testo.normalizza(categoria));
+        if (trovata == null) {
+            return null;
+        }
+        Statistica statistica = statistica(trovata);
+        return prezzo > statistica.soglia ? statistica : null;
+    }
+
+    // Tutte le categorie, in ordine alfabetico
+    public List<Statistica> statistiche() {
+        List<Statistica> statistiche = new ArrayList<>();
+        for (Categoria categoria : perCategoria.values()) {
+            statistiche.add(statistica(categoria));
+        }
+        statistiche.sort((a, b) -> a.categoria.compareToIgnoreCase(b.categoria));
+        return statistiche;
+    }
+
+    private static Statistica statistica(Categoria categoria) {
+        DigestPrezzi digest = categoria.digest;
+        double mediana = digest.quantile(0.5);
+        double soglia = Double.NaN;
+        if (digest.conteggio() >= MINIMO_PER_SOGLIA) {
+            double primo = digest.quantile(0.25);
+            double terzo = digest.quantile(0.75);
+            soglia = Math.max(2 * mediana, terzo + 3 * (terzo - primo));
+        }
+        return new Statistica(categoria.nome, digest.conteggio(), mediana, digest.quantile(0.9), soglia);
+    }
+}
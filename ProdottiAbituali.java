@@ -0,0 +1,308 @@
+/*
+ * PRODOTTI ABITUALI - "di solito compri questi", imparato dalle liste finite
+ *
+ * PROBLEMA:
+ * - Per suggerire cosa si compra più spesso bisognerebbe contare ogni
+ *   prodotto di ogni lista mai fatta: anni di liste, milioni di righe
+ * - E i gusti cambiano: quello che si comprava due anni fa conta meno
+ *
+ * SOLUZIONE: due strutture "a memoria fissa" (sketch)
+ * - COUNT-MIN SKETCH: RIGHE × COLONNE contatori. Ogni prodotto cade in una
+ *   colonna per riga (hash diversi); la sua stima è il MINIMO dei suoi
+ *   contatori. Non sbaglia mai per difetto, e per eccesso di poco: le
+ *   collisioni si sommano, ma è difficile che tocchino tutte le righe
+ * - SPACE-SAVING: i MONITORATI prodotti più frequenti, con il loro
+ *   conteggio. Un prodotto nuovo prende il posto del meno frequente solo
+ *   se il Count-Min dice che è più frequente di lui (e ne eredita
+ *   l'errore possibile, come nello Space-Saving classico)
+ * - Memoria e tempo non dipendono da quante liste sono passate
+ *
+ * DECADIMENTO NEL TEMPO
+ * - Ogni lista pesa 1/DECADIMENTO volte la precedente: le abitudini
+ *   recenti contano di più
+ * - Invece di ridurre tutti i contatori a ogni lista, cresce il peso
+ *   delle liste nuove ("forward decay"): una lista costa solo i suoi
+ *   prodotti. Quando il peso diventa enorme si riscala tutto una volta
+ * - Frequenza = conteggio / liste (pesate allo stesso modo): 0,8 vuol
+ *   dire "nell'80% delle liste recenti"
+ *
+ * DA DOVE ARRIVANO LE LISTE?
+ * - Da "Svuota lista": la lista svuotata è una spesa finita
+ * - Ogni prodotto conta una volta per lista, anche se c'era due volte
+ *
+ * FILE spesa.abituali (binario, circa 40 KB qualunque sia la storia):
+ *   magia | righe | colonne | peso | liste | contatori (float) |
+ *   numero monitorati | (nome, categoria, conteggio, errore)...
+ *
+ * NON thread-safe: si usa dal thread del menu
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+public class ProdottiAbituali {
+
+    public static final String FILE = "spesa.abituali";
+
+    private static final int MAGIA = 0x4c534131; // "LSA1"
+
+    // Count-Min: errore per eccesso entro ~2/COLONNE delle liste, con probabilità 1 - 1/2^RIGHE
+    private static final int RIGHE = 4;
+    private static final int COLONNE = 2048;
+
+    // Space-Saving: quanti prodotti frequenti si tengono per nome
+    private static final int MONITORATI = 128;
+
+    // Una lista vecchia di 7 liste pesa circa la metà (0,9^7)
+    private static final double DECADIMENTO = 0.9;
+
+    // Oltre, si riscala tutto (i float del file restano precisi)
+    private static final double PESO_MASSIMO = 1e6;
+
+    /*
+     * CLASSE: Voce
+     *
+     * COSA È?
+     * - Un prodotto suggerito e in quale parte delle liste recenti c'era
+     */
+    public static final class Voce {
+        private final String nome;
+        private final String categoria;
+        private final double frequenza;
+
+        Voce(String nome, String categoria, double frequenza) {
+            this.nome = nome;
+            this.categoria = categoria;
+            this.frequenza = frequenza;
+        }
+
+        public String nome() {
+            return nome;
+        }
+
+        public String categoria() {
+            return categoria;
+        }
+
+        // Tra 0 e 1: 0,8 = nell'80% delle liste recenti
+        public double frequenza() {
+            return frequenza;
+        }
+    }
+
+    // Un prodotto monitorato dallo Space-Saving
+    private static final class Conteggio {
+        String nome;
+        String categoria;
+        double conteggio;
+        double errore;
+
+        Conteggio(String nome, String categoria, double conteggio, double errore) {
+            this.nome = nome;
+            this.categoria = categoria;
+            this.conteggio = conteggio;
+            this.errore = errore;
+        }
+    }
+
+    private final float[] contatori = new float[RIGHE * COLONNE];
+    private final Map<String, Conteggio> monitorati = new HashMap<>();
+
+    // Quanto vale una presenza nella prossima lista, e la somma dei pesi delle liste passate
+    private double peso = 1;
+    private double liste;
+
+    /*
+     * METODO: carica(Path file)
+     *
+     * COSA FA?
+     * - Legge lo stato salvato; senza file si parte da zero
+     * - Un file di un altro formato è un errore: meglio nessun suggerimento
+     *   che sovrascrivere un file che non è nostro
+     */
+    public static ProdottiAbituali carica(Path file) throws IOException {
+        ProdottiAbituali abituali = new ProdottiAbituali();
+        if (!Files.exists(file)) {
+            return abituali;
+        }
+        try (DataInputStream ingresso = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (ingresso.readInt() != MAGIA || ingresso.readInt() != RIGHE || ingresso.readInt() != COLONNE) {
+                throw new IOException(file + " non è uno stato dei prodotti abituali");
+            }
+            abituali.peso = ingresso.readDouble();
+            abituali.liste = ingresso.readDouble();
+            for (int i = 0; i < abituali.contatori.length; i++) {
+                abituali.contatori[i] = ingresso.readFloat();
+            }
+            int numero = ingresso.readInt();
+            for (int i = 0; i < numero; i++) {
+                String nome = ingresso.readUTF();
+                String categoria = ingresso.readUTF();
+                abituali.monitorati.put(IndiceDuplicati.chiave(nome, categoria),
+                        new Conteggio(nome, categoria, ingresso.readDouble(), ingresso.readDouble()));
+            }
+        }
+        return abituali;
+    }
+
+    /*
+     * METODO: salva(Path file)
+     *
+     * COSA FA?
+     * - Scrive lo stato in un file temporaneo e lo sostituisce in modo atomico
+     */
+    public void salva(Path file) throws IOException {
+        Path temporaneo = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream uscita = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaneo)))) {
+            uscita.writeInt(MAGIA);
+            uscita.writeInt(RIGHE);
+            uscita.writeInt(COLONNE);
+            uscita.writeDouble(peso);
+            uscita.writeDouble(liste);
+            for (float contatore : contatori) {
+                uscita.writeFloat(contatore);
+            }
+            uscita.writeInt(monitorati.size());
+            for (Conteggio conteggio : monitorati.values()) {
+                uscita.writeUTF(conteggio.nome);
+                uscita.writeUTF(conteggio.categoria);
+                uscita.writeDouble(conteggio.conteggio);
+                uscita.writeDouble(conteggio.errore);
+            }
+        }
+        Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ============================================
+    // AGGIORNAMENTO
+    // ============================================
+
+    /*
+     * METODO: registraLista(List articoli)
+     *
+     * COSA FA?
+     * - Conta una spesa finita: ogni prodotto diverso una volta, con il
+     *   peso della lista attuale; poi la lista successiva peserà di più
+     */
+    public void registraLista(List<Map<String, Object>> articoli) {
+        if (articoli.isEmpty()) {
+            return;
+        }
+        Set<String> visti = new HashSet<>();
+        for (Map<String, Object> articolo : articoli) {
+            String nome = (String) articolo.get("nome");
+            String categoria = (String) articolo.get("categoria");
+            String chiave = IndiceDuplicati.chiave(nome, categoria);
+            if (visti.add(chiave)) {
+                conta(chiave, nome, categoria);
+            }
+        }
+        liste += peso;
+        peso /= DECADIMENTO;
+        if (peso > PESO_MASSIMO) {
+            riscala();
+        }
+    }
+
+    private void conta(String chiave, String nome, String categoria) {
+        // Count-Min: +peso in una colonna per riga, la stima è il minimo
+        double stima = Double.MAX_VALUE;
+        for (int riga = 0; riga < RIGHE; riga++) {
+            int cella = cella(chiave, riga);
+            contatori[cella] += (float) peso;
+            stima = Math.min(stima, contatori[cella]);
+        }
+
+        // Space-Saving
+        Conteggio monitorato = monitorati.get(chiave);
+        if (monitorato != null) {
+            monitorato.conteggio += peso;
+            monitorato.nome = nome;
+            monitorato.categoria = categoria;
+            return;
+        }
+        if (monitorati.size() < MONITORATI) {
+            monitorati.put(chiave, new Conteggio(nome, categoria, stima, stima - peso));
+            return;
+        }
+        String chiaveMinima = null;
+        Conteggio minimo = null;
+        for (Map.Entry<String, Conteggio> voce : monitorati.entrySet()) {
+            if (minimo == null || voce.getValue().conteggio < minimo.conteggio) {
+                chiaveMinima = voce.getKey();
+                minimo = voce.getValue();
+            }
+        }
+        // Entra solo se (secondo il Count-Min) è più frequente del meno frequente
+        if (stima > minimo.conteggio) {
+            double conteggio = Math.min(minimo.conteggio + peso, stima);
+            monitorati.remove(chiaveMinima);
+            monitorati.put(chiave, new Conteggio(nome, categoria, conteggio, conteggio - peso));
+        }
+    }
+
+    // Stessa frequenza, numeri piccoli: tutto diviso per il peso attuale
+    private void riscala() {
+        for (int i = 0; i < contatori.length; i++) {
+            contatori[i] = (float) (contatori[i] / peso);
+        }
+        for (Conteggio conteggio : monitorati.values()) {
+            conteggio.conteggio /= peso;
+            conteggio.errore /= peso;
+        }
+        liste /= peso;
+        peso = 1;
+    }
+
+    // Una colonna diversa per riga da due hash della chiave (h1 + riga × h2)
+    private static int cella(String chiave, int riga) {
+        int h1 = chiave.hashCode();
+        int h2 = Integer.reverse(h1 * 0x9E3779B9) | 1;
+        return riga * COLONNE + ((h1 + riga * h2) & (COLONNE - 1));
+    }
+
+    // ============================================
+    // INTERROGAZIONE
+    // ============================================
+
+    /*
+     * METODO: piuFrequenti(int quanti, BiPredicate escludi)
+     *
+     * COSA FA?
+     * - I prodotti più frequenti nelle liste recenti, dal più frequente
+     * - escludi(nome, categoria): true per saltarlo (es. è già in lista)
+     * - Scorre solo i MONITORATI: microsecondi, qualunque sia la storia
+     */
+    public List<Voce> piuFrequenti(int quanti, BiPredicate<String, String> escludi) {
+        List<Conteggio> ordinati = new ArrayList<>(monitorati.values());
+        ordinati.sort((a, b) -> Double.compare(b.conteggio, a.conteggio));
+        List<Voce> voci = new ArrayList<>();
+        for (Conteggio conteggio : ordinati) {
+            if (voci.size() == quanti) {
+                break;
+            }
+            if (!escludi.test(conteggio.nome, conteggio.categoria)) {
+                voci.add(new Voce(conteggio.nome, conteggio.categoria, Math.min(1, conteggio.conteggio / liste)));
+            }
+        }
+        return voci;
+    }
+
+    // Quante liste sono state registrate, pesate (0 = nessuna)
+    public double liste() {
+        return liste;
+    }
+}
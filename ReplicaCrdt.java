@@ -0,0 +1,646 @@
+/*
+ * REPLICA CRDT - la lista come "tipo di dato replicato" tra dispositivi
+ *
+ * PROBLEMA:
+ * - Teniamo la stessa lista su più dispositivi e ci scambiamo spesa.csv
+ * - Vince l'ultimo che scrive: le modifiche degli altri si perdono
+ *
+ * SOLUZIONE: un CRDT (Conflict-free Replicated Data Type)
+ * - Ogni dispositivo è una "replica" con un nome casuale
+ * - Ogni modifica è un EVENTO con un "punto" (replica, contatore)
+ * - Presenza degli articoli: OR-set (observed-remove) per id
+ *   * un articolo tolto da una replica sparisce ovunque
+ *   * ma solo se quella replica lo aveva VISTO (non si perde un'aggiunta concorrente)
+ * - Campi (nome, categoria, prezzo, quantita, acquistato): registri LWW
+ *   (last-writer-wins) con timbro (contatore di Lamport, replica)
+ * - Vettore delle versioni: per ogni replica, il contatore più alto già visto
+ *
+ * SINCRONIZZAZIONE A DELTA
+ * - Chi chiede manda il suo vettore delle versioni (pochi byte)
+ * - Chi risponde manda SOLO gli articoli e le rimozioni che l'altro
+ *   non ha ancora visto: i byte dipendono dalle modifiche, non dalla lista
+ *
+ * COME SI COLLEGA ALLA LISTA?
+ * - allinea(lista) confronta la lista con lo stato della replica e
+ *   trasforma ogni differenza in un evento locale
+ * - unisci(delta) ritorna un Esito (aggiunti, rimossi, aggiornati)
+ *   che l'applicazione riporta nella lista
+ *
+ * STATO SU DISCO: spesa.crdt (da NON copiare su un altro dispositivo:
+ * contiene il nome della replica)
+ *
+ * VERIFICA: java VerificaReplicaCrdt (convergenza e byte di un delta)
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class ReplicaCrdt {
+
+    // File con lo stato della replica (accanto a spesa.csv)
+    public static final String FILE = "spesa.crdt";
+
+    // Campi dell'articolo, ognuno è un registro LWW
+    static final String[] CAMPI = {"nome", "categoria", "prezzo", "quantita", "acquistato"};
+
+    private static final int MAGIA_STATO = 0x4c534331;   // "LSC1"
+    private static final int MAGIA_RICHIESTA = 0x4c535231; // "LSR1"
+    private static final int MAGIA_DELTA = 0x4c534431;   // "LSD1"
+
+    /*
+     * CLASSE: Voce
+     *
+     * COSA È?
+     * - Lo stato replicato di UN articolo
+     * - Punto di aggiunta + per ogni campo: valore, replica e contatore del timbro
+     */
+    static class Voce {
+        final String id;
+        final String replicaAggiunta;
+        final long contatoreAggiunta;
+        final Object[] valori = new Object[CAMPI.length];
+        final String[] repliche = new String[CAMPI.length];
+        final long[] contatori = new long[CAMPI.length];
+
+        Voce(String id, String replicaAggiunta, long contatoreAggiunta) {
+            this.id = id;
+            this.replicaAggiunta = replicaAggiunta;
+            this.contatoreAggiunta = contatoreAggiunta;
+        }
+
+        Map<String, Object> comeArticolo() {
+            return FormatoCsv.creaArticolo(id, (String) valori[0], (String) valori[1],
+                    (double) valori[2], (int) valori[3], (boolean) valori[4]);
+        }
+    }
+
+    /*
+     * CLASSE: Esito
+     *
+     * COSA È?
+     * - Cosa cambia nella lista dopo una sincronizzazione
+     * - Più i byte scambiati (per vedere che dipendono dalle modifiche)
+     */
+    public static class Esito {
+        final List<Map<String, Object>> aggiunti = new ArrayList<>();
+        final Set<String> rimossi = new HashSet<>();
+        final Map<String, Map<String, Object>> aggiornati = new HashMap<>();
+        long byteInviati;
+        long byteRicevuti;
+
+        public List<Map<String, Object>> aggiunti() {
+            return aggiunti;
+        }
+
+        public Set<String> rimossi() {
+            return rimossi;
+        }
+
+        public Map<String, Map<String, Object>> aggiornati() {
+            return aggiornati;
+        }
+
+        public long byteInviati() {
+            return byteInviati;
+        }
+
+        public long byteRicevuti() {
+            return byteRicevuti;
+        }
+
+        public boolean vuoto() {
+            return aggiunti.isEmpty() && rimossi.isEmpty() && aggiornati.isEmpty();
+        }
+
+        /*
+         * METODO: accumula(Esito successivo)
+         *
+         * COSA FA?
+         * - Unisce l'esito di un delta arrivato DOPO questo
+         *   (es. più file nella cartella di scambio)
+         */
+        public void accumula(Esito successivo) {
+            for (Map<String, Object> articolo : successivo.aggiunti) {
+                aggiunti.add(articolo);
+            }
+            for (Map.Entry<String, Map<String, Object>> aggiornato : successivo.aggiornati.entrySet()) {
+                String id = aggiornato.getKey();
+                if (aggiunti.removeIf(articolo -> id.equals(articolo.get("id")))) {
+                    aggiunti.add(aggiornato.getValue());
+                } else {
+                    aggiornati.put(id, aggiornato.getValue());
+                }
+            }
+            for (String id : successivo.rimossi) {
+                aggiornati.remove(id);
+                if (!aggiunti.removeIf(articolo -> id.equals(articolo.get("id")))) {
+                    rimossi.add(id);
+                }
+            }
+            byteInviati += successivo.byteInviati;
+            byteRicevuti += successivo.byteRicevuti;
+        }
+    }
+
+    private final String replica;
+    private long orologio;
+
+    // Vettore delle versioni: replica → contatore più alto visto
+    private final Map<String, Long> versioni = new HashMap<>();
+
+    // Articoli presenti, per id
+    private final Map<String, Voce> voci = new LinkedHashMap<>();
+
+    // Rimozioni ancora da comunicare: id → { replica, contatore } della rimozione
+    private final Map<String, Object[]> lapidi = new LinkedHashMap<>();
+
+    // Ultimo vettore delle versioni noto di ogni altra replica
+    private final Map<String, Map<String, Long>> conosciute = new HashMap<>();
+
+    private ReplicaCrdt(String replica) {
+        this.replica = replica;
+    }
+
+    public String replica() {
+        return replica;
+    }
+
+    // ============================================
+    // ALLINEAMENTO CON LA LISTA
+    // ============================================
+
+    /*
+     * METODO: allinea(List lista)
+     *
+     * COSA FA?
+     * - Confronta la lista con lo stato replicato
+     * - Articolo nuovo → evento "aggiunta"
+     * - Campo diverso → evento sul suo registro
+     * - Articolo sparito → evento "rimozione" (lapide)
+     * - Ritorna quanti eventi locali ha creato
+     *
+     * NOTA: va chiamato con la lista bloccata (synchronized)
+     */
+    public synchronized int allinea(List<Map<String, Object>> lista) {
+        int eventi = 0;
+        Set<String> presenti = new HashSet<>(lista.size() * 2);
+        for (Map<String, Object> articolo : lista) {
+            String id = (String) articolo.get("id");
+            presenti.add(id);
+            Voce voce = voci.get(id);
+            if (voce == null) {
+                voce = new Voce(id, replica, ++orologio);
+                for (int campo = 0; campo < CAMPI.length; campo++) {
+                    timbra(voce, campo, articolo.get(CAMPI[campo]));
+                }
+                voci.put(id, voce);
+                eventi++;
+                continue;
+            }
+            for (int campo = 0; campo < CAMPI.length; campo++) {
+                Object valore = articolo.get(CAMPI[campo]);
+                if (!Objects.equals(voce.valori[campo], valore)) {
+                    ++orologio;
+                    timbra(voce, campo, valore);
+                    eventi++;
+                }
+            }
+        }
+
+        if (presenti.size() < voci.size()) {
+            Iterator<Voce> iteratore = voci.values().iterator();
+            while (iteratore.hasNext()) {
+                Voce voce = iteratore.next();
+                if (!presenti.contains(voce.id)) {
+                    iteratore.remove();
+                    lapidi.put(voce.id, new Object[] {replica, ++orologio});
+                    eventi++;
+                }
+            }
+        }
+        versioni.put(replica, orologio);
+        return eventi;
+    }
+
+    private void timbra(Voce voce, int campo, Object valore) {
+        voce.valori[campo] = valore;
+        voce.repliche[campo] = replica;
+        voce.contatori[campo] = orologio;
+    }
+
+    // ============================================
+    // PROTOCOLLO: RICHIESTA E DELTA
+    // ============================================
+
+    /*
+     * METODO: richiesta()
+     *
+     * COSA FA?
+     * - "Ecco cosa ho già visto": nome della replica + vettore delle versioni
+     */
+    public synchronized byte[] richiesta() throws IOException {
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(byteOut);
+        out.writeInt(MAGIA_RICHIESTA);
+        out.writeUTF(replica);
+        scriviVersioni(out, versioni);
+        return byteOut.toByteArray();
+    }
+
+    /*
+     * METODO: deltaPer(byte[] richiesta)
+     *
+     * COSA FA?
+     * - Prepara il delta per chi ha mandato la richiesta:
+     *   * gli articoli con almeno un evento che non ha visto
+     *   * le rimozioni che non ha visto
+     *   * il nostro vettore delle versioni
+     */
+    public synchronized byte[] deltaPer(byte[] richiesta) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(richiesta));
+        if (in.readInt() != MAGIA_RICHIESTA) {
+            throw new IOException("richiesta di sincronizzazione non valida");
+        }
+        String altra = in.readUTF();
+        Map<String, Long> visti = leggiVersioni(in);
+        ricorda(altra, visti);
+
+        // Le repliche si scrivono una volta sola, poi per indice
+        List<String> tabella = new ArrayList<>(versioni.keySet());
+        Map<String, Integer> indici = new HashMap<>();
+        for (int i = 0; i < tabella.size(); i++) {
+            indici.put(tabella.get(i), i);
+        }
+
+        List<Voce> daInviare = new ArrayList<>();
+        for (Voce voce : voci.values()) {
+            if (!vista(visti, voce)) {
+                daInviare.add(voce);
+            }
+        }
+        List<Map.Entry<String, Object[]>> rimozioni = new ArrayList<>();
+        for (Map.Entry<String, Object[]> lapide : lapidi.entrySet()) {
+            if (!coperto(visti, (String) lapide.getValue()[0], (long) lapide.getValue()[1])) {
+                rimozioni.add(lapide);
+            }
+        }
+
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(byteOut);
+        out.writeInt(MAGIA_DELTA);
+        out.writeUTF(replica);
+        scriviVarLong(out, tabella.size());
+        for (String nome : tabella) {
+            out.writeUTF(nome);
+            scriviVarLong(out, versioni.get(nome));
+        }
+        scriviVarLong(out, daInviare.size());
+        for (Voce voce : daInviare) {
+            out.writeUTF(voce.id);
+            scriviVarLong(out, indici.get(voce.replicaAggiunta));
+            scriviVarLong(out, voce.contatoreAggiunta);
+            for (int campo = 0; campo < CAMPI.length; campo++) {
+                scriviVarLong(out, indici.get(voce.repliche[campo]));
+                scriviVarLong(out, voce.contatori[campo]);
+                scriviValore(out, campo, voce.valori[campo]);
+            }
+        }
+        scriviVarLong(out, rimozioni.size());
+        for (Map.Entry<String, Object[]> lapide : rimozioni) {
+            out.writeUTF(lapide.getKey());
+            scriviVarLong(out, indici.get((String) lapide.getValue()[0]));
+            scriviVarLong(out, (long) lapide.getValue()[1]);
+        }
+        return byteOut.toByteArray();
+    }
+
+    /*
+     * METODO: unisci(byte[] delta)
+     *
+     * COSA FA?
+     * - Applica un delta ricevuto allo stato della replica
+     * - Le regole (uguali su tutte le repliche) garantiscono che,
+     *   scambiati gli stessi eventi, tutte arrivino allo STESSO stato:
+     *   * rimozione vista → l'articolo sparisce
+     *   * articolo sconosciuto ma già "coperto" dalle nostre versioni
+     *     → l'avevamo rimosso noi, resta rimosso
+     *   * registri: vince il timbro più alto (contatore, poi nome replica)
+     */
+    public synchronized Esito unisci(byte[] delta) throws IOException {
+        Esito esito = new Esito();
+        esito.byteRicevuti = delta.length;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+        if (in.readInt() != MAGIA_DELTA) {
+            throw new IOException("delta di sincronizzazione non valido");
+        }
+        String altra = in.readUTF();
+        int numeroRepliche = (int) leggiVarLong(in);
+        String[] tabella = new String[numeroRepliche];
+        Map<String, Long> versioniAltra = new HashMap<>();
+        for (int i = 0; i < numeroRepliche; i++) {
+            tabella[i] = in.readUTF();
+            versioniAltra.put(tabella[i], leggiVarLong(in));
+        }
+
+        long numeroVoci = leggiVarLong(in);
+        for (long v = 0; v < numeroVoci; v++) {
+            Voce arrivata = new Voce(in.readUTF(), tabella[(int) leggiVarLong(in)], leggiVarLong(in));
+            for (int campo = 0; campo < CAMPI.length; campo++) {
+                arrivata.repliche[campo] = tabella[(int) leggiVarLong(in)];
+                arrivata.contatori[campo] = leggiVarLong(in);
+                arrivata.valori[campo] = leggiValore(in, campo);
+            }
+            unisciVoce(arrivata, esito);
+        }
+
+        long numeroRimozioni = leggiVarLong(in);
+        for (long r = 0; r < numeroRimozioni; r++) {
+            String id = in.readUTF();
+            Object[] rimozione = {tabella[(int) leggiVarLong(in)], leggiVarLong(in)};
+            if (voci.remove(id) != null) {
+                esito.rimossi.add(id);
+            }
+            lapidi.putIfAbsent(id, rimozione);
+        }
+
+        // Da qui abbiamo visto tutto ciò che aveva visto l'altra replica
+        for (Map.Entry<String, Long> versione : versioniAltra.entrySet()) {
+            versioni.merge(versione.getKey(), versione.getValue(), Math::max);
+            orologio = Math.max(orologio, versione.getValue());
+        }
+        versioni.put(replica, orologio);
+        ricorda(altra, versioniAltra);
+        return esito;
+    }
+
+    private void unisciVoce(Voce arrivata, Esito esito) {
+        if (lapidi.containsKey(arrivata.id)) {
+            return;
+        }
+        Voce nostra = voci.get(arrivata.id);
+        if (nostra == null) {
+            if (coperto(versioni, arrivata.replicaAggiunta, arrivata.contatoreAggiunta)) {
+                return;
+            }
+            voci.put(arrivata.id, arrivata);
+            esito.aggiunti.add(arrivata.comeArticolo());
+            return;
+        }
+
+        boolean cambiata = false;
+        for (int campo = 0; campo < CAMPI.length; campo++) {
+            if (vince(arrivata, nostra, campo)) {
+                nostra.valori[campo] = arrivata.valori[campo];
+                nostra.repliche[campo] = arrivata.repliche[campo];
+                nostra.contatori[campo] = arrivata.contatori[campo];
+                cambiata = true;
+            }
+        }
+        if (cambiata) {
+            esito.aggiornati.put(nostra.id, nostra.comeArticolo());
+        }
+    }
+
+    private static boolean vince(Voce a, Voce b, int campo) {
+        if (a.contatori[campo] != b.contatori[campo]) {
+            return a.contatori[campo] > b.contatori[campo];
+        }
+        return a.repliche[campo].compareTo(b.repliche[campo]) > 0;
+    }
+
+    // ============================================
+    // VETTORI DELLE VERSIONI
+    // ============================================
+
+    private static boolean coperto(Map<String, Long> versioni, String replica, long contatore) {
+        return versioni.getOrDefault(replica, 0L) >= contatore;
+    }
+
+    // L'altra replica ha già visto tutti gli eventi di questa voce?
+    private static boolean vista(Map<String, Long> visti, Voce voce) {
+        if (!coperto(visti, voce.replicaAggiunta, voce.contatoreAggiunta)) {
+            return false;
+        }
+        for (int campo = 0; campo < CAMPI.length; campo++) {
+            if (!coperto(visti, voce.repliche[campo], voce.contatori[campo])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * METODO: ricorda(String altra, Map versioni)
+     *
+     * COSA FA?
+     * - Si segna cosa ha visto l'altra replica
+     * - Una lapide vista da TUTTE le repliche conosciute non serve più
+     */
+    private void ricorda(String altra, Map<String, Long> visti) {
+        if (altra.equals(replica)) {
+            return;
+        }
+        Map<String, Long> note = conosciute.computeIfAbsent(altra, k -> new HashMap<>());
+        for (Map.Entry<String, Long> versione : visti.entrySet()) {
+            note.merge(versione.getKey(), versione.getValue(), Math::max);
+        }
+        lapidi.values().removeIf(rimozione -> {
+            for (Map<String, Long> vistiAltra : conosciute.values()) {
+                if (!coperto(vistiAltra, (String) rimozione[0], (long) rimozione[1])) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    public synchronized int articoli() {
+        return voci.size();
+    }
+
+    public synchronized int lapidi() {
+        return lapidi.size();
+    }
+
+    // Gli articoli presenti, per id in ordine: due repliche allineate danno lo stesso (vedi VerificaReplicaCrdt)
+    synchronized Map<String, Map<String, Object>> stato() {
+        Map<String, Map<String, Object>> stato = new TreeMap<>();
+        for (Voce voce : voci.values()) {
+            stato.put(voce.id, voce.comeArticolo());
+        }
+        return stato;
+    }
+
+    // ============================================
+    // STATO SU DISCO
+    // ============================================
+
+    /*
+     * METODO: carica(Path file)
+     *
+     * COSA FA?
+     * - Legge lo stato della replica da spesa.crdt
+     * - Se il file non c'è, crea una replica nuova con un nome casuale
+     */
+    public static ReplicaCrdt carica(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            ReplicaCrdt nuova = new ReplicaCrdt(FormatoCsv.nuovoId());
+            nuova.versioni.put(nuova.replica, 0L);
+            return nuova;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)));
+        if (in.readInt() != MAGIA_STATO) {
+            throw new IOException("\"" + file.getFileName() + "\" non è uno stato di sincronizzazione valido");
+        }
+        ReplicaCrdt replica = new ReplicaCrdt(in.readUTF());
+        replica.orologio = leggiVarLong(in);
+        replica.versioni.putAll(leggiVersioni(in));
+
+        long numeroVoci = leggiVarLong(in);
+        for (long v = 0; v < numeroVoci; v++) {
+            Voce voce = new Voce(in.readUTF(), in.readUTF(), leggiVarLong(in));
+            for (int campo = 0; campo < CAMPI.length; campo++) {
+                voce.repliche[campo] = in.readUTF();
+                voce.contatori[campo] = leggiVarLong(in);
+                voce.valori[campo] = leggiValore(in, campo);
+            }
+            replica.voci.put(voce.id, voce);
+        }
+        long numeroLapidi = leggiVarLong(in);
+        for (long l = 0; l < numeroLapidi; l++) {
+            replica.lapidi.put(in.readUTF(), new Object[] {in.readUTF(), leggiVarLong(in)});
+        }
+        long numeroConosciute = leggiVarLong(in);
+        for (long c = 0; c < numeroConosciute; c++) {
+            replica.conosciute.put(in.readUTF(), leggiVersioni(in));
+        }
+        return replica;
+    }
+
+    // Scrittura atomica (file temporaneo + rinomina), come spesa.csv
+    public synchronized void salva(Path file) throws IOException {
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(byteOut);
+        out.writeInt(MAGIA_STATO);
+        out.writeUTF(replica);
+        scriviVarLong(out, orologio);
+        scriviVersioni(out, versioni);
+        scriviVarLong(out, voci.size());
+        for (Voce voce : voci.values()) {
+            out.writeUTF(voce.id);
+            out.writeUTF(voce.replicaAggiunta);
+            scriviVarLong(out, voce.contatoreAggiunta);
+            for (int campo = 0; campo < CAMPI.length; campo++) {
+                out.writeUTF(voce.repliche[campo]);
+                scriviVarLong(out, voce.contatori[campo]);
+                scriviValore(out, campo, voce.valori[campo]);
+            }
+        }
+        scriviVarLong(out, lapidi.size());
+        for (Map.Entry<String, Object[]> lapide : lapidi.entrySet()) {
+            out.writeUTF(lapide.getKey());
+            out.writeUTF((String) lapide.getValue()[0]);
+            scriviVarLong(out, (long) lapide.getValue()[1]);
+        }
+        scriviVarLong(out, conosciute.size());
+        for (Map.Entry<String, Map<String, Long>> altra : conosciute.entrySet()) {
+            out.writeUTF(altra.getKey());
+            scriviVersioni(out, altra.getValue());
+        }
+
+        Path temporaneo = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporaneo, byteOut.toByteArray());
+        Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ============================================
+    // CODIFICA BINARIA
+    // ============================================
+
+    /*
+     * Numeri a lunghezza variabile ("varint"): 7 bit per byte,
+     * il bit alto dice se ne segue un altro. I contatori piccoli
+     * (quasi tutti) occupano 1-2 byte invece di 8.
+     */
+    static void scriviVarLong(DataOutputStream out, long valore) throws IOException {
+        while ((valore & ~0x7FL) != 0) {
+            out.writeByte((int) ((valore & 0x7F) | 0x80));
+            valore >>>= 7;
+        }
+        out.writeByte((int) valore);
+    }
+
+    static long leggiVarLong(DataInputStream in) throws IOException {
+        long valore = 0;
+        for (int spostamento = 0; spostamento < 64; spostamento += 7) {
+            int b = in.readUnsignedByte();
+            valore |= (long) (b & 0x7F) << spostamento;
+            if ((b & 0x80) == 0) {
+                return valore;
+            }
+        }
+        throw new IOException("numero non valido");
+    }
+
+    private static void scriviVersioni(DataOutputStream out, Map<String, Long> versioni) throws IOException {
+        scriviVarLong(out, versioni.size());
+        for (Map.Entry<String, Long> versione : versioni.entrySet()) {
+            out.writeUTF(versione.getKey());
+            scriviVarLong(out, versione.getValue());
+        }
+    }
+
+    private static Map<String, Long> leggiVersioni(DataInputStream in) throws IOException {
+        Map<String, Long> versioni = new HashMap<>();
+        long numero = leggiVarLong(in);
+        for (long i = 0; i < numero; i++) {
+            versioni.put(in.readUTF(), leggiVarLong(in));
+        }
+        return versioni;
+    }
+
+    private static void scriviValore(DataOutputStream out, int campo, Object valore) throws IOException {
+        switch (campo) {
+            case 2:
+                out.writeDouble((double) valore);
+                break;
+            case 3:
+                scriviVarLong(out, (int) valore);
+                break;
+            case 4:
+                out.writeBoolean((boolean) valore);
+                break;
+            default:
+                out.writeUTF((String) valore);
+        }
+    }
+
+    private static Object leggiValore(DataInputStream in, int campo) throws IOException {
+        switch (campo) {
+            case 2:
+                return in.readDouble();
+            case 3:
+                return (int) leggiVarLong(in);
+            case 4:
+                return in.readBoolean();
+            default:
+                return in.readUTF();
+        }
+    }
+}
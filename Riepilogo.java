@@ -0,0 +1,169 @@
+/*
+ * RIEPILOGO - i totali della lista, aggiornati a ogni modifica
+ *
+ * COSA CONTIENE?
+ * - Numero di articoli, quanti sono acquistati
+ * - Spesa totale e spesa degli articoli acquistati
+ *
+ * PERCHÉ tenerlo aggiornato invece di ricalcolarlo?
+ * - "Calcola totale" e il fondo di "Visualizza lista" diventano immediati
+ * - Non serve scorrere la lista (che potrebbe non essere ancora caricata)
+ *
+ * FILE ACCANTO AL CSV (spesa.riepilogo)
+ * - Al salvataggio scriviamo anche i totali in un file minuscolo
+ * - All'avvio li leggiamo subito, prima di aver letto tutto spesa.csv
+ * - Valgono solo se spesa.csv non è cambiato (stessa dimensione e data)
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+public class Riepilogo {
+
+    private int articoli;
+    private int acquistati;
+    private double totale;
+    private double totaleAcquistati;
+
+    public static Riepilogo di(List<Map<String, Object>> lista) {
+        Riepilogo riepilogo = new Riepilogo();
+        for (Map<String, Object> articolo : lista) {
+            riepilogo.aggiungi(articolo);
+        }
+        return riepilogo;
+    }
+
+    // ============================================
+    // AGGIORNAMENTO
+    // ============================================
+
+    public void aggiungi(Map<String, Object> articolo) {
+        aggiungi((double) articolo.get("prezzo"), (int) articolo.get("quantita"), (boolean) articolo.get("acquistato"));
+    }
+
+    // Stessa cosa senza la Map (es. letto direttamente da ArchivioMappato)
+    public void aggiungi(double prezzo, int quantita, boolean acquistato) {
+        double subtotale = prezzo * quantita;
+        articoli++;
+        totale += subtotale;
+        if (acquistato) {
+            acquistati++;
+            totaleAcquistati += subtotale;
+        }
+    }
+
+    public void rimuovi(Map<String, Object> articolo) {
+        double subtotale = (double) articolo.get("prezzo") * (int) articolo.get("quantita");
+        articoli--;
+        totale -= subtotale;
+        if ((boolean) articolo.get("acquistato")) {
+            acquistati--;
+            totaleAcquistati -= subtotale;
+        }
+
+        // Lista vuota: azzera per non accumulare errori di arrotondamento
+        if (articoli == 0) {
+            azzera();
+        }
+    }
+
+    public Riepilogo copia() {
+        Riepilogo copia = new Riepilogo();
+        copia.articoli = articoli;
+        copia.acquistati = acquistati;
+        copia.totale = totale;
+        copia.totaleAcquistati = totaleAcquistati;
+        return copia;
+    }
+
+    public void azzera() {
+        articoli = 0;
+        acquistati = 0;
+        totale = 0;
+        totaleAcquistati = 0;
+    }
+
+    // ============================================
+    // LETTURA
+    // ============================================
+
+    public int articoli() {
+        return articoli;
+    }
+
+    public int acquistati() {
+        return acquistati;
+    }
+
+    public int nonAcquistati() {
+        return articoli - acquistati;
+    }
+
+    public double totale() {
+        return totale;
+    }
+
+    public double totaleAcquistati() {
+        return totaleAcquistati;
+    }
+
+    public double totaleRimanente() {
+        return totale - totaleAcquistati;
+    }
+
+    // ============================================
+    // FILE ACCANTO AL CSV
+    // ============================================
+
+    public static Path fileAccanto(Path csv) {
+        String nome = csv.getFileName().toString().replaceFirst("\\.csv$", "");
+        return csv.resolveSibling(nome + ".riepilogo");
+    }
+
+    /*
+     * METODO: salvaAccanto(Path csv)
+     *
+     * COSA FA?
+     * - Scrive i totali + dimensione e data di modifica del CSV appena salvato
+     * - Formato: articoli,acquistati,totale,totaleAcquistati,dimensione,modifica
+     */
+    public void salvaAccanto(Path csv) throws Exception {
+        String riga = articoli + "," + acquistati + "," + totale + "," + totaleAcquistati + ","
+                + Files.size(csv) + "," + Files.getLastModifiedTime(csv).toMillis() + "\n";
+        Files.write(fileAccanto(csv), riga.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /*
+     * METODO: leggiAccanto(Path csv)
+     *
+     * COSA FA?
+     * - Ritorna i totali salvati accanto al CSV
+     * - Ritorna null se il file manca, è illeggibile o non corrisponde più al CSV
+     */
+    public static Riepilogo leggiAccanto(Path csv) {
+        try {
+            Path file = fileAccanto(csv);
+            if (!Files.exists(file)) {
+                return null;
+            }
+            String[] campi = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim().split(",");
+            long dimensione = Long.parseLong(campi[4]);
+            long modifica = Long.parseLong(campi[5]);
+            if (dimensione != Files.size(csv) || modifica != Files.getLastModifiedTime(csv).toMillis()) {
+                return null;
+            }
+
+            Riepilogo riepilogo = new Riepilogo();
+            riepilogo.articoli = Integer.parseInt(campi[0]);
+            riepilogo.acquistati = Integer.parseInt(campi[1]);
+            riepilogo.totale = Double.parseDouble(campi[2]);
+            riepilogo.totaleAcquistati = Double.parseDouble(campi[3]);
+            return riepilogo;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * RIGHE SCARTATE - le righe di un CSV che non sono articoli validi
+ *
+ * PROBLEMA:
+ * - Una sola riga rovinata ("Pane,Panetteria,abc,1,false") faceva fallire
+ *   tutto il caricamento: lista vuota o a metà
+ *
+ * SOLUZIONE:
+ * - Chi legge il file salta la riga e la annota qui (numero, motivo, testo)
+ * - Alla fine l'utente vede le prime e trova tutte le altre in spesa.scartate
+ *
+ * PERCHÉ un file?
+ * - Il prossimo salvataggio riscrive spesa.csv SENZA quelle righe:
+ *   il rapporto è l'unico posto dove restano, per correggerle a mano
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RigheScartate {
+
+    public static final String FILE = "spesa.scartate";
+
+    // Oltre, si contano soltanto (un file sbagliato può avere milioni di righe)
+    private static final int RICORDATE_MASSIME = 10_000;
+
+    private final List<String> righe = new ArrayList<>();
+    private int numero;
+
+    // numeroRiga conta come un editor: 1 = intestazione, 2 = primo articolo
+    public void aggiungi(int numeroRiga, String linea, Exception motivo) {
+        numero++;
+        if (righe.size() < RICORDATE_MASSIME) {
+            righe.add("riga " + numeroRiga + " (" + descrivi(motivo) + "): " + linea);
+        }
+    }
+
+    // Il motivo in parole: i messaggi delle eccezioni sono pensati per i programmatori
+    private static String descrivi(Exception motivo) {
+        if (motivo instanceof NumberFormatException) {
+            return "numero non valido: " + motivo.getMessage();
+        }
+        if (motivo instanceof IndexOutOfBoundsException) {
+            return "campi mancanti";
+        }
+        return motivo.getMessage();
+    }
+
+    public int numero() {
+        return numero;
+    }
+
+    public List<String> prime(int quante) {
+        return righe.subList(0, Math.min(quante, righe.size()));
+    }
+
+    /*
+     * METODO: scrivi(Path file)
+     *
+     * COSA FA?
+     * - Scrive il rapporto (sovrascrive quello del caricamento precedente)
+     */
+    public void scrivi(Path file) throws IOException {
+        StringBuilder testo = new StringBuilder();
+        for (String riga : righe) {
+            testo.append(riga).append("\n");
+        }
+        if (numero > righe.size()) {
+            testo.append("(e altre ").append(numero - righe.size()).append(" righe)\n");
+        }
+        Files.write(file, testo.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
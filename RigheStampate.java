@@ -0,0 +1,103 @@
+/*
+ * RIGHE STAMPATE - il testo di ogni articolo, formattato una volta sola
+ *
+ * PROBLEMA:
+ * - Ogni visualizzazione riformattava tutti gli articoli: checkbox,
+ *   concatenazioni e un printf per prezzo × quantità, una println per riga
+ * - Anche se dall'ultima volta non era cambiato niente
+ *
+ * SOLUZIONE:
+ * - Il testo di un articolo si ricorda, legato all'articolo stesso
+ *   (IdentityHashMap: lo stesso oggetto, non uno uguale)
+ * - Gli articoli non si modificano mai al loro posto: "marca", "unisci"...
+ *   mettono in lista una COPIA (vedi ListaPersistente). Un articolo
+ *   cambiato è un oggetto nuovo, quindi senza testo: si riformatta solo lui
+ * - Chi stampa accumula le righe in un StringBuilder e scrive a blocchi:
+ *   una print per pagina invece di due per articolo
+ *
+ * COSA SI RICORDA?
+ * - Solo la parte che non dipende dalla posizione: ". Pane - Panetteria\n..."
+ *   Checkbox e numero si aggiungono al momento (il numero cambia se si
+ *   rimuove un articolo prima)
+ *
+ * QUANDO SI DIMENTICA?
+ * - dimentica(): l'articolo esce dalla lista (rimosso o sostituito)
+ * - limita(): dopo un cambio in blocco (svuota, annulla...) i testi vecchi
+ *   restano finché non sono troppi rispetto alla lista; dopo un Annulla gli
+ *   articoli tornati sono gli stessi oggetti, e il loro testo è ancora buono
+ *
+ * Thread-safe: si aggiorna anche dalla sincronizzazione, mentre il menu stampa
+ */
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+public class RigheStampate {
+
+    // Testi in più rispetto agli articoli in lista prima di ripartire da zero
+    private static final int SCARTO_MASSIMO = 1024;
+
+    private static final class Righe {
+        String dettaglio;
+        String semplice;
+    }
+
+    private final Map<Map<String, Object>, Righe> perArticolo = new IdentityHashMap<>();
+
+    /*
+     * METODO: dettaglio(StringBuilder testo, int numero, Map articolo)
+     *
+     * COSA FA?
+     * - Aggiunge a "testo" le due righe di visualizzaLista(), le stesse
+     *   di stampaArticolo():
+     *   [ ] 2. Pane - Panetteria
+     *          €2.50 x 3 = €7.50
+     */
+    public synchronized void dettaglio(StringBuilder testo, int numero, Map<String, Object> articolo) {
+        Righe righe = righe(articolo);
+        if (righe.dettaglio == null) {
+            double prezzo = (double) articolo.get("prezzo");
+            int quantita = (int) articolo.get("quantita");
+            righe.dettaglio = ". " + articolo.get("nome") + " - " + articolo.get("categoria") + "\n"
+                    + String.format("       €%.2f x %d = €%.2f\n", prezzo, quantita, prezzo * quantita);
+        }
+        testo.append(casella(articolo)).append(numero).append(righe.dettaglio);
+    }
+
+    // La riga corta di visualizzaListaSemplice(): "[ ] 2. Pane"
+    public synchronized void semplice(StringBuilder testo, int numero, Map<String, Object> articolo) {
+        Righe righe = righe(articolo);
+        if (righe.semplice == null) {
+            righe.semplice = ". " + articolo.get("nome") + "\n";
+        }
+        testo.append(casella(articolo)).append(numero).append(righe.semplice);
+    }
+
+    private Righe righe(Map<String, Object> articolo) {
+        return perArticolo.computeIfAbsent(articolo, a -> new Righe());
+    }
+
+    private static String casella(Map<String, Object> articolo) {
+        return (boolean) articolo.get("acquistato") ? "[✓] " : "[ ] ";
+    }
+
+    // ============================================
+    // INVALIDAZIONE
+    // ============================================
+
+    public synchronized void dimentica(Map<String, Object> articolo) {
+        perArticolo.remove(articolo);
+    }
+
+    // Dopo un cambio in blocco: "articoli" = quanti sono ora in lista
+    public synchronized void limita(int articoli) {
+        if (perArticolo.size() > 2L * articoli + SCARTO_MASSIMO) {
+            perArticolo.clear();
+        }
+    }
+
+    // La lista è tutta nuova (Carica da file): nessun testo serve più
+    public synchronized void svuota() {
+        perArticolo.clear();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * SCONTRINI - le righe dei prodotti comprati, lette dagli scontrini
+ *
+ * PROBLEMA:
+ * - Dopo la spesa bisognerebbe segnare gli articoli acquistati uno per
+ *   uno ("Marca come acquistato"): lento, e il prezzo vero resta quello vecchio
+ * - Lo scontrino li ha già tutti, con il prezzo pagato
+ *
+ * COSA LEGGE?
+ * - Tutti i file .txt e .csv di una cartella (es. scontrini scaricati
+ *   dall'app del supermercato, o copiati a mano)
+ * - .txt: lo scontrino com'è stampato, una riga per prodotto
+ *
+ *     LATTE INTERO PS 1L          1,29
+ *     2 x 0,89
+ *     YOGURT BIANCO               1,78 B
+ *     TOTALE                      3,07
+ *
+ *   * il prezzo è l'ultimo numero con due decimali (poi al massimo un
+ *     simbolo dell'euro e il codice IVA)
+ *   * "2 x 0,89" è la quantità della riga accanto (prima o dopo)
+ *   * totali, pagamenti, sconti e righe senza prezzo si saltano
+ * - .csv: nome;prezzo[;quantità] (prezzo con la virgola) oppure
+ *   nome,prezzo[,quantità] (prezzo con il punto); l'intestazione si salta
+ *
+ * PAROLE
+ * - Il nome passa da Testo.normalizza() e si divide in parole; le parole
+ *   con cifre (1l, 500g, x6) e le sigle di una lettera si tolgono:
+ *   "LATTE INTERO PS 1L" → [latte, intero, ps]
+ * - Gli articoli della lista si dividono allo stesso modo (parole()):
+ *   così "Latte intero" si ritrova nello scontrino (vedi MotoreLista.riconcilia)
+ */
+
+import java.io.IOException;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class Scontrini {
+
+    public static final String CARTELLA_PREDEFINITA = "scontrini";
+
+    // "LATTE PS 1L    1,29 €  B": nome, prezzo
+    private static final Pattern RIGA_PRODOTTO = Pattern.compile(
+            "^(.*?\\S)\\s+(-?\\d+[.,]\\d{2})\\s*(?:€|eur)?\\s*(?:[a-z]|\\d{1,2}%)?\\s*$",
+            Pattern.CASE_INSENSITIVE);
+
+    // "2 x 0,89": quantità, prezzo unitario
+    private static final Pattern RIGA_QUANTITA = Pattern.compile(
+            "^(\\d+)\\s*[x*]\\s*(\\d+[.,]\\d{2})\\s*(?:€|eur)?\\s*$", Pattern.CASE_INSENSITIVE);
+
+    // Righe con un prezzo che non sono prodotti
+    private static final Pattern NON_PRODOTTO = Pattern.compile(
+            "\\b(sub ?totale|totale|contanti|resto|iva|imponibile|pagamento|carta|bancomat|bonus|sconto|arrotondamento|euro)\\b");
+
+    private static final Pattern SEPARATORI = Pattern.compile("[^a-z0-9]+");
+
+    /*
+     * CLASSE: Riga
+     *
+     * COSA È?
+     * - Un prodotto dello scontrino: il nome come stampato, le sue parole,
+     *   il prezzo di un pezzo, quanti pezzi e da quale file
+     */
+    public static final class Riga {
+        private final String nome;
+        private final String[] parole;
+        private final double prezzo;
+        private final int quantita;
+        private final String file;
+
+        Riga(String nome, double totale, int quantita, String file) {
+            this.nome = nome;
+            this.parole = Scontrini.parole(nome);
+            this.prezzo = Math.round(totale / quantita * 100) / 100.0;
+            this.quantita = quantita;
+            this.file = file;
+        }
+
+        public String nome() {
+            return nome;
+        }
+
+        public String[] parole() {
+            return parole;
+        }
+
+        // Prezzo di un pezzo (il totale della riga diviso la quantità)
+        public double prezzo() {
+            return prezzo;
+        }
+
+        public int quantita() {
+            return quantita;
+        }
+
+        public String file() {
+            return file;
+        }
+    }
+
+    /*
+     * METODO: leggi(Path cartella)
+     *
+     * COSA FA?
+     * - Le righe dei prodotti di tutti gli scontrini della cartella,
+     *   file per file in ordine di nome
+     * - Un file che non è UTF-8 si rilegge come ISO-8859-1 (molte casse
+     *   esportano così)
+     */
+    public static List<Riga> leggi(Path cartella) throws IOException {
+        List<Path> file;
+        try (Stream<Path> contenuto = Files.list(cartella)) {
+            file = contenuto
+                    .filter(Files::isRegularFile)
+                    .filter(percorso -> {
+                        String nome = percorso.getFileName().toString().toLowerCase(Locale.ROOT);
+                        return nome.endsWith(".txt") || nome.endsWith(".csv");
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        List<Riga> righe = new ArrayList<>();
+        for (Path scontrino : file) {
+            List<String> linee;
+            try {
+                linee = Files.readAllLines(scontrino, StandardCharsets.UTF_8);
+            } catch (MalformedInputException e) {
+                linee = Files.readAllLines(scontrino, StandardCharsets.ISO_8859_1);
+            }
+            String nome = scontrino.getFileName().toString();
+            if (nome.toLowerCase(Locale.ROOT).endsWith(".csv")) {
+                leggiCsv(linee, nome, righe);
+            } else {
+                leggiTesto(linee, nome, righe);
+            }
+        }
+        return righe;
+    }
+
+    // Da quanti scontrini diversi vengono le righe (per i messaggi)
+    public static long scontrini(List<Riga> righe) {
+        return righe.stream().map(Riga::file).distinct().count();
+    }
+
+    /*
+     * METODO: leggiTesto(List linee, String file, List righe)
+     *
+     * COSA FA?
+     * - Una riga di prodotto per ogni linea con un prezzo che non è un
+     *   totale o un pagamento
+     * - "2 x 0,89" va alla riga prima se il suo totale torna (2 × 0,89 = 1,78),
+     *   altrimenti alla riga dopo
+     */
+    private static void leggiTesto(List<String> linee, String file, List<Riga> righe) {
+        int quantitaInAttesa = 0;
+        String nomePrecedente = null;
+        double totalePrecedente = 0;
+        for (String linea : linee) {
+            String testo = linea.trim();
+            Matcher quantita = RIGA_QUANTITA.matcher(testo);
+            if (quantita.matches()) {
+                int pezzi = Integer.parseInt(quantita.group(1));
+                double unitario = prezzo(quantita.group(2));
+                if (pezzi > 1 && nomePrecedente != null && Math.abs(pezzi * unitario - totalePrecedente) < 0.005) {
+                    righe.set(righe.size() - 1, new Riga(nomePrecedente, totalePrecedente, pezzi, file));
+                    nomePrecedente = null;
+                } else if (pezzi > 0) {
+                    quantitaInAttesa = pezzi;
+                }
+                continue;
+            }
+
+            Matcher prodotto = RIGA_PRODOTTO.matcher(testo);
+            double totale = prodotto.matches() ? prezzo(prodotto.group(2)) : 0;
+            if (totale <= 0 || NON_PRODOTTO.matcher(Testo.normalizza(prodotto.group(1))).find()) {
+                nomePrecedente = null;
+                continue;
+            }
+            String nome = prodotto.group(1).trim();
+            if (parole(nome).length == 0) {
+                nomePrecedente = null;
+                continue;
+            }
+            righe.add(new Riga(nome, totale, Math.max(1, quantitaInAttesa), file));
+            nomePrecedente = quantitaInAttesa > 0 ? null : nome;
+            totalePrecedente = totale;
+            quantitaInAttesa = 0;
+        }
+    }
+
+    // nome;prezzo[;quantità] oppure nome,prezzo[,quantità]
+    private static void leggiCsv(List<String> linee, String file, List<Riga> righe) {
+        for (String linea : linee) {
+            String[] campi = linea.split(linea.indexOf(';') >= 0 ? ";" : ",");
+            if (campi.length < 2) {
+                continue;
+            }
+            try {
+                String nome = campi[0].trim();
+                double prezzo = prezzo(campi[1]);
+                int quantita = campi.length > 2 ? Integer.parseInt(campi[2].trim()) : 1;
+                if (prezzo > 0 && quantita > 0 && parole(nome).length > 0) {
+                    righe.add(new Riga(nome, prezzo * quantita, quantita, file));
+                }
+            } catch (NumberFormatException e) {
+                // Intestazione o riga non di prodotto: si salta
+            }
+        }
+    }
+
+    private static double prezzo(String testo) {
+        return Double.parseDouble(testo.trim().replace(',', '.'));
+    }
+
+    /*
+     * METODO: parole(String nome)
+     *
+     * COSA FA?
+     * - Le parole che contano di un nome: normalizzato, senza misure
+     *   (parole con cifre) e senza sigle di una lettera
+     * - "Caffè Macinato 250g" → [caffe, macinato]
+     */
+    public static String[] parole(String nome) {
+        return Arrays.stream(SEPARATORI.split(Testo.normalizza(nome)))
+                .filter(parola -> parola.length() > 1 && parola.chars().noneMatch(Character::isDigit))
+                .toArray(String[]::new);
+    }
+}
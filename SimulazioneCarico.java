@@ -0,0 +1,275 @@
+/*
+ * SIMULAZIONE CARICO - una prova di prestazioni ripetibile, dall'inizio alla fine
+ *
+ * COSA FA?
+ * 1. Genera spesa.csv e comandi.txt con GeneratoreCarico (stesso seme = stessa prova)
+ * 2. Avvia una Application vera nella cartella della prova e le "digita"
+ *    comandi.txt come se fosse la tastiera
+ * 3. Misura: comandi al secondo, latenze per operazione (dalle Metriche
+ *    dell'applicazione), heap massimo, garbage collection
+ * 4. Stampa il rapporto e aggiunge una riga a carico.csv (nella cartella
+ *    da cui si lancia): confrontando le righe si vede se una modifica ha
+ *    peggiorato le prestazioni
+ *
+ * USO:
+ *   java SimulazioneCarico --articoli=1000000 --comandi=50000 --seme=7
+ *   java SimulazioneCarico --solo-genera      (solo i file, per provarli a mano)
+ *   java SimulazioneCarico --cartella=prova   (i file della prova in "prova")
+ * Le altre opzioni sono quelle di GeneratoreCarico (--categorie, --mix).
+ *
+ * LA CARTELLA DELLA PROVA
+ * - Application legge e scrive spesa.csv, spesa.storico... nella cartella
+ *   in cui gira: la prova NON deve toccare la lista vera dell'utente
+ * - Senza --cartella si usa una cartella temporanea nuova, cancellata alla
+ *   fine (tenuta con --solo-genera: sono i file da provare)
+ * - Con --cartella la prova si rifiuta di partire se la cartella contiene
+ *   già spesa.csv o spesa.storico
+ * - L'applicazione gira in una JVM figlia avviata in quella cartella (con
+ *   le stesse opzioni della JVM, es. -Xmx): heap e GC misurati sono i suoi
+ *
+ * PERCHÉ l'uscita dell'applicazione viene buttata?
+ * - Stampare sul terminale costerebbe più delle operazioni da misurare
+ */
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class SimulazioneCarico {
+
+    // Una riga per prova, per confrontare le prove nel tempo
+    public static final String FILE_RISULTATI = "carico.csv";
+
+    private static final String INTESTAZIONE = "Data,Seme,Articoli,Comandi,Secondi,ComandiAlSecondo,"
+            + "P50Micro,P99Micro,MaxMicro,HeapMassimoMB,Gc,GcMillis";
+
+    // Opzione interna: la JVM figlia, già nella cartella della prova
+    private static final String NELLA_CARTELLA = "--nella-cartella=";
+
+    /*
+     * METODO: main(String[] args)
+     *
+     * COSA FA?
+     * - Prepara la cartella della prova e avvia lì una JVM figlia con le
+     *   stesse opzioni; la figlia (--nella-cartella=...) fa la prova vera
+     *   (vedi prova())
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> opzioni = new ArrayList<>();
+        String cartellaScelta = null;
+        for (String argomento : args) {
+            if (argomento.startsWith(NELLA_CARTELLA)) {
+                prova(args);
+                return;
+            } else if (argomento.startsWith("--cartella=")) {
+                cartellaScelta = argomento.substring("--cartella=".length());
+            } else {
+                opzioni.add(argomento);
+            }
+        }
+
+        Path cartella;
+        if (cartellaScelta == null) {
+            cartella = Files.createTempDirectory("simulazione-carico");
+        } else {
+            cartella = Paths.get(cartellaScelta);
+            Files.createDirectories(cartella);
+            for (String file : new String[] {FormatoCsv.FILE, StoricoArticoli.FILE}) {
+                if (Files.exists(cartella.resolve(file))) {
+                    System.out.println("❌ \"" + cartella.resolve(file) + "\" esiste già: la prova lo sovrascriverebbe");
+                    System.out.println("(scegli una cartella senza " + FormatoCsv.FILE + " e " + StoricoArticoli.FILE + ")");
+                    return;
+                }
+            }
+        }
+
+        // Stessa JVM, stesse opzioni (es. -Xmx), stesso classpath; carico.csv resta qui
+        List<String> comando = new ArrayList<>();
+        comando.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        comando.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        comando.add("-cp");
+        List<String> classpath = new ArrayList<>();
+        for (String voce : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            classpath.add(Paths.get(voce).toAbsolutePath().toString());
+        }
+        comando.add(String.join(File.pathSeparator, classpath));
+        comando.add(SimulazioneCarico.class.getName());
+        comando.addAll(opzioni);
+        comando.add(NELLA_CARTELLA + Paths.get(FILE_RISULTATI).toAbsolutePath());
+        int uscita;
+        try {
+            uscita = new ProcessBuilder(comando).directory(cartella.toFile()).inheritIO().start().waitFor();
+        } finally {
+            if (cartellaScelta == null && !opzioni.contains("--solo-genera")) {
+                cancella(cartella);
+            }
+        }
+        if (cartellaScelta == null && opzioni.contains("--solo-genera")) {
+            System.out.println("(file della prova in \"" + cartella + "\")");
+        }
+        if (uscita != 0) {
+            System.exit(uscita);
+        }
+    }
+
+    /*
+     * METODO: prova(String[] args)
+     *
+     * COSA FA?
+     * - La prova vera, nella JVM figlia: la cartella corrente è quella
+     *   della prova (vuota, controllata da main)
+     */
+    private static void prova(String[] args) throws Exception {
+        GeneratoreCarico.Configurazione configurazione = new GeneratoreCarico.Configurazione();
+        boolean soloGenera = false;
+        Path risultati = Paths.get(FILE_RISULTATI);
+        for (String argomento : args) {
+            try {
+                if (argomento.equals("--solo-genera")) {
+                    soloGenera = true;
+                } else if (argomento.startsWith(NELLA_CARTELLA)) {
+                    risultati = Paths.get(argomento.substring(NELLA_CARTELLA.length()));
+                } else if (!configurazione.leggi(argomento)) {
+                    System.out.println("❌ Opzione sconosciuta: " + argomento);
+                    return;
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println("❌ Opzione non valida: " + argomento + " (" + e.getMessage() + ")");
+                return;
+            }
+        }
+
+        // STEP 1: i file della prova
+        long inizio = System.nanoTime();
+        GeneratoreCarico generatore = new GeneratoreCarico(configurazione);
+        generatore.scriviLista(Paths.get(FormatoCsv.FILE));
+        Path comandi = Paths.get(GeneratoreCarico.FILE_COMANDI);
+        Map<String, Integer> scritti = generatore.scriviComandi(comandi);
+        System.out.println("✓ " + configurazione);
+        System.out.printf("✓ \"%s\" e \"%s\" generati in %.1f s: %s%n", FormatoCsv.FILE,
+                GeneratoreCarico.FILE_COMANDI, (System.nanoTime() - inizio) / 1e9, scritti);
+        if (soloGenera) {
+            return;
+        }
+
+        // STEP 2: l'applicazione legge comandi.txt al posto della tastiera
+        // (prezzi scritti con il punto, qualunque sia la lingua del sistema)
+        Locale.setDefault(Locale.ROOT);
+        for (MemoryPoolMXBean area : ManagementFactory.getMemoryPoolMXBeans()) {
+            area.resetPeakUsage();
+        }
+        long[] gcPrima = garbageCollection();
+
+        PrintStream console = System.out;
+        InputStream tastiera = System.in;
+        Application app;
+        System.out.println("⏳ Simulazione di " + configurazione.comandi + " comandi...");
+        inizio = System.nanoTime();
+        try (InputStream daFile = new BufferedInputStream(Files.newInputStream(comandi))) {
+            System.setIn(daFile);
+            System.setOut(new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8.name()));
+            app = new Application();
+            app.precarica();
+            app.esegui();
+            app.chiudi();
+        } finally {
+            System.setOut(console);
+            System.setIn(tastiera);
+        }
+        double secondi = (System.nanoTime() - inizio) / 1e9;
+        long[] gcDopo = garbageCollection();
+
+        // STEP 3: il rapporto
+        Metriche metriche = app.metriche();
+        IstogrammaLatenze tutte = new IstogrammaLatenze();
+        System.out.printf("%n%-11s %9s %10s %10s %10s %10s%n",
+                "Operazione", "Conteggio", "p50 µs", "p95 µs", "p99 µs", "Max µs");
+        for (Metriche.Operazione operazione : Metriche.Operazione.values()) {
+            IstogrammaLatenze istogramma = metriche.istogramma(operazione);
+            if (istogramma.conteggio() == 0) {
+                continue;
+            }
+            tutte.unisci(istogramma);
+            System.out.printf("%-11s %9d %10.1f %10.1f %10.1f %10.1f%n", operazione.etichetta(),
+                    istogramma.conteggio(), istogramma.percentile(50) / 1e3, istogramma.percentile(95) / 1e3,
+                    istogramma.percentile(99) / 1e3, istogramma.massimo() / 1e3);
+        }
+        double heapMB = heapMassimo() / (1024.0 * 1024.0);
+        System.out.printf("%n✓ %d comandi in %.2f s: %.0f comandi/s%n",
+                configurazione.comandi, secondi, configurazione.comandi / secondi);
+        System.out.printf("(tutte le operazioni: p50 %.1f µs, p99 %.1f µs, max %.1f µs)%n",
+                tutte.percentile(50) / 1e3, tutte.percentile(99) / 1e3, tutte.massimo() / 1e3);
+        System.out.printf("(heap massimo %.1f MB, %d garbage collection per %d ms)%n",
+                heapMB, gcDopo[0] - gcPrima[0], gcDopo[1] - gcPrima[1]);
+
+        // STEP 4: una riga in carico.csv
+        String riga = String.format(Locale.ROOT, "%s,%d,%d,%d,%.3f,%.1f,%.1f,%.1f,%.1f,%.1f,%d,%d%n",
+                LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), configurazione.seme,
+                configurazione.articoli, configurazione.comandi, secondi, configurazione.comandi / secondi,
+                tutte.percentile(50) / 1e3, tutte.percentile(99) / 1e3, tutte.massimo() / 1e3, heapMB,
+                gcDopo[0] - gcPrima[0], gcDopo[1] - gcPrima[1]);
+        if (!Files.exists(risultati)) {
+            riga = INTESTAZIONE + "\n" + riga;
+        }
+        Files.write(risultati, riga.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        System.out.println("(risultato aggiunto a \"" + risultati + "\")");
+    }
+
+    // La cartella temporanea della prova, con tutto quello che l'applicazione ci ha scritto
+    private static void cancella(Path cartella) throws IOException {
+        try (Stream<Path> contenuto = Files.walk(cartella)) {
+            for (Path percorso : (Iterable<Path>) contenuto.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(percorso);
+            }
+        }
+    }
+
+    /*
+     * METODO: heapMassimo()
+     *
+     * COSA FA?
+     * - Somma i picchi di ogni area dello heap (eden, survivor, old...)
+     * - I picchi possono cadere in momenti diversi: è un limite superiore,
+     *   ma è stabile da una prova all'altra, ed è quello che serve
+     */
+    private static long heapMassimo() {
+        long totale = 0;
+        for (MemoryPoolMXBean area : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (area.getType() == MemoryType.HEAP && area.getPeakUsage() != null) {
+                totale += area.getPeakUsage().getUsed();
+            }
+        }
+        return totale;
+    }
+
+    // { numero di garbage collection, millisecondi totali }
+    private static long[] garbageCollection() {
+        long[] totale = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totale[0] += Math.max(0, gc.getCollectionCount());
+            totale[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return totale;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * SINCRONIZZAZIONE LISTA - come le repliche si scambiano i delta
+ *
+ * DUE MODI:
+ *
+ * 1) CARTELLA CONDIVISA (chiavetta, cartella di rete, cloud...)
+ *    - <replica>.versioni      → cosa ha già visto ogni replica
+ *    - <da>.<a>.delta          → modifiche preparate da "da" per "a"
+ *    - Sincronizzare = leggere i delta per noi, preparare quelli per
+ *      gli altri, pubblicare le nostre versioni
+ *    - Le repliche non devono essere accese nello stesso momento
+ *
+ * 2) SOCKET SU QUESTO COMPUTER (127.0.0.1)
+ *    - Un'istanza accetta richieste su una porta (avviaServer)
+ *    - Un'altra si collega, manda le sue versioni e riceve il delta
+ *    - Chi risponde NON modifica la propria lista: per lo scambio nei
+ *      due sensi, ognuna chiede all'altra
+ *
+ * MESSAGGI SUL SOCKET: lunghezza (int) + byte
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class SincronizzazioneLista {
+
+    public static final String CARTELLA_PREDEFINITA = "sync";
+    public static final int PORTA_PREDEFINITA = 47365;
+
+    // Oltre questa attesa il collegamento si considera fallito
+    private static final int TIMEOUT_MS = 5000;
+
+    // Un messaggio più grande è sicuramente un errore
+    private static final int MESSAGGIO_MASSIMO = 256 * 1024 * 1024;
+
+    /*
+     * INTERFACCIA: Risponditore
+     *
+     * COSA È?
+     * - Chi prepara il delta per una richiesta arrivata dal socket
+     *   (l'applicazione: deve bloccare la lista mentre lo fa)
+     */
+    public interface Risponditore {
+        byte[] rispondi(byte[] richiesta) throws Exception;
+    }
+
+    // ============================================
+    // CARTELLA CONDIVISA
+    // ============================================
+
+    /*
+     * METODO: cartella(ReplicaCrdt replica, Path cartella)
+     *
+     * COSA FA?
+     * 1. Unisce i delta che le altre repliche hanno lasciato per noi
+     * 2. Per ogni altra replica che conosciamo, scrive il delta per lei
+     * 3. Pubblica le nostre versioni
+     *
+     * PERCHÉ in quest'ordine?
+     * - Così le modifiche di A passano a C anche attraverso B
+     */
+    public static ReplicaCrdt.Esito cartella(ReplicaCrdt replica, Path cartella) throws IOException {
+        Files.createDirectories(cartella);
+        String noi = replica.replica();
+        ReplicaCrdt.Esito esito = new ReplicaCrdt.Esito();
+
+        try (DirectoryStream<Path> arrivati = Files.newDirectoryStream(cartella, "*." + noi + ".delta")) {
+            for (Path delta : arrivati) {
+                esito.accumula(replica.unisci(Files.readAllBytes(delta)));
+                Files.delete(delta);
+            }
+        }
+
+        try (DirectoryStream<Path> altre = Files.newDirectoryStream(cartella, "*.versioni")) {
+            for (Path versioni : altre) {
+                String altra = versioni.getFileName().toString().replaceFirst("\\.versioni$", "");
+                if (altra.equals(noi)) {
+                    continue;
+                }
+                byte[] richiesta = Files.readAllBytes(versioni);
+                byte[] delta = replica.deltaPer(richiesta);
+                scriviAtomico(cartella.resolve(noi + "." + altra + ".delta"), delta);
+                esito.byteRicevuti += richiesta.length;
+                esito.byteInviati += delta.length;
+            }
+        }
+
+        byte[] nostre = replica.richiesta();
+        scriviAtomico(cartella.resolve(noi + ".versioni"), nostre);
+        esito.byteInviati += nostre.length;
+        return esito;
+    }
+
+    private static void scriviAtomico(Path file, byte[] contenuto) throws IOException {
+        Path temporaneo = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporaneo, contenuto);
+        Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ============================================
+    // SOCKET
+    // ============================================
+
+    /*
+     * METODO: daPorta(ReplicaCrdt replica, int porta)
+     *
+     * COSA FA?
+     * - Si collega all'istanza in ascolto su 127.0.0.1:porta
+     * - Manda le nostre versioni, riceve e unisce il delta
+     */
+    public static ReplicaCrdt.Esito daPorta(ReplicaCrdt replica, int porta) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), TIMEOUT_MS);
+            socket.setSoTimeout(TIMEOUT_MS);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+
+            byte[] richiesta = replica.richiesta();
+            scriviMessaggio(out, richiesta);
+            byte[] delta = leggiMessaggio(in);
+
+            ReplicaCrdt.Esito esito = replica.unisci(delta);
+            esito.byteInviati += richiesta.length;
+            return esito;
+        }
+    }
+
+    /*
+     * METODO: avviaServer(int porta, Risponditore risponditore, ConcurrentLinkedQueue avvisi)
+     *
+     * COSA FA?
+     * - Apre la porta SOLO su 127.0.0.1 (nessun accesso dalla rete)
+     * - Un thread daemon risponde a una richiesta alla volta
+     * - Gli errori finiscono negli avvisi (mostrati dal menu)
+     */
+    public static ServerSocket avviaServer(int porta, Risponditore risponditore,
+                                           ConcurrentLinkedQueue<String> avvisi) throws IOException {
+        ServerSocket server = new ServerSocket(porta, 8, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            while (!server.isClosed()) {
+                try (Socket socket = server.accept()) {
+                    socket.setSoTimeout(TIMEOUT_MS);
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    scriviMessaggio(out, risponditore.rispondi(leggiMessaggio(in)));
+                } catch (Exception e) {
+                    if (!server.isClosed()) {
+                        avvisi.add("⚠ Sincronizzazione non riuscita: " + e.getMessage());
+                    }
+                }
+            }
+        }, "server-sincronizzazione");
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    private static void scriviMessaggio(DataOutputStream out, byte[] messaggio) throws IOException {
+        out.writeInt(messaggio.length);
+        out.write(messaggio);
+        out.flush();
+    }
+
+    private static byte[] leggiMessaggio(DataInputStream in) throws IOException {
+        int lunghezza = in.readInt();
+        if (lunghezza < 0 || lunghezza > MESSAGGIO_MASSIMO) {
+            throw new IOException("messaggio di " + lunghezza + " byte non valido");
+        }
+        byte[] messaggio = new byte[lunghezza];
+        in.readFully(messaggio);
+        return messaggio;
+    }
+}
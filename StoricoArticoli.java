@@ -0,0 +1,148 @@
+/*
+ * STORICO ARTICOLI - cosa è già stato aggiunto, per suggerirlo di nuovo
+ *
+ * COSA CONTIENE?
+ * - I nomi e le categorie usati, con la loro frequenza (due Completamenti)
+ * - Per ogni nome, l'ultima categoria usata ("Pane" → "Panetteria")
+ *
+ * DA DOVE VIENE?
+ * - Dal file spesa.storico e dagli articoli della lista attuale che non
+ *   ci sono ancora (es. una lista scritta da un altro programma)
+ * - spesa.storico cresce di una riga per ogni articolo aggiunto:
+ *       volte<TAB>nome<TAB>categoria
+ *   e si compatta (righe uguali sommate) quando ha troppe ripetizioni
+ *
+ * PERCHÉ un file a parte e non spesa.csv?
+ * - Un articolo rimosso o una lista svuotata non devono far dimenticare
+ *   cosa si compra di solito
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class StoricoArticoli {
+
+    public static final String FILE = "spesa.storico";
+
+    // Compatta quando le righe sono più del quadruplo delle coppie diverse
+    private static final int RIGHE_MINIME_PER_COMPATTARE = 1000;
+
+    private final Path file;
+    private final Completamenti nomi = new Completamenti();
+    private final Completamenti categorie = new Completamenti();
+    private final Map<String, String> categoriaDi = new HashMap<>();
+
+    private StoricoArticoli(Path file) {
+        this.file = file;
+    }
+
+    /*
+     * METODO: carica(Path file, List articoli)
+     *
+     * COSA FA?
+     * - Legge lo storico (se c'è) e ci aggiunge gli articoli della lista
+     *   che non ha ancora (stesso nome e categoria, vedi IndiceDuplicati.chiave)
+     * - Le righe illeggibili vengono saltate: lo storico è solo un aiuto
+     *
+     * PERCHÉ non tutti gli articoli della lista?
+     * - Quelli aggiunti da qui sono già nello storico (vedi registra()):
+     *   contarli di nuovo gonfierebbe la loro frequenza a ogni avvio
+     */
+    public static StoricoArticoli carica(Path file, List<Map<String, Object>> articoli) throws IOException {
+        StoricoArticoli storico = new StoricoArticoli(file);
+        Map<String, Integer> coppie = new LinkedHashMap<>();
+        Set<String> giaVisti = new HashSet<>();
+        int righe = 0;
+        if (Files.exists(file)) {
+            for (String riga : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] campi = riga.split("\t");
+                if (campi.length != 3) {
+                    continue;
+                }
+                try {
+                    int volte = Integer.parseInt(campi[0]);
+                    storico.ricorda(campi[1], campi[2], volte);
+                    coppie.merge(campi[1] + "\t" + campi[2], volte, Integer::sum);
+                    giaVisti.add(IndiceDuplicati.chiave(campi[1], campi[2]));
+                    righe++;
+                } catch (NumberFormatException e) {
+                    // Riga rovinata: la saltiamo
+                }
+            }
+        }
+        for (Map<String, Object> articolo : articoli) {
+            String nome = (String) articolo.get("nome");
+            String categoria = (String) articolo.get("categoria");
+            if (!giaVisti.contains(IndiceDuplicati.chiave(nome, categoria))) {
+                storico.ricorda(nome, categoria, 1);
+            }
+        }
+
+        if (righe > RIGHE_MINIME_PER_COMPATTARE && righe > coppie.size() * 4) {
+            storico.compatta(coppie);
+        }
+        return storico;
+    }
+
+    // ============================================
+    // AGGIORNAMENTO
+    // ============================================
+
+    /*
+     * METODO: registra(String nome, String categoria)
+     *
+     * COSA FA?
+     * - Un articolo è stato aggiunto: aggiorna le frequenze
+     * - Aggiunge una riga in fondo a spesa.storico (pochi byte)
+     */
+    public void registra(String nome, String categoria) throws IOException {
+        ricorda(nome, categoria, 1);
+        String riga = "1\t" + nome.trim() + "\t" + categoria.trim() + "\n";
+        Files.write(file, riga.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void ricorda(String nome, String categoria, int volte) {
+        nomi.aggiungi(nome, volte);
+        categorie.aggiungi(categoria, volte);
+        categoriaDi.put(Testo.normalizza(nome), categoria.trim());
+    }
+
+    // Riscrive il file con una riga per coppia (nome, categoria)
+    private void compatta(Map<String, Integer> coppie) throws IOException {
+        StringBuilder contenuto = new StringBuilder();
+        for (Map.Entry<String, Integer> coppia : coppie.entrySet()) {
+            contenuto.append(coppia.getValue()).append('\t').append(coppia.getKey()).append('\n');
+        }
+        Path temporaneo = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporaneo, contenuto.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ============================================
+    // SUGGERIMENTI
+    // ============================================
+
+    public List<String> completaNome(String prefisso, int k) {
+        return nomi.completa(prefisso, k);
+    }
+
+    public List<String> completaCategoria(String prefisso, int k) {
+        return categorie.completa(prefisso, k);
+    }
+
+    // L'ultima categoria usata per quel nome (null se il nome è nuovo)
+    public String categoriaDi(String nome) {
+        return categoriaDi.get(Testo.normalizza(nome));
+    }
+}
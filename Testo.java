@@ -0,0 +1,43 @@
+/*
+ * TESTO - come confrontare nomi e categorie scritti dagli utenti
+ *
+ * PROBLEMA:
+ * - "Caffè", "caffe" e " CAFFÈ " sono lo stesso articolo per chi fa la spesa
+ *
+ * SOLUZIONE:
+ * - Prima di confrontare, ogni testo passa da normalizza()
+ */
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+public class Testo {
+
+    private static final Pattern ACCENTI = Pattern.compile("\\p{M}+");
+    private static final Pattern SPAZI = Pattern.compile("\\s+");
+
+    /*
+     * METODO: normalizza(String testo)
+     *
+     * COSA FA?
+     * - Minuscole, niente accenti, spazi ripetuti ridotti a uno, niente spazi ai bordi
+     * - "  Caffè   Macinato" → "caffe macinato"
+     */
+    public static String normalizza(String testo) {
+        String minuscolo = testo.trim().toLowerCase(Locale.ROOT);
+
+        // Quasi sempre il testo è già ASCII: evitiamo Normalizer e regex
+        boolean semplice = true;
+        for (int i = 0; i < minuscolo.length() && semplice; i++) {
+            char c = minuscolo.charAt(i);
+            semplice = c < 128 && !(Character.isWhitespace(c) && (c != ' ' || minuscolo.charAt(i - 1) == ' '));
+        }
+        if (semplice) {
+            return minuscolo;
+        }
+
+        String senzaAccenti = ACCENTI.matcher(Normalizer.normalize(minuscolo, Normalizer.Form.NFD)).replaceAll("");
+        return SPAZI.matcher(senzaAccenti).replaceAll(" ");
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * UNIONE ESTERNA - unire più liste in una sola, anche se non stanno in memoria
+ *
+ * PROBLEMA:
+ * - Unire le liste di più famiglie in una lista principale, senza doppioni
+ *   e ordinata per categoria, vuol dire caricarle tutte: con file più
+ *   grandi dello heap non si può
+ *
+ * SOLUZIONE: ordinamento esterno (external merge sort)
+ * 1. BLOCCHI: si leggono le righe finché stanno nel buffer (es. 64 MB),
+ *    si ordinano per (categoria, nome), si uniscono i doppioni del blocco
+ *    e si scrive il blocco ordinato in un file temporaneo
+ * 2. FUSIONE: si leggono tutti i blocchi insieme, una riga per blocco;
+ *    una PriorityQueue (heap) dice quale blocco ha la riga più piccola.
+ *    Le righe escono già ordinate: i doppioni sono uno dopo l'altro e si
+ *    uniscono al volo, poi la riga va dritta nel file risultato
+ * - Con troppi blocchi (più di FILE_APERTI_MASSIMI) si fondono a gruppi,
+ *   in più passate
+ *
+ * QUANTA MEMORIA?
+ * - Il buffer dei blocchi + un buffer di lettura per blocco aperto:
+ *   dipende dal buffer scelto, non dalla dimensione dei file
+ *
+ * DOPPIONI (stesse regole di IndiceDuplicati.deduplica)
+ * - Stesso nome e categoria (normalizzati): quantità sommate, prezzo
+ *   dell'ultimo (nell'ordine dei file), acquistato solo se lo erano tutti;
+ *   id e scrittura del nome restano quelli del primo
+ *
+ * USO da riga di comando:
+ *   java UnioneEsterna --uscita=principale.csv --memoria-mb=64 casa1.csv casa2.csv ...
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+public class UnioneEsterna {
+
+    public static final String FILE_RISULTATO = "spesa-unita.csv";
+    public static final int MEMORIA_PREDEFINITA_MB = 64;
+
+    // Oltre, i blocchi si fondono a gruppi (più passate)
+    public static final int FILE_APERTI_MASSIMI = 64;
+
+    // Stima dello spazio di un articolo in memoria oltre ai testi (oggetti, riferimenti)
+    private static final int BYTE_PER_ARTICOLO = 200;
+
+    private static final int BUFFER_LETTURA_MINIMO = 8 * 1024;
+
+    /*
+     * CLASSE: Articolo
+     *
+     * COSA È?
+     * - Una riga della lista, più leggera di una Map (sono tante)
+     * - chiave = categoria e nome normalizzati: l'ordine del risultato
+     */
+    private static final class Articolo {
+        final String chiave;
+        final String nome;
+        final String categoria;
+        final String id;
+        double prezzo;
+        int quantita;
+        boolean acquistato;
+
+        Articolo(Map<String, Object> articolo) {
+            nome = (String) articolo.get("nome");
+            categoria = (String) articolo.get("categoria");
+            id = (String) articolo.get("id");
+            prezzo = (double) articolo.get("prezzo");
+            quantita = (int) articolo.get("quantita");
+            acquistato = (boolean) articolo.get("acquistato");
+            chiave = Testo.normalizza(categoria) + '\u0000' + Testo.normalizza(nome);
+        }
+
+        // Un doppione che viene DOPO questo articolo
+        void assorbi(Articolo doppione) {
+            quantita += doppione.quantita;
+            prezzo = doppione.prezzo;
+            acquistato = acquistato && doppione.acquistato;
+        }
+
+        long byteStimati() {
+            return BYTE_PER_ARTICOLO + 2L * (chiave.length() + nome.length() + categoria.length() + id.length());
+        }
+
+        void scrivi(Writer uscita) throws IOException {
+            uscita.write(nome + "," + categoria + "," + prezzo + "," + quantita + "," + acquistato + "," + id + "\n");
+        }
+    }
+
+    /*
+     * CLASSE: Esito
+     *
+     * COSA È?
+     * - I numeri dell'unione, da mostrare all'utente
+     */
+    public static final class Esito {
+        long righeLette;
+        long articoliScritti;
+        long doppioniUniti;
+        int blocchi;
+        int passate;
+        final RigheScartate scartate = new RigheScartate();
+
+        public long righeLette() {
+            return righeLette;
+        }
+
+        public long articoliScritti() {
+            return articoliScritti;
+        }
+
+        public long doppioniUniti() {
+            return doppioniUniti;
+        }
+
+        public int blocchi() {
+            return blocchi;
+        }
+
+        public int passate() {
+            return passate;
+        }
+
+        public RigheScartate scartate() {
+            return scartate;
+        }
+    }
+
+    private final long memoriaByte;
+    private final int bufferLettura;
+
+    public UnioneEsterna(int memoriaMB) {
+        if (memoriaMB <= 0) {
+            throw new IllegalArgumentException("la memoria deve essere positiva");
+        }
+        this.memoriaByte = memoriaMB * 1024L * 1024L;
+        this.bufferLettura = (int) Math.max(BUFFER_LETTURA_MINIMO,
+                Math.min(1 << 20, memoriaByte / (2 * FILE_APERTI_MASSIMI)));
+    }
+
+    /*
+     * METODO: unisci(List file, Path risultato)
+     *
+     * COSA FA?
+     * - Unisce i file (formato di spesa.csv) in "risultato", ordinato per
+     *   categoria e nome, senza doppioni
+     * - Le righe malformate si saltano (vedi Esito.scartate())
+     * - I file temporanei stanno in una cartella accanto al risultato,
+     *   cancellata alla fine; il risultato si scrive in modo atomico
+     */
+    public Esito unisci(List<Path> file, Path risultato) throws IOException {
+        Path assoluto = risultato.toAbsolutePath();
+        Path temporanei = Files.createTempDirectory(assoluto.getParent(), ".unione-");
+        Esito esito = new Esito();
+        try {
+            List<Path> blocchi = creaBlocchi(file, temporanei, esito);
+            esito.blocchi = blocchi.size();
+
+            // Più passate finché i blocchi si possono aprire tutti insieme
+            int prossimo = blocchi.size();
+            while (blocchi.size() > FILE_APERTI_MASSIMI) {
+                List<Path> fusi = new ArrayList<>();
+                for (int da = 0; da < blocchi.size(); da += FILE_APERTI_MASSIMI) {
+                    List<Path> gruppo = blocchi.subList(da, Math.min(da + FILE_APERTI_MASSIMI, blocchi.size()));
+                    Path fuso = temporanei.resolve("blocco-" + prossimo++ + ".csv");
+                    fondi(gruppo, fuso, false, esito);
+                    for (Path fatto : gruppo) {
+                        Files.delete(fatto);
+                    }
+                    fusi.add(fuso);
+                }
+                blocchi = fusi;
+                esito.passate++;
+            }
+
+            Path temporaneo = temporanei.resolve("risultato.csv");
+            fondi(blocchi, temporaneo, true, esito);
+            esito.passate++;
+            Files.move(temporaneo, assoluto, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return esito;
+        } finally {
+            cancellaCartella(temporanei);
+        }
+    }
+
+    // ============================================
+    // FASE 1: BLOCCHI ORDINATI
+    // ============================================
+
+    /*
+     * METODO: creaBlocchi(...)
+     *
+     * COSA FA?
+     * - Legge i file uno dopo l'altro riempiendo il buffer
+     * - Buffer pieno (o file finiti) → ordina, unisce i doppioni, scrive
+     * - I blocchi rispettano l'ordine dei file: a parità di chiave, il
+     *   blocco con indice minore contiene le righe venute prima
+     */
+    private List<Path> creaBlocchi(List<Path> file, Path temporanei, Esito esito) throws IOException {
+        List<Path> blocchi = new ArrayList<>();
+        List<Articolo> buffer = new ArrayList<>();
+        long usati = 0;
+        for (Path sorgente : file) {
+            try (BufferedReader lettore = Files.newBufferedReader(sorgente, StandardCharsets.UTF_8)) {
+                String linea = lettore.readLine(); // intestazione
+                int numeroRiga = 1;
+                while ((linea = lettore.readLine()) != null) {
+                    numeroRiga++;
+                    Articolo articolo;
+                    try {
+                        articolo = new Articolo(FormatoCsv.leggiRiga(linea));
+                    } catch (RuntimeException e) {
+                        esito.scartate.aggiungi(numeroRiga, sorgente.getFileName() + ": " + linea, e);
+                        continue;
+                    }
+                    esito.righeLette++;
+                    buffer.add(articolo);
+                    usati += articolo.byteStimati();
+                    if (usati >= memoriaByte) {
+                        blocchi.add(scriviBlocco(buffer, temporanei.resolve("blocco-" + blocchi.size() + ".csv"), esito));
+                        buffer.clear();
+                        usati = 0;
+                    }
+                }
+            }
+        }
+        if (!buffer.isEmpty() || blocchi.isEmpty()) {
+            blocchi.add(scriviBlocco(buffer, temporanei.resolve("blocco-" + blocchi.size() + ".csv"), esito));
+        }
+        return blocchi;
+    }
+
+    private Path scriviBlocco(List<Articolo> buffer, Path blocco, Esito esito) throws IOException {
+        // Ordinamento stabile: a parità di chiave resta l'ordine di lettura
+        buffer.sort(Comparator.comparing(articolo -> articolo.chiave));
+        try (Writer uscita = scrittore(blocco)) {
+            Articolo corrente = null;
+            for (Articolo articolo : buffer) {
+                if (corrente != null && corrente.chiave.equals(articolo.chiave)) {
+                    corrente.assorbi(articolo);
+                    esito.doppioniUniti++;
+                    continue;
+                }
+                if (corrente != null) {
+                    corrente.scrivi(uscita);
+                }
+                corrente = articolo;
+            }
+            if (corrente != null) {
+                corrente.scrivi(uscita);
+            }
+        }
+        return blocco;
+    }
+
+    // ============================================
+    // FASE 2: FUSIONE A k VIE
+    // ============================================
+
+    /*
+     * CLASSE: Cursore
+     *
+     * COSA È?
+     * - Un blocco aperto e la sua riga corrente
+     * - indice = posizione del blocco: a parità di chiave vince il minore
+     *   (le sue righe sono venute prima)
+     */
+    private static final class Cursore {
+        final BufferedReader lettore;
+        final int indice;
+        Articolo corrente;
+
+        Cursore(BufferedReader lettore, int indice) {
+            this.lettore = lettore;
+            this.indice = indice;
+        }
+
+        // false quando il blocco è finito
+        boolean avanza() throws IOException {
+            String linea = lettore.readLine();
+            corrente = linea == null ? null : new Articolo(FormatoCsv.leggiRiga(linea));
+            return corrente != null;
+        }
+    }
+
+    /*
+     * METODO: fondi(List blocchi, Path destinazione, boolean finale, Esito esito)
+     *
+     * COSA FA?
+     * - Fonde blocchi ordinati in uno solo, unendo i doppioni al volo
+     * - Heap di k cursori: ogni riga costa O(log k)
+     * - finale = scrive l'intestazione e conta gli articoli del risultato
+     */
+    private void fondi(List<Path> blocchi, Path destinazione, boolean finale, Esito esito) throws IOException {
+        PriorityQueue<Cursore> heap = new PriorityQueue<>(Math.max(1, blocchi.size()),
+                Comparator.<Cursore, String>comparing(cursore -> cursore.corrente.chiave)
+                        .thenComparingInt(cursore -> cursore.indice));
+        List<Cursore> aperti = new ArrayList<>();
+        try (Writer uscita = scrittore(destinazione)) {
+            for (int i = 0; i < blocchi.size(); i++) {
+                Cursore cursore = new Cursore(new BufferedReader(new InputStreamReader(
+                        Files.newInputStream(blocchi.get(i)), StandardCharsets.UTF_8), bufferLettura), i);
+                aperti.add(cursore);
+                if (cursore.avanza()) {
+                    heap.add(cursore);
+                }
+            }
+            if (finale) {
+                uscita.write(FormatoCsv.INTESTAZIONE + "\n");
+            }
+
+            Articolo corrente = null;
+            while (!heap.isEmpty()) {
+                Cursore minimo = heap.poll();
+                Articolo articolo = minimo.corrente;
+                if (minimo.avanza()) {
+                    heap.add(minimo);
+                }
+                if (corrente != null && corrente.chiave.equals(articolo.chiave)) {
+                    corrente.assorbi(articolo);
+                    esito.doppioniUniti++;
+                    continue;
+                }
+                if (corrente != null) {
+                    corrente.scrivi(uscita);
+                    esito.articoliScritti += finale ? 1 : 0;
+                }
+                corrente = articolo;
+            }
+            if (corrente != null) {
+                corrente.scrivi(uscita);
+                esito.articoliScritti += finale ? 1 : 0;
+            }
+        } finally {
+            for (Cursore cursore : aperti) {
+                cursore.lettore.close();
+            }
+        }
+    }
+
+    // ============================================
+    // FILE
+    // ============================================
+
+    private Writer scrittore(Path file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8),
+                bufferLettura);
+    }
+
+    private static void cancellaCartella(Path cartella) throws IOException {
+        try (java.util.stream.Stream<Path> contenuto = Files.list(cartella)) {
+            for (Path file : (Iterable<Path>) contenuto::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(cartella);
+    }
+
+    // ============================================
+    // RIGA DI COMANDO
+    // ============================================
+
+    public static void main(String[] args) {
+        Path risultato = Paths.get(FILE_RISULTATO);
+        int memoriaMB = MEMORIA_PREDEFINITA_MB;
+        List<Path> file = new ArrayList<>();
+        try {
+            for (String argomento : args) {
+                if (argomento.startsWith("--uscita=")) {
+                    risultato = Paths.get(argomento.substring("--uscita=".length()));
+                } else if (argomento.startsWith("--memoria-mb=")) {
+                    memoriaMB = Integer.parseInt(argomento.substring("--memoria-mb=".length()));
+                } else if (argomento.startsWith("--")) {
+                    System.out.println("❌ Opzione sconosciuta: " + argomento);
+                    return;
+                } else {
+                    file.add(Paths.get(argomento));
+                }
+            }
+            if (file.isEmpty()) {
+                System.out.println("Uso: java UnioneEsterna [--uscita=file.csv] [--memoria-mb=N] lista1.csv lista2.csv ...");
+                return;
+            }
+            long inizio = System.nanoTime();
+            Esito esito = new UnioneEsterna(memoriaMB).unisci(file, risultato);
+            System.out.println(descrivi(esito, file.size(), risultato, (System.nanoTime() - inizio) / 1e9));
+        } catch (Exception e) {
+            System.out.println("❌ Unione non riuscita: " + e.getMessage());
+        }
+    }
+
+    // Il riepilogo dell'unione in una riga (lo usa anche Application)
+    public static String descrivi(Esito esito, int file, Path risultato, double secondi) {
+        return String.format("✓ %d righe da %d file → %d articoli in \"%s\" in %.1f s%n"
+                + "(%d doppioni uniti, %d blocchi ordinati, %d passate di fusione, %d righe malformate saltate)",
+                esito.righeLette, file, esito.articoliScritti, risultato, secondi,
+                esito.doppioniUniti, esito.blocchi, esito.passate, esito.scartate.numero());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * VERIFICA MOTORE LISTA - le azioni su molti articoli tengono giusti gli indici?
+ *
+ * COSA CONTROLLA?
+ * - PREZZI PER CATEGORIA: segnare acquistati molti articoli insieme
+ *   (MotoreLista.applica, come le azioni del filtro) lascia a ogni
+ *   categoria lo stesso numero di prezzi, come marca() uno per uno
+ *
+ * USO:
+ *   java VerificaMotoreLista
+ * Stampa ✓ per ogni controllo; al primo che fallisce stampa ❌ ed esce con 1.
+ * Non scrive file: il motore resta in memoria.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class VerificaMotoreLista {
+
+    private static final int LATTICINI = 20;
+    private static final int FORNO = 5;
+
+    public static void main(String[] args) {
+        try {
+            verificaAzioniSuMolti();
+            System.out.println("✓ Tutti i controlli superati");
+        } catch (IllegalStateException e) {
+            System.out.println("❌ " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // ============================================
+    // PREZZI PER CATEGORIA
+    // ============================================
+
+    private static void verificaAzioniSuMolti() {
+        MotoreLista insieme = nuovoMotore();
+        MotoreLista unoPerUno = nuovoMotore();
+        Map<String, Long> prima = conteggi(insieme);
+        controlla(prima.get("Latticini") == LATTICINI && prima.get("Forno") == FORNO,
+                "conteggi iniziali inattesi: " + prima);
+
+        // Tutti i latticini acquistati: in una volta sola...
+        List<Integer> posizioni = new ArrayList<>();
+        List<Map<String, Object>> attesi = new ArrayList<>();
+        for (int i = 0; i < insieme.articoli().size(); i++) {
+            Map<String, Object> articolo = insieme.articoli().get(i);
+            if (articolo.get("categoria").equals("Latticini")) {
+                posizioni.add(i);
+                attesi.add(articolo);
+            }
+        }
+        int fatti = insieme.applica(posizioni, attesi, articolo -> {
+            Map<String, Object> marcato = new HashMap<>(articolo);
+            marcato.put("acquistato", true);
+            return marcato;
+        });
+        controlla(fatti == LATTICINI, "segnati " + fatti + " articoli invece di " + LATTICINI);
+
+        // ...e uno per uno
+        for (int posizione : posizioni) {
+            unoPerUno.marca(posizione);
+        }
+
+        controlla(conteggi(insieme).equals(prima),
+                "prezzi per categoria cambiati dall'azione su molti: " + prima + " → " + conteggi(insieme));
+        controlla(conteggi(unoPerUno).equals(prima),
+                "prezzi per categoria cambiati da marca(): " + prima + " → " + conteggi(unoPerUno));
+        System.out.println("✓ Azione su " + fatti + " articoli: prezzi per categoria invariati " + prima);
+    }
+
+    // ============================================
+    // UTILITÀ
+    // ============================================
+
+    // Prezzi tutti diversi: un prezzo contato due volte non si confonde con un altro
+    private static MotoreLista nuovoMotore() {
+        MotoreLista motore = new MotoreLista();
+        for (int i = 0; i < LATTICINI + FORNO; i++) {
+            boolean latticino = i % 5 != 0;
+            motore.aggiungi("Articolo " + i, latticino ? "Latticini" : "Forno", 1 + i / 10.0, 1, false);
+        }
+
+        // Gli indici si costruiscono la prima volta che servono: da qui si aggiornano
+        conteggi(motore);
+        return motore;
+    }
+
+    private static Map<String, Long> conteggi(MotoreLista motore) {
+        Map<String, Long> conteggi = new TreeMap<>();
+        synchronized (motore.articoli()) {
+            for (PrezziCategorie.Statistica statistica : motore.prezziCategorie().statistiche()) {
+                conteggi.put(statistica.categoria(), statistica.articoli());
+            }
+        }
+        return conteggi;
+    }
+
+    private static void controlla(boolean condizione, String messaggio) {
+        if (!condizione) {
+            throw new IllegalStateException(messaggio);
+        }
+    }
+}
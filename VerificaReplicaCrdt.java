@@ -0,0 +1,206 @@
+/*
+ * VERIFICA REPLICA CRDT - due repliche arrivano allo stesso stato?
+ *
+ * COSA CONTROLLA?
+ * 1. CONVERGENZA: due repliche della stessa lista, modificate insieme
+ *    (aggiunte, rimozioni, campi cambiati, anche sullo stesso articolo),
+ *    dopo uno scambio nei due sensi hanno gli stessi articoli, e le liste
+ *    a cui si applicano gli esiti sono uguali allo stato delle repliche
+ * 2. DELTA: dopo UNA modifica, i byte ricevuti non dipendono da quanto
+ *    è lunga la lista (100 articoli o 10.000: stessi byte, pochi)
+ *
+ * USO:
+ *   java VerificaReplicaCrdt
+ * Stampa ✓ per ogni controllo; al primo che fallisce stampa ❌ ed esce con 1.
+ * Non scrive file: le repliche restano in memoria.
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class VerificaReplicaCrdt {
+
+    // Oltre, il delta di una modifica sola non è più "pochi byte"
+    private static final int BYTE_MASSIMI_UNA_MODIFICA = 256;
+
+    public static void main(String[] args) {
+        try {
+            verificaConvergenza();
+            verificaDelta();
+            System.out.println("✓ Tutti i controlli superati");
+        } catch (IllegalStateException | IOException e) {
+            System.out.println("❌ " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // ============================================
+    // CONVERGENZA
+    // ============================================
+
+    private static void verificaConvergenza() throws IOException {
+        ReplicaCrdt a = nuovaReplica();
+        ReplicaCrdt b = nuovaReplica();
+        List<Map<String, Object>> listaA = listaDi(10_000);
+        List<Map<String, Object>> listaB = new ArrayList<>();
+        sincronizza(a, listaA, b, listaB);
+        controlla(listaB.size() == 10_000, "la seconda replica non ha ricevuto la lista: " + listaB.size());
+        controllaUguali(a, listaA, b, listaB, "dopo la prima sincronizzazione");
+
+        String rimossoDaA = id(listaA, 0);
+        String prezzoConteso = id(listaA, 1);
+        String campiDiversi = id(listaA, 2);
+        String rimossoDaB = id(listaA, 3);
+
+        // Modifiche sulla replica A...
+        listaA.add(FormatoCsv.creaArticolo(FormatoCsv.nuovoId(), "Caffè", "Dispensa", 3.49, 1, false));
+        listaA.removeIf(articolo -> articolo.get("id").equals(rimossoDaA));
+        cambia(listaA, prezzoConteso, "prezzo", 9.99);
+        cambia(listaA, campiDiversi, "quantita", 5);
+
+        // ...e, nello stesso momento, sulla replica B (anche sugli stessi articoli)
+        listaB.add(FormatoCsv.creaArticolo(FormatoCsv.nuovoId(), "Tè verde", "Dispensa", 2.10, 2, false));
+        cambia(listaB, rimossoDaA, "nome", "Rinominato da B");
+        cambia(listaB, prezzoConteso, "prezzo", 7.77);
+        cambia(listaB, campiDiversi, "acquistato", true);
+        listaB.removeIf(articolo -> articolo.get("id").equals(rimossoDaB));
+
+        sincronizza(a, listaA, b, listaB);
+        controllaUguali(a, listaA, b, listaB, "dopo le modifiche concorrenti");
+
+        Map<String, Map<String, Object>> stato = a.stato();
+        controlla(!stato.containsKey(rimossoDaB), "l'articolo rimosso da B è ancora presente");
+        controlla(stato.size() == 10_000 - 1 + 2 - (stato.containsKey(rimossoDaA) ? 0 : 1),
+                "numero di articoli inatteso: " + stato.size());
+        Map<String, Object> unito = stato.get(campiDiversi);
+        controlla(unito.get("quantita").equals(5) && unito.get("acquistato").equals(true),
+                "campi diversi cambiati insieme: se ne è perso uno (" + unito + ")");
+        System.out.println("✓ Convergenza: " + stato.size() + " articoli uguali sulle due repliche");
+    }
+
+    // ============================================
+    // DELTA
+    // ============================================
+
+    private static void verificaDelta() throws IOException {
+        long piccola = byteDiUnaModifica(100);
+        long grande = byteDiUnaModifica(10_000);
+        controlla(grande <= BYTE_MASSIMI_UNA_MODIFICA,
+                "una modifica su 10.000 articoli costa " + grande + " byte (massimo " + BYTE_MASSIMI_UNA_MODIFICA + ")");
+
+        // I contatori crescono con la storia (varint di qualche byte in più), non con la lista
+        controlla(grande - piccola <= 16,
+                "il delta cresce con la lista: " + piccola + " byte con 100 articoli, " + grande + " con 10.000");
+        System.out.println("✓ Delta di una modifica: " + piccola + " byte con 100 articoli, "
+                + grande + " byte con 10.000");
+    }
+
+    // Byte ricevuti da B per UNA modifica su A, con le due repliche già allineate
+    private static long byteDiUnaModifica(int articoli) throws IOException {
+        ReplicaCrdt a = nuovaReplica();
+        ReplicaCrdt b = nuovaReplica();
+        List<Map<String, Object>> listaA = listaDi(articoli);
+        List<Map<String, Object>> listaB = new ArrayList<>();
+        sincronizza(a, listaA, b, listaB);
+
+        cambia(listaA, id(listaA, articoli / 2), "prezzo", 4.20);
+        a.allinea(listaA);
+        ReplicaCrdt.Esito esito = b.unisci(a.deltaPer(b.richiesta()));
+        applica(listaB, esito);
+        controlla(esito.aggiornati().size() == 1 && esito.aggiunti().isEmpty() && esito.rimossi().isEmpty(),
+                "il delta di una modifica non contiene solo quella");
+        controllaUguali(a, listaA, b, listaB, "dopo una modifica con " + articoli + " articoli");
+        return esito.byteRicevuti();
+    }
+
+    // ============================================
+    // UTILITÀ
+    // ============================================
+
+    // Nessun file: carica() di un file che non c'è crea una replica nuova
+    private static ReplicaCrdt nuovaReplica() throws IOException {
+        Path nessuno = Paths.get(System.getProperty("java.io.tmpdir"), "verifica-" + FormatoCsv.nuovoId() + ".crdt");
+        return ReplicaCrdt.carica(nessuno);
+    }
+
+    private static List<Map<String, Object>> listaDi(int articoli) {
+        List<Map<String, Object>> lista = new ArrayList<>(articoli);
+        for (int i = 0; i < articoli; i++) {
+            lista.add(FormatoCsv.creaArticolo(FormatoCsv.nuovoId(), "Articolo " + i, "Categoria " + (i % 12),
+                    1 + i % 50 / 10.0, 1 + i % 3, false));
+        }
+        return lista;
+    }
+
+    /*
+     * Come "Sincronizza" dell'applicazione: ogni replica si allinea alla
+     * sua lista, poi delta da A a B e da B ad A; ogni esito torna nella lista
+     */
+    private static void sincronizza(ReplicaCrdt a, List<Map<String, Object>> listaA,
+                                    ReplicaCrdt b, List<Map<String, Object>> listaB) throws IOException {
+        a.allinea(listaA);
+        b.allinea(listaB);
+        applica(listaB, b.unisci(a.deltaPer(b.richiesta())));
+        applica(listaA, a.unisci(b.deltaPer(a.richiesta())));
+    }
+
+    // Come Application.applicaSincronizzazione, su una lista semplice
+    private static void applica(List<Map<String, Object>> lista, ReplicaCrdt.Esito esito) {
+        lista.removeIf(articolo -> esito.rimossi().contains((String) articolo.get("id")));
+        lista.replaceAll(articolo -> {
+            Map<String, Object> aggiornato = esito.aggiornati().get((String) articolo.get("id"));
+            if (aggiornato == null) {
+                return articolo;
+            }
+            Map<String, Object> copia = new HashMap<>(articolo);
+            copia.putAll(aggiornato);
+            return copia;
+        });
+        lista.addAll(esito.aggiunti());
+    }
+
+    // Gli articoli in lista non si modificano al loro posto: una copia con il campo cambiato
+    private static void cambia(List<Map<String, Object>> lista, String id, String campo, Object valore) {
+        lista.replaceAll(articolo -> {
+            if (!articolo.get("id").equals(id)) {
+                return articolo;
+            }
+            Map<String, Object> copia = new HashMap<>(articolo);
+            copia.put(campo, valore);
+            return copia;
+        });
+    }
+
+    private static String id(List<Map<String, Object>> lista, int posizione) {
+        return (String) lista.get(posizione).get("id");
+    }
+
+    private static void controllaUguali(ReplicaCrdt a, List<Map<String, Object>> listaA,
+                                        ReplicaCrdt b, List<Map<String, Object>> listaB, String quando) {
+        Map<String, Map<String, Object>> statoA = a.stato();
+        controlla(statoA.equals(b.stato()), "le repliche sono diverse " + quando);
+        controlla(statoA.equals(perId(listaA)), "la lista di A è diversa dalla sua replica " + quando);
+        controlla(statoA.equals(perId(listaB)), "la lista di B è diversa dalla sua replica " + quando);
+    }
+
+    private static Map<String, Map<String, Object>> perId(List<Map<String, Object>> lista) {
+        Map<String, Map<String, Object>> perId = new TreeMap<>();
+        for (Map<String, Object> articolo : lista) {
+            perId.put((String) articolo.get("id"), articolo);
+        }
+        controlla(perId.size() == lista.size(), "id ripetuti nella lista");
+        return perId;
+    }
+
+    private static void controlla(boolean condizione, String messaggio) {
+        if (!condizione) {
+            throw new IllegalStateException(messaggio);
+        }
+    }
+}